@@ -0,0 +1,172 @@
+package com.quickrewind;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes pre-encoded blocks (e.g. compressed GIF frames) to a file through a FileChannel.
+ * Blocks are collected until about a megabyte is pending and then written with one gathering
+ * write on an I/O thread, so the encoding thread never waits on the disk. Everything goes to a
+ * ".part" file that {@link #commit()} syncs to disk and renames to the target in one step;
+ * closing without a commit deletes it. Blocks must not be modified after being written.
+ * With {@link #mirrorTo} every block is also streamed to an {@link HttpUploader}.
+ */
+public class BlockFileWriter implements Closeable {
+    private static final int FLUSH_BYTES = 1 << 20;
+
+    private final File target;
+    private final File partial;
+    private final FileChannel channel;
+    private List<ByteBuffer> pendingBlocks = new ArrayList<>();
+    private long pendingBytes;
+    private CompletableFuture<Void> writes = CompletableFuture.completedFuture(null);
+    private long bytesWritten;
+    private long writeCalls; // This and writeNanos are only touched by the write chain, one task at a time
+    private long writeNanos;
+    private boolean committed;
+    private HttpUploader upload;
+
+    public BlockFileWriter(File target) throws IOException {
+        this.target = target;
+        this.partial = ExportPipeline.partialFile(target);
+        this.channel = FileChannel.open(partial.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    // Sends everything written from now on to the uploader as well; it is finished on commit and aborted on close
+    public void mirrorTo(HttpUploader upload) {
+        this.upload = upload;
+    }
+
+    public void write(byte[] block) throws IOException {
+        write(block, 0, block.length);
+    }
+
+    // Part of a larger array, e.g. a frame copied out of an existing file without copying the bytes
+    public void write(byte[] data, int offset, int length) throws IOException {
+        pendingBlocks.add(ByteBuffer.wrap(data, offset, length));
+        pendingBytes += length;
+        bytesWritten += length;
+        if (upload != null) {
+            upload.append(data, offset, length);
+        }
+        if (pendingBytes >= FLUSH_BYTES) {
+            flush();
+        }
+    }
+
+    /**
+     * Overwrites bytes already written, e.g. a header whose sizes are only known at the end.
+     * Does not move the append position and is not mirrored to an uploader.
+     */
+    public void writeAt(long position, byte[] data) throws IOException {
+        if (position + data.length > bytesWritten) {
+            throw new IllegalArgumentException("writeAt past the end: " + (position + data.length) + " > " + bytesWritten);
+        }
+        flush();
+        writes = writes.thenCompose(done -> ExportPipeline.io(() -> {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            long start = System.nanoTime();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+                writeCalls++;
+            }
+            writeNanos += System.nanoTime() - start;
+            return null;
+        }));
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    // Writes the rest, syncs the file to disk and gives it its final name
+    public void commit() throws IOException {
+        flush();
+        if (upload != null) {
+            upload.finish(); // The last chunk goes out while the file is synced
+        }
+        ExportPipeline.await(writes.thenCompose(done -> ExportPipeline.io(() -> {
+            long syncStart = System.nanoTime();
+            channel.force(true);
+            long syncNanos = System.nanoTime() - syncStart;
+            channel.close();
+            ExportPipeline.publish(partial, target);
+            recordMetrics(syncNanos);
+            return null;
+        })));
+        committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (committed) return;
+        if (upload != null) {
+            upload.abort();
+        }
+
+        // Failed or cancelled: let queued writes finish, then remove the partial file
+        try {
+            writes.handle((done, error) -> null).join();
+        } finally {
+            channel.close();
+            Files.deleteIfExists(partial.toPath());
+        }
+    }
+
+    private void flush() throws IOException {
+        // Surface a failed earlier write before queueing more
+        if (writes.isCompletedExceptionally()) {
+            ExportPipeline.await(writes);
+        }
+        if (pendingBlocks.isEmpty()) return;
+
+        ByteBuffer[] blocks = pendingBlocks.toArray(new ByteBuffer[0]);
+        long length = pendingBytes;
+        pendingBlocks = new ArrayList<>();
+        pendingBytes = 0;
+        writes = writes.thenCompose(done -> ExportPipeline.io(() -> {
+            writeFully(blocks, length);
+            return null;
+        }));
+    }
+
+    private void writeFully(ByteBuffer[] blocks, long length) throws IOException {
+        // One gathering write usually takes everything; the OS may accept less (e.g. past IOV_MAX buffers)
+        long start = System.nanoTime();
+        long remaining = length;
+        int first = 0;
+        while (remaining > 0) {
+            remaining -= channel.write(blocks, first, blocks.length - first);
+            writeCalls++;
+            while (first < blocks.length && !blocks[first].hasRemaining()) {
+                first++;
+            }
+        }
+        writeNanos += System.nanoTime() - start;
+    }
+
+    // Throughput counts the time spent in write and sync calls, not the encoding in between
+    private void recordMetrics(long syncNanos) {
+        long ioNanos = Math.max(1, writeNanos + syncNanos);
+        long syncMs = syncNanos / 1_000_000;
+        long bytesPerCall = bytesWritten / Math.max(1, writeCalls);
+        long throughputKBps = (long) (bytesWritten / 1024.0 / (ioNanos / 1e9));
+
+        Metrics.add("export.write.bytes", bytesWritten);
+        Metrics.add("export.write.calls", writeCalls);
+        Metrics.set("export.write.bytesPerCall", bytesPerCall);
+        Metrics.set("export.write.throughputKBps", throughputKBps);
+        Metrics.set("export.write.sync.ms", syncMs);
+        System.out.println("Wrote " + target.getName() + ": " + bytesWritten + " bytes in " + writeCalls
+            + " writes (" + bytesPerCall + " bytes/write), " + throughputKBps + " KB/s, sync " + syncMs + " ms");
+    }
+}
@@ -0,0 +1,82 @@
+package com.quickrewind;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rewind window of every display, frozen at the moment the capture was requested.
+ * Holds pins on the display buffers until {@link #release()} is called.
+ */
+public class BufferSnapshot {
+    private final long time;
+    private final long windowMs;
+    private final Map<Integer, FrameBuffer.Snapshot> displays;
+    private final FrameBuffer.Snapshot patches; // Foveated capture around the pointer, null when off
+    private final CursorTrack.Path cursor;
+
+    BufferSnapshot(long time, long windowMs, Map<Integer, FrameBuffer.Snapshot> displays,
+                   FrameBuffer.Snapshot patches, CursorTrack.Path cursor) {
+        this.time = time;
+        this.windowMs = windowMs;
+        this.displays = displays;
+        this.patches = patches;
+        this.cursor = cursor;
+    }
+
+    // When the capture was requested; the exported GIFs end here
+    public long getTime() {
+        return time;
+    }
+
+    // The pointer over the whole window, null without cursor tracking
+    public CursorTrack.Path getCursorPath() {
+        return cursor;
+    }
+
+    public int getDisplayCount() {
+        return displays.size();
+    }
+
+    public List<Integer> getDisplayIndices() {
+        return new ArrayList<>(displays.keySet());
+    }
+
+    // Start of the rewind window, the oldest time an export can begin at
+    public long getWindowStart() {
+        return time - windowMs;
+    }
+
+    /**
+     * Returns the frames of one display covering the window before the snapshot time. The newest
+     * frame older than the window is kept (re-stamped to the window start) since it was still on screen then.
+     */
+    public CapturedFrame[] getFrames(int displayIndex) {
+        return getFrames(displayIndex, getWindowStart(), time);
+    }
+
+    /**
+     * Returns the frames of one display on screen from {@code fromTime} until {@code toTime}, with
+     * the first one re-stamped to {@code fromTime}, and the foveated patches on that display
+     * merged in (see {@link FoveatedFrames}). Only the frames inside the range are read.
+     */
+    public CapturedFrame[] getFrames(int displayIndex, long fromTime, long toTime) {
+        FrameBuffer.Snapshot snapshot = displays.get(displayIndex);
+        if (snapshot == null) return new CapturedFrame[0];
+
+        CapturedFrame[] frames = snapshot.getFrames(fromTime, toTime).toArray(new CapturedFrame[0]);
+        if (frames.length > 0 && frames[0].getTimestamp() < fromTime) {
+            frames[0] = frames[0].withTimestamp(fromTime);
+        }
+        return patches != null ? FoveatedFrames.merge(frames, patches.getFrames(fromTime, toTime)) : frames;
+    }
+
+    public void release() {
+        for (FrameBuffer.Snapshot snapshot : displays.values()) {
+            snapshot.release();
+        }
+        if (patches != null) {
+            patches.release();
+        }
+    }
+}
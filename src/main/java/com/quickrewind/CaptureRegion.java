@@ -0,0 +1,158 @@
+package com.quickrewind;
+
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.MouseInfo;
+import java.awt.Point;
+import java.awt.PointerInfo;
+import java.awt.Rectangle;
+
+/**
+ * Decides which part of the screen is handed to Robot.createScreenCapture:
+ * a whole display, a fixed rectangle, the foreground window, or the area around the pointer
+ * for foveated capture.
+ */
+public class CaptureRegion {
+    public static final String MODE_FULL_SCREEN = "fullscreen";
+    public static final String MODE_REGION = "region";
+    public static final String MODE_ACTIVE_WINDOW = "window";
+    public static final String MODE_CURSOR = "cursor"; // Only used for the foveated capture worker
+
+    private static final long WINDOW_REFRESH_MS = 1000; // Re-query foreground window once per second
+    private static final int MIN_SIZE = 16;
+
+    private final String mode;
+    private final Rectangle screenBounds;
+    private final Rectangle fixedRegion;
+    private final double scale;
+    private volatile Rectangle windowBounds;
+    private volatile long lastWindowRefresh;
+
+    private CaptureRegion(String mode, Rectangle screenBounds, Rectangle fixedRegion, double scale) {
+        this.mode = mode;
+        this.screenBounds = screenBounds;
+        this.fixedRegion = fixedRegion;
+        this.scale = scale;
+        this.windowBounds = screenBounds;
+    }
+
+    public static CaptureRegion fromConfig(Config config) {
+        Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration().getBounds();
+        Rectangle desktop = getVirtualDesktopBounds();
+        String mode = normalizeMode(config.getCaptureMode());
+
+        if (MODE_REGION.equals(mode)) {
+            Rectangle region = clip(new Rectangle(config.getRegionX(), config.getRegionY(),
+                    config.getRegionWidth(), config.getRegionHeight()), desktop);
+            if (region == null) {
+                System.err.println("Configured capture region is empty or off-screen, using full screen");
+                return new CaptureRegion(MODE_FULL_SCREEN, screen, null, config.getCaptureScale());
+            }
+            return new CaptureRegion(MODE_REGION, screen, region, config.getRegionScale());
+        }
+
+        if (MODE_ACTIVE_WINDOW.equals(mode)) {
+            if (!WindowsNative.isAvailable()) {
+                System.err.println("Active window capture is only supported on Windows, using full screen");
+                return new CaptureRegion(MODE_FULL_SCREEN, screen, null, config.getCaptureScale());
+            }
+            return new CaptureRegion(MODE_ACTIVE_WINDOW, desktop, null, config.getRegionScale());
+        }
+
+        return new CaptureRegion(MODE_FULL_SCREEN, screen, null, config.getCaptureScale());
+    }
+
+    /**
+     * A rectangle of the given size centered on the pointer, moved inside the display the pointer
+     * is on, so a grab never spans two displays.
+     */
+    public static CaptureRegion aroundCursor(int width, int height, double scale) {
+        return new CaptureRegion(MODE_CURSOR, null, new Rectangle(0, 0, width, height), scale);
+    }
+
+    public static CaptureRegion forDisplay(GraphicsDevice device, double scale) {
+        return new CaptureRegion(MODE_FULL_SCREEN, device.getDefaultConfiguration().getBounds(), null, scale);
+    }
+
+    // A fixed rectangle that does not depend on the local screens, e.g. for a synthetic frame source
+    public static CaptureRegion fixed(Rectangle bounds, double scale) {
+        return new CaptureRegion(MODE_REGION, bounds, bounds, scale);
+    }
+
+    public static Rectangle getVirtualDesktopBounds() {
+        Rectangle desktop = null;
+        for (GraphicsDevice device : GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()) {
+            Rectangle bounds = device.getDefaultConfiguration().getBounds();
+            desktop = desktop == null ? bounds : desktop.union(bounds);
+        }
+        return desktop;
+    }
+
+    public static String normalizeMode(String mode) {
+        if (MODE_REGION.equals(mode) || MODE_ACTIVE_WINDOW.equals(mode)) {
+            return mode;
+        }
+        return MODE_FULL_SCREEN;
+    }
+
+    public Rectangle getBounds() {
+        if (MODE_CURSOR.equals(mode)) {
+            PointerInfo pointer = MouseInfo.getPointerInfo();
+            // Keep the previous bounds while the pointer cannot be read (e.g. a secure desktop is shown)
+            if (pointer != null) {
+                Point location = pointer.getLocation();
+                Rectangle display = pointer.getDevice().getDefaultConfiguration().getBounds();
+                int width = Math.min(fixedRegion.width, display.width);
+                int height = Math.min(fixedRegion.height, display.height);
+                int x = Math.max(display.x, Math.min(display.x + display.width - width, location.x - width / 2));
+                int y = Math.max(display.y, Math.min(display.y + display.height - height, location.y - height / 2));
+                windowBounds = new Rectangle(x, y, width, height);
+            }
+            return windowBounds != null ? windowBounds : fixedRegion;
+        }
+        if (fixedRegion != null) {
+            return fixedRegion;
+        }
+        if (MODE_ACTIVE_WINDOW.equals(mode)) {
+            long now = System.currentTimeMillis();
+            if (now - lastWindowRefresh >= WINDOW_REFRESH_MS) {
+                lastWindowRefresh = now;
+                Rectangle window = clip(WindowsNative.getForegroundWindowBounds(), screenBounds);
+                // Keep the previous bounds when the lookup fails (e.g. desktop or a minimized window has focus)
+                if (window != null) {
+                    windowBounds = window;
+                }
+            }
+            return windowBounds;
+        }
+        return screenBounds;
+    }
+
+    public CaptureRegion withScale(double newScale) {
+        CaptureRegion region = new CaptureRegion(mode, screenBounds, fixedRegion, newScale);
+        region.windowBounds = windowBounds;
+        return region;
+    }
+
+    public String getMode() {
+        return mode;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public boolean isFullScreen() {
+        return MODE_FULL_SCREEN.equals(mode);
+    }
+
+    private static Rectangle clip(Rectangle region, Rectangle screen) {
+        if (region == null) return null;
+        Rectangle clipped = region.intersection(screen);
+        if (clipped.width < MIN_SIZE || clipped.height < MIN_SIZE) {
+            return null;
+        }
+        return clipped;
+    }
+}
@@ -0,0 +1,168 @@
+package com.quickrewind;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Checks the buffer workers every second and restarts the capture of a worker that stopped
+ * delivering frames: a grab hung for 5 seconds (Robot can block across display changes and
+ * sleep/resume), a capture loop that made no progress for 15 seconds, grabs that keep failing,
+ * or grabs that got so slow the buffer falls behind. The worker gets a new frame source and a
+ * new thread and keeps its buffer. Restarts back off from 10 seconds up to 5 minutes while the
+ * worker does not recover, or relapses within 5 minutes. A worker counts as degraded until it
+ * delivers a frame again; the listener hears about every change of the degraded workers, and
+ * everything is logged and counted in the metrics.
+ */
+public class CaptureWatchdog {
+    private static final long CHECK_INTERVAL_MS = 1000;
+    private static final long HUNG_GRAB_MS = 5000;
+    private static final long STALLED_LOOP_MS = 15_000; // Idle workers sleep up to a few seconds per pass
+    private static final int MAX_FAILURES = 5;
+    private static final long SLOW_GRAB_MS = 1000; // Or twice the frame interval, whichever is longer
+    private static final long RESTART_BACKOFF_MS = 10_000;
+    private static final long MAX_RESTART_BACKOFF_MS = 5 * 60_000;
+
+    private final ScreenCapture capture;
+    private final Consumer<String> listener;
+    private final Map<DisplayCaptureWorker, Health> health = new IdentityHashMap<>();
+    private ScheduledExecutorService checker;
+    private volatile String problem; // Null while every worker is healthy
+
+    private static class Health {
+        String problem;
+        long restartedAt;
+        long recoveredAt;
+        long nextRestart;
+        long backoff = RESTART_BACKOFF_MS;
+    }
+
+    /**
+     * The listener is called on the watchdog thread with a description of the degraded workers,
+     * or null once all of them recovered.
+     */
+    public CaptureWatchdog(ScreenCapture capture, Consumer<String> listener) {
+        this.capture = capture;
+        this.listener = listener;
+    }
+
+    public void start() {
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "capture-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checker.scheduleWithFixedDelay(this::check, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Metrics.set("capture.degraded", 0);
+    }
+
+    public void stop() {
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    public String getProblem() {
+        return problem;
+    }
+
+    private void check() {
+        try {
+            evaluate(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            System.err.println("Capture watchdog check failed: " + e.getMessage());
+        }
+    }
+
+    private void evaluate(long now) {
+        List<DisplayCaptureWorker> workers = capture.getWorkers();
+        health.keySet().retainAll(workers); // Workers are replaced when the capture area changes
+
+        List<String> degraded = new ArrayList<>();
+        long slowestGrab = 0;
+        long oldestFrame = 0;
+        for (DisplayCaptureWorker worker : workers) {
+            Health state = health.computeIfAbsent(worker, w -> new Health());
+            slowestGrab = Math.max(slowestGrab, Math.round(worker.getAverageGrabMs()));
+            if (worker.getLastSuccess() > 0) {
+                oldestFrame = Math.max(oldestFrame, now - worker.getLastSuccess());
+            }
+
+            String diagnosis = diagnose(worker, now);
+            if (diagnosis != null) {
+                if (state.problem == null) {
+                    if (now - state.recoveredAt >= MAX_RESTART_BACKOFF_MS) {
+                        // Healthy for long enough to start over; a worker that relapses soon keeps backing off
+                        state.nextRestart = 0;
+                        state.backoff = RESTART_BACKOFF_MS;
+                    }
+                    Metrics.add("capture.stalls", 1);
+                    System.err.println("Capture of " + worker.getName() + " degraded: " + diagnosis);
+                }
+                state.problem = problemOf(diagnosis);
+                if (now >= state.nextRestart) {
+                    restart(worker, state, now);
+                }
+            } else if (state.problem != null && worker.getLastSuccess() > state.restartedAt) {
+                System.out.println("Capture of " + worker.getName() + " recovered");
+                state.problem = null;
+                state.recoveredAt = now;
+            }
+            if (state.problem != null) {
+                degraded.add(worker.getName() + " " + state.problem);
+            }
+        }
+
+        Metrics.set("capture.degraded", degraded.size());
+        Metrics.set("capture.grab.ms", slowestGrab);
+        Metrics.set("capture.frameAge.ms", oldestFrame);
+
+        String summary = degraded.isEmpty() ? null : String.join(", ", degraded);
+        if (!Objects.equals(summary, problem)) {
+            problem = summary;
+            listener.accept(summary);
+        }
+    }
+
+    // A description for the log, or null if the worker looks healthy
+    private static String diagnose(DisplayCaptureWorker worker, long now) {
+        long grabStarted = worker.getGrabStarted();
+        if (grabStarted != 0 && now - grabStarted >= HUNG_GRAB_MS) {
+            return "hung: grab running for " + (now - grabStarted) / 1000 + " seconds";
+        }
+        if (now - worker.getHeartbeat() >= STALLED_LOOP_MS) {
+            return "stalled: no capture pass for " + (now - worker.getHeartbeat()) / 1000 + " seconds";
+        }
+        if (worker.getConsecutiveFailures() >= MAX_FAILURES) {
+            return "failing: last " + worker.getConsecutiveFailures() + " grabs failed";
+        }
+        long slowGrab = Math.max(SLOW_GRAB_MS, 2 * worker.getFrameInterval());
+        if (worker.getAverageGrabMs() >= slowGrab) {
+            return "slow: grabs take " + Math.round(worker.getAverageGrabMs()) + " ms on average";
+        }
+        return null;
+    }
+
+    // The short form shown in the tray, which must not change from one check to the next
+    private static String problemOf(String diagnosis) {
+        return diagnosis.substring(0, diagnosis.indexOf(':'));
+    }
+
+    private void restart(DisplayCaptureWorker worker, Health state, long now) {
+        System.out.println("Restarting capture of " + worker.getName() + ", next attempt in "
+            + state.backoff / 1000 + " seconds at the earliest");
+        Metrics.add("capture.restarts", 1);
+        if (!capture.restartWorker(worker)) {
+            Metrics.add("capture.restartFailures", 1);
+        }
+        state.restartedAt = now;
+        state.nextRestart = now + state.backoff;
+        state.backoff = Math.min(state.backoff * 2, MAX_RESTART_BACKOFF_MS);
+    }
+}
@@ -0,0 +1,193 @@
+package com.quickrewind;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A buffered or recorded frame. Under memory pressure the pixels can be deflated in place with
+ * {@link #compress()}; {@link #getImage()} then inflates a fresh copy on every call, so readers
+ * should hold on to the image only as long as they need it.
+ */
+public class CapturedFrame {
+    private static final int MIN_DELAY_MS = 20;
+    private static final int MAX_DELAY_MS = 10000;
+    private static final double MIN_COMPRESSION_GAIN = 0.75; // Keep the raw pixels unless deflating saves a quarter
+
+    private volatile BufferedImage image; // Null once compressed
+    private volatile byte[] compressed;
+    private volatile boolean incompressible;
+    private final int width;
+    private final int height;
+    private final long timestamp;
+    private final Rectangle sourceBounds;
+
+    public CapturedFrame(BufferedImage image, long timestamp, Rectangle sourceBounds) {
+        this(image, null, image.getWidth(), image.getHeight(), timestamp, sourceBounds);
+    }
+
+    // For frames whose pixels are produced on demand by an overriding getImage()
+    protected CapturedFrame(int width, int height, long timestamp, Rectangle sourceBounds) {
+        this(null, null, width, height, timestamp, sourceBounds);
+    }
+
+    private CapturedFrame(BufferedImage image, byte[] compressed, int width, int height, long timestamp,
+                          Rectangle sourceBounds) {
+        this.image = image;
+        this.compressed = compressed;
+        this.width = width;
+        this.height = height;
+        this.timestamp = timestamp;
+        this.sourceBounds = sourceBounds;
+    }
+
+    public BufferedImage getImage() {
+        BufferedImage current = image;
+        return current != null ? current : inflate(compressed, width, height);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    // Known without inflating a compressed frame
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public Rectangle getSourceBounds() {
+        return sourceBounds;
+    }
+
+    public CapturedFrame withTimestamp(long newTimestamp) {
+        // Read the image first: compress() sets the compressed pixels before it drops the image,
+        // so once the image is gone the compressed pixels are there
+        BufferedImage current = image;
+        return new CapturedFrame(current, current != null ? null : compressed, width, height, newTimestamp,
+                sourceBounds);
+    }
+
+    public boolean isCompressed() {
+        return image == null;
+    }
+
+    /**
+     * Replaces the pixels with a deflated copy and returns the number of bytes saved, or 0 if
+     * the frame is already compressed, is not packed RGB or does not compress well. Frames are
+     * compressed by one thread at a time (see {@link MemoryGovernor}); readers may run concurrently.
+     */
+    public int compress() {
+        BufferedImage current = image;
+        if (current == null || incompressible) return 0;
+        if (current.getType() != BufferedImage.TYPE_INT_RGB || current.getRaster().getParent() != null) {
+            incompressible = true;
+            return 0;
+        }
+
+        // Deflated a row at a time, so compressing needs no second full-size copy of the frame
+        int[] pixels = ((DataBufferInt) current.getRaster().getDataBuffer()).getData();
+        int rawBytes = pixels.length * 4;
+        byte[] output = new byte[(int) (rawBytes * MIN_COMPRESSION_GAIN)];
+        int length = 0;
+        ByteBuffer row = ByteBuffer.allocate(width * 4);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            for (int y = 0; y < height; y++) {
+                row.clear();
+                row.asIntBuffer().put(pixels, y * width, width);
+                deflater.setInput(row);
+                while (!deflater.needsInput()) {
+                    if (length == output.length) {
+                        incompressible = true;
+                        return 0;
+                    }
+                    length += deflater.deflate(output, length, output.length - length);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (length == output.length) {
+                    incompressible = true;
+                    return 0;
+                }
+                length += deflater.deflate(output, length, output.length - length);
+            }
+        } finally {
+            deflater.end();
+        }
+        compressed = Arrays.copyOf(output, length);
+        image = null;
+        return rawBytes - length;
+    }
+
+    private static BufferedImage inflate(byte[] data, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        ByteBuffer row = ByteBuffer.allocate(width * 4);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            for (int y = 0; y < height; y++) {
+                row.clear();
+                while (row.hasRemaining()) {
+                    if (inflater.inflate(row) == 0 && (inflater.finished() || inflater.needsInput())) {
+                        throw new IllegalStateException("Truncated compressed frame");
+                    }
+                }
+                row.flip();
+                row.asIntBuffer().get(pixels, y * width, width);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt compressed frame", e);
+        } finally {
+            inflater.end();
+        }
+        return image;
+    }
+
+    // Compressed frames are only inflated when the encoder asks for them, one at a time
+    public static List<BufferedImage> images(CapturedFrame[] frames) {
+        return new AbstractList<BufferedImage>() {
+            @Override
+            public BufferedImage get(int index) {
+                return frames[index].getImage();
+            }
+
+            @Override
+            public int size() {
+                return frames.length;
+            }
+        };
+    }
+
+    // Unchanged frames are never stored, so each frame is shown until the next one was captured
+    public static int[] delays(CapturedFrame[] frames, long endTime) {
+        long[] times = new long[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            times[i] = frames[i].getTimestamp();
+        }
+        return delays(times, endTime);
+    }
+
+    // Same for frames appearing at the given times
+    public static int[] delays(long[] times, long endTime) {
+        int[] delays = new int[times.length];
+        for (int i = 0; i < times.length; i++) {
+            long next = i + 1 < times.length ? times[i + 1] : endTime;
+            long delay = next - times[i];
+            delays[i] = (int) Math.max(MIN_DELAY_MS, Math.min(MAX_DELAY_MS, delay));
+        }
+        return delays;
+    }
+}
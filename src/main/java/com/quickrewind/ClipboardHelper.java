@@ -4,6 +4,10 @@ import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import java.io.File;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 public class ClipboardHelper {
     
@@ -27,6 +31,24 @@ public class ClipboardHelper {
         copyMarkdownLink(gifFile, null);
     }
     
+    public static void copyMarkdownLinks(List<File> gifFiles) {
+        copyMarkdownLinks(gifFiles, Collections.emptyMap());
+    }
+    
+    // Files found in uploadedUrls link to their upload, the rest to the local file
+    public static void copyMarkdownLinks(List<File> gifFiles, Map<File, URI> uploadedUrls) {
+        // One link per line, e.g. one GIF per display
+        StringBuilder links = new StringBuilder();
+        for (File gifFile : gifFiles) {
+            if (links.length() > 0) {
+                links.append("\n");
+            }
+            URI url = uploadedUrls.get(gifFile);
+            links.append(url != null ? createMarkdownLink(gifFile.getName(), url.toString()) : createMarkdownLink(gifFile));
+        }
+        copyToClipboard(links.toString());
+    }
+    
     public static void copyToClipboard(String text) {
         try {
             Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
@@ -38,8 +60,13 @@ public class ClipboardHelper {
     }
     
     public static String createMarkdownLink(File gifFile) {
-        String fileName = gifFile.getName();
         String absolutePath = gifFile.getAbsolutePath().replace("\\", "/");
-        return String.format("![%s](file:///%s)", fileName, absolutePath);
+        return createMarkdownLink(gifFile.getName(), "file:///" + absolutePath);
+    }
+    
+    // Videos cannot be embedded like images, so AVIs get a plain link
+    public static String createMarkdownLink(String fileName, String url) {
+        boolean video = fileName.toLowerCase().endsWith(".avi");
+        return String.format(video ? "[%s](%s)" : "![%s](%s)", fileName, url);
     }
 }
\ No newline at end of file
@@ -0,0 +1,202 @@
+package com.quickrewind;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds a palette shared by all frames of a recording (median cut over a 15-bit
+ * histogram of sampled pixels) and maps frames onto it.
+ */
+public class ColorQuantizer {
+    private static final int MAX_SAMPLES_PER_FRAME = 250_000;
+
+    public static Palette buildPalette(List<BufferedImage> samples, int maxColors) {
+        return buildPalette(histogram(samples), maxColors);
+    }
+
+    /**
+     * 15-bit color histogram of the samples. Samples are read one at a time, so a lazy list never
+     * has more than one of them in memory; palettes of any size can then be cut from the histogram.
+     */
+    public static int[] histogram(List<BufferedImage> samples) {
+        int[] histogram = new int[32768];
+        for (BufferedImage image : samples) {
+            addToHistogram(histogram, image);
+        }
+        return histogram;
+    }
+
+    public static Palette buildPalette(int[] histogram, int maxColors) {
+        int colorCount = 0;
+        for (int count : histogram) {
+            if (count > 0) colorCount++;
+        }
+        if (colorCount == 0) {
+            return Palette.defaultPalette();
+        }
+
+        int[] keys = new int[colorCount];
+        int n = 0;
+        for (int key = 0; key < histogram.length; key++) {
+            if (histogram[key] > 0) keys[n++] = key;
+        }
+
+        // Median cut: keep splitting the box with the most pixels along its longest axis
+        List<int[]> boxes = new ArrayList<>();
+        boxes.add(new int[] {0, colorCount});
+        while (boxes.size() < maxColors) {
+            int bestBox = -1;
+            long bestScore = 0;
+            for (int i = 0; i < boxes.size(); i++) {
+                int[] box = boxes.get(i);
+                if (box[1] - box[0] < 2) continue;
+                long score = population(histogram, keys, box[0], box[1]) * (longestRange(keys, box[0], box[1]) + 1);
+                if (score > bestScore) {
+                    bestScore = score;
+                    bestBox = i;
+                }
+            }
+            if (bestBox < 0) break;
+
+            int[] box = boxes.get(bestBox);
+            int split = splitBox(histogram, keys, box[0], box[1]);
+            boxes.set(bestBox, new int[] {box[0], split});
+            boxes.add(new int[] {split, box[1]});
+        }
+
+        int[] rgb = new int[boxes.size()];
+        for (int i = 0; i < boxes.size(); i++) {
+            int[] box = boxes.get(i);
+            rgb[i] = averageColor(histogram, keys, box[0], box[1]);
+        }
+        return new Palette(rgb);
+    }
+
+    /**
+     * Maps a frame onto the palette at the given size using one of the {@link Ditherer} modes.
+     */
+    public static BufferedImage toIndexed(BufferedImage src, int width, int height, Palette palette, String ditherMode) {
+        BufferedImage indexed = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, palette.getColorModel());
+        byte[] indices = ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
+        Ditherer.toIndices(rgbPixels(src, width, height), width, height, palette, ditherMode, indices);
+        return indexed;
+    }
+
+    // Returns the frame as packed RGB at the requested size, without copying when it already matches
+    public static int[] rgbPixels(BufferedImage src, int width, int height) {
+        int[] pixels = packedPixels(src);
+        if (pixels != null) {
+            if (src.getWidth() == width && src.getHeight() == height) {
+                return pixels;
+            }
+            int[] scaled = new int[width * height];
+            PixelKernels.scaleBilinear(pixels, src.getWidth(), src.getHeight(), scaled, width, height);
+            return scaled;
+        }
+
+        BufferedImage converted = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = converted.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(src, 0, 0, width, height, null);
+        g2d.dispose();
+        return ((DataBufferInt) converted.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Packed RGB pixels of int RGB images (shared, not copied) and 3-byte BGR images (converted),
+     * or null for any other layout.
+     */
+    static int[] packedPixels(BufferedImage src) {
+        if (src.getRaster().getParent() != null) return null;
+
+        if (src.getType() == BufferedImage.TYPE_INT_RGB && src.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            return ((DataBufferInt) src.getRaster().getDataBuffer()).getData();
+        }
+        if (src.getType() == BufferedImage.TYPE_3BYTE_BGR && src.getRaster().getDataBuffer() instanceof DataBufferByte) {
+            int[] pixels = new int[src.getWidth() * src.getHeight()];
+            PixelKernels.bgrToRgb(((DataBufferByte) src.getRaster().getDataBuffer()).getData(), pixels, pixels.length);
+            return pixels;
+        }
+        return null;
+    }
+
+    private static void addToHistogram(int[] histogram, BufferedImage image) {
+        int[] pixels = rgbPixels(image, image.getWidth(), image.getHeight());
+        int step = Math.max(1, pixels.length / MAX_SAMPLES_PER_FRAME);
+        for (int i = 0; i < pixels.length; i += step) {
+            histogram[Palette.key15(pixels[i])]++;
+        }
+    }
+
+    private static long population(int[] histogram, int[] keys, int from, int to) {
+        long total = 0;
+        for (int i = from; i < to; i++) {
+            total += histogram[keys[i]];
+        }
+        return total;
+    }
+
+    private static int longestRange(int[] keys, int from, int to) {
+        int[] ranges = channelRanges(keys, from, to);
+        return Math.max(ranges[0], Math.max(ranges[1], ranges[2]));
+    }
+
+    private static int[] channelRanges(int[] keys, int from, int to) {
+        int[] min = {31, 31, 31};
+        int[] max = {0, 0, 0};
+        for (int i = from; i < to; i++) {
+            for (int c = 0; c < 3; c++) {
+                int v = channel(keys[i], c);
+                if (v < min[c]) min[c] = v;
+                if (v > max[c]) max[c] = v;
+            }
+        }
+        return new int[] {max[0] - min[0], max[1] - min[1], max[2] - min[2]};
+    }
+
+    private static int channel(int key, int c) {
+        return (key >> (10 - c * 5)) & 0x1F;
+    }
+
+    private static int splitBox(int[] histogram, int[] keys, int from, int to) {
+        int[] ranges = channelRanges(keys, from, to);
+        int axis = ranges[0] >= ranges[1] && ranges[0] >= ranges[2] ? 0 : (ranges[1] >= ranges[2] ? 1 : 2);
+
+        // Sort the box along the axis by packing the channel value above the key
+        for (int i = from; i < to; i++) {
+            keys[i] = (channel(keys[i], axis) << 15) | keys[i];
+        }
+        Arrays.sort(keys, from, to);
+        for (int i = from; i < to; i++) {
+            keys[i] &= 0x7FFF;
+        }
+
+        long half = population(histogram, keys, from, to) / 2;
+        long running = 0;
+        for (int i = from; i < to - 1; i++) {
+            running += histogram[keys[i]];
+            if (running >= half) {
+                return i + 1;
+            }
+        }
+        return to - 1;
+    }
+
+    private static int averageColor(int[] histogram, int[] keys, int from, int to) {
+        long r = 0, g = 0, b = 0, total = 0;
+        for (int i = from; i < to; i++) {
+            int count = histogram[keys[i]];
+            r += (long) ((channel(keys[i], 0) << 3) | 4) * count;
+            g += (long) ((channel(keys[i], 1) << 3) | 4) * count;
+            b += (long) ((channel(keys[i], 2) << 3) | 4) * count;
+            total += count;
+        }
+        return (int) (r / total) << 16 | (int) (g / total) << 8 | (int) (b / total);
+    }
+}
@@ -1,28 +1,66 @@
 package com.quickrewind;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class Config {
     private static final String CONFIG_FILE = "quickrewind-config.json";
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    public static final String FORMAT_GIF = "gif";
+    public static final String FORMAT_AVI = "avi";
     
     private String outputFolder;
     private int bufferSeconds;
+    private int bufferFPS;
+    private int shortCaptureSeconds;
     private String hotkeyCombo;
     private int activeRecordingFPS;
     private int maxRecordingMinutes;
+    private String captureMode;
+    private int regionX;
+    private int regionY;
+    private int regionWidth;
+    private int regionHeight;
+    private double captureScale;
+    private double regionScale;
+    private int saveTimeBudgetSeconds;
+    private int maxGifSizeMB;
+    private String ditherMode;
+    private int lossyError;
+    private String uploadUrl;
+    private String exportFormat;
+    private boolean exportInHelperProcess;
+    private boolean showCursor;
+    private boolean foveatedCapture;
     
     public Config() {
         // Default values
         this.outputFolder = System.getProperty("user.home") + File.separator + "QuickRewind";
         this.bufferSeconds = 30;
+        this.bufferFPS = 2;
+        this.shortCaptureSeconds = 10;
         this.hotkeyCombo = "Ctrl+Shift+G";
         this.activeRecordingFPS = 10;
         this.maxRecordingMinutes = 10;
+        this.captureMode = CaptureRegion.MODE_FULL_SCREEN;
+        this.regionX = 0;
+        this.regionY = 0;
+        this.regionWidth = 0;
+        this.regionHeight = 0;
+        this.captureScale = 0.6;
+        this.regionScale = 1.0;
+        this.saveTimeBudgetSeconds = 0; // 0 = no limit
+        this.maxGifSizeMB = 0; // 0 = no limit
+        this.ditherMode = Ditherer.DEFAULT_MODE;
+        this.lossyError = 0; // 0 = lossless
+        this.uploadUrl = ""; // Empty = no upload
+        this.exportFormat = FORMAT_GIF;
+        this.exportInHelperProcess = false; // Encode inside this process
+        this.showCursor = true; // Draw the pointer into buffer exports
+        this.foveatedCapture = false; // Only whole displays at the buffer rate
     }
     
     public String getOutputFolder() {
@@ -41,6 +79,22 @@ public class Config {
         this.bufferSeconds = Math.max(10, Math.min(60, bufferSeconds)); // Clamp between 10-60 seconds
     }
     
+    public int getBufferFPS() {
+        return bufferFPS;
+    }
+    
+    public void setBufferFPS(int bufferFPS) {
+        this.bufferFPS = Math.max(1, Math.min(10, bufferFPS)); // Clamp between 1-10 FPS, the buffer is kept light
+    }
+    
+    public int getShortCaptureSeconds() {
+        return shortCaptureSeconds;
+    }
+    
+    public void setShortCaptureSeconds(int shortCaptureSeconds) {
+        this.shortCaptureSeconds = Math.max(1, Math.min(60, shortCaptureSeconds)); // Clamp between 1-60 seconds, longer ones hit the buffer length
+    }
+    
     public String getHotkeyCombo() {
         return hotkeyCombo;
     }
@@ -65,6 +119,134 @@ public class Config {
         this.maxRecordingMinutes = Math.max(1, Math.min(15, maxRecordingMinutes)); // Clamp between 1-15 minutes
     }
     
+    public String getCaptureMode() {
+        return captureMode;
+    }
+    
+    public void setCaptureMode(String captureMode) {
+        this.captureMode = CaptureRegion.normalizeMode(captureMode);
+    }
+    
+    public int getRegionX() {
+        return regionX;
+    }
+    
+    public void setRegionX(int regionX) {
+        this.regionX = regionX;
+    }
+    
+    public int getRegionY() {
+        return regionY;
+    }
+    
+    public void setRegionY(int regionY) {
+        this.regionY = regionY;
+    }
+    
+    public int getRegionWidth() {
+        return regionWidth;
+    }
+    
+    public void setRegionWidth(int regionWidth) {
+        this.regionWidth = Math.max(0, regionWidth);
+    }
+    
+    public int getRegionHeight() {
+        return regionHeight;
+    }
+    
+    public void setRegionHeight(int regionHeight) {
+        this.regionHeight = Math.max(0, regionHeight);
+    }
+    
+    public double getCaptureScale() {
+        return captureScale;
+    }
+    
+    public void setCaptureScale(double captureScale) {
+        this.captureScale = Math.max(0.25, Math.min(1.0, captureScale)); // Clamp between 25-100% for full screen capture
+    }
+    
+    public double getRegionScale() {
+        return regionScale;
+    }
+    
+    public void setRegionScale(double regionScale) {
+        this.regionScale = Math.max(0.25, Math.min(1.0, regionScale)); // Region/window capture defaults to full resolution
+    }
+    
+    public int getSaveTimeBudgetSeconds() {
+        return saveTimeBudgetSeconds;
+    }
+    
+    public void setSaveTimeBudgetSeconds(int saveTimeBudgetSeconds) {
+        this.saveTimeBudgetSeconds = Math.max(0, Math.min(120, saveTimeBudgetSeconds)); // Clamp between 0-120 seconds, 0 disables the budget
+    }
+    
+    public int getMaxGifSizeMB() {
+        return maxGifSizeMB;
+    }
+    
+    public void setMaxGifSizeMB(int maxGifSizeMB) {
+        this.maxGifSizeMB = Math.max(0, Math.min(100, maxGifSizeMB)); // Clamp between 0-100 MB, 0 disables the limit
+    }
+    
+    public String getDitherMode() {
+        return ditherMode;
+    }
+    
+    public void setDitherMode(String ditherMode) {
+        this.ditherMode = Ditherer.normalizeMode(ditherMode);
+    }
+    
+    public int getLossyError() {
+        return lossyError;
+    }
+    
+    public void setLossyError(int lossyError) {
+        this.lossyError = Math.max(0, Math.min(100, lossyError)); // Clamp between 0-100 RGB distance, 0 keeps colors exact
+    }
+    
+    public String getUploadUrl() {
+        return uploadUrl;
+    }
+    
+    public void setUploadUrl(String uploadUrl) {
+        this.uploadUrl = uploadUrl != null ? uploadUrl.trim() : ""; // tus endpoint that new uploads are created at
+    }
+    
+    public String getExportFormat() {
+        return exportFormat;
+    }
+    
+    public void setExportFormat(String exportFormat) {
+        this.exportFormat = FORMAT_AVI.equals(exportFormat) ? FORMAT_AVI : FORMAT_GIF; // Unknown formats fall back to GIF
+    }
+    
+    public boolean isExportInHelperProcess() {
+        return exportInHelperProcess;
+    }
+    
+    public void setExportInHelperProcess(boolean exportInHelperProcess) {
+        this.exportInHelperProcess = exportInHelperProcess;
+    }
+    
+    public boolean isShowCursor() {
+        return showCursor;
+    }
+    
+    public void setShowCursor(boolean showCursor) {
+        this.showCursor = showCursor;
+    }
+    
+    public boolean isFoveatedCapture() {
+        return foveatedCapture;
+    }
+    
+    public void setFoveatedCapture(boolean foveatedCapture) {
+        this.foveatedCapture = foveatedCapture;
+    }
+    
     public static Config load() {
         Path configPath = getConfigPath();
         
@@ -76,7 +258,7 @@ public class Config {
         
         try {
             String json = Files.readString(configPath);
-            Config config = objectMapper.readValue(json, Config.class);
+            Config config = fromMap(SimpleJson.parseObject(json));
             
             // Ensure output folder exists
             File outputDir = new File(config.getOutputFolder());
@@ -85,7 +267,7 @@ public class Config {
             }
             
             return config;
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException e) {
             System.err.println("Failed to load config, using defaults: " + e.getMessage());
             return new Config();
         }
@@ -102,13 +284,90 @@ public class Config {
                 outputDir.mkdirs();
             }
             
-            String json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(this);
+            String json = SimpleJson.writeObject(toMap());
             Files.writeString(configPath, json);
         } catch (IOException e) {
             System.err.println("Failed to save config: " + e.getMessage());
         }
     }
     
+    private Map<String, Object> toMap() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("outputFolder", outputFolder);
+        values.put("bufferSeconds", bufferSeconds);
+        values.put("bufferFPS", bufferFPS);
+        values.put("shortCaptureSeconds", shortCaptureSeconds);
+        values.put("hotkeyCombo", hotkeyCombo);
+        values.put("activeRecordingFPS", activeRecordingFPS);
+        values.put("maxRecordingMinutes", maxRecordingMinutes);
+        values.put("captureMode", captureMode);
+        values.put("regionX", regionX);
+        values.put("regionY", regionY);
+        values.put("regionWidth", regionWidth);
+        values.put("regionHeight", regionHeight);
+        values.put("captureScale", captureScale);
+        values.put("regionScale", regionScale);
+        values.put("saveTimeBudgetSeconds", saveTimeBudgetSeconds);
+        values.put("maxGifSizeMB", maxGifSizeMB);
+        values.put("ditherMode", ditherMode);
+        values.put("lossyError", lossyError);
+        values.put("uploadUrl", uploadUrl);
+        values.put("exportFormat", exportFormat);
+        values.put("exportInHelperProcess", exportInHelperProcess);
+        values.put("showCursor", showCursor);
+        values.put("foveatedCapture", foveatedCapture);
+        return values;
+    }
+    
+    // Missing keys keep their defaults and unknown keys are ignored, so older and newer files both load
+    private static Config fromMap(Map<String, Object> values) {
+        Config config = new Config();
+        config.setOutputFolder(stringValue(values, "outputFolder", config.getOutputFolder()));
+        config.setBufferSeconds(intValue(values, "bufferSeconds", config.getBufferSeconds()));
+        config.setBufferFPS(intValue(values, "bufferFPS", config.getBufferFPS()));
+        config.setShortCaptureSeconds(intValue(values, "shortCaptureSeconds", config.getShortCaptureSeconds()));
+        config.setHotkeyCombo(stringValue(values, "hotkeyCombo", config.getHotkeyCombo()));
+        config.setActiveRecordingFPS(intValue(values, "activeRecordingFPS", config.getActiveRecordingFPS()));
+        config.setMaxRecordingMinutes(intValue(values, "maxRecordingMinutes", config.getMaxRecordingMinutes()));
+        config.setCaptureMode(stringValue(values, "captureMode", config.getCaptureMode()));
+        config.setRegionX(intValue(values, "regionX", config.getRegionX()));
+        config.setRegionY(intValue(values, "regionY", config.getRegionY()));
+        config.setRegionWidth(intValue(values, "regionWidth", config.getRegionWidth()));
+        config.setRegionHeight(intValue(values, "regionHeight", config.getRegionHeight()));
+        config.setCaptureScale(doubleValue(values, "captureScale", config.getCaptureScale()));
+        config.setRegionScale(doubleValue(values, "regionScale", config.getRegionScale()));
+        config.setSaveTimeBudgetSeconds(intValue(values, "saveTimeBudgetSeconds", config.getSaveTimeBudgetSeconds()));
+        config.setMaxGifSizeMB(intValue(values, "maxGifSizeMB", config.getMaxGifSizeMB()));
+        config.setDitherMode(stringValue(values, "ditherMode", config.getDitherMode()));
+        config.setLossyError(intValue(values, "lossyError", config.getLossyError()));
+        config.setUploadUrl(stringValue(values, "uploadUrl", config.getUploadUrl()));
+        config.setExportFormat(stringValue(values, "exportFormat", config.getExportFormat()));
+        config.setExportInHelperProcess(booleanValue(values, "exportInHelperProcess", config.isExportInHelperProcess()));
+        config.setShowCursor(booleanValue(values, "showCursor", config.isShowCursor()));
+        config.setFoveatedCapture(booleanValue(values, "foveatedCapture", config.isFoveatedCapture()));
+        return config;
+    }
+    
+    private static String stringValue(Map<String, Object> values, String key, String defaultValue) {
+        Object value = values.get(key);
+        return value instanceof String ? (String) value : defaultValue;
+    }
+    
+    private static int intValue(Map<String, Object> values, String key, int defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+    
+    private static boolean booleanValue(Map<String, Object> values, String key, boolean defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Boolean ? (Boolean) value : defaultValue;
+    }
+    
+    private static double doubleValue(Map<String, Object> values, String key, double defaultValue) {
+        Object value = values.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+    }
+    
     private static Path getConfigPath() {
         String appData = System.getenv("APPDATA");
         if (appData != null) {
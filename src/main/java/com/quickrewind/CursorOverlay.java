@@ -0,0 +1,170 @@
+package com.quickrewind;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws the mouse pointer from a {@link CursorTrack.Path} onto exported buffer frames. While the
+ * pointer moves, frames are added between the captured ones that differ only around the pointer,
+ * so delta-encoded GIFs stay small and the pointer plays back smoothly at any capture rate.
+ * Frames are composited when the encoder pulls them, one at a time; the buffered frames
+ * themselves are never drawn on.
+ */
+public class CursorOverlay implements FrameStream {
+    private static final long STEP_MS = 50; // Added frames come at most this often
+    private static final int MAX_FRAMES = 300; // The GIF encoder samples longer sequences down
+    private static final Polygon ARROW = new Polygon(
+        new int[] {0, 0, 4, 7, 9, 6, 11},
+        new int[] {0, 16, 12, 18, 17, 11, 11}, 7);
+
+    private final CapturedFrame[] frames;
+    private final CursorTrack.Path path;
+    private final List<Integer> baseFrames = new ArrayList<>(); // Captured frame shown by each output frame
+    private final List<Long> times = new ArrayList<>(); // When each output frame appears
+    private final long endTime;
+    private final int[] delays;
+
+    public CursorOverlay(CapturedFrame[] frames, CursorTrack.Path path, long endTime) {
+        this.frames = frames;
+        this.path = path;
+        this.endTime = endTime;
+
+        // Coarser steps until the added frames fit next to the captured ones, which are never dropped
+        long step = STEP_MS;
+        plan(step, endTime);
+        while (times.size() > MAX_FRAMES && step > 0) {
+            step = step * 2 < 10_000 ? step * 2 : 0;
+            plan(step, endTime);
+        }
+
+        long[] starts = new long[times.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = times.get(i);
+        }
+        this.delays = CapturedFrame.delays(starts, endTime);
+    }
+
+    // A step of 0 adds no frames
+    private void plan(long step, long endTime) {
+        baseFrames.clear();
+        times.clear();
+        for (int i = 0; i < frames.length; i++) {
+            long start = frames[i].getTimestamp();
+            long end = i + 1 < frames.length ? frames[i + 1].getTimestamp() : endTime;
+            baseFrames.add(i);
+            times.add(start);
+            Point shown = pointerAt(i, start);
+            for (long time = start + step; step > 0 && time < end; time += step) {
+                Point pointer = pointerAt(i, time);
+                if (!pointer.samePlace(shown)) {
+                    baseFrames.add(i);
+                    times.add(time);
+                    shown = pointer;
+                }
+            }
+        }
+    }
+
+    // Frames added for the pointer; 0 when it did not move
+    public int getAddedFrames() {
+        return times.size() - frames.length;
+    }
+
+    @Override
+    public int size() {
+        return times.size();
+    }
+
+    @Override
+    public long getTimestamp(int index) {
+        return times.get(index);
+    }
+
+    @Override
+    public long getEndTime() {
+        return endTime;
+    }
+
+    @Override
+    public int[] getDelays() {
+        return delays.clone();
+    }
+
+    @Override
+    public BufferedImage getFrame(int index) {
+        return composite(baseFrames.get(index), times.get(index));
+    }
+
+    // Where the pointer is drawn on a captured frame at the given time, in output pixels
+    private Point pointerAt(int frameIndex, long time) {
+        CapturedFrame frame = frames[frameIndex];
+        Rectangle bounds = frame.getSourceBounds();
+        double[] position = path.positionAt(time);
+        if (bounds == null || position == null || !bounds.contains(position[0], position[1])) {
+            return Point.HIDDEN;
+        }
+        double scale = (double) frame.getWidth() / bounds.width;
+        return new Point((int) Math.round((position[0] - bounds.x) * scale),
+                (int) Math.round((position[1] - bounds.y) * (double) frame.getHeight() / bounds.height),
+                scale, path.isPressedAt(time));
+    }
+
+    private BufferedImage composite(int frameIndex, long time) {
+        BufferedImage base = frames[frameIndex].getImage();
+        Point pointer = pointerAt(frameIndex, time);
+        if (pointer == Point.HIDDEN) return base;
+
+        BufferedImage image = new BufferedImage(base.getWidth(), base.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.drawImage(base, 0, 0, null);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.translate(pointer.x, pointer.y);
+        // Drawn at the capture scale like the rest of the screen, but never too small to follow
+        double size = Math.max(0.6, pointer.scale);
+        if (pointer.pressed) {
+            int radius = (int) Math.round(12 * size);
+            g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, 0.5f));
+            g.setColor(new Color(255, 200, 0));
+            g.fillOval(-radius, -radius, radius * 2, radius * 2);
+            g.setComposite(AlphaComposite.SrcOver);
+        }
+        g.transform(AffineTransform.getScaleInstance(size, size));
+        g.setColor(Color.WHITE);
+        g.fillPolygon(ARROW);
+        g.setColor(Color.BLACK);
+        g.setStroke(new BasicStroke((float) (1 / size)));
+        g.drawPolygon(ARROW);
+        g.dispose();
+        return image;
+    }
+
+    private static final class Point {
+        static final Point HIDDEN = new Point(Integer.MIN_VALUE, Integer.MIN_VALUE, 0, false);
+
+        final int x;
+        final int y;
+        final double scale;
+        final boolean pressed;
+
+        Point(int x, int y, double scale, boolean pressed) {
+            this.x = x;
+            this.y = y;
+            this.scale = scale;
+            this.pressed = pressed;
+        }
+
+        // Same spot on the frame; the scale follows from the frame
+        boolean samePlace(Point other) {
+            return x == other.x && y == other.y && pressed == other.pressed;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.quickrewind;
+
+import java.awt.MouseInfo;
+import java.awt.Point;
+import java.awt.PointerInfo;
+import java.util.Arrays;
+
+/**
+ * Samples the mouse pointer 60 times a second into primitive ring arrays, independent of the
+ * screen grab rate. Only changes of position or buttons are stored, so a still pointer costs
+ * nothing but the poll. Button state comes from the native hook. Exports draw the pointer from
+ * this track (see {@link CursorOverlay}), so it moves smoothly even in a 2 FPS buffer.
+ */
+public class CursorTrack {
+    private static final long SAMPLE_INTERVAL_MS = 16;
+    private static final int CAPACITY = 8192; // Over two minutes of constant movement
+
+    private final InputActivity activity;
+    private final long[] times = new long[CAPACITY];
+    private final int[] xs = new int[CAPACITY];
+    private final int[] ys = new int[CAPACITY];
+    private final int[] buttons = new int[CAPACITY];
+    private long count; // Samples ever written, the newest is at (count - 1) % CAPACITY
+    private volatile int pressedButtons; // Bit per button, set by the native hook
+    private volatile boolean running;
+    private Thread sampler;
+
+    public CursorTrack(InputActivity activity) {
+        this.activity = activity;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        sampler = new Thread(this::sampleLoop, "cursor-track");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (sampler != null) {
+            sampler.interrupt();
+            sampler = null;
+        }
+    }
+
+    // Called by the native hook
+    public void onButton(int button, boolean pressed) {
+        int bit = 1 << Math.max(0, Math.min(30, button));
+        pressedButtons = pressed ? pressedButtons | bit : pressedButtons & ~bit;
+    }
+
+    private void sampleLoop() {
+        while (running) {
+            try {
+                if (activity.isPaused()) {
+                    activity.awaitInput(1000);
+                    continue;
+                }
+                PointerInfo pointer = MouseInfo.getPointerInfo(); // Null while e.g. a secure desktop is shown
+                if (pointer != null) {
+                    Point location = pointer.getLocation();
+                    record(System.currentTimeMillis(), location.x, location.y, pressedButtons);
+                }
+                Thread.sleep(SAMPLE_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Cursor tracking stopped: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    synchronized void record(long time, int x, int y, int buttonMask) {
+        if (count > 0) {
+            int last = (int) ((count - 1) % CAPACITY);
+            if (xs[last] == x && ys[last] == y && buttons[last] == buttonMask) return;
+        }
+        int index = (int) (count % CAPACITY);
+        times[index] = time;
+        xs[index] = x;
+        ys[index] = y;
+        buttons[index] = buttonMask;
+        count++;
+    }
+
+    /**
+     * Copies the samples between the two times, starting with the newest one at or before
+     * {@code fromTime} so the position at the start is known.
+     */
+    public synchronized Path path(long fromTime, long toTime) {
+        long oldest = Math.max(0, count - CAPACITY);
+        long first = count;
+        long last = count;
+        for (long sequence = count - 1; sequence >= oldest; sequence--) {
+            long time = times[(int) (sequence % CAPACITY)];
+            if (time >= toTime) {
+                last = sequence;
+            }
+            first = sequence;
+            if (time <= fromTime) break;
+        }
+        int size = (int) Math.max(0, last - first);
+        Path path = new Path(size);
+        for (int i = 0; i < size; i++) {
+            int index = (int) ((first + i) % CAPACITY);
+            path.times[i] = times[index];
+            path.xs[i] = xs[index];
+            path.ys[i] = ys[index];
+            path.buttons[i] = buttons[index];
+        }
+        return path;
+    }
+
+    /**
+     * An immutable stretch of the track, in screen coordinates.
+     */
+    public static final class Path {
+        private static final long MAX_INTERPOLATION_GAP_MS = 50; // Longer gaps mean the pointer rested in between
+
+        private final long[] times;
+        private final int[] xs;
+        private final int[] ys;
+        private final int[] buttons;
+
+        Path(int size) {
+            times = new long[size];
+            xs = new int[size];
+            ys = new int[size];
+            buttons = new int[size];
+        }
+
+        public boolean isEmpty() {
+            return times.length == 0;
+        }
+
+        public int size() {
+            return times.length;
+        }
+
+        // Index of the newest sample at or before the time, -1 if the path starts later
+        private int sampleAt(long time) {
+            int index = Arrays.binarySearch(times, time);
+            if (index < 0) return -index - 2;
+            while (index + 1 < times.length && times[index + 1] == time) index++;
+            return index;
+        }
+
+        /**
+         * Pointer position at the given time, interpolated between samples taken while it was
+         * moving, or null if the path starts later.
+         */
+        public double[] positionAt(long time) {
+            int index = sampleAt(time);
+            if (index < 0) return null;
+            if (index + 1 < times.length) {
+                long gap = times[index + 1] - times[index];
+                if (gap > 0 && gap <= MAX_INTERPOLATION_GAP_MS) {
+                    double t = (double) (time - times[index]) / gap;
+                    return new double[] {
+                        xs[index] + (xs[index + 1] - xs[index]) * t,
+                        ys[index] + (ys[index + 1] - ys[index]) * t
+                    };
+                }
+            }
+            return new double[] {xs[index], ys[index]};
+        }
+
+        public boolean isPressedAt(long time) {
+            int index = sampleAt(time);
+            return index >= 0 && buttons[index] != 0;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.quickrewind;
+
+/**
+ * Chooses encode settings so a GIF save finishes within a wall-clock budget.
+ * Throughput is measured on sample frames before the first frame is written; scale is
+ * fixed at that point (it sets the GIF canvas), while dithering and frame decimation
+ * keep being adjusted as the real per-frame cost comes in.
+ */
+public class DeadlinePlanner {
+    private static final double SAFETY_FACTOR = 0.85; // Leave headroom for file finalization
+    private static final int MAX_FRAME_STEP = 8;
+    private static final double SMOOTHING = 0.3;
+
+    // Ordered from best quality to cheapest
+    private static final EncodeSettings[] LADDER = {
+        new EncodeSettings(1.0, 1, true, true),
+        new EncodeSettings(1.0, 1, false, true),
+        new EncodeSettings(1.0, 1, false, false),
+        new EncodeSettings(0.75, 1, false, false),
+        new EncodeSettings(0.5, 1, false, false),
+        new EncodeSettings(0.5, 2, false, false),
+        new EncodeSettings(0.5, 3, false, false),
+        new EncodeSettings(0.5, 4, false, false),
+        new EncodeSettings(0.5, 6, false, false),
+        new EncodeSettings(0.5, MAX_FRAME_STEP, false, false),
+    };
+
+    private final long deadlineNanos;
+    private double ditherNsPerPixel;
+    private double plainNsPerPixel;
+
+    public DeadlinePlanner(long startNanos, long budgetMs) {
+        this.deadlineNanos = startNanos + (long) (budgetMs * 1_000_000L * SAFETY_FACTOR);
+    }
+
+    public void calibrate(double ditherNsPerPixel, double plainNsPerPixel) {
+        this.ditherNsPerPixel = ditherNsPerPixel;
+        this.plainNsPerPixel = Math.min(plainNsPerPixel, ditherNsPerPixel);
+    }
+
+    public EncodeSettings plan(int frameCount, long canvasPixels) {
+        long remaining = deadlineNanos - System.nanoTime();
+        for (EncodeSettings settings : LADDER) {
+            long scaledPixels = (long) (canvasPixels * settings.getScale() * settings.getScale());
+            if (predictNanos(settings, frameCount, scaledPixels) <= remaining) {
+                return settings;
+            }
+        }
+        return LADDER[LADDER.length - 1];
+    }
+
+    /**
+     * Called after each written frame; returns the settings for the following frames.
+     * Only dithering and frame step change here, so the canvas and palette stay valid.
+     */
+    public EncodeSettings adjust(EncodeSettings current, int framesRemaining, long framePixels, long frameNanos) {
+        double observed = (double) frameNanos / Math.max(1, framePixels);
+        if (current.isDither()) {
+            ditherNsPerPixel = ditherNsPerPixel * (1 - SMOOTHING) + observed * SMOOTHING;
+        } else {
+            plainNsPerPixel = plainNsPerPixel * (1 - SMOOTHING) + observed * SMOOTHING;
+        }
+
+        long remaining = deadlineNanos - System.nanoTime();
+        if (predictNanos(current, framesRemaining, framePixels) <= remaining) {
+            return current;
+        }
+
+        if (current.isDither()) {
+            return current.withDither(false);
+        }
+        if (current.getFrameStep() < MAX_FRAME_STEP) {
+            return current.withFrameStep(current.getFrameStep() + 1);
+        }
+        return current;
+    }
+
+    private double predictNanos(EncodeSettings settings, int frameCount, long framePixels) {
+        int framesToWrite = (frameCount + settings.getFrameStep() - 1) / settings.getFrameStep();
+        double nsPerPixel = settings.isDither() ? ditherNsPerPixel : plainNsPerPixel;
+        return framesToWrite * (double) framePixels * nsPerPixel;
+    }
+}
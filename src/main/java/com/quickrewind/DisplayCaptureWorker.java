@@ -0,0 +1,287 @@
+package com.quickrewind;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Captures one display (or one capture region) into its own buffer on its own thread.
+ * Frames identical to the previous grab are not stored, and the grab rate backs off
+ * while the screen stays unchanged or nobody is at the keyboard (see {@link InputActivity}),
+ * so idle displays cost almost nothing. {@link CaptureWatchdog} watches the grab timing and
+ * replaces the frame source of a worker that hangs or keeps failing; the buffer is kept.
+ */
+public class DisplayCaptureWorker {
+    private static final long MAX_IDLE_INTERVAL_MS = 2000; // Slowest polling rate for an unchanged display
+    private static final long AWAY_INTERVAL_MS = 5000; // The same once nobody has touched keyboard or mouse for a while
+
+    private final int displayIndex;
+    private final String name;
+    private volatile FrameSource source;
+    private final CaptureRegion region;
+    private final FrameBuffer frameBuffer;
+    private final InputActivity activity;
+    private volatile long frameInterval;
+    private volatile double scale;
+    private final AtomicBoolean running;
+    private volatile long currentInterval;
+    private long lastFingerprint;
+    private boolean hasFingerprint;
+    private Thread captureThread;
+    private volatile int generation; // Bumped by restart, an abandoned capture thread exits when it sees it
+    private volatile long heartbeat; // Start of the current loop pass
+    private volatile long grabStarted; // Start of the grab in progress, 0 between grabs
+    private volatile long lastSuccess;
+    private volatile double averageGrabMs;
+    private volatile int consecutiveFailures;
+
+    public DisplayCaptureWorker(int displayIndex, String name, FrameSource source, CaptureRegion region,
+                                int bufferSeconds, int framesPerSecond, InputActivity activity) {
+        this.displayIndex = displayIndex;
+        this.name = name;
+        this.source = source;
+        this.region = region;
+        this.frameBuffer = new FrameBuffer(bufferSeconds * framesPerSecond);
+        this.activity = activity;
+        this.frameInterval = 1000 / framesPerSecond;
+        this.currentInterval = frameInterval;
+        this.scale = region.getScale();
+        this.running = new AtomicBoolean(false);
+    }
+
+    public void start() {
+        if (running.get()) return;
+
+        running.set(true);
+        startThread();
+    }
+
+    private synchronized void startThread() {
+        int threadGeneration = generation;
+        heartbeat = System.currentTimeMillis();
+        captureThread = new Thread(() -> captureLoop(threadGeneration), "capture-" + name);
+        captureThread.setDaemon(true);
+        captureThread.setPriority(Thread.MIN_PRIORITY); // Run at lowest priority to reduce system impact
+        captureThread.start();
+    }
+
+    /**
+     * Continues capture into the same buffer on a new thread with a new source. A grab hung in
+     * native code cannot be interrupted, so the old thread is abandoned: whenever it returns it
+     * sees the new generation and exits without touching the buffer.
+     */
+    public synchronized void restart(FrameSource newSource) {
+        if (!running.get()) return;
+        generation++;
+        captureThread.interrupt();
+        source = newSource;
+        grabStarted = 0;
+        averageGrabMs = 0;
+        consecutiveFailures = 0;
+        startThread();
+    }
+
+    public void stop() {
+        running.set(false);
+        if (captureThread != null) {
+            captureThread.interrupt();
+        }
+    }
+
+    private void captureLoop(int threadGeneration) {
+        while (running.get() && generation == threadGeneration) {
+            heartbeat = System.currentTimeMillis();
+            try {
+                if (activity.isPaused()) {
+                    // Locked: nothing worth keeping is on screen, so grab again on the next input
+                    activity.awaitInput(MAX_IDLE_INTERVAL_MS);
+                    continue;
+                }
+                long startTime = System.currentTimeMillis();
+
+                Rectangle bounds = region.getBounds();
+                grabStarted = startTime;
+                BufferedImage screenshot;
+                try {
+                    screenshot = source.capture(bounds);
+                } finally {
+                    if (generation == threadGeneration) grabStarted = 0;
+                }
+                if (generation != threadGeneration) break; // Replaced by restart while this grab hung
+                long grabMs = System.currentTimeMillis() - startTime;
+                averageGrabMs = averageGrabMs == 0 ? grabMs : averageGrabMs * 0.8 + grabMs * 0.2;
+                lastSuccess = startTime + grabMs;
+                consecutiveFailures = 0;
+                Metrics.add("capture.grabs", 1);
+
+                long activeInterval = activity.captureInterval(frameInterval);
+                long fingerprint = fingerprint(screenshot) * 31 + bounds.hashCode();
+                if (hasFingerprint && fingerprint == lastFingerprint) {
+                    // Nothing changed - keep the previous frame and poll less often, rarely while nobody is around.
+                    // A change brings back the active rate, so a video or log watched without input is kept.
+                    long slowest = activity.isAway() ? AWAY_INTERVAL_MS : MAX_IDLE_INTERVAL_MS;
+                    currentInterval = Math.max(activeInterval, Math.min(currentInterval * 2, slowest));
+                } else {
+                    lastFingerprint = fingerprint;
+                    hasFingerprint = true;
+                    currentInterval = activeInterval;
+                    CapturedFrame frame = new CapturedFrame(scale(screenshot, scale), startTime, bounds);
+                    synchronized (this) {
+                        // The buffer takes a single writer, so a restart must not overlap this add
+                        if (generation != threadGeneration) break;
+                        frameBuffer.add(frame);
+                    }
+                    Metrics.add("capture.frames", 1);
+                    StartupProfiler.firstFrame();
+                }
+
+                // Sleep to maintain frame rate; input after a quiet spell cuts a longer sleep short,
+                // but grabs never come faster than the configured rate
+                long elapsed = System.currentTimeMillis() - startTime;
+                long sleepTime = frameInterval - elapsed;
+                if (sleepTime > 0) {
+                    Thread.sleep(sleepTime);
+                }
+                long extraSleep = currentInterval - Math.max(elapsed, frameInterval);
+                if (extraSleep > 0 && activity.awaitInput(extraSleep)) {
+                    currentInterval = frameInterval;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                consecutiveFailures++;
+                System.err.println("Error capturing " + name + ": " + e.getMessage());
+                try {
+                    Thread.sleep(frameInterval); // A source that keeps failing must not spin
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } catch (OutOfMemoryError e) {
+                // A grab that does not fit is skipped; the MemoryGovernor lowers the load meanwhile
+                Metrics.add("capture.outOfMemory", 1);
+                System.err.println("Out of memory capturing " + name + ", skipping frame");
+                try {
+                    Thread.sleep(frameInterval);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private static long fingerprint(BufferedImage image) {
+        // Hash every row of the raw grab so unchanged screens skip scaling and storage entirely;
+        // a thin change (an underline, a focus ring edge) may touch a single row
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        if (image.getRaster().getDataBuffer() instanceof DataBufferInt) {
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            return PixelKernels.fingerprint(pixels, width, height, 1);
+        }
+
+        long hash = 1125899906842597L;
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                hash = 31 * hash + row[x];
+            }
+        }
+        return hash;
+    }
+
+    static BufferedImage scale(BufferedImage screenshot, double scale) {
+        if (scale >= 0.999) {
+            return screenshot;
+        }
+
+        int scaledWidth = Math.max(1, (int)(screenshot.getWidth() * scale));
+        int scaledHeight = Math.max(1, (int)(screenshot.getHeight() * scale));
+        BufferedImage scaledScreenshot = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_RGB);
+        
+        // Robot grabs are packed int RGB, which the pixel kernels resample directly
+        int[] source = ColorQuantizer.packedPixels(screenshot);
+        if (source != null) {
+            int[] target = ((DataBufferInt) scaledScreenshot.getRaster().getDataBuffer()).getData();
+            PixelKernels.scaleBilinear(source, screenshot.getWidth(), screenshot.getHeight(),
+                    target, scaledWidth, scaledHeight);
+            return scaledScreenshot;
+        }
+        
+        Graphics2D g2d = scaledScreenshot.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
+        g2d.drawImage(screenshot, 0, 0, scaledWidth, scaledHeight, null);
+        g2d.dispose();
+
+        return scaledScreenshot;
+    }
+
+    /**
+     * Re-tunes a running worker. The buffer keeps its newest frames that still fit, and new
+     * settings apply from the next grab on; earlier frames keep the scale they were captured at.
+     */
+    public void reconfigure(int bufferSeconds, int framesPerSecond, double newScale) {
+        frameBuffer.setCapacity(bufferSeconds * framesPerSecond);
+        frameInterval = 1000 / framesPerSecond;
+        currentInterval = Math.min(currentInterval, frameInterval);
+        scale = newScale;
+    }
+
+    // Safe to call from any thread, never blocks the capture loop
+    public FrameBuffer.Snapshot snapshot() {
+        return frameBuffer.snapshot();
+    }
+
+    public int getDisplayIndex() {
+        return displayIndex;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Rectangle getBounds() {
+        return region.getBounds();
+    }
+
+    public long getCurrentInterval() {
+        return currentInterval;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    // Grab timing for the CaptureWatchdog, all in System.currentTimeMillis time
+
+    public long getHeartbeat() {
+        return heartbeat;
+    }
+
+    public long getGrabStarted() {
+        return grabStarted;
+    }
+
+    public long getLastSuccess() {
+        return lastSuccess;
+    }
+
+    public double getAverageGrabMs() {
+        return averageGrabMs;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public long getFrameInterval() {
+        return frameInterval;
+    }
+}
@@ -0,0 +1,264 @@
+package com.quickrewind;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Maps packed RGB pixels onto a palette, optionally dithered.
+ * Ordered dithering (Bayer, blue noise) depends only on a pixel's color and position, so an
+ * unchanged region produces identical indices in every frame: delta frames stay small and
+ * static areas do not flicker. Floyd-Steinberg looks smoother on gradients but its noise
+ * moves whenever anything above or left of a pixel changes.
+ */
+public class Ditherer {
+    public static final String MODE_NONE = "none";
+    public static final String MODE_BAYER = "bayer";
+    public static final String MODE_BLUE_NOISE = "bluenoise";
+    public static final String MODE_FLOYD_STEINBERG = "floyd-steinberg";
+    public static final String DEFAULT_MODE = MODE_BAYER;
+
+    private static final int MAX_OFFSET = 128;
+    private static final int STRIP_HEIGHT = 64; // Rows per Floyd-Steinberg strip; error does not cross strips
+
+    // Clamps channel + offset to 0..255, indexed by value + MAX_OFFSET
+    private static final int[] CLAMP = new int[256 + 2 * MAX_OFFSET];
+
+    static {
+        for (int i = 0; i < CLAMP.length; i++) {
+            CLAMP[i] = Math.max(0, Math.min(255, i - MAX_OFFSET));
+        }
+    }
+
+    public static String normalizeMode(String mode) {
+        if (MODE_NONE.equals(mode) || MODE_BAYER.equals(mode)
+                || MODE_BLUE_NOISE.equals(mode) || MODE_FLOYD_STEINBERG.equals(mode)) {
+            return mode;
+        }
+        return DEFAULT_MODE;
+    }
+
+    public static void toIndices(int[] rgb, int width, int height, Palette palette, String mode, byte[] indices) {
+        switch (normalizeMode(mode)) {
+            case MODE_NONE:
+                PixelKernels.mapToIndices(rgb, palette.getLookupTable(), indices, indices.length);
+                break;
+            case MODE_BAYER:
+                mapOrdered(rgb, width, height, palette, BayerHolder.MATRIX, 8, indices);
+                break;
+            case MODE_BLUE_NOISE:
+                mapOrdered(rgb, width, height, palette, BlueNoiseHolder.MATRIX, BlueNoiseHolder.SIZE, indices);
+                break;
+            default:
+                mapFloydSteinberg(rgb, width, height, palette, indices);
+        }
+    }
+
+    /**
+     * Adds a position-dependent threshold to each channel before the palette lookup.
+     * The matrix holds ranks 0..size*size-1; the spread follows the palette's average color spacing.
+     */
+    private static void mapOrdered(int[] rgb, int width, int height, Palette palette,
+                                   int[] matrix, int size, byte[] indices) {
+        byte[] lut = palette.getLookupTable();
+        int spread = spread(palette);
+        int cells = size * size;
+        int[] offsets = new int[cells];
+        for (int i = 0; i < cells; i++) {
+            offsets[i] = MAX_OFFSET + (int) (((matrix[i] + 0.5) / cells - 0.5) * spread);
+        }
+
+        int mask = size - 1;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int matrixRow = (y & mask) * size;
+            for (int x = 0; x < width; x++) {
+                int p = rgb[row + x];
+                int o = offsets[matrixRow + (x & mask)];
+                int r = CLAMP[((p >> 16) & 0xFF) + o];
+                int g = CLAMP[((p >> 8) & 0xFF) + o];
+                int b = CLAMP[(p & 0xFF) + o];
+                indices[row + x] = lut[((r << 7) & 0x7C00) | ((g << 2) & 0x3E0) | (b >> 3)];
+            }
+        }
+    }
+
+    // Strips are diffused independently and in parallel
+    private static void mapFloydSteinberg(int[] rgb, int width, int height, Palette palette, byte[] indices) {
+        byte[] lut = palette.getLookupTable();
+        int[] colors = palette.getRGBs();
+        int strips = (height + STRIP_HEIGHT - 1) / STRIP_HEIGHT;
+
+        ExportPipeline.parallel(() -> IntStream.range(0, strips).parallel()
+                .forEach(strip -> diffuseStrip(rgb, width, height, lut, colors, indices, strip)));
+    }
+
+    private static void diffuseStrip(int[] rgb, int width, int height, byte[] lut, int[] colors,
+                                     byte[] indices, int strip) {
+        int top = strip * STRIP_HEIGHT;
+        int bottom = Math.min(height, top + STRIP_HEIGHT);
+
+        // Error of the current and the next row, 3 channels per pixel, with a guard pixel on both sides
+        int[] current = new int[(width + 2) * 3];
+        int[] next = new int[(width + 2) * 3];
+
+        for (int y = top; y < bottom; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int p = rgb[row + x];
+                int e = (x + 1) * 3;
+                int r = clamp(((p >> 16) & 0xFF) + (current[e] >> 4));
+                int g = clamp(((p >> 8) & 0xFF) + (current[e + 1] >> 4));
+                int b = clamp((p & 0xFF) + (current[e + 2] >> 4));
+
+                int index = lut[((r << 7) & 0x7C00) | ((g << 2) & 0x3E0) | (b >> 3)] & 0xFF;
+                indices[row + x] = (byte) index;
+
+                int c = colors[index];
+                int er = r - ((c >> 16) & 0xFF);
+                int eg = g - ((c >> 8) & 0xFF);
+                int eb = b - (c & 0xFF);
+
+                // 7/16 right, 3/16 below left, 5/16 below, 1/16 below right (kept in sixteenths)
+                current[e + 3] += er * 7;
+                current[e + 4] += eg * 7;
+                current[e + 5] += eb * 7;
+                next[e - 3] += er * 3;
+                next[e - 2] += eg * 3;
+                next[e - 1] += eb * 3;
+                next[e] += er * 5;
+                next[e + 1] += eg * 5;
+                next[e + 2] += eb * 5;
+                next[e + 3] += er;
+                next[e + 4] += eg;
+                next[e + 5] += eb;
+            }
+
+            int[] done = current;
+            current = next;
+            next = done;
+            Arrays.fill(next, 0);
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : (value > 255 ? 255 : value);
+    }
+
+    private static int spread(Palette palette) {
+        // A fraction of the average per-channel palette spacing; adaptive palettes are denser
+        // where the image needs it, so a full spacing looks noisier than no dithering at all
+        return (int) Math.min(2 * MAX_OFFSET - 1, 64 / Math.cbrt(Math.max(8, palette.size())));
+    }
+
+    private static final class BayerHolder {
+        static final int[] MATRIX = bayer(8);
+
+        private static int[] bayer(int size) {
+            int[] matrix = {0};
+            for (int n = 1; n < size; n *= 2) {
+                int[] larger = new int[n * 2 * n * 2];
+                for (int y = 0; y < n; y++) {
+                    for (int x = 0; x < n; x++) {
+                        int v = matrix[y * n + x] * 4;
+                        larger[y * 2 * n + x] = v;
+                        larger[y * 2 * n + x + n] = v + 2;
+                        larger[(y + n) * 2 * n + x] = v + 3;
+                        larger[(y + n) * 2 * n + x + n] = v + 1;
+                    }
+                }
+                matrix = larger;
+            }
+            return matrix;
+        }
+    }
+
+    /**
+     * 32x32 blue-noise threshold matrix built once with the void-and-cluster method
+     * (fixed seed, so every run and every frame uses the same pattern).
+     */
+    private static final class BlueNoiseHolder {
+        static final int SIZE = 32;
+        static final int[] MATRIX = voidAndCluster(SIZE, 1.5, 42);
+
+        private static int[] voidAndCluster(int size, double sigma, long seed) {
+            int cells = size * size;
+            double[] kernel = new double[cells];
+            for (int dy = 0; dy < size; dy++) {
+                for (int dx = 0; dx < size; dx++) {
+                    int wx = Math.min(dx, size - dx);
+                    int wy = Math.min(dy, size - dy);
+                    kernel[dy * size + dx] = Math.exp(-(wx * wx + wy * wy) / (2 * sigma * sigma));
+                }
+            }
+
+            boolean[] points = new boolean[cells];
+            double[] energy = new double[cells];
+            Random random = new Random(seed);
+            int initial = cells / 10;
+            for (int placed = 0; placed < initial; ) {
+                int i = random.nextInt(cells);
+                if (!points[i]) {
+                    points[i] = true;
+                    splat(energy, kernel, size, i, 1);
+                    placed++;
+                }
+            }
+
+            // Spread the initial points out: move the tightest cluster into the largest void until stable
+            for (int iteration = 0; iteration < cells; iteration++) {
+                int cluster = extreme(energy, points, true);
+                points[cluster] = false;
+                splat(energy, kernel, size, cluster, -1);
+                int hole = extreme(energy, points, false);
+                points[hole] = true;
+                splat(energy, kernel, size, hole, 1);
+                if (hole == cluster) break;
+            }
+
+            int[] rank = new int[cells];
+            boolean[] pattern = points.clone();
+            double[] patternEnergy = energy.clone();
+
+            // Initial points are ranked by removing the tightest cluster first
+            for (int r = initial - 1; r >= 0; r--) {
+                int cluster = extreme(patternEnergy, pattern, true);
+                pattern[cluster] = false;
+                splat(patternEnergy, kernel, size, cluster, -1);
+                rank[cluster] = r;
+            }
+
+            // The remaining cells are ranked by filling the largest void
+            for (int r = initial; r < cells; r++) {
+                int hole = extreme(energy, points, false);
+                points[hole] = true;
+                splat(energy, kernel, size, hole, 1);
+                rank[hole] = r;
+            }
+            return rank;
+        }
+
+        private static void splat(double[] energy, double[] kernel, int size, int index, int sign) {
+            int px = index % size;
+            int py = index / size;
+            for (int y = 0; y < size; y++) {
+                int dy = (y - py + size) % size;
+                for (int x = 0; x < size; x++) {
+                    energy[y * size + x] += sign * kernel[dy * size + (x - px + size) % size];
+                }
+            }
+        }
+
+        // Highest energy among set points, or lowest energy among empty cells
+        private static int extreme(double[] energy, boolean[] points, boolean cluster) {
+            int best = -1;
+            for (int i = 0; i < energy.length; i++) {
+                if (points[i] != cluster) continue;
+                if (best < 0 || (cluster ? energy[i] > energy[best] : energy[i] < energy[best])) {
+                    best = i;
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.quickrewind;
+
+/**
+ * Receives progress from a running encode and lets the caller cancel it.
+ * Cancellation is checked between frames and surfaces as a CancellationException.
+ */
+public interface EncodeProgress {
+    EncodeProgress NONE = new EncodeProgress() {};
+
+    default void onProgress(int framesWritten, int totalFrames) {
+    }
+
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,70 @@
+package com.quickrewind;
+
+/**
+ * Quality knobs for one GIF encode. Lower settings trade fidelity for encode time and size.
+ */
+public class EncodeSettings {
+    private final double scale;
+    private final int frameStep;
+    private final boolean dither;
+    private final boolean adaptivePalette;
+    private final int paletteColors;
+    private final boolean deltaFrames;
+
+    public EncodeSettings(double scale, int frameStep, boolean dither, boolean adaptivePalette) {
+        this(scale, frameStep, dither, adaptivePalette, 255, true);
+    }
+
+    public EncodeSettings(double scale, int frameStep, boolean dither, boolean adaptivePalette,
+                          int paletteColors, boolean deltaFrames) {
+        this.scale = scale;
+        this.frameStep = Math.max(1, frameStep);
+        this.dither = dither;
+        this.adaptivePalette = adaptivePalette;
+        this.paletteColors = Math.max(2, Math.min(255, paletteColors)); // One slot stays free for transparency
+        this.deltaFrames = deltaFrames;
+    }
+
+    public static EncodeSettings full() {
+        return new EncodeSettings(1.0, 1, true, true);
+    }
+
+    public double getScale() {
+        return scale;
+    }
+
+    public int getFrameStep() {
+        return frameStep;
+    }
+
+    public boolean isDither() {
+        return dither;
+    }
+
+    public boolean isAdaptivePalette() {
+        return adaptivePalette;
+    }
+
+    public int getPaletteColors() {
+        return paletteColors;
+    }
+
+    public boolean isDeltaFrames() {
+        return deltaFrames;
+    }
+
+    public EncodeSettings withDither(boolean newDither) {
+        return new EncodeSettings(scale, frameStep, newDither, adaptivePalette, paletteColors, deltaFrames);
+    }
+
+    public EncodeSettings withFrameStep(int newFrameStep) {
+        return new EncodeSettings(scale, newFrameStep, dither, adaptivePalette, paletteColors, deltaFrames);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("scale=%.2f step=%d dither=%s palette=%s/%d delta=%s",
+                scale, frameStep, dither ? "on" : "off", adaptivePalette ? "adaptive" : "fixed",
+                paletteColors, deltaFrames ? "on" : "off");
+    }
+}
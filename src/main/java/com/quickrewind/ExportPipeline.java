@@ -0,0 +1,178 @@
+package com.quickrewind;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Threads for exporting captures. CPU-bound encoding runs on a small bounded pool below normal
+ * priority, so several exports at once queue up instead of competing with the capture threads.
+ * Parallel streams inside an export run on a fork-join pool with the same bound and priority,
+ * never on the common pool.
+ * Blocking output work (file writes, renames, clipboard) runs on virtual threads on JDK 21+,
+ * and on a few platform threads on older JDKs.
+ */
+public final class ExportPipeline {
+    private static final int COMPUTE_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int PLATFORM_IO_THREADS = 4;
+
+    private static final ExecutorService COMPUTE = newPool("export-compute", COMPUTE_THREADS, Thread.NORM_PRIORITY - 1);
+    private static final ExecutorService IO = createIoExecutor();
+    private static final ForkJoinPool FORK_JOIN = newForkJoinPool("export-fork", COMPUTE_THREADS, Thread.NORM_PRIORITY - 1);
+
+    private ExportPipeline() {
+    }
+
+    public interface IoTask<T> {
+        T run() throws IOException;
+    }
+
+    // Executor for encoding jobs
+    public static Executor computeExecutor() {
+        return COMPUTE;
+    }
+
+    // Executor for blocking output work
+    public static Executor ioExecutor() {
+        return IO;
+    }
+
+    // Executor for the parallel parts of an encoding job; never wait on it from inside it
+    public static Executor parallelExecutor() {
+        return FORK_JOIN;
+    }
+
+    // Threads of the compute pool, and of the parallel one
+    public static int parallelism() {
+        return COMPUTE_THREADS;
+    }
+
+    // Runs work that uses parallel streams in the export fork-join pool, which the streams then split into
+    public static <T> T parallel(Supplier<T> work) {
+        if (ForkJoinTask.getPool() == FORK_JOIN) {
+            return work.get(); // Nested parallel work is already in the pool
+        }
+        return FORK_JOIN.submit(work::get).join();
+    }
+
+    public static void parallel(Runnable work) {
+        parallel(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    // Runs blocking output work off the calling thread
+    public static <T> CompletableFuture<T> io(IoTask<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Metrics.add("export.io.tasks", 1);
+        IO.execute(() -> {
+            try {
+                result.complete(task.run());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    // Waits for I/O started with io(), rethrowing its IOException
+    public static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    // Where an output is written before publish() moves it into place
+    public static File partialFile(File target) {
+        return new File(target.getParentFile(), target.getName() + ".part");
+    }
+
+    // Moves a finished file or directory to its final name in one step, so no half-written output is ever visible
+    public static void publish(File partial, File target) throws IOException {
+        try {
+            Files.move(partial.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(partial.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Deletes a partial output in the background
+    public static void discard(File partial) {
+        io(() -> {
+            File[] children = partial.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    Files.deleteIfExists(child.toPath());
+                }
+            }
+            return Files.deleteIfExists(partial.toPath());
+        });
+    }
+
+    public static boolean usesVirtualThreads() {
+        return !(IO instanceof ThreadPoolExecutor);
+    }
+
+    private static ExecutorService createIoExecutor() {
+        // Looked up reflectively because the code is compiled for Java 11
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            Metrics.set("export.io.virtual", 1);
+            return executor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not available, or still a preview feature that was not enabled
+            ThreadPoolExecutor executor = newPool("export-io", PLATFORM_IO_THREADS, Thread.NORM_PRIORITY);
+            Metrics.set("export.io.virtual", 0);
+            return executor;
+        }
+    }
+
+    private static ForkJoinPool newForkJoinPool(String name, int threads, int priority) {
+        AtomicInteger count = new AtomicInteger();
+        return new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName(name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        }, null, false);
+    }
+
+    private static ThreadPoolExecutor newPool(String name, int threads, int priority) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), task -> {
+                    Thread thread = new Thread(task, name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(priority);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true); // No idle threads between exports
+        return executor;
+    }
+}
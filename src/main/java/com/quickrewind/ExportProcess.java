@@ -0,0 +1,370 @@
+package com.quickrewind;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs exports in {@link ExportWorker} helper JVMs instead of this one, so encoder allocations
+ * never cause GC pauses in capture and a crashed or stuck export cannot take recording down.
+ * Frames are handed over on demand through a {@link SharedFrames} file in the temp folder that
+ * holds only the few frames in flight and is deleted after the job; the time to launch a helper
+ * counts against a GIF's time budget. Helpers are started on first use, reused by later exports and exit on
+ * their own after a minute without work. The methods block like their in-process counterparts,
+ * report progress and honor cancellation. A helper that crashes, or goes quiet for a minute and
+ * is killed, surfaces as a {@link HelperFailedException}, after which the caller encodes in
+ * process; one that does not stop when cancelled surfaces as a CancellationException.
+ */
+public class ExportProcess {
+    private static final long START_TIMEOUT_MS = 30_000;
+    private static final long STALL_TIMEOUT_MS = 60_000; // No frame requested or written for this long
+    private static final long CANCEL_GRACE_MS = 5000;
+    private static final long POLL_MS = 200;
+
+    private static final Deque<Helper> idleHelpers = new ArrayDeque<>();
+
+    private ExportProcess() {
+    }
+
+    /**
+     * Same as {@link SimpleGifEncoder#encodeGif}, uploading to the given tus endpoint (empty for
+     * none) from the helper. Returns the upload location, completed with null without upload and
+     * exceptionally if the upload failed while the GIF itself was saved.
+     */
+    public static CompletableFuture<URI> encodeGif(FrameStream frames, File outputFile, long budgetMs, long maxBytes,
+                                                   String ditherMode, int lossyError, EncodeProgress progress,
+                                                   String uploadUrl) throws IOException {
+        Map<String, Object> job = job(Config.FORMAT_GIF, outputFile);
+        job.put("budgetMs", budgetMs);
+        job.put("maxBytes", maxBytes);
+        job.put("ditherMode", ditherMode);
+        job.put("lossyError", lossyError);
+        job.put("uploadUrl", uploadUrl);
+        Map<String, Object> done = run(job, frames, progress);
+
+        Object location = done.get("location");
+        Object uploadError = done.get("uploadError");
+        if (uploadError != null) {
+            CompletableFuture<URI> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IOException((String) uploadError));
+            return failed;
+        }
+        return CompletableFuture.completedFuture(location != null ? URI.create((String) location) : null);
+    }
+
+    // Same as MjpegAviEncoder.encodeAvi
+    public static void encodeAvi(FrameStream frames, File outputFile, float quality,
+                                 EncodeProgress progress) throws IOException {
+        Map<String, Object> job = job(Config.FORMAT_AVI, outputFile);
+        job.put("quality", quality);
+        run(job, frames, progress);
+    }
+
+    private static Map<String, Object> job(String format, File outputFile) {
+        Map<String, Object> job = new LinkedHashMap<>();
+        job.put("command", "encode");
+        job.put("format", format);
+        job.put("output", outputFile.getAbsolutePath());
+        return job;
+    }
+
+    private static Map<String, Object> run(Map<String, Object> job, FrameStream frames,
+                                           EncodeProgress progress) throws IOException {
+        if (frames.isEmpty()) {
+            throw new IllegalArgumentException("No frames to encode");
+        }
+        long start = System.nanoTime();
+        File shared = File.createTempFile("quickrewind-frames-", ".bin");
+        try (SharedFrames.Server server = new SharedFrames.Server(shared, frames)) {
+            job.put("frames", shared.getAbsolutePath());
+            long budgetMs = job.containsKey("budgetMs") ? ((Number) job.get("budgetMs")).longValue() : 0;
+            try {
+                // An idle helper may exit just as it gets the job; it never started it then, so a new one is tried
+                for (int attempt = 0; ; attempt++) {
+                    Helper helper = acquire();
+                    if (budgetMs > 0) {
+                        // The helper's clock starts with the job, so what it took to get here is charged up front
+                        job.put("budgetMs", Math.max(1, budgetMs - (System.nanoTime() - start) / 1_000_000));
+                    }
+                    try {
+                        Map<String, Object> done = helper.run(job, server, progress);
+                        release(helper);
+                        return done;
+                    } catch (NotStartedException e) {
+                        helper.destroy();
+                        if (attempt > 0) throw e;
+                    } catch (CancellationException e) {
+                        release(helper);
+                        throw e;
+                    } catch (IOException | RuntimeException e) {
+                        // A helper that died mid-export leaves its partial output behind, which has to be
+                        // gone before the caller encodes the same output here
+                        helper.destroy();
+                        helper.awaitExit();
+                        Files.deleteIfExists(ExportPipeline.partialFile(new File((String) job.get("output"))).toPath());
+                        throw e;
+                    }
+                }
+            } finally {
+                Metrics.set("export.helper.share.ms", server.getServeNanos() / 1_000_000);
+                Metrics.set("export.helper.share.bytes", server.getFileBytes());
+            }
+        } finally {
+            // Nothing maps the file, so it goes as soon as the helper has closed it
+            if (!shared.delete()) {
+                System.err.println("Could not delete " + shared);
+                shared.deleteOnExit();
+            }
+        }
+    }
+
+    private static Helper acquire() throws IOException {
+        synchronized (idleHelpers) {
+            while (!idleHelpers.isEmpty()) {
+                Helper helper = idleHelpers.pop();
+                if (helper.process.isAlive()) return helper;
+            }
+        }
+        return Helper.launch();
+    }
+
+    private static void release(Helper helper) {
+        if (helper.destroyed || !helper.process.isAlive()) return;
+        synchronized (idleHelpers) {
+            idleHelpers.push(helper);
+        }
+    }
+
+    /**
+     * The helper process crashed, did not start or stopped making progress, which says nothing
+     * about the export itself.
+     */
+    public static class HelperFailedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        HelperFailedException(String message) {
+            super(message);
+        }
+    }
+
+    private static class NotStartedException extends HelperFailedException {
+        private static final long serialVersionUID = 1L;
+
+        NotStartedException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Helper {
+        private static final Map<String, Object> EXITED = new LinkedHashMap<>();
+
+        final Process process;
+        final Writer commands;
+        final BlockingQueue<Map<String, Object>> events = new LinkedBlockingQueue<>();
+        volatile boolean destroyed;
+        private volatile long lastServed; // When a frame request was last answered
+        private int jobs;
+
+        private Helper(Process process) {
+            this.process = process;
+            this.commands = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            Thread reader = new Thread(this::readEvents, "export-helper-events-" + process.pid());
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        static Helper launch() throws IOException {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command())
+                    .redirectError(ProcessBuilder.Redirect.INHERIT) // Its log goes to ours
+                    .start();
+            Metrics.add("export.helper.launches", 1);
+            System.out.println("Started export helper process " + process.pid() + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+            return new Helper(process);
+        }
+
+        // Same Java, class path and kernel options as this process, without a display
+        private static List<String> command() {
+            String bin = System.getProperty("java.home") + File.separator + "bin" + File.separator;
+            File javaw = new File(bin + "javaw.exe"); // java.exe would open a console window on Windows
+            List<String> command = new ArrayList<>();
+            command.add(javaw.isFile() ? javaw.getPath() : bin + "java");
+            for (String argument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+                if (argument.startsWith("--add-modules") || argument.startsWith("-Dquickrewind.")) {
+                    command.add(argument);
+                }
+            }
+            command.add("-Djava.awt.headless=true");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(ExportWorker.class.getName());
+            return command;
+        }
+
+        private void readEvents() {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    try {
+                        events.add(SimpleJson.parseObject(line));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Export helper: " + line);
+                    }
+                }
+            } catch (IOException e) {
+                // Treated as an exit
+            }
+            events.add(EXITED);
+        }
+
+        Map<String, Object> run(Map<String, Object> job, SharedFrames.Server frames,
+                                EncodeProgress progress) throws IOException {
+            int number = ++jobs;
+            job.put("job", number);
+            try {
+                send(job);
+            } catch (IOException e) {
+                throw new NotStartedException("Export helper is gone: " + e.getMessage());
+            }
+
+            boolean started = false;
+            long sentAt = System.currentTimeMillis();
+            long lastEvent = sentAt;
+            long cancelledAt = 0;
+            while (true) {
+                Map<String, Object> event;
+                try {
+                    event = events.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while exporting", e);
+                }
+                long now = System.currentTimeMillis();
+                if (cancelledAt == 0 && progress.isCancelled()) {
+                    cancelledAt = now;
+                    send(command("cancel"));
+                } else if (cancelledAt != 0 && now - cancelledAt >= CANCEL_GRACE_MS) {
+                    // Stuck in a long step, a new helper is cheaper than waiting
+                    destroy();
+                    throw new CancellationException("Export cancelled");
+                }
+                if (event == null) {
+                    if (!started && now - sentAt >= START_TIMEOUT_MS) {
+                        throw new HelperFailedException("Export helper did not start the export within "
+                            + START_TIMEOUT_MS / 1000 + " seconds");
+                    }
+                    if (started && now - Math.max(lastEvent, lastServed) >= STALL_TIMEOUT_MS) {
+                        Metrics.add("export.helper.stalls", 1);
+                        throw new HelperFailedException("Export helper made no progress for "
+                            + STALL_TIMEOUT_MS / 1000 + " seconds");
+                    }
+                    continue;
+                }
+                lastEvent = now;
+
+                Object name = event.get("event");
+                if (event == EXITED) {
+                    if (!started) throw new NotStartedException("Export helper exited before starting the export");
+                    Metrics.add("export.helper.crashes", 1);
+                    throw new HelperFailedException("Export helper exited with code " + exitCode());
+                } else if ("started".equals(name)) {
+                    started = true;
+                } else if ("frame".equals(name)) {
+                    // A request left over from an earlier job must not write into this job's slots
+                    if (((Number) event.get("job")).intValue() == number) serve(frames, event, cancelledAt != 0);
+                } else if ("progress".equals(name)) {
+                    progress.onProgress(((Number) event.get("written")).intValue(), ((Number) event.get("total")).intValue());
+                } else if ("done".equals(name)) {
+                    return event;
+                } else if ("cancelled".equals(name)) {
+                    throw new CancellationException("Export cancelled");
+                } else if ("failed".equals(name)) {
+                    throw new IOException("Export helper failed: " + event.get("message"));
+                }
+            }
+        }
+
+        // On the I/O threads: the caller waiting in run() may hold the last compute thread
+        private void serve(SharedFrames.Server frames, Map<String, Object> request, boolean cancelled) {
+            int index = ((Number) request.get("index")).intValue();
+            int slot = ((Number) request.get("slot")).intValue();
+            ExportPipeline.ioExecutor().execute(() -> {
+                Map<String, Object> answer;
+                if (cancelled) {
+                    answer = new LinkedHashMap<>();
+                    answer.put("cancelled", true);
+                } else {
+                    try {
+                        answer = new LinkedHashMap<>(frames.serve(index, slot));
+                    } catch (IOException | RuntimeException e) {
+                        answer = new LinkedHashMap<>();
+                        answer.put("error", String.valueOf(e.getMessage()));
+                    }
+                }
+                answer.put("command", "frame");
+                answer.put("job", request.get("job"));
+                answer.put("slot", slot);
+                lastServed = System.currentTimeMillis();
+                try {
+                    send(answer);
+                } catch (IOException e) {
+                    // The helper is gone, which the event loop reports
+                }
+            });
+        }
+
+        private int exitCode() {
+            try {
+                return process.waitFor(1, TimeUnit.SECONDS) ? process.exitValue() : -1;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return -1;
+            }
+        }
+
+        private static Map<String, Object> command(String name) {
+            Map<String, Object> command = new LinkedHashMap<>();
+            command.put("command", name);
+            return command;
+        }
+
+        private synchronized void send(Map<String, Object> command) throws IOException {
+            commands.write(ExportWorker.line(command));
+            commands.write('\n');
+            commands.flush();
+        }
+
+        void awaitExit() {
+            try {
+                process.waitFor(CANCEL_GRACE_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void destroy() {
+            destroyed = true;
+            process.destroyForcibly();
+        }
+    }
+}
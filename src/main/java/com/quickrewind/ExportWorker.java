@@ -0,0 +1,225 @@
+package com.quickrewind;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Helper JVM that encodes exports for {@link ExportProcess}, so their allocations never pause the
+ * capture process. Commands arrive on stdin and events leave on stdout, one flat JSON object per
+ * line; everything the encoders print goes to stderr. One job runs at a time:
+ * <pre>
+ * {"command":"encode", "job":..., "frames":..., "output":..., "format":"gif"|"avi", ...}  -> started, frame|progress..., done|failed|cancelled
+ * {"command":"frame", "job":..., "slot":..., "offset":..., "width":..., "height":...}  answers a frame event, or with "cancelled"|"error"
+ * {"command":"cancel"}
+ * </pre>
+ * A frame event {"event":"frame", "job":..., "index":..., "slot":...} asks for a frame of the job's
+ * {@link SharedFrames} while the encoder waits; every slot has at most one request open, and
+ * requests of a finished job are dropped on both sides.
+ * The worker exits when stdin closes (its parent is gone) or after a minute without a job.
+ */
+public class ExportWorker {
+    private static final long IDLE_EXIT_MS = 60_000;
+    private static final int FRAME_SLOTS = ExportPipeline.parallelism() + 1; // Enough for every encoder thread and one more
+
+    private static final Object lock = new Object();
+    private static PrintStream events;
+    private static boolean busy;
+    private static long idleSince = System.currentTimeMillis();
+    private static volatile boolean cancelled;
+    private static volatile int jobNumber; // Set by the parent, tells frame requests of an earlier job apart
+    private static final Map<Long, CompletableFuture<Map<String, Object>>> frameAnswers = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        events = new PrintStream(new FileOutputStream(FileDescriptor.out), true, "UTF-8");
+        System.setOut(System.err); // Encoder logging must not end up in the event stream
+
+        Thread idleCheck = new Thread(ExportWorker::exitWhenIdle, "export-worker-idle");
+        idleCheck.setDaemon(true);
+        idleCheck.start();
+
+        BufferedReader commands = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = commands.readLine()) != null) {
+            if (line.isBlank()) continue;
+            Map<String, Object> command = SimpleJson.parseObject(line);
+            Object name = command.get("command");
+            if ("frame".equals(name)) {
+                CompletableFuture<Map<String, Object>> answer = frameAnswers.remove(
+                        frameKey(((Number) command.get("job")).intValue(), ((Number) command.get("slot")).intValue()));
+                if (answer != null) answer.complete(command);
+            } else if ("cancel".equals(name)) {
+                cancelled = true;
+            } else if ("encode".equals(name)) {
+                synchronized (lock) {
+                    if (busy) {
+                        send(event("failed", "message", "Export worker is busy"));
+                        continue;
+                    }
+                    busy = true;
+                    cancelled = false;
+                    jobNumber = ((Number) command.get("job")).intValue();
+                }
+                Thread job = new Thread(() -> runJob(command), "export-worker-job");
+                job.setPriority(Thread.NORM_PRIORITY - 1); // Same as in-process exports
+                job.start();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void exitWhenIdle() {
+        while (true) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            synchronized (lock) {
+                // Decided under the lock, so a job either starts before this or finds the process gone
+                if (!busy && System.currentTimeMillis() - idleSince >= IDLE_EXIT_MS) {
+                    System.exit(0);
+                }
+            }
+        }
+    }
+
+    private static void runJob(Map<String, Object> job) {
+        boolean exit = false;
+        Map<String, Object> done = event("done");
+        send(event("started"));
+        int number = jobNumber;
+        SharedFrames.Requests requests = (index, slot) -> requestFrame(number, index, slot);
+        try (SharedFrames frames = SharedFrames.open(new File((String) job.get("frames")), requests, FRAME_SLOTS)) {
+            File output = new File((String) job.get("output"));
+            EncodeProgress progress = new EncodeProgress() {
+                @Override
+                public void onProgress(int framesWritten, int totalFrames) {
+                    Map<String, Object> event = event("progress");
+                    event.put("written", framesWritten);
+                    event.put("total", totalFrames);
+                    send(event);
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return cancelled;
+                }
+            };
+
+            if (Config.FORMAT_AVI.equals(job.get("format"))) {
+                MjpegAviEncoder.encodeAvi(frames, output, ((Number) job.get("quality")).floatValue(), progress);
+            } else {
+                HttpUploader upload = startUpload((String) job.get("uploadUrl"), output.getName());
+                SimpleGifEncoder.encodeGif(frames, output, ((Number) job.get("budgetMs")).longValue(),
+                        ((Number) job.get("maxBytes")).longValue(), (String) job.get("ditherMode"),
+                        ((Number) job.get("lossyError")).intValue(), progress, upload);
+                if (upload != null) {
+                    // The upload is part of the job, so the link can point at it
+                    try {
+                        URI location = upload.finish().join();
+                        done.put("location", location.toString());
+                    } catch (RuntimeException e) {
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        done.put("uploadError", String.valueOf(cause.getMessage()));
+                    }
+                }
+            }
+        } catch (CancellationException e) {
+            done = event("cancelled");
+        } catch (Exception e) {
+            e.printStackTrace();
+            done = event("failed", "message", String.valueOf(e.getMessage()));
+        } catch (OutOfMemoryError e) {
+            // The heap is in an unknown state afterwards, the next job gets a fresh worker
+            done = event("failed", "message", "Out of memory in export worker");
+            exit = true;
+        } finally {
+            // An encoder thread the job left behind may still wait for a frame
+            for (Long key : frameAnswers.keySet()) {
+                CompletableFuture<Map<String, Object>> answer = frameAnswers.remove(key);
+                if (answer != null) answer.completeExceptionally(new CancellationException("Export finished"));
+            }
+            synchronized (lock) {
+                busy = false;
+                idleSince = System.currentTimeMillis();
+            }
+        }
+        // Sent once the frames file is closed, so the parent can delete it right away
+        send(done);
+        if (exit) {
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Object> requestFrame(int job, int index, int slot) throws IOException {
+        CompletableFuture<Map<String, Object>> answer = new CompletableFuture<>();
+        frameAnswers.put(frameKey(job, slot), answer);
+        if (job != jobNumber) {
+            frameAnswers.remove(frameKey(job, slot), answer);
+            throw new CancellationException("Export finished");
+        }
+        Map<String, Object> event = event("frame", "job", job);
+        event.put("index", index);
+        event.put("slot", slot);
+        send(event);
+        try {
+            return answer.get();
+        } catch (InterruptedException e) {
+            frameAnswers.remove(frameKey(job, slot), answer);
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for frame " + index, e);
+        } catch (ExecutionException e) {
+            throw new CancellationException(e.getCause().getMessage());
+        }
+    }
+
+    private static long frameKey(int job, int slot) {
+        return (long) job << 32 | slot;
+    }
+
+    private static HttpUploader startUpload(String url, String filename) {
+        if (url == null || url.isEmpty()) return null;
+        try {
+            return new HttpUploader(URI.create(url), filename);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid upload URL " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Map<String, Object> event(String name) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("event", name);
+        return event;
+    }
+
+    private static Map<String, Object> event(String name, String key, Object value) {
+        Map<String, Object> event = event(name);
+        event.put(key, value);
+        return event;
+    }
+
+    private static void send(Map<String, Object> event) {
+        synchronized (events) {
+            events.println(line(event));
+        }
+    }
+
+    // The writer pretty-prints; strings are escaped, so dropping its line breaks keeps one object per line
+    static String line(Map<String, ?> values) {
+        return SimpleJson.writeObject(values).replace('\n', ' ');
+    }
+}
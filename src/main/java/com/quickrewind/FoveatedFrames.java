@@ -0,0 +1,124 @@
+package com.quickrewind;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the patches of foveated capture, grabbed around the pointer at a high rate, into the
+ * frames of a display grabbed at the low rate. Every patch taken after a display frame becomes
+ * a frame of its own: the display frame with all patches since it drawn on top, in order.
+ * Merged frames are composited when an encoder reads them, so merging copies no pixels.
+ */
+public final class FoveatedFrames {
+    private static final int MAX_FRAMES = 300; // The GIF encoder samples longer sequences down
+
+    private FoveatedFrames() {
+    }
+
+    public static CapturedFrame[] merge(CapturedFrame[] frames, List<CapturedFrame> patches) {
+        if (frames.length == 0 || patches.isEmpty()) return frames;
+
+        // The patches shown over each display frame: captured after it, before the next, on this display
+        List<List<CapturedFrame>> layers = new ArrayList<>();
+        int added = 0;
+        int next = 0;
+        for (int i = 0; i < frames.length; i++) {
+            long start = frames[i].getTimestamp();
+            long end = i + 1 < frames.length ? frames[i + 1].getTimestamp() : Long.MAX_VALUE;
+            List<CapturedFrame> layer = new ArrayList<>();
+            while (next < patches.size() && patches.get(next).getTimestamp() < end) {
+                CapturedFrame patch = patches.get(next++);
+                if (patch.getTimestamp() > start && overlaps(frames[i], patch)) {
+                    layer.add(patch);
+                }
+            }
+            layers.add(layer);
+            added += layer.size();
+        }
+        if (added == 0) return frames;
+
+        // Over the limit only every few patches gets a frame; each still shows all patches before it
+        int step = (int) Math.ceil((double) added / Math.max(1, MAX_FRAMES - frames.length));
+        List<CapturedFrame> merged = new ArrayList<>(frames.length + added / step + 1);
+        for (int i = 0; i < frames.length; i++) {
+            merged.add(frames[i]);
+            List<CapturedFrame> layer = layers.get(i);
+            for (int count = step; count < layer.size() + step; count += step) {
+                // The last patch before the next display frame always gets shown
+                merged.add(new LayeredFrame(frames[i], layer.subList(0, Math.min(count, layer.size()))));
+            }
+        }
+        Metrics.add("export.foveaFrames", merged.size() - frames.length);
+        return merged.toArray(new CapturedFrame[0]);
+    }
+
+    private static boolean overlaps(CapturedFrame frame, CapturedFrame patch) {
+        Rectangle bounds = frame.getSourceBounds();
+        return bounds != null && patch.getSourceBounds() != null && bounds.intersects(patch.getSourceBounds());
+    }
+
+    /**
+     * A display frame with patches drawn over it, scaled from screen coordinates to the frame.
+     */
+    private static final class LayeredFrame extends CapturedFrame {
+        private final CapturedFrame base;
+        private final List<CapturedFrame> patches;
+
+        LayeredFrame(CapturedFrame base, List<CapturedFrame> patches) {
+            this(base, patches, patches.get(patches.size() - 1).getTimestamp());
+        }
+
+        private LayeredFrame(CapturedFrame base, List<CapturedFrame> patches, long timestamp) {
+            super(base.getWidth(), base.getHeight(), timestamp, base.getSourceBounds());
+            this.base = base;
+            this.patches = patches;
+        }
+
+        @Override
+        public BufferedImage getImage() {
+            BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
+            Rectangle bounds = getSourceBounds();
+            double scaleX = (double) getWidth() / bounds.width;
+            double scaleY = (double) getHeight() / bounds.height;
+            Graphics2D g = image.createGraphics();
+            g.drawImage(base.getImage(), 0, 0, null);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.clipRect(0, 0, getWidth(), getHeight());
+            for (int i = 0; i < patches.size(); i++) {
+                if (coveredLater(i)) continue;
+                Rectangle area = patches.get(i).getSourceBounds();
+                // Rounded the same way for every patch, so neighbouring patches meet without seams
+                int x = (int) Math.round((area.x - bounds.x) * scaleX);
+                int y = (int) Math.round((area.y - bounds.y) * scaleY);
+                int width = (int) Math.round((area.x + area.width - bounds.x) * scaleX) - x;
+                int height = (int) Math.round((area.y + area.height - bounds.y) * scaleY) - y;
+                BufferedImage pixels = patches.get(i).getImage();
+                if (pixels.getWidth() == width && pixels.getHeight() == height) {
+                    g.drawImage(pixels, x, y, null);
+                } else {
+                    g.drawImage(pixels, x, y, width, height, null);
+                }
+            }
+            g.dispose();
+            return image;
+        }
+
+        // A resting pointer grabs the same area over and over, only the newest of those is drawn
+        private boolean coveredLater(int index) {
+            Rectangle area = patches.get(index).getSourceBounds();
+            for (int later = index + 1; later < patches.size(); later++) {
+                if (patches.get(later).getSourceBounds().contains(area)) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public CapturedFrame withTimestamp(long newTimestamp) {
+            return new LayeredFrame(base, patches, newTimestamp);
+        }
+    }
+}
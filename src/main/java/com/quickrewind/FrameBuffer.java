@@ -0,0 +1,280 @@
+package com.quickrewind;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Single-writer ring buffer of captured frames addressed by a sequence number.
+ * {@link #snapshot()} pins the frames currently in the buffer in constant time and without
+ * locks, so it can run directly on the hotkey thread. Frames that the capture thread
+ * evicts while they are pinned are moved aside (by reference, no pixel copy) until the
+ * snapshot is released. The capacity can be changed at any time; the capture thread
+ * applies it before its next write, keeping the newest frames that fit. Capture timestamps are
+ * kept in a primitive index next to the ring, so a snapshot finds the frames of a time window by
+ * binary search without touching the frames outside it.
+ */
+public class FrameBuffer {
+    private volatile Ring ring;
+    private volatile int requestedCapacity;
+    private final AtomicLong resizeGeneration = new AtomicLong(); // Announced before the eviction check of a resize
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong writingSequence = new AtomicLong(-1); // Announced before the eviction check
+    private final AtomicLong pinnedFrom = new AtomicLong(Long.MAX_VALUE); // Lowest pinned sequence
+    private final Queue<Snapshot> snapshots = new ConcurrentLinkedQueue<>();
+    private final ConcurrentNavigableMap<Long, CapturedFrame> retained = new ConcurrentSkipListMap<>();
+
+    public FrameBuffer(int capacity) {
+        this.requestedCapacity = Math.max(1, capacity);
+        this.ring = new Ring(requestedCapacity, 0);
+    }
+
+    // Capture thread only
+    public void add(CapturedFrame frame) {
+        if (requestedCapacity != ring.capacity) {
+            resize(requestedCapacity);
+        }
+
+        Ring current = ring;
+        long sequence = nextSequence.get();
+        int index = (int) (sequence % current.capacity);
+        writingSequence.set(sequence);
+
+        // Keep an evicted frame alive if a snapshot still refers to it
+        Slot evicted = current.slots.get(index);
+        if (evicted != null && evicted.sequence >= pinnedFrom.get()) {
+            retained.put(evicted.sequence, evicted.frame);
+        }
+
+        current.index(index, sequence, frame.getTimestamp());
+        current.slots.set(index, new Slot(sequence, frame));
+        nextSequence.set(sequence + 1);
+    }
+
+    /**
+     * Changes how many frames the buffer holds. Safe to call from any thread; takes effect
+     * with the next frame written. Shrinking drops the oldest frames, growing keeps them all.
+     */
+    public void setCapacity(int capacity) {
+        requestedCapacity = Math.max(1, capacity);
+    }
+
+    // Capture thread only
+    private void resize(int capacity) {
+        Ring old = ring;
+        long end = nextSequence.get();
+        long generation = old.generation + 1;
+        resizeGeneration.set(generation);
+
+        Ring resized = new Ring(capacity, generation);
+        long floor = pinnedFrom.get();
+        for (long sequence = Math.max(0, end - old.capacity); sequence < end; sequence++) {
+            Slot slot = old.slots.get((int) (sequence % old.capacity));
+            if (slot == null || slot.sequence != sequence) continue;
+
+            if (sequence >= end - capacity) {
+                resized.index((int) (sequence % capacity), sequence, slot.frame.getTimestamp());
+                resized.slots.set((int) (sequence % capacity), slot);
+            } else if (sequence >= floor) {
+                retained.put(sequence, slot.frame);
+            }
+        }
+        ring = resized;
+    }
+
+    /**
+     * Pins every frame currently in the buffer. Never blocks the capture thread and is independent
+     * of the buffer size. The snapshot must be released once the frames have been read.
+     */
+    public Snapshot snapshot() {
+        Ring current = ring;
+        long end = nextSequence.get();
+        long pin = Math.max(0, end - current.capacity);
+        Snapshot snapshot = new Snapshot(this, pin);
+        // Registered under the monitor release() recomputes the pin with, so it can never raise it past this one
+        synchronized (snapshots) {
+            snapshots.add(snapshot);
+            pinnedFrom.accumulateAndGet(pin, Math::min);
+        }
+
+        // A resize that started before the pin was visible may drop frames without retaining them.
+        // Resizes are rare and short, so simply wait for it and take the range from the new ring.
+        while (resizeGeneration.get() != current.generation) {
+            Thread.onSpinWait();
+            current = ring;
+            end = nextSequence.get();
+        }
+
+        // A frame write that began before the pin was visible may already have evicted the oldest
+        // frame without retaining it. Every write announced after this read sees the pin.
+        long writing = writingSequence.get();
+        long start = Math.max(pin, Math.max(end - current.capacity, writing - current.capacity + 1));
+        snapshot.setRange(start, end);
+        return snapshot;
+    }
+
+    public int size() {
+        return (int) Math.min(ring.capacity, nextSequence.get());
+    }
+
+    public int getCapacity() {
+        return requestedCapacity;
+    }
+
+    private CapturedFrame frameAt(long sequence) {
+        Ring current = ring;
+        Slot slot = current.slots.get((int) (sequence % current.capacity));
+        if (slot != null && slot.sequence == sequence) {
+            return slot.frame;
+        }
+        return retained.get(sequence);
+    }
+
+    // Callers only ask for pinned sequences, so a frame that left the ring is in the retained map
+    private long timestampAt(long sequence) {
+        Ring current = ring;
+        int index = (int) (sequence % current.capacity);
+        long timestamp = current.timestampAt(index, sequence);
+        if (timestamp != Long.MIN_VALUE) return timestamp;
+        CapturedFrame frame = frameAt(sequence);
+        return frame != null ? frame.getTimestamp() : Long.MIN_VALUE;
+    }
+
+    private void release(Snapshot snapshot) {
+        synchronized (snapshots) {
+            if (!snapshots.remove(snapshot)) return;
+
+            pinnedFrom.set(lowestPinned());
+            retained.headMap(pinnedFrom.get()).clear();
+        }
+    }
+
+    private long lowestPinned() {
+        long lowest = Long.MAX_VALUE;
+        for (Snapshot active : snapshots) {
+            lowest = Math.min(lowest, active.pin);
+        }
+        return lowest;
+    }
+
+    private static final class Ring {
+        final AtomicReferenceArray<Slot> slots;
+        final AtomicLongArray timestamps; // Sequence and capture time of each slot, interleaved
+        final int capacity;
+        final long generation;
+
+        Ring(int capacity, long generation) {
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.timestamps = new AtomicLongArray(capacity * 2);
+            this.capacity = capacity;
+            this.generation = generation;
+            for (int i = 0; i < capacity; i++) {
+                timestamps.set(i * 2, -1);
+            }
+        }
+
+        // The sequence is invalidated while the time changes, so a reader never pairs it with the wrong frame
+        void index(int index, long sequence, long timestamp) {
+            timestamps.set(index * 2, -1);
+            timestamps.set(index * 2 + 1, timestamp);
+            timestamps.set(index * 2, sequence);
+        }
+
+        // Long.MIN_VALUE if the slot no longer holds the sequence
+        long timestampAt(int index, long sequence) {
+            if (timestamps.get(index * 2) != sequence) return Long.MIN_VALUE;
+            long timestamp = timestamps.get(index * 2 + 1);
+            return timestamps.get(index * 2) == sequence ? timestamp : Long.MIN_VALUE;
+        }
+    }
+
+    private static final class Slot {
+        final long sequence;
+        final CapturedFrame frame;
+
+        Slot(long sequence, CapturedFrame frame) {
+            this.sequence = sequence;
+            this.frame = frame;
+        }
+    }
+
+    /**
+     * A pinned, immutable range of frame sequence numbers [start, end).
+     */
+    public static final class Snapshot {
+        private final FrameBuffer buffer;
+        private final long pin;
+        private long start;
+        private long end;
+        private volatile boolean released;
+
+        private Snapshot(FrameBuffer buffer, long pin) {
+            this.buffer = buffer;
+            this.pin = pin;
+        }
+
+        private void setRange(long start, long end) {
+            this.start = start;
+            this.end = Math.max(start, end);
+        }
+
+        public int size() {
+            return (int) (end - start);
+        }
+
+        public List<CapturedFrame> getFrames() {
+            return framesBetween(start, end);
+        }
+
+        /**
+         * Returns the frames on screen between two capture times: the newest frame captured at
+         * or before {@code fromTime}, and every frame captured after it and before {@code toTime}.
+         * Found by binary search, so the cost depends only on the length of the window.
+         */
+        public List<CapturedFrame> getFrames(long fromTime, long toTime) {
+            if (released) throw new IllegalStateException("Snapshot already released");
+            long first = Math.max(start, firstAfter(fromTime) - 1);
+            return framesBetween(first, Math.max(first, firstAfter(toTime - 1)));
+        }
+
+        // The first sequence captured after the given time, end if there is none
+        private long firstAfter(long time) {
+            long low = start;
+            long high = end;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (buffer.timestampAt(middle) <= time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private List<CapturedFrame> framesBetween(long from, long to) {
+            if (released) throw new IllegalStateException("Snapshot already released");
+
+            List<CapturedFrame> frames = new ArrayList<>((int) (to - from));
+            for (long sequence = from; sequence < to; sequence++) {
+                CapturedFrame frame = buffer.frameAt(sequence);
+                if (frame != null) {
+                    frames.add(frame);
+                }
+            }
+            return frames;
+        }
+
+        public void release() {
+            if (released) return;
+            released = true;
+            buffer.release(this);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.quickrewind;
+
+import java.awt.AWTException;
+import java.awt.GraphicsDevice;
+import java.awt.Rectangle;
+import java.awt.Robot;
+import java.awt.image.BufferedImage;
+
+/**
+ * Where capture workers grab their pixels from: normally a Robot on one display,
+ * or a synthetic source for soak testing without a screen.
+ */
+public interface FrameSource {
+
+    BufferedImage capture(Rectangle bounds);
+
+    static FrameSource forDevice(GraphicsDevice device) throws AWTException {
+        Robot robot = device != null ? new Robot(device) : new Robot();
+        return robot::createScreenCapture;
+    }
+}
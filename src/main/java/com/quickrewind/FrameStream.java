@@ -0,0 +1,109 @@
+package com.quickrewind;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+/**
+ * The frames of an export, handed to the encoders. The frame count and the time of every frame
+ * are known up front, so encoders can plan before any pixels exist; the pixels of a frame are
+ * only produced when an encoder pulls it, and the stream keeps no reference to them, so a frame
+ * is garbage as soon as its encoder is done with it. Encoders pull frames in order, apart from
+ * a few samples while planning, and keep at most a handful in flight.
+ */
+public interface FrameStream {
+
+    int size();
+
+    // When the frame appears, in milliseconds on any clock shared by the stream
+    long getTimestamp(int index);
+
+    // When the last frame stops being shown
+    long getEndTime();
+
+    /**
+     * The frame's pixels, produced when called and not cached by the stream. The image may be
+     * shared with its source (an uncompressed buffered frame is handed out as is), so callers
+     * must not draw on it or otherwise modify it.
+     */
+    BufferedImage getFrame(int index);
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // How long each frame is shown
+    default int[] getDelays() {
+        long[] times = new long[size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = getTimestamp(i);
+        }
+        return CapturedFrame.delays(times, getEndTime());
+    }
+
+    /**
+     * Buffered or recorded frames, inflated one at a time when pulled. Frames that are not
+     * compressed are returned as stored in the buffer.
+     */
+    static FrameStream of(CapturedFrame[] frames, long endTime) {
+        return new FrameStream() {
+            @Override
+            public int size() {
+                return frames.length;
+            }
+
+            @Override
+            public long getTimestamp(int index) {
+                return frames[index].getTimestamp();
+            }
+
+            @Override
+            public long getEndTime() {
+                return endTime;
+            }
+
+            @Override
+            public BufferedImage getFrame(int index) {
+                return frames[index].getImage();
+            }
+        };
+    }
+
+    /**
+     * Images shown for the given delays, starting at 0. The list may itself be a lazy view.
+     */
+    static FrameStream of(List<BufferedImage> images, int[] delaysMs) {
+        long[] times = new long[images.size() + 1];
+        for (int i = 0; i < images.size(); i++) {
+            times[i + 1] = times[i] + delaysMs[i];
+        }
+        return new FrameStream() {
+            @Override
+            public int size() {
+                return images.size();
+            }
+
+            @Override
+            public long getTimestamp(int index) {
+                return times[index];
+            }
+
+            @Override
+            public long getEndTime() {
+                return times[times.length - 1];
+            }
+
+            @Override
+            public BufferedImage getFrame(int index) {
+                return images.get(index);
+            }
+
+            @Override
+            public int[] getDelays() {
+                // The given delays, not clamped like delays derived from capture times
+                int[] delays = new int[images.size()];
+                System.arraycopy(delaysMs, 0, delays, 0, delays.length);
+                return delays;
+            }
+        };
+    }
+}
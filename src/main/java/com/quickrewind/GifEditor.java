@@ -0,0 +1,394 @@
+package com.quickrewind;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lossless trimming and joining of GIFs at block level. Frames are indexed once by offset, and
+ * the compressed data of every kept frame is copied unchanged, so an edit costs about as much as
+ * copying the file. Delta frames only store what changed since the frame before them; when a
+ * kept range starts with one, that single frame is decoded from the last full frame on and
+ * written again as a full frame. Frames that need decoding must not be interlaced or use the
+ * restore disposal methods, which holds for everything QuickRewind writes.
+ */
+public class GifEditor {
+    private static final int DISPOSE_DO_NOT_DISPOSE = 1;
+
+    private final File file;
+    private final byte[] data;
+    private final int width;
+    private final int height;
+    private final int backgroundIndex;
+    private final byte[] globalColorTable; // Null if the file has none
+    private final int headerEnd; // Header, global color table and leading extensions such as looping
+    private final List<Frame> frames = new ArrayList<>();
+
+    private GifEditor(File file, byte[] data) throws IOException {
+        this.file = file;
+        this.data = data;
+        if (data.length < 13 || !new String(data, 0, 6, "US-ASCII").matches("GIF8[79]a")) {
+            throw new IOException(file.getName() + " is not a GIF");
+        }
+        width = readShort(6);
+        height = readShort(8);
+        backgroundIndex = data[11] & 0xFF;
+        int pos = 13;
+        if ((data[10] & 0x80) != 0) {
+            int tableBytes = 3 << ((data[10] & 7) + 1);
+            globalColorTable = Arrays.copyOfRange(data, pos, pos + tableBytes);
+            pos += tableBytes;
+        } else {
+            globalColorTable = null;
+        }
+
+        try {
+            headerEnd = index(pos);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException(file.getName() + " is truncated");
+        }
+        if (frames.isEmpty()) {
+            throw new IOException(file.getName() + " has no frames");
+        }
+    }
+
+    public static GifEditor open(File file) throws IOException {
+        return new GifEditor(file, Files.readAllBytes(file.toPath()));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    public int getDelayMs(int frame) {
+        return frames.get(frame).delayCs * 10;
+    }
+
+    // When the frame appears, counted from the start of the animation
+    public long getStartMs(int frame) {
+        long start = 0;
+        for (int i = 0; i < frame; i++) {
+            start += getDelayMs(i);
+        }
+        return start;
+    }
+
+    public long getDurationMs() {
+        return getStartMs(frames.size());
+    }
+
+    // Keeps frames [fromFrame, toFrame) with their delays
+    public void trim(File output, int fromFrame, int toFrame) throws IOException {
+        write(output, Collections.singletonList(clip(fromFrame, toFrame)));
+    }
+
+    // Keeps what is on screen between startMs and endMs; the first and last frame are shortened to fit
+    public void trimTime(File output, long startMs, long endMs) throws IOException {
+        write(output, Collections.singletonList(clipTime(startMs, endMs)));
+    }
+
+    /**
+     * Joins whole GIFs of the same size into one. A GIF whose global palette differs from the
+     * first one's gets it as a local color table on each of its frames, so nothing is re-encoded.
+     */
+    public static void join(List<GifEditor> gifs, File output) throws IOException {
+        List<Clip> clips = new ArrayList<>();
+        for (GifEditor gif : gifs) {
+            if (gif.width != gifs.get(0).width || gif.height != gifs.get(0).height) {
+                throw new IOException("Only GIFs of the same size can be joined: " + gif.file.getName()
+                    + " is " + gif.width + "x" + gif.height);
+            }
+            clips.add(gif.clip(0, gif.frames.size()));
+        }
+        write(output, clips);
+    }
+
+    private Clip clip(int fromFrame, int toFrame) {
+        if (fromFrame < 0 || toFrame > frames.size() || fromFrame >= toFrame) {
+            throw new IllegalArgumentException("Frame range " + fromFrame + "-" + toFrame
+                + " is outside 0-" + frames.size());
+        }
+        int[] delays = new int[toFrame - fromFrame];
+        for (int i = fromFrame; i < toFrame; i++) {
+            delays[i - fromFrame] = frames.get(i).delayCs;
+        }
+        return new Clip(this, fromFrame, delays);
+    }
+
+    private Clip clipTime(long startMs, long endMs) {
+        int from = -1;
+        List<Integer> delays = new ArrayList<>();
+        long frameStart = 0;
+        for (int i = 0; i < frames.size(); i++) {
+            long frameEnd = frameStart + getDelayMs(i);
+            // Frames without a delay belong to whatever follows them
+            boolean visible = frameEnd > startMs && frameStart < endMs
+                || (frameEnd == frameStart && frameStart >= startMs && frameStart < endMs);
+            if (visible) {
+                if (from < 0) from = i;
+                long shown = Math.min(frameEnd, endMs) - Math.max(frameStart, startMs);
+                delays.add((int) Math.max(0, (shown + 5) / 10));
+            } else if (from >= 0) {
+                break;
+            }
+            frameStart = frameEnd;
+        }
+        if (from < 0) {
+            throw new IllegalArgumentException("Nothing is shown between " + startMs + " and " + endMs
+                + " ms (the GIF is " + getDurationMs() + " ms long)");
+        }
+        return new Clip(this, from, delays.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static void write(File output, List<Clip> clips) throws IOException {
+        GifEditor first = clips.get(0).gif;
+        long start = System.nanoTime();
+        int rebuilt = 0;
+        int copied = 0;
+
+        try (BlockFileWriter out = new BlockFileWriter(output)) {
+            out.write(first.data, 0, first.headerEnd);
+            for (Clip clip : clips) {
+                GifEditor gif = clip.gif;
+                // Palette for frames without their own table, when it differs from the output's global one
+                byte[] tableOverride = Arrays.equals(gif.globalColorTable, first.globalColorTable)
+                    ? null : gif.globalColorTable;
+                for (int i = 0; i < clip.delaysCs.length; i++) {
+                    int index = clip.from + i;
+                    if (i == 0 && !gif.frames.get(index).isFull(gif)) {
+                        out.write(gif.rebuildFull(index, clip.delaysCs[i], tableOverride));
+                        rebuilt++;
+                    } else {
+                        gif.copyFrame(out, index, clip.delaysCs[i], tableOverride);
+                        copied++;
+                    }
+                }
+            }
+            out.write(new byte[] {0x3B}); // Trailer
+            out.commit();
+        }
+
+        System.out.println("Edited GIF " + output.getName() + ": " + copied + " frames copied, " + rebuilt
+            + " rebuilt in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    // Copies one frame's blocks, replacing only the graphic control extension and descriptor where needed
+    private void copyFrame(BlockFileWriter out, int index, int delayCs, byte[] tableOverride) throws IOException {
+        Frame frame = frames.get(index);
+        boolean newControl = frame.controlStart < 0 || frame.delayCs != delayCs;
+        boolean addTable = tableOverride != null && frame.localTableStart < 0;
+
+        if (newControl) {
+            int disposal = frame.controlStart < 0 ? 0 : frame.disposal;
+            out.write(control(disposal, frame.transparent, frame.transparentIndex, delayCs));
+        } else {
+            out.write(data, frame.controlStart, 8);
+        }
+
+        if (addTable) {
+            byte[] descriptor = Arrays.copyOfRange(data, frame.imageStart, frame.imageStart + 10);
+            descriptor[9] = (byte) ((descriptor[9] & 0x40) | 0x80 | tableBits(tableOverride));
+            out.write(descriptor);
+            out.write(tableOverride);
+            out.write(data, frame.dataStart, frame.end - frame.dataStart);
+        } else {
+            out.write(data, frame.imageStart, frame.end - frame.imageStart);
+        }
+    }
+
+    // Decodes the frames from the last full frame up to index onto one canvas and encodes that as a full frame
+    private byte[] rebuildFull(int index, int delayCs, byte[] tableOverride) throws IOException {
+        int keyFrame = index;
+        while (keyFrame > 0 && !frames.get(keyFrame).isFull(this)) {
+            keyFrame--;
+        }
+
+        Frame target = frames.get(index);
+        byte[] canvas = new byte[width * height];
+        Arrays.fill(canvas, (byte) backgroundIndex);
+        for (int i = keyFrame; i <= index; i++) {
+            Frame frame = frames.get(i);
+            if (frame.interlaced || frame.disposal > DISPOSE_DO_NOT_DISPOSE
+                    || !Arrays.equals(colorTable(frame), colorTable(target))) {
+                throw new IOException("Frame " + (i + 1) + " of " + file.getName()
+                    + " cannot be rebuilt losslessly (interlaced, restoring disposal or a changing palette)");
+            }
+            paint(canvas, frame, LzwDecoder.decode(data, frame.dataStart, frame.width * frame.height));
+        }
+
+        byte[] table = target.localTableStart >= 0 ? colorTable(target) : tableOverride;
+        int minCodeSize = data[target.dataStart] & 0xFF;
+        byte[] lzw = LzwEncoder.encode(canvas, minCodeSize);
+
+        byte[] control = control(DISPOSE_DO_NOT_DISPOSE, false, 0, delayCs);
+        int tableLength = table != null ? table.length : 0;
+        byte[] block = new byte[control.length + 10 + tableLength + lzw.length];
+        System.arraycopy(control, 0, block, 0, control.length);
+        int pos = control.length;
+        block[pos] = 0x2C;
+        writeShort(block, pos + 1, 0);
+        writeShort(block, pos + 3, 0);
+        writeShort(block, pos + 5, width);
+        writeShort(block, pos + 7, height);
+        block[pos + 9] = (byte) (table != null ? 0x80 | tableBits(table) : 0);
+        pos += 10;
+        if (table != null) {
+            System.arraycopy(table, 0, block, pos, tableLength);
+            pos += tableLength;
+        }
+        System.arraycopy(lzw, 0, block, pos, lzw.length);
+        return block;
+    }
+
+    private void paint(byte[] canvas, Frame frame, byte[] pixels) {
+        for (int y = 0; y < frame.height; y++) {
+            int canvasY = frame.top + y;
+            if (canvasY >= height) break;
+            for (int x = 0; x < frame.width; x++) {
+                int canvasX = frame.left + x;
+                if (canvasX >= width) break;
+                byte value = pixels[y * frame.width + x];
+                if (frame.transparent && (value & 0xFF) == frame.transparentIndex) continue;
+                canvas[canvasY * width + canvasX] = value;
+            }
+        }
+    }
+
+    private byte[] colorTable(Frame frame) {
+        if (frame.localTableStart < 0) return globalColorTable;
+        return Arrays.copyOfRange(data, frame.localTableStart, frame.dataStart);
+    }
+
+    // Walks the blocks after the global color table, records every frame and returns where the first one starts
+    private int index(int pos) throws IOException {
+        int firstFrameStart = -1;
+        int controlStart = -1;
+        while (pos < data.length) {
+            int type = data[pos] & 0xFF;
+            if (type == 0x3B) break;
+
+            if (type == 0x21) {
+                int label = data[pos + 1] & 0xFF;
+                if (label == 0xF9) {
+                    if (firstFrameStart < 0) firstFrameStart = pos;
+                    controlStart = pos;
+                }
+                pos = skipSubBlocks(pos + 2);
+            } else if (type == 0x2C) {
+                if (firstFrameStart < 0) firstFrameStart = pos;
+                Frame frame = new Frame();
+                frame.imageStart = pos;
+                frame.left = readShort(pos + 1);
+                frame.top = readShort(pos + 3);
+                frame.width = readShort(pos + 5);
+                frame.height = readShort(pos + 7);
+                int flags = data[pos + 9] & 0xFF;
+                frame.interlaced = (flags & 0x40) != 0;
+                pos += 10;
+                if ((flags & 0x80) != 0) {
+                    frame.localTableStart = pos;
+                    pos += 3 << ((flags & 7) + 1);
+                }
+                frame.dataStart = pos;
+                pos = skipSubBlocks(pos + 1);
+                frame.end = pos;
+
+                // A control extension applies to the next image only, and only if it directly precedes it
+                if (controlStart >= 0 && controlStart + 8 == frame.imageStart) {
+                    int packed = data[controlStart + 3] & 0xFF;
+                    frame.controlStart = controlStart;
+                    frame.disposal = (packed >> 2) & 7;
+                    frame.transparent = (packed & 1) != 0;
+                    frame.delayCs = readShort(controlStart + 4);
+                    frame.transparentIndex = data[controlStart + 6] & 0xFF;
+                }
+                controlStart = -1;
+                frames.add(frame);
+            } else {
+                throw new IOException("Unexpected block 0x" + Integer.toHexString(type) + " at offset " + pos
+                    + " in " + file.getName());
+            }
+        }
+        return firstFrameStart < 0 ? pos : firstFrameStart;
+    }
+
+    private int skipSubBlocks(int pos) {
+        int length;
+        while ((length = data[pos] & 0xFF) != 0) {
+            pos += length + 1;
+        }
+        return pos + 1;
+    }
+
+    private int readShort(int pos) {
+        return (data[pos] & 0xFF) | (data[pos + 1] & 0xFF) << 8;
+    }
+
+    private static void writeShort(byte[] block, int pos, int value) {
+        block[pos] = (byte) value;
+        block[pos + 1] = (byte) (value >> 8);
+    }
+
+    private static byte[] control(int disposal, boolean transparent, int transparentIndex, int delayCs) {
+        byte[] control = {0x21, (byte) 0xF9, 4, (byte) ((disposal << 2) | (transparent ? 1 : 0)), 0, 0,
+            (byte) transparentIndex, 0};
+        writeShort(control, 4, Math.min(0xFFFF, delayCs));
+        return control;
+    }
+
+    // Size field of a color table with the given bytes (entries = 2^(field + 1))
+    private static int tableBits(byte[] table) {
+        int entries = table.length / 3;
+        return Integer.numberOfTrailingZeros(entries) - 1;
+    }
+
+    private static final class Frame {
+        int controlStart = -1;
+        int disposal;
+        boolean transparent;
+        int transparentIndex;
+        int delayCs;
+        int imageStart;
+        int left;
+        int top;
+        int width;
+        int height;
+        boolean interlaced;
+        int localTableStart = -1;
+        int dataStart;
+        int end;
+
+        // Covers the whole canvas without transparency, so it does not depend on earlier frames
+        boolean isFull(GifEditor gif) {
+            return left == 0 && top == 0 && width == gif.width && height == gif.height && !transparent;
+        }
+    }
+
+    private static final class Clip {
+        final GifEditor gif;
+        final int from;
+        final int[] delaysCs;
+
+        Clip(GifEditor gif, int from, int[] delaysCs) {
+            this.gif = gif;
+            this.from = from;
+            this.delaysCs = delaysCs;
+        }
+    }
+}
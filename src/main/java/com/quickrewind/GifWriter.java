@@ -0,0 +1,212 @@
+package com.quickrewind;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Minimal GIF89a writer. Frames are encoded into self-contained blocks (graphic control
+ * extension, image descriptor and LZW data) by {@link #encodeFrame}, which is thread-safe,
+ * so blocks can be compressed in parallel and sized before anything is written.
+ */
+public class GifWriter {
+    private static final int DISPOSE_DO_NOT_DISPOSE = 1;
+
+    private final BlockFileWriter out;
+    private final int width;
+    private final int height;
+    private final Palette palette;
+    private long bytesWritten;
+
+    public GifWriter(BlockFileWriter out, int width, int height, Palette palette) {
+        this.out = out;
+        this.width = width;
+        this.height = height;
+        this.palette = palette;
+    }
+
+    public void writeHeader() throws IOException {
+        byte[] header = createHeader(width, height, palette);
+        out.write(header);
+        bytesWritten += header.length;
+    }
+
+    public void writeFrame(byte[] frameBlock) throws IOException {
+        out.write(frameBlock);
+        bytesWritten += frameBlock.length;
+    }
+
+    public void finish() throws IOException {
+        out.write(new byte[] {0x3B}); // Trailer
+        bytesWritten++;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public static byte[] createHeader(int width, int height, Palette palette) {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(64 + palette.tableSize() * 3);
+        writeAscii(header, "GIF89a");
+
+        // Logical screen descriptor with a global color table
+        writeShort(header, width);
+        writeShort(header, height);
+        header.write(0x80 | (7 << 4) | (palette.tableBits() - 1));
+        header.write(0); // Background color index
+        header.write(0); // Pixel aspect ratio
+        byte[] colorTable = palette.toColorTable();
+        header.write(colorTable, 0, colorTable.length);
+
+        // NETSCAPE2.0 application extension, loop count 1
+        header.write(0x21);
+        header.write(0xFF);
+        header.write(11);
+        writeAscii(header, "NETSCAPE2.0");
+        header.write(3);
+        header.write(1);
+        writeShort(header, 1);
+        header.write(0);
+
+        return header.toByteArray();
+    }
+
+    public static int trailerLength() {
+        return 1;
+    }
+
+    /**
+     * Encodes one frame. With a previous frame (same size, same palette) only the bounding box
+     * of changed pixels is stored and unchanged pixels inside it become transparent.
+     */
+    public static byte[] encodeFrame(byte[] indices, byte[] previous, int width, int height,
+                                     Palette palette, int delayMs) {
+        return encodeFrame(indices, previous, width, height, palette, delayMs, 0);
+    }
+
+    /**
+     * Like the method above, with lossy LZW compression up to the given color error (0 = lossless),
+     * see {@link LzwEncoder#encodeLossy}. indices is then updated to what a viewer shows after
+     * this frame, so the next frame's delta is taken against the screen and errors cannot add up.
+     */
+    public static byte[] encodeFrame(byte[] indices, byte[] previous, int width, int height,
+                                     Palette palette, int delayMs, int lossyError) {
+        int transparent = palette.transparentIndex();
+        int left = 0;
+        int top = 0;
+        int frameWidth = width;
+        int frameHeight = height;
+        byte[] pixels = indices;
+        byte[] background = null;
+        boolean useTransparency = false;
+
+        if (previous != null && transparent >= 0) {
+            if (lossyError > 0) {
+                // Pixels close enough to what is on screen count as unchanged, so noise is not sent again
+                int maxErrorSquared = lossyError * lossyError;
+                for (int i = 0; i < indices.length; i++) {
+                    if (indices[i] != previous[i]
+                            && palette.distanceSquared(indices[i] & 0xFF, previous[i] & 0xFF) <= maxErrorSquared) {
+                        indices[i] = previous[i];
+                    }
+                }
+            }
+            int[] box = changedBounds(indices, previous, width, height);
+            if (box == null) {
+                // Nothing changed: a single transparent pixel keeps the timing
+                left = 0;
+                top = 0;
+                frameWidth = 1;
+                frameHeight = 1;
+                pixels = new byte[] {(byte) transparent};
+            } else {
+                left = box[0];
+                top = box[1];
+                frameWidth = box[2] - box[0] + 1;
+                frameHeight = box[3] - box[1] + 1;
+                pixels = new byte[frameWidth * frameHeight];
+                background = lossyError > 0 ? new byte[pixels.length] : null;
+                for (int y = 0; y < frameHeight; y++) {
+                    int src = (top + y) * width + left;
+                    int dst = y * frameWidth;
+                    for (int x = 0; x < frameWidth; x++) {
+                        byte value = indices[src + x];
+                        pixels[dst + x] = value == previous[src + x] ? (byte) transparent : value;
+                    }
+                    if (background != null) {
+                        System.arraycopy(previous, src, background, dst, frameWidth);
+                    }
+                }
+            }
+            useTransparency = true;
+        }
+
+        byte[] lzw = LzwEncoder.encodeLossy(pixels, background, Math.max(2, palette.tableBits()), palette, lossyError);
+        if (lossyError > 0 && background != null) {
+            for (int y = 0; y < frameHeight; y++) {
+                int dst = (top + y) * width + left;
+                int src = y * frameWidth;
+                for (int x = 0; x < frameWidth; x++) {
+                    byte value = pixels[src + x];
+                    indices[dst + x] = value == (byte) transparent ? background[src + x] : value;
+                }
+            }
+        }
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream(lzw.length + 20);
+
+        // Graphic control extension
+        block.write(0x21);
+        block.write(0xF9);
+        block.write(4);
+        block.write((DISPOSE_DO_NOT_DISPOSE << 2) | (useTransparency ? 1 : 0));
+        writeShort(block, Math.min(0xFFFF, Math.max(0, delayMs / 10))); // Centiseconds
+        block.write(useTransparency ? transparent : 0);
+        block.write(0);
+
+        // Image descriptor, no local color table, not interlaced
+        block.write(0x2C);
+        writeShort(block, left);
+        writeShort(block, top);
+        writeShort(block, frameWidth);
+        writeShort(block, frameHeight);
+        block.write(0);
+
+        block.write(lzw, 0, lzw.length);
+        return block.toByteArray();
+    }
+
+    // Returns {minX, minY, maxX, maxY} of pixels that differ, or null if the frames are identical
+    private static int[] changedBounds(byte[] current, byte[] previous, int width, int height) {
+        int first = PixelKernels.firstDifference(current, previous, 0, width * height);
+        if (first < 0) return null;
+        int last = PixelKernels.lastDifference(current, previous, first, width * height);
+        int minY = first / width;
+        int maxY = last / width;
+
+        int minX = Math.min(first % width, last % width);
+        int maxX = Math.max(first % width, last % width);
+        for (int y = minY; y <= maxY; y++) {
+            int offset = y * width;
+            if (minX > 0) {
+                int left = PixelKernels.firstDifference(current, previous, offset, offset + minX);
+                if (left >= 0) minX = left - offset;
+            }
+            if (maxX < width - 1) {
+                int right = PixelKernels.lastDifference(current, previous, offset + maxX + 1, offset + width);
+                if (right >= 0) maxX = right - offset;
+            }
+        }
+        return new int[] {minX, minY, maxX, maxY};
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+    private static void writeAscii(ByteArrayOutputStream out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            out.write(text.charAt(i));
+        }
+    }
+}
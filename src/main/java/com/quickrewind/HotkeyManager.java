@@ -4,18 +4,30 @@ import com.github.kwhat.jnativehook.GlobalScreen;
 import com.github.kwhat.jnativehook.NativeHookException;
 import com.github.kwhat.jnativehook.keyboard.NativeKeyEvent;
 import com.github.kwhat.jnativehook.keyboard.NativeKeyListener;
+import com.github.kwhat.jnativehook.mouse.NativeMouseEvent;
+import com.github.kwhat.jnativehook.mouse.NativeMouseInputListener;
+import com.github.kwhat.jnativehook.mouse.NativeMouseWheelEvent;
+import com.github.kwhat.jnativehook.mouse.NativeMouseWheelListener;
 
-import javax.swing.SwingUtilities;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class HotkeyManager implements NativeKeyListener {
+/**
+ * Listens to global key events for the capture hotkeys (Ctrl+Shift+G for the whole buffer,
+ * Ctrl+Shift+H for the last few seconds, Ctrl+Shift+J for a chosen time range), and to every key and mouse event
+ * as the input-activity signal that paces the buffer capture.
+ */
+public class HotkeyManager implements NativeKeyListener, NativeMouseInputListener, NativeMouseWheelListener {
     private final QuickRewind mainApp;
+    private final InputActivity activity;
+    private final CursorTrack cursorTrack; // Null without cursor tracking
     private boolean ctrlPressed = false;
     private boolean shiftPressed = false;
     
-    public HotkeyManager(QuickRewind mainApp) {
+    public HotkeyManager(QuickRewind mainApp, InputActivity activity, CursorTrack cursorTrack) {
         this.mainApp = mainApp;
+        this.activity = activity;
+        this.cursorTrack = cursorTrack;
         setupGlobalHook();
     }
     
@@ -28,6 +40,9 @@ public class HotkeyManager implements NativeKeyListener {
             
             GlobalScreen.registerNativeHook();
             GlobalScreen.addNativeKeyListener(this);
+            GlobalScreen.addNativeMouseListener(this);
+            GlobalScreen.addNativeMouseMotionListener(this);
+            GlobalScreen.addNativeMouseWheelListener(this);
             
         } catch (NativeHookException e) {
             System.err.println("Failed to register global hook: " + e.getMessage());
@@ -36,6 +51,7 @@ public class HotkeyManager implements NativeKeyListener {
     
     @Override
     public void nativeKeyPressed(NativeKeyEvent e) {
+        activity.onInput();
         switch (e.getKeyCode()) {
             case NativeKeyEvent.VC_CONTROL:
                 ctrlPressed = true;
@@ -45,8 +61,20 @@ public class HotkeyManager implements NativeKeyListener {
                 break;
             case NativeKeyEvent.VC_G:
                 if (ctrlPressed && shiftPressed) {
-                    // Trigger capture
-                    SwingUtilities.invokeLater(() -> mainApp.captureGif());
+                    // Trigger capture right here, so the rewind window is frozen at the keypress
+                    // rather than whenever the EDT gets to it. Encoding runs in the background.
+                    mainApp.captureGif();
+                }
+                break;
+            case NativeKeyEvent.VC_H:
+                if (ctrlPressed && shiftPressed) {
+                    mainApp.captureShortGif();
+                }
+                break;
+            case NativeKeyEvent.VC_J:
+                if (ctrlPressed && shiftPressed) {
+                    // The buffer is frozen here too; only the range dialog waits for the EDT
+                    mainApp.captureGifWithTimeRange();
                 }
                 break;
         }
@@ -69,9 +97,44 @@ public class HotkeyManager implements NativeKeyListener {
         // Not used
     }
     
+    // Mouse events only feed the activity signal and the pointer's button state; moves arrive many
+    // times a second, so this stays cheap
+    @Override
+    public void nativeMousePressed(NativeMouseEvent e) {
+        activity.onInput();
+        if (cursorTrack != null) {
+            cursorTrack.onButton(e.getButton(), true);
+        }
+    }
+    
+    @Override
+    public void nativeMouseReleased(NativeMouseEvent e) {
+        if (cursorTrack != null) {
+            cursorTrack.onButton(e.getButton(), false);
+        }
+    }
+    
+    @Override
+    public void nativeMouseMoved(NativeMouseEvent e) {
+        activity.onInput();
+    }
+    
+    @Override
+    public void nativeMouseDragged(NativeMouseEvent e) {
+        activity.onInput();
+    }
+    
+    @Override
+    public void nativeMouseWheelMoved(NativeMouseWheelEvent e) {
+        activity.onInput();
+    }
+    
     public void dispose() {
         try {
             GlobalScreen.removeNativeKeyListener(this);
+            GlobalScreen.removeNativeMouseListener(this);
+            GlobalScreen.removeNativeMouseMotionListener(this);
+            GlobalScreen.removeNativeMouseWheelListener(this);
             GlobalScreen.unregisterNativeHook();
         } catch (NativeHookException e) {
             System.err.println("Failed to unregister global hook: " + e.getMessage());
@@ -0,0 +1,225 @@
+package com.quickrewind;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Uploads a file while it is still being written, using the tus resumable upload protocol
+ * (core, creation with deferred length, termination). The upload is created as soon as the
+ * uploader is, blocks are passed in through {@link #append} and sent in chunks of about half a
+ * megabyte one after another on I/O threads, and {@link #finish()} sends the rest together with
+ * the final length. A failed chunk is retried with exponential backoff, resuming from the offset
+ * the server reports, so only the bytes it did not receive are sent again.
+ */
+public class HttpUploader {
+    private static final int CHUNK_BYTES = 512 * 1024;
+    private static final int MAX_ATTEMPTS = 6;
+    private static final long FIRST_BACKOFF_MS = 250;
+    private static final long MAX_BACKOFF_MS = 8000;
+    private static final String TUS_VERSION = "1.0.0";
+
+    private static final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final URI endpoint;
+    private final String fileName;
+    private final long startNanos = System.nanoTime();
+    private byte[] chunk = new byte[CHUNK_BYTES];
+    private int chunkLength;
+    private long appended;
+    private final CompletableFuture<URI> created; // Upload URL once the server has created the upload
+    private CompletableFuture<URI> uploads; // Upload URL once everything queued so far is acknowledged
+    private CompletableFuture<URI> finished;
+    private int retries; // Only touched by the upload chain, one task at a time
+    private volatile boolean aborted;
+
+    public HttpUploader(URI endpoint, String fileName) {
+        this.endpoint = endpoint;
+        this.fileName = fileName;
+        this.created = ExportPipeline.io(this::create);
+        this.uploads = created;
+    }
+
+    public synchronized void append(byte[] data, int offset, int length) {
+        if (finished != null) {
+            throw new IllegalStateException("Upload already finished");
+        }
+        while (length > 0) {
+            int count = Math.min(length, chunk.length - chunkLength);
+            System.arraycopy(data, offset, chunk, chunkLength, count);
+            chunkLength += count;
+            offset += count;
+            length -= count;
+            if (chunkLength == chunk.length) {
+                sendChunk(false);
+            }
+        }
+    }
+
+    /**
+     * Sends what is left and completes with the upload URL once the server has the whole file.
+     * Calling it again returns the same future.
+     */
+    public synchronized CompletableFuture<URI> finish() {
+        if (finished == null) {
+            sendChunk(true);
+            finished = uploads.thenApply(location -> {
+                long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+                Metrics.add("upload.bytes", appended);
+                Metrics.add("upload.files", 1);
+                Metrics.set("upload.ms", elapsedMs);
+                System.out.println("Uploaded " + fileName + ": " + appended + " bytes in " + elapsedMs
+                    + " ms, " + retries + " retries, " + location);
+                return location;
+            });
+        }
+        return finished;
+    }
+
+    // Best effort: stops after the chunk in flight and asks the server to drop what it has
+    public synchronized void abort() {
+        if (finished != null && finished.isDone()) return;
+        aborted = true;
+        CompletableFuture<URI> pending = uploads;
+        uploads = new CompletableFuture<>();
+        uploads.completeExceptionally(new IOException("Upload aborted"));
+        finished = uploads;
+        // Queued chunks fail once aborted, so the delete waits for the chain to settle, not to succeed
+        pending.whenComplete((location, error) -> created.thenAccept(upload -> ExportPipeline.io(() -> {
+            send(HttpRequest.newBuilder(upload).DELETE());
+            return null;
+        })));
+    }
+
+    private synchronized void sendChunk(boolean last) {
+        byte[] data = chunk;
+        int length = chunkLength;
+        long chunkOffset = appended;
+        appended += length;
+        chunk = last ? null : new byte[CHUNK_BYTES];
+        chunkLength = 0;
+        long total = appended;
+        uploads = uploads.thenCompose(location -> ExportPipeline.io(() -> {
+            upload(location, data, length, chunkOffset, last ? total : -1);
+            return location;
+        }));
+    }
+
+    private URI create() throws IOException {
+        String metadata = "filename " + Base64.getEncoder().encodeToString(fileName.getBytes(StandardCharsets.UTF_8));
+        for (int attempt = 1; ; attempt++) {
+            try {
+                HttpResponse<Void> response = send(HttpRequest.newBuilder(endpoint)
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .header("Upload-Defer-Length", "1")
+                        .header("Upload-Metadata", metadata));
+                String location = response.headers().firstValue("Location").orElse(null);
+                if (response.statusCode() != 201 || location == null) {
+                    throw failure("Creating upload", response);
+                }
+                return endpoint.resolve(location);
+            } catch (IOException e) {
+                backOff(attempt, e);
+            }
+        }
+    }
+
+    // totalLength is set on the last chunk; before a retry, the server says how much of the chunk it already has
+    private void upload(URI location, byte[] data, int length, long chunkOffset, long totalLength) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            if (aborted) {
+                throw new PermanentUploadException("Upload aborted");
+            }
+            try {
+                long offset = attempt == 1 ? chunkOffset : serverOffset(location);
+                if (offset < chunkOffset || offset > chunkOffset + length) {
+                    throw new IOException("Server is at offset " + offset + ", expected " + chunkOffset
+                        + "-" + (chunkOffset + length));
+                }
+                int skip = (int) (offset - chunkOffset);
+                if (skip == length && totalLength < 0) return;
+
+                HttpRequest.Builder request = HttpRequest.newBuilder(location)
+                        .method("PATCH", HttpRequest.BodyPublishers.ofByteArray(data, skip, length - skip))
+                        .header("Content-Type", "application/offset+octet-stream")
+                        .header("Upload-Offset", Long.toString(offset));
+                if (totalLength >= 0) {
+                    request.header("Upload-Length", Long.toString(totalLength));
+                }
+                HttpResponse<Void> response = send(request);
+                if (response.statusCode() != 204) {
+                    throw failure("Uploading chunk", response);
+                }
+                Metrics.add("upload.chunks", 1);
+                return;
+            } catch (IOException e) {
+                backOff(attempt, e);
+            }
+        }
+    }
+
+    private long serverOffset(URI location) throws IOException {
+        HttpResponse<Void> response = send(HttpRequest.newBuilder(location)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody()));
+        String offset = response.headers().firstValue("Upload-Offset").orElse(null);
+        if (response.statusCode() != 200 || offset == null) {
+            throw failure("Checking upload offset", response);
+        }
+        return Long.parseLong(offset);
+    }
+
+    private HttpResponse<Void> send(HttpRequest.Builder request) throws IOException {
+        try {
+            return client.send(request
+                    .header("Tus-Resumable", TUS_VERSION)
+                    .timeout(Duration.ofSeconds(30))
+                    .build(), HttpResponse.BodyHandlers.discarding());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Upload interrupted", e);
+        }
+    }
+
+    // Client errors other than conflicts will not go away by retrying
+    private static IOException failure(String step, HttpResponse<?> response) {
+        int status = response.statusCode();
+        String message = step + " failed with HTTP " + status;
+        boolean retryable = status >= 500 || status == 409 || status == 423 || status == 429;
+        return retryable ? new IOException(message) : new PermanentUploadException(message);
+    }
+
+    // Waits 250 ms, 500 ms, 1 s... up to 8 s with some jitter, or rethrows once attempts run out
+    private void backOff(int attempt, IOException error) throws IOException {
+        if (attempt >= MAX_ATTEMPTS || error instanceof PermanentUploadException) {
+            throw error;
+        }
+        retries++;
+        Metrics.add("upload.retries", 1);
+        long delayMs = Math.min(MAX_BACKOFF_MS, FIRST_BACKOFF_MS << (attempt - 1));
+        delayMs += ThreadLocalRandom.current().nextLong(delayMs / 4 + 1);
+        System.err.println("Upload of " + fileName + " failed (" + error.getMessage() + "), retrying in " + delayMs + " ms");
+        try {
+            Thread.sleep(delayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw error;
+        }
+    }
+
+    private static class PermanentUploadException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        PermanentUploadException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.quickrewind;
+
+/**
+ * Keyboard and mouse activity, fed by the native hook, turned into how often the buffer workers
+ * grab. For a few seconds after input they grab at the configured rate, then the interval doubles
+ * every 10 seconds without input up to four times the configured one, and while the session is
+ * locked they do not grab at all. Once nobody has touched keyboard or mouse for 5 minutes, a
+ * worker whose screen stays unchanged polls it only every few seconds; a screen that keeps
+ * changing (a video, a build log) is still captured at the decayed rate. Input wakes sleeping
+ * workers right away. Until the hook reports its first event the configured rate
+ * applies unchanged, so capture never depends on the hook working.
+ */
+public class InputActivity {
+    private static final long BURST_MS = 3000;
+    private static final long DECAY_DOUBLING_MS = 10_000;
+    private static final double MAX_DECAY_FACTOR = 4.0;
+    private static final long AWAY_MS = 5 * 60_000;
+    private static final long STATE_CHECK_MS = 1000; // The native lookups run at most once a second
+
+    private volatile long lastInput; // 0 until the hook reports input
+    private long lastStateCheck;
+    private boolean lockedOnce;
+    private boolean locked;
+    private boolean paused;
+    private long pausedSince;
+
+    /**
+     * Called by the native hook for every key and mouse event, so it only does a volatile write
+     * unless workers may be sleeping longer than usual.
+     */
+    public void onInput() {
+        long now = System.currentTimeMillis();
+        long previous = lastInput;
+        lastInput = now;
+        if (now - previous >= BURST_MS) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    public boolean isTracking() {
+        return lastInput != 0;
+    }
+
+    // The hook misses input it cannot see (e.g. into elevated windows), so the system idle time counts too
+    private long millisSinceInput(long now) {
+        long since = now - lastInput;
+        long systemIdle = WindowsNative.getIdleMillis();
+        return systemIdle >= 0 ? Math.min(since, systemIdle) : since;
+    }
+
+    /**
+     * The interval to grab at, given the configured one.
+     */
+    public long captureInterval(long configuredMs) {
+        if (!isTracking()) return configuredMs;
+        long since = millisSinceInput(System.currentTimeMillis());
+        if (since < BURST_MS) return configuredMs;
+        double factor = Math.min(MAX_DECAY_FACTOR, Math.pow(2, (double) (since - BURST_MS) / DECAY_DOUBLING_MS));
+        return Math.round(configuredMs * factor);
+    }
+
+    /**
+     * True once nobody has touched keyboard or mouse for a few minutes. Capture goes on while the
+     * screen changes, see {@link DisplayCaptureWorker}.
+     */
+    public boolean isAway() {
+        return isTracking() && millisSinceInput(System.currentTimeMillis()) >= AWAY_MS;
+    }
+
+    /**
+     * True while there has been no input and the session is locked.
+     */
+    public synchronized boolean isPaused() {
+        if (!isTracking()) return false;
+        long now = System.currentTimeMillis();
+        if (now - lastStateCheck >= STATE_CHECK_MS || (paused && lastInput > pausedSince)) {
+            lastStateCheck = now;
+            // A window switch can briefly leave no foreground window, so locked must be seen twice in a row
+            boolean lockedNow = WindowsNative.isSessionLocked();
+            locked = lockedNow && lockedOnce;
+            lockedOnce = lockedNow;
+
+            long since = millisSinceInput(now);
+            boolean pause = since >= BURST_MS && locked;
+            if (pause != paused) {
+                paused = pause;
+                Metrics.set("capture.paused", pause ? 1 : 0);
+                if (pause) {
+                    pausedSince = now;
+                    Metrics.add("capture.pauses", 1);
+                    System.out.println("Capture paused: session locked");
+                } else {
+                    Metrics.add("capture.paused.ms", now - pausedSince);
+                    System.out.println("Capture resumed after " + ((now - pausedSince) / 1000) + " seconds");
+                }
+            }
+        }
+        return paused;
+    }
+
+    /**
+     * Sleeps up to the given time and returns early, with true, when input arrives after a quiet
+     * spell. Used by the workers instead of Thread.sleep.
+     */
+    public synchronized boolean awaitInput(long timeoutMs) throws InterruptedException {
+        long before = lastInput;
+        if (timeoutMs > 0) {
+            wait(timeoutMs);
+        }
+        return lastInput != before && lastInput - before >= BURST_MS;
+    }
+}
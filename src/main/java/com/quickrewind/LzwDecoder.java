@@ -0,0 +1,122 @@
+package com.quickrewind;
+
+import java.io.IOException;
+
+/**
+ * GIF LZW decompressor, the counterpart of {@link LzwEncoder}. Reads the image data part of a
+ * frame (minimum code size byte, data sub-blocks, terminator) into color indices.
+ */
+public class LzwDecoder {
+    private static final int MAX_CODES = 4096;
+
+    private final byte[] data;
+    private int pos;
+    private int blockRemaining;
+    private int bitBuffer;
+    private int bitCount;
+
+    private LzwDecoder(byte[] data, int offset) {
+        this.data = data;
+        this.pos = offset;
+    }
+
+    // Decodes pixelCount indices from the image data starting at offset; missing pixels stay 0
+    public static byte[] decode(byte[] data, int offset, int pixelCount) throws IOException {
+        try {
+            return new LzwDecoder(data, offset + 1).decode(data[offset] & 0xFF, pixelCount);
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated image data at offset " + offset);
+        }
+    }
+
+    private byte[] decode(int minCodeSize, int pixelCount) throws IOException {
+        if (minCodeSize < 2 || minCodeSize > 11) {
+            throw new IOException("Invalid LZW code size " + minCodeSize);
+        }
+        byte[] pixels = new byte[pixelCount];
+        short[] prefix = new short[MAX_CODES];
+        byte[] suffix = new byte[MAX_CODES];
+        byte[] stack = new byte[MAX_CODES + 1];
+
+        int clearCode = 1 << minCodeSize;
+        int endCode = clearCode + 1;
+        for (int code = 0; code < clearCode; code++) {
+            suffix[code] = (byte) code;
+        }
+
+        int codeSize = minCodeSize + 1;
+        int available = clearCode + 2;
+        int oldCode = -1;
+        int first = 0;
+        int written = 0;
+
+        while (written < pixelCount) {
+            int code = readCode(codeSize);
+            if (code < 0 || code == endCode) break;
+            if (code == clearCode) {
+                codeSize = minCodeSize + 1;
+                available = clearCode + 2;
+                oldCode = -1;
+                continue;
+            }
+            if (oldCode < 0) {
+                if (code > clearCode) throw new IOException("Invalid first LZW code " + code);
+                pixels[written++] = suffix[code];
+                oldCode = code;
+                first = code;
+                continue;
+            }
+            if (code > available) throw new IOException("Invalid LZW code " + code);
+
+            int inCode = code;
+            int top = 0;
+            if (code == available) {
+                // The code being defined right now: previous string plus its own first index
+                stack[top++] = (byte) first;
+                code = oldCode;
+            }
+            while (code > clearCode) {
+                stack[top++] = suffix[code];
+                code = prefix[code];
+            }
+            first = suffix[code] & 0xFF;
+            stack[top++] = (byte) first;
+
+            // A full table stays as it is until the encoder sends a clear code
+            if (available < MAX_CODES) {
+                prefix[available] = (short) oldCode;
+                suffix[available] = (byte) first;
+                available++;
+                if (available == (1 << codeSize) && codeSize < 12) {
+                    codeSize++;
+                }
+            }
+            oldCode = inCode;
+
+            while (top > 0 && written < pixelCount) {
+                pixels[written++] = stack[--top];
+            }
+        }
+        return pixels;
+    }
+
+    // Next code from the sub-block stream, or -1 once the data ends
+    private int readCode(int codeSize) {
+        while (bitCount < codeSize) {
+            if (blockRemaining == 0) {
+                blockRemaining = data[pos++] & 0xFF;
+                if (blockRemaining == 0) {
+                    pos--; // Stay on the terminator
+                    return -1;
+                }
+            }
+            bitBuffer |= (data[pos++] & 0xFF) << bitCount;
+            bitCount += 8;
+            blockRemaining--;
+        }
+        int code = bitBuffer & ((1 << codeSize) - 1);
+        bitBuffer >>>= codeSize;
+        bitCount -= codeSize;
+        return code;
+    }
+}
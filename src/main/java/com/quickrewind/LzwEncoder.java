@@ -0,0 +1,331 @@
+package com.quickrewind;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * GIF flavoured LZW compressor (variable code size, 12 bit maximum, clear code on a full table).
+ * Output is the image data part of a GIF frame: minimum code size byte, data sub-blocks
+ * and the zero length terminator.
+ * <p>
+ * The lossy variant (like gifsicle's --lossy) extends a match with a pixel whose palette color is
+ * within a maximum error of the real one when the dictionary has no exact continuation, taking the
+ * branch that matches furthest ahead, so codes get longer at the cost of slight noise. Any decoder
+ * reads the result as a normal GIF.
+ */
+public class LzwEncoder {
+    private static final int MAX_BITS = 12;
+    private static final int MAX_MAX_CODE = 1 << MAX_BITS;
+    private static final int HASH_SIZE = 5003; // 80% occupancy for 4096 codes
+    private static final int HASH_SHIFT = 4;
+    private static final int LOOKAHEAD = 16; // Pixels followed down each close enough branch
+
+    private final int[] hashKeys = new int[HASH_SIZE];
+    private final int[] hashCodes = new int[HASH_SIZE];
+    private int[] suffixes; // Lossy mode: last pixel of each code and its children as linked lists
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] red;
+    private int[] green;
+    private int[] blue;
+    private byte[] lossyPixels;
+    private byte[] lossyBackground;
+    private int transparentIndex;
+    private int maxErrorSquared;
+    private final ByteArrayOutputStream out;
+    private final byte[] block = new byte[256];
+    private int blockLength;
+
+    private int initBits;
+    private int bits;
+    private int maxCode;
+    private int clearCode;
+    private int endCode;
+    private int freeCode;
+    private boolean clearFlag;
+    private int bitBuffer;
+    private int bitCount;
+
+    private LzwEncoder(int expectedSize) {
+        this.out = new ByteArrayOutputStream(Math.max(64, expectedSize));
+    }
+
+    public static byte[] encode(byte[] pixels, int minCodeSize) {
+        return encode(pixels, 0, pixels.length, minCodeSize);
+    }
+
+    public static byte[] encode(byte[] pixels, int offset, int length, int minCodeSize) {
+        LzwEncoder encoder = new LzwEncoder(length / 4);
+        encoder.compress(pixels, offset, length, minCodeSize);
+        return encoder.out.toByteArray();
+    }
+
+    /**
+     * Lossy compression: a pixel may be stored as a palette color at most maxError away
+     * (Euclidean distance in RGB, 0-441). In a delta frame, background holds the pixels already
+     * on screen, so a transparent pixel stands for the background color and can replace, or be
+     * replaced by, a close enough color; without a background transparent only matches exactly.
+     * pixels is overwritten with the values actually stored. A maxError of 0 gives the same
+     * output as {@link #encode(byte[], int)}.
+     */
+    public static byte[] encodeLossy(byte[] pixels, byte[] background, int minCodeSize, Palette palette, int maxError) {
+        if (maxError <= 0) {
+            return encode(pixels, minCodeSize);
+        }
+        LzwEncoder encoder = new LzwEncoder(pixels.length / 6);
+        encoder.compressLossy(pixels, background, minCodeSize, palette, maxError * maxError);
+        return encoder.out.toByteArray();
+    }
+
+    private void compress(byte[] pixels, int offset, int length, int minCodeSize) {
+        out.write(minCodeSize);
+
+        initBits = minCodeSize + 1;
+        bits = initBits;
+        maxCode = (1 << bits) - 1;
+        clearCode = 1 << minCodeSize;
+        endCode = clearCode + 1;
+        freeCode = clearCode + 2;
+        clearFlag = false;
+        Arrays.fill(hashKeys, -1);
+
+        output(clearCode);
+
+        if (length > 0) {
+            int prefix = pixels[offset] & 0xFF;
+            for (int p = offset + 1; p < offset + length; p++) {
+                int c = pixels[p] & 0xFF;
+                int key = (c << MAX_BITS) + prefix;
+                int i = (c << HASH_SHIFT) ^ prefix;
+
+                if (hashKeys[i] == key) {
+                    prefix = hashCodes[i];
+                    continue;
+                }
+                if (hashKeys[i] >= 0) {
+                    // Secondary probe
+                    int displacement = i == 0 ? 1 : HASH_SIZE - i;
+                    boolean found = false;
+                    do {
+                        i -= displacement;
+                        if (i < 0) i += HASH_SIZE;
+                        if (hashKeys[i] == key) {
+                            found = true;
+                            break;
+                        }
+                    } while (hashKeys[i] >= 0);
+                    if (found) {
+                        prefix = hashCodes[i];
+                        continue;
+                    }
+                }
+
+                output(prefix);
+                prefix = c;
+                if (freeCode < MAX_MAX_CODE) {
+                    hashCodes[i] = freeCode++;
+                    hashKeys[i] = key;
+                } else {
+                    // Table full: start over
+                    Arrays.fill(hashKeys, -1);
+                    freeCode = clearCode + 2;
+                    clearFlag = true;
+                    output(clearCode);
+                }
+            }
+            output(prefix);
+        }
+
+        output(endCode);
+        flushBlock();
+        out.write(0); // Block terminator
+    }
+
+    private void compressLossy(byte[] pixels, byte[] background, int minCodeSize, Palette palette, int maxErrorSquared) {
+        out.write(minCodeSize);
+
+        initBits = minCodeSize + 1;
+        bits = initBits;
+        maxCode = (1 << bits) - 1;
+        clearCode = 1 << minCodeSize;
+        endCode = clearCode + 1;
+        freeCode = clearCode + 2;
+        clearFlag = false;
+        Arrays.fill(hashKeys, -1);
+        suffixes = new int[MAX_MAX_CODE];
+        firstChild = new int[MAX_MAX_CODE];
+        nextSibling = new int[MAX_MAX_CODE];
+        Arrays.fill(firstChild, -1);
+
+        // Colors as separate channels; unused table entries never match approximately
+        int colors = palette.size();
+        red = new int[colors];
+        green = new int[colors];
+        blue = new int[colors];
+        for (int i = 0; i < colors; i++) {
+            int rgb = palette.getRGB(i);
+            red[i] = (rgb >> 16) & 0xFF;
+            green[i] = (rgb >> 8) & 0xFF;
+            blue[i] = rgb & 0xFF;
+        }
+        lossyPixels = pixels;
+        lossyBackground = background;
+        transparentIndex = palette.transparentIndex();
+        this.maxErrorSquared = maxErrorSquared;
+
+        output(clearCode);
+
+        if (pixels.length > 0) {
+            int prefix = pixels[0] & 0xFF;
+            for (int p = 1; p < pixels.length; p++) {
+                int c = pixels[p] & 0xFF;
+                int key = (c << MAX_BITS) + prefix;
+                int i = (c << HASH_SHIFT) ^ prefix;
+
+                if (hashKeys[i] == key) {
+                    prefix = hashCodes[i];
+                    continue;
+                }
+                if (hashKeys[i] >= 0) {
+                    // Secondary probe
+                    int displacement = i == 0 ? 1 : HASH_SIZE - i;
+                    boolean found = false;
+                    do {
+                        i -= displacement;
+                        if (i < 0) i += HASH_SIZE;
+                        if (hashKeys[i] == key) {
+                            found = true;
+                            break;
+                        }
+                    } while (hashKeys[i] >= 0);
+                    if (found) {
+                        prefix = hashCodes[i];
+                        continue;
+                    }
+                }
+
+                // No exact continuation: take the close enough one that matches furthest ahead
+                int best = -1;
+                int bestLength = 0;
+                for (int child = firstChild[prefix]; child >= 0; child = nextSibling[child]) {
+                    if (!isClose(suffixes[child], p)) continue;
+                    int length = 1 + matchLength(child, p + 1, LOOKAHEAD);
+                    if (length > bestLength) {
+                        best = child;
+                        bestLength = length;
+                    }
+                }
+                if (best >= 0) {
+                    pixels[p] = (byte) suffixes[best];
+                    prefix = best;
+                    continue;
+                }
+
+                output(prefix);
+                if (freeCode < MAX_MAX_CODE) {
+                    int code = freeCode++;
+                    hashCodes[i] = code;
+                    hashKeys[i] = key;
+                    suffixes[code] = c;
+                    nextSibling[code] = firstChild[prefix];
+                    firstChild[prefix] = code;
+                } else {
+                    // Table full: start over
+                    Arrays.fill(hashKeys, -1);
+                    Arrays.fill(firstChild, -1);
+                    freeCode = clearCode + 2;
+                    clearFlag = true;
+                    output(clearCode);
+                }
+                prefix = c;
+            }
+            output(prefix);
+        }
+
+        output(endCode);
+        flushBlock();
+        out.write(0); // Block terminator
+    }
+
+    private boolean isClose(int stored, int p) {
+        int actual = lossyPixels[p] & 0xFF;
+        if (stored == actual) return true;
+        if (lossyBackground != null) {
+            if (actual == transparentIndex) actual = lossyBackground[p] & 0xFF;
+            if (stored == transparentIndex) stored = lossyBackground[p] & 0xFF;
+        }
+        if (actual >= red.length || stored >= red.length) return false;
+        int dr = red[stored] - red[actual];
+        int dg = green[stored] - green[actual];
+        int db = blue[stored] - blue[actual];
+        return dr * dr + dg * dg + db * db <= maxErrorSquared;
+    }
+
+    // How many of the following pixels the dictionary can continue code with, exact matches first
+    private int matchLength(int code, int p, int limit) {
+        int length = 0;
+        while (length < limit && p < lossyPixels.length) {
+            int actual = lossyPixels[p] & 0xFF;
+            int next = -1;
+            for (int child = firstChild[code]; child >= 0; child = nextSibling[child]) {
+                if (suffixes[child] == actual) {
+                    next = child;
+                    break;
+                }
+                if (next < 0 && isClose(suffixes[child], p)) {
+                    next = child;
+                }
+            }
+            if (next < 0) break;
+            code = next;
+            length++;
+            p++;
+        }
+        return length;
+    }
+
+    private void output(int code) {
+        bitBuffer |= code << bitCount;
+        bitCount += bits;
+        while (bitCount >= 8) {
+            writeByte(bitBuffer & 0xFF);
+            bitBuffer >>>= 8;
+            bitCount -= 8;
+        }
+
+        // Grow the code size once the next free code no longer fits, or reset it after a clear
+        if (freeCode > maxCode || clearFlag) {
+            if (clearFlag) {
+                bits = initBits;
+                maxCode = (1 << bits) - 1;
+                clearFlag = false;
+            } else {
+                bits++;
+                maxCode = bits == MAX_BITS ? MAX_MAX_CODE : (1 << bits) - 1;
+            }
+        }
+
+        if (code == endCode) {
+            while (bitCount > 0) {
+                writeByte(bitBuffer & 0xFF);
+                bitBuffer >>>= 8;
+                bitCount = Math.max(0, bitCount - 8);
+            }
+        }
+    }
+
+    private void writeByte(int b) {
+        block[blockLength++] = (byte) b;
+        if (blockLength == 255) {
+            flushBlock();
+        }
+    }
+
+    private void flushBlock() {
+        if (blockLength > 0) {
+            out.write(blockLength);
+            out.write(block, 0, blockLength);
+            blockLength = 0;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.quickrewind;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Degrades capture step by step instead of letting the heap run out. Heap occupancy after
+ * garbage collection comes from GC notifications and from usage threshold notifications of the
+ * heap pools, with a periodic check as a fallback. Above 75% the governor steps down one level of
+ * the ladder (at most every 2 seconds, or every half second above 90%); after 30 seconds below
+ * 50% it steps back up one level. Every transition is logged and counted in the metrics.
+ */
+public class MemoryGovernor {
+    private static final double HIGH_OCCUPANCY = 0.75;
+    private static final double CRITICAL_OCCUPANCY = 0.90;
+    private static final double LOW_OCCUPANCY = 0.50;
+    private static final long STEP_DOWN_COOLDOWN_MS = 2000;
+    private static final long CRITICAL_COOLDOWN_MS = 500;
+    private static final long RECOVERY_MS = 30_000;
+    private static final long CHECK_INTERVAL_MS = 2000;
+    private static final long COMPRESS_AFTER_MS = 3000; // The newest frames stay raw, they are still being compared and scaled
+
+    // Each level includes the ones before it
+    public static final int LEVEL_NORMAL = 0;
+    public static final int LEVEL_COMPRESS = 1;
+    public static final int LEVEL_LOWER_FPS = 2;
+    public static final int LEVEL_LOWER_SCALE = 3;
+    public static final int LEVEL_SHORTER_BUFFER = 4;
+    private static final String[] LEVEL_NAMES = {
+        "normal", "compress older frames", "half frame rate", "half capture scale", "half buffer length"
+    };
+
+    private final ScreenCapture capture;
+    private final Set<String> heapPoolNames = new HashSet<>();
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener listener = this::onNotification;
+    private final long maxHeap = Runtime.getRuntime().maxMemory();
+    private ScheduledExecutorService checker;
+    private int level = LEVEL_NORMAL;
+    private long lastChange;
+    private long lowSince;
+
+    public MemoryGovernor(ScreenCapture capture) {
+        this.capture = capture;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+                heapPoolNames.add(pool.getName());
+            }
+        }
+    }
+
+    public void start() {
+        // Ready before the listeners, which can fire as soon as they are added and hand work to the checker
+        checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "memory-governor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        Metrics.set("memory.level", level);
+
+        // Threshold notifications fire once per crossing; GC notifications keep reporting a heap that stays full
+        for (MemoryPoolMXBean pool : heapPools) {
+            long max = pool.getUsage().getMax();
+            if (max <= 0) continue;
+            if (pool.isCollectionUsageThresholdSupported()) {
+                pool.setCollectionUsageThreshold((long) (max * HIGH_OCCUPANCY));
+            }
+            if (pool.isUsageThresholdSupported()) {
+                pool.setUsageThreshold((long) (max * CRITICAL_OCCUPANCY));
+            }
+        }
+        addListener(ManagementFactory.getMemoryMXBean());
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            addListener(bean);
+        }
+
+        checker.scheduleWithFixedDelay(this::check, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (Exception e) {
+                // Already removed
+            }
+        }
+        emitters.clear();
+        if (checker != null) {
+            checker.shutdownNow();
+        }
+    }
+
+    public synchronized int getLevel() {
+        return level;
+    }
+
+    public static String describe(int level) {
+        return LEVEL_NAMES[level];
+    }
+
+    private void addListener(Object bean) {
+        if (bean instanceof NotificationEmitter) {
+            NotificationEmitter emitter = (NotificationEmitter) bean;
+            emitter.addNotificationListener(listener, null, null);
+            emitters.add(emitter);
+        }
+    }
+
+    private void onNotification(Notification notification, Object handback) {
+        String type = notification.getType();
+        if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(type)) {
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from(
+                    (CompositeData) notification.getUserData());
+            evaluate(heapUsed(info.getGcInfo().getMemoryUsageAfterGc()), "after " + info.getGcName(), true);
+        } else if (MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED.equals(type)
+                || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+            MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+            Metrics.add("memory.thresholdNotifications", 1);
+            evaluate(heapUsedAfterLastGc(), info.getPoolName() + " threshold exceeded", true);
+        }
+    }
+
+    // Periodic fallback for steps back up (a quiet heap sees few collections) and the frame compression.
+    // The figures are from the last collection and may be stale, so they never cause a step down.
+    private void check() {
+        try {
+            evaluate(heapUsedAfterLastGc(), "periodic check", false);
+            if (getLevel() >= LEVEL_COMPRESS) {
+                compressOlderFrames();
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Memory governor check failed: " + e.getMessage());
+        }
+    }
+
+    private synchronized void evaluate(long usedBytes, String source, boolean mayStepDown) {
+        double occupancy = (double) usedBytes / maxHeap;
+        long now = System.currentTimeMillis();
+        Metrics.set("memory.heapAfterGc.percent", Math.round(occupancy * 100));
+
+        long sinceChange = now - lastChange;
+        boolean critical = occupancy >= CRITICAL_OCCUPANCY && sinceChange >= CRITICAL_COOLDOWN_MS;
+        boolean high = occupancy >= HIGH_OCCUPANCY && sinceChange >= STEP_DOWN_COOLDOWN_MS;
+        if (occupancy >= HIGH_OCCUPANCY) {
+            lowSince = 0;
+            if (mayStepDown && (critical || high) && level < LEVEL_SHORTER_BUFFER) {
+                changeLevel(level + 1, occupancy, source, now);
+            }
+        } else if (occupancy < LOW_OCCUPANCY) {
+            if (lowSince == 0) {
+                lowSince = now;
+            }
+            if (level > LEVEL_NORMAL && now - lowSince >= RECOVERY_MS && sinceChange >= RECOVERY_MS) {
+                changeLevel(level - 1, occupancy, source, now);
+            }
+        } else {
+            lowSince = 0;
+        }
+    }
+
+    private void changeLevel(int newLevel, double occupancy, String source, long now) {
+        boolean down = newLevel > level;
+        level = newLevel;
+        lastChange = now;
+        capture.setDegradation(newLevel >= LEVEL_LOWER_FPS ? 0.5 : 1.0,
+                newLevel >= LEVEL_LOWER_SCALE ? 0.5 : 1.0,
+                newLevel >= LEVEL_SHORTER_BUFFER ? 0.5 : 1.0);
+
+        Metrics.set("memory.level", newLevel);
+        Metrics.add("memory.transitions", 1);
+        Metrics.add(down ? "memory.stepDowns" : "memory.stepUps", 1);
+        System.out.println(String.format("Memory %s: heap %d%% after GC (%s), %s to level %d (%s)",
+                down ? "pressure" : "pressure eased", Math.round(occupancy * 100), source,
+                down ? "stepping down" : "stepping up", newLevel, LEVEL_NAMES[newLevel]));
+
+        if (down && newLevel == LEVEL_COMPRESS) {
+            checker.execute(this::compressOlderFrames);
+        }
+    }
+
+    private void compressOlderFrames() {
+        long start = System.nanoTime();
+        long saved = capture.compressFramesOlderThan(System.currentTimeMillis() - COMPRESS_AFTER_MS);
+        if (saved > 0) {
+            Metrics.add("memory.compressed.bytes", saved);
+            Metrics.set("memory.compress.ms", (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    private long heapUsed(Map<String, MemoryUsage> usage) {
+        long total = 0;
+        for (Map.Entry<String, MemoryUsage> entry : usage.entrySet()) {
+            if (heapPoolNames.contains(entry.getKey())) {
+                total += entry.getValue().getUsed();
+            }
+        }
+        return total;
+    }
+
+    private long heapUsedAfterLastGc() {
+        long total = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            total += usage != null ? usage.getUsed() : pool.getUsage().getUsed();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,36 @@
+package com.quickrewind;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide named counters and gauges. Names are dotted, e.g. "startup.firstFrame.ms".
+ */
+public final class Metrics {
+    private static final Map<String, AtomicLong> values = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    public static void set(String name, long value) {
+        values.computeIfAbsent(name, key -> new AtomicLong()).set(value);
+    }
+
+    public static void add(String name, long delta) {
+        values.computeIfAbsent(name, key -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public static long get(String name) {
+        AtomicLong value = values.get(name);
+        return value != null ? value.get() : 0;
+    }
+
+    // Sorted copy of all current values
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> copy = new TreeMap<>();
+        values.forEach((name, value) -> copy.put(name, value.get()));
+        return copy;
+    }
+}
@@ -0,0 +1,435 @@
+package com.quickrewind;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Writes frames as a Motion JPEG AVI, which keeps full color and encodes far faster than a GIF.
+ * Files past 1 GB continue in OpenDML (AVI 2.0) AVIX segments with their own indexes, so long
+ * full-color recordings stay playable; the first segment is a complete AVI 1.0 file for old readers.
+ * Frames are JPEG-compressed in parallel on the export pool, each with a reused ImageIO writer, and
+ * streamed to disk in order; the idx1 index and the sizes in the headers are written at the end.
+ * The stream runs at the rate of the shortest frame delay (at most 50 FPS), and a longer frame is
+ * followed by empty chunks, which players show as repeats of the previous frame, so playback
+ * keeps the recorded timing.
+ */
+public class MjpegAviEncoder {
+    public static final float DEFAULT_QUALITY = 0.85f;
+    private static final int MIN_TICK_MS = 20;
+    private static final int AVIF_HASINDEX = 0x10;
+    private static final int AVIIF_KEYFRAME = 0x10;
+    private static final byte AVI_INDEX_OF_INDEXES = 0;
+    private static final byte AVI_INDEX_OF_CHUNKS = 1;
+    private static final int SUPER_INDEX_ENTRIES = 128; // RIFFs an AVI can have, 128 GB at the segment size below
+    // Every RIFF stays within the 1 GB AVI 1.0 readers accept; offsets in a RIFF never pass 32 bits
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+    private static final int STRL_BYTES = 4 + 64 + 48 + 32 + SUPER_INDEX_ENTRIES * 16;
+    private static final int ODML_BYTES = 4 + 8 + 248;
+    private static final int HDRL_BYTES = 4 + 64 + 8 + STRL_BYTES + 8 + ODML_BYTES;
+    private static final int HEADER_BYTES = 12 + 8 + HDRL_BYTES + 12;
+
+    public static void encodeAvi(List<BufferedImage> frames, File outputFile, int[] delaysMs) throws IOException {
+        encodeAvi(frames, outputFile, delaysMs, DEFAULT_QUALITY, EncodeProgress.NONE);
+    }
+
+    public static void encodeAvi(List<BufferedImage> frames, File outputFile, int[] delaysMs, float quality,
+                                 EncodeProgress progress) throws IOException {
+        encodeAvi(FrameStream.of(frames, delaysMs), outputFile, quality, progress);
+    }
+
+    // Frames are pulled from the stream by the JPEG workers, at most the compression window ahead of the writer
+    public static void encodeAvi(FrameStream frames, File outputFile, float quality,
+                                 EncodeProgress progress) throws IOException {
+        if (frames.isEmpty()) {
+            throw new IllegalArgumentException("No frames to encode");
+        }
+        long startNanos = System.nanoTime();
+
+        // Frame timing in ticks of the shortest delay; rounding errors do not add up over a long recording
+        int[] delaysMs = frames.getDelays();
+        int shortest = Integer.MAX_VALUE;
+        for (int delay : delaysMs) {
+            shortest = Math.min(shortest, delay);
+        }
+        int tickMs = Math.max(MIN_TICK_MS, shortest);
+        int[] ticks = new int[frames.size()];
+        long elapsedMs = 0;
+        int totalTicks = 0;
+        for (int i = 0; i < ticks.length; i++) {
+            elapsedMs += delaysMs[i];
+            int end = Math.max(totalTicks + 1, (int) Math.round((double) elapsedMs / tickMs));
+            ticks[i] = end - totalTicks;
+            totalTicks = end;
+        }
+
+        // Active window captures can change size mid-recording, so every frame is fitted to the first frame's size
+        BufferedImage firstFrame = frames.getFrame(0);
+        int width = firstFrame.getWidth();
+        int height = firstFrame.getHeight();
+
+        // JPEG work runs on the shared export pool, so exports of several displays at once stay within its bound
+        int workers = ExportPipeline.parallelism();
+        int window = workers * 2; // Frames compressed ahead of the writer, bounds the memory in flight
+        Compressors compressors = new Compressors(quality);
+
+        System.out.println("Creating AVI with " + frames.size() + " frames (" + totalTicks + " at "
+            + String.format("%.1f", 1000.0 / tickMs) + " FPS) using " + workers + " JPEG workers...");
+
+        Queue<Future<byte[]>> pending = new ArrayDeque<>();
+        try (BlockFileWriter out = new BlockFileWriter(outputFile)) {
+            out.write(new byte[HEADER_BYTES]); // Written once the sizes are known
+            Movi movi = new Movi(out);
+            int submitted = 0;
+            int written = 0;
+            while (written < frames.size()) {
+                if (progress.isCancelled()) {
+                    throw new CancellationException("AVI encoding cancelled");
+                }
+                while (submitted < frames.size() && pending.size() < window) {
+                    int frameIndex = submitted++;
+                    FutureTask<byte[]> task = new FutureTask<>(() -> compressors.compress(
+                            frames.getFrame(frameIndex), width, height));
+                    ExportPipeline.parallelExecutor().execute(task);
+                    pending.add(task);
+                }
+
+                byte[] jpeg = await(pending.remove());
+                movi.writeChunk(jpeg, true);
+                for (int repeat = 1; repeat < ticks[written]; repeat++) {
+                    movi.writeChunk(new byte[0], false);
+                }
+                written++;
+                progress.onProgress(written, frames.size());
+            }
+            movi.finish();
+
+            out.writeAt(0, header(width, height, tickMs, totalTicks, movi));
+            if (movi.superIndex.size() > 1) {
+                System.out.println("AVI is over " + formatFileSize(MAX_SEGMENT_BYTES) + ", written as "
+                    + movi.superIndex.size() + " OpenDML segments");
+            }
+            out.commit();
+
+            long encodeMs = (System.nanoTime() - startNanos) / 1_000_000;
+            System.out.println("AVI created successfully: " + formatFileSize(out.getBytesWritten()) + ", "
+                + written + " frames in " + encodeMs + " ms");
+        } finally {
+            // Frames not started yet are dropped; a worker still compressing disposes its writer when done
+            for (Future<byte[]> task : pending) {
+                task.cancel(false);
+            }
+            compressors.close();
+        }
+    }
+
+    private static byte[] await(Future<byte[]> jpeg) throws IOException {
+        try {
+            return jpeg.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("AVI encoding interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    // RIFF header, hdrl list with the main, stream and OpenDML headers, and the start of the first movi list
+    private static byte[] header(int width, int height, int tickMs, int totalTicks, Movi movi) {
+        int largestChunk = movi.largestChunk;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(fourCC("RIFF")).putInt((int) movi.firstRiffBytes).put(fourCC("AVI "));
+        header.put(fourCC("LIST")).putInt(HDRL_BYTES).put(fourCC("hdrl"));
+
+        // avih: main AVI header; AVI 1.0 readers only see the frames of the first RIFF
+        header.put(fourCC("avih")).putInt(56);
+        header.putInt(tickMs * 1000);
+        header.putInt((int) Math.min(Integer.MAX_VALUE, (long) largestChunk * 1000 / tickMs));
+        header.putInt(0); // Padding granularity
+        header.putInt(AVIF_HASINDEX);
+        header.putInt(movi.firstTicks);
+        header.putInt(0); // Initial frames
+        header.putInt(1); // Streams
+        header.putInt(largestChunk + 8);
+        header.putInt(width).putInt(height);
+        header.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        // strh and strf: one video stream
+        header.put(fourCC("LIST")).putInt(STRL_BYTES).put(fourCC("strl"));
+        header.put(fourCC("strh")).putInt(56);
+        header.put(fourCC("vids")).put(fourCC("MJPG"));
+        header.putInt(0); // Flags
+        header.putShort((short) 0).putShort((short) 0); // Priority, language
+        header.putInt(0); // Initial frames
+        header.putInt(tickMs).putInt(1000); // Scale and rate: tickMs / 1000 seconds per frame
+        header.putInt(0); // Start
+        header.putInt(totalTicks);
+        header.putInt(largestChunk + 8);
+        header.putInt(-1); // Default quality
+        header.putInt(0); // Sample size varies
+        header.putShort((short) 0).putShort((short) 0).putShort((short) width).putShort((short) height);
+
+        header.put(fourCC("strf")).putInt(40);
+        header.putInt(40); // BITMAPINFOHEADER size
+        header.putInt(width).putInt(height);
+        header.putShort((short) 1).putShort((short) 24); // Planes, bits per pixel
+        header.put(fourCC("MJPG"));
+        header.putInt(width * height * 3);
+        header.putInt(0).putInt(0).putInt(0).putInt(0);
+
+        // indx: OpenDML super index, one entry per RIFF with the offset of its standard index
+        header.put(fourCC("indx")).putInt(24 + SUPER_INDEX_ENTRIES * 16);
+        header.putShort((short) 4).put((byte) 0).put(AVI_INDEX_OF_INDEXES);
+        header.putInt(movi.superIndex.size());
+        header.put(fourCC("00dc")).putInt(0).putInt(0).putInt(0);
+        for (long[] entry : movi.superIndex) {
+            header.putLong(entry[0]).putInt((int) entry[1]).putInt((int) entry[2]);
+        }
+        header.position(header.position() + (SUPER_INDEX_ENTRIES - movi.superIndex.size()) * 16);
+
+        // dmlh: the frames of all RIFFs
+        header.put(fourCC("LIST")).putInt(ODML_BYTES).put(fourCC("odml"));
+        header.put(fourCC("dmlh")).putInt(248).putInt(totalTicks);
+        header.position(header.position() + 244);
+
+        header.put(fourCC("LIST")).putInt((int) movi.firstMoviBytes).put(fourCC("movi"));
+        return header.array();
+    }
+
+    private static byte[] chunkHeader(String id, int length) {
+        return ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).put(fourCC(id)).putInt(length).array();
+    }
+
+    private static byte[] fourCC(String id) {
+        return id.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static String formatFileSize(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    /**
+     * The movi lists of the file: video chunks with an idx1 entry in the first RIFF and a standard
+     * index (ix00) entry in every RIFF. A chunk that would take a RIFF past the segment size starts
+     * a new AVIX RIFF; the sizes of a finished AVIX are written in place, those of the first RIFF
+     * go into the header at the end.
+     */
+    private static final class Movi {
+        private final BlockFileWriter out;
+        private final ByteArrayOutputStream idx1 = new ByteArrayOutputStream(64 * 1024);
+        private final ByteArrayOutputStream chunkIndex = new ByteArrayOutputStream(32 * 1024);
+        final List<long[]> superIndex = new ArrayList<>(); // Index offset, index size, ticks
+        private long riffStart;
+        private long moviStart; // The movi LIST chunk; standard index offsets count from here
+        private int chunks;
+        private int ticks;
+        int largestChunk;
+        int firstTicks;
+        long firstMoviBytes;
+        long firstRiffBytes;
+
+        Movi(BlockFileWriter out) {
+            this.out = out;
+            this.riffStart = 0;
+            this.moviStart = out.getBytesWritten() - 12;
+        }
+
+        void writeChunk(byte[] jpeg, boolean keyframe) throws IOException {
+            int padding = jpeg.length & 1;
+            long indexBytes = 32 + 8L * (chunks + 1) + (superIndex.isEmpty() ? 8 + 16L * (chunks + 1) : 0);
+            if (chunks > 0 && out.getBytesWritten() + 8 + jpeg.length + padding + indexBytes - riffStart
+                    > MAX_SEGMENT_BYTES) {
+                finishSegment();
+                startSegment();
+            }
+
+            long chunkStart = out.getBytesWritten();
+            out.write(chunkHeader("00dc", jpeg.length));
+            if (jpeg.length > 0) {
+                out.write(jpeg);
+            }
+            if (padding > 0) {
+                out.write(new byte[1]);
+            }
+
+            if (superIndex.isEmpty()) {
+                // idx1 offsets count from the "movi" FourCC
+                ByteBuffer entry = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+                entry.put(fourCC("00dc")).putInt(keyframe ? AVIIF_KEYFRAME : 0)
+                        .putInt((int) (chunkStart - moviStart - 8)).putInt(jpeg.length);
+                idx1.write(entry.array(), 0, 16);
+            }
+            // Standard index entries point at the chunk data; the top bit marks a frame that is not a keyframe
+            ByteBuffer entry = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            entry.putInt((int) (chunkStart + 8 - moviStart)).putInt(jpeg.length | (keyframe ? 0 : 0x80000000));
+            chunkIndex.write(entry.array(), 0, 8);
+
+            largestChunk = Math.max(largestChunk, jpeg.length);
+            chunks++;
+            ticks++;
+        }
+
+        void finish() throws IOException {
+            finishSegment();
+        }
+
+        private void finishSegment() throws IOException {
+            if (superIndex.size() == SUPER_INDEX_ENTRIES) {
+                throw new IOException("AVI is larger than " + SUPER_INDEX_ENTRIES + " segments");
+            }
+
+            // The standard index closes the movi list
+            long indexStart = out.getBytesWritten();
+            byte[] entries = chunkIndex.toByteArray();
+            ByteBuffer index = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+            index.put(fourCC("ix00")).putInt(24 + entries.length);
+            index.putShort((short) 2).put((byte) 0).put(AVI_INDEX_OF_CHUNKS);
+            index.putInt(chunks).put(fourCC("00dc")).putLong(moviStart).putInt(0);
+            out.write(index.array());
+            out.write(entries);
+            superIndex.add(new long[] {indexStart, 32 + entries.length, ticks});
+            long moviBytes = out.getBytesWritten() - moviStart - 8;
+
+            if (superIndex.size() == 1) {
+                byte[] legacyIndex = idx1.toByteArray();
+                out.write(chunkHeader("idx1", legacyIndex.length));
+                out.write(legacyIndex);
+                firstTicks = ticks;
+                firstMoviBytes = moviBytes;
+                firstRiffBytes = out.getBytesWritten() - 8;
+            } else {
+                out.writeAt(riffStart + 4, littleEndian((int) (out.getBytesWritten() - riffStart - 8)));
+                out.writeAt(moviStart + 4, littleEndian((int) moviBytes));
+            }
+        }
+
+        private void startSegment() throws IOException {
+            riffStart = out.getBytesWritten();
+            moviStart = riffStart + 12;
+            ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            header.put(fourCC("RIFF")).putInt(0).put(fourCC("AVIX"));
+            header.put(fourCC("LIST")).putInt(0).put(fourCC("movi"));
+            out.write(header.array());
+            chunkIndex.reset();
+            chunks = 0;
+            ticks = 0;
+        }
+    }
+
+    private static byte[] littleEndian(int value) {
+        return ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    }
+
+    /**
+     * The JPEG writers of one export. Each frame takes an idle writer or creates one, so there are
+     * never more writers than frames compressed at once.
+     */
+    private static final class Compressors {
+        private final float quality;
+        private final Deque<JpegCompressor> idle = new ArrayDeque<>();
+        private boolean closed;
+
+        Compressors(float quality) {
+            this.quality = quality;
+        }
+
+        byte[] compress(BufferedImage frame, int width, int height) throws IOException {
+            JpegCompressor compressor = take();
+            try {
+                return compressor.compress(frame, width, height);
+            } finally {
+                giveBack(compressor);
+            }
+        }
+
+        private synchronized JpegCompressor take() {
+            JpegCompressor compressor = idle.poll();
+            return compressor != null ? compressor : new JpegCompressor(quality);
+        }
+
+        private synchronized void giveBack(JpegCompressor compressor) {
+            if (closed) {
+                compressor.dispose();
+            } else {
+                idle.push(compressor);
+            }
+        }
+
+        synchronized void close() {
+            closed = true;
+            for (JpegCompressor compressor : idle) {
+                compressor.dispose();
+            }
+            idle.clear();
+        }
+    }
+
+    /**
+     * One ImageIO JPEG writer and its output buffer, reused for every frame a worker thread compresses.
+     */
+    private static final class JpegCompressor {
+        private final ImageWriter writer;
+        private final ImageWriteParam param;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256 * 1024);
+
+        JpegCompressor(float quality) {
+            writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+            param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+        }
+
+        byte[] compress(BufferedImage frame, int width, int height) throws IOException {
+            buffer.reset();
+            try (MemoryCacheImageOutputStream output = new MemoryCacheImageOutputStream(buffer)) {
+                writer.setOutput(output);
+                writer.write(null, new IIOImage(fit(frame, width, height), null, null), param);
+            }
+            return buffer.toByteArray();
+        }
+
+        // JPEG has no alpha, so anything but opaque RGB of the right size is redrawn
+        private static BufferedImage fit(BufferedImage frame, int width, int height) {
+            int type = frame.getType();
+            if (frame.getWidth() == width && frame.getHeight() == height
+                    && (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_3BYTE_BGR)) {
+                return frame;
+            }
+            BufferedImage fitted = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = fitted.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(frame, 0, 0, width, height, null);
+            g.dispose();
+            return fitted;
+        }
+
+        void dispose() {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.quickrewind;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+
+/**
+ * A GIF color table together with a lazily built 15-bit RGB to index lookup table.
+ * Palettes with fewer than 256 colors reserve the first unused slot as the
+ * transparent index used for delta frames.
+ */
+public class Palette {
+    private static final Palette DEFAULT = fromColorModel(
+            (IndexColorModel) new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_INDEXED).getColorModel(), 255);
+
+    private final IndexColorModel colorModel;
+    private final int[] rgb;
+    private volatile byte[] lookupTable;
+
+    public Palette(int[] rgb) {
+        this.rgb = new int[Math.max(1, rgb.length)];
+        for (int i = 0; i < rgb.length; i++) {
+            this.rgb[i] = rgb[i] & 0xFFFFFF;
+        }
+
+        // Only real colors go into the color model, so Java2D never maps a pixel onto the transparent slot
+        this.colorModel = new IndexColorModel(8, this.rgb.length, this.rgb, 0, false, -1, DataBuffer.TYPE_BYTE);
+    }
+
+    public static Palette fromColorModel(IndexColorModel colorModel, int maxColors) {
+        int[] rgb = new int[colorModel.getMapSize()];
+        colorModel.getRGBs(rgb);
+        return new Palette(Arrays.copyOf(rgb, Math.min(rgb.length, maxColors)));
+    }
+
+    // The fixed 6x6x6 color cube (plus grays) Java2D uses for TYPE_BYTE_INDEXED images
+    public static Palette defaultPalette() {
+        return DEFAULT;
+    }
+
+    public IndexColorModel getColorModel() {
+        return colorModel;
+    }
+
+    // Number of real colors
+    public int size() {
+        return rgb.length;
+    }
+
+    // Size of the GIF color table: a power of two with room for the transparent slot
+    public int tableSize() {
+        int size = 2;
+        while (size < Math.min(256, rgb.length + 1)) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    public int tableBits() {
+        return Integer.numberOfTrailingZeros(tableSize());
+    }
+
+    public int transparentIndex() {
+        return rgb.length < 256 ? rgb.length : -1;
+    }
+
+    public int getRGB(int index) {
+        return rgb[index];
+    }
+
+    // Squared Euclidean RGB distance between two colors of the palette
+    public int distanceSquared(int a, int b) {
+        int x = rgb[a];
+        int y = rgb[b];
+        int dr = ((x >> 16) & 0xFF) - ((y >> 16) & 0xFF);
+        int dg = ((x >> 8) & 0xFF) - ((y >> 8) & 0xFF);
+        int db = (x & 0xFF) - (y & 0xFF);
+        return dr * dr + dg * dg + db * db;
+    }
+
+    public int[] getRGBs() {
+        return rgb.clone();
+    }
+
+    // Color table bytes as written to the GIF, padded with black
+    public byte[] toColorTable() {
+        byte[] table = new byte[tableSize() * 3];
+        for (int i = 0; i < rgb.length; i++) {
+            table[i * 3] = (byte) (rgb[i] >> 16);
+            table[i * 3 + 1] = (byte) (rgb[i] >> 8);
+            table[i * 3 + 2] = (byte) rgb[i];
+        }
+        return table;
+    }
+
+    public byte[] getLookupTable() {
+        byte[] lut = lookupTable;
+        if (lut == null) {
+            lut = buildLookupTable();
+            lookupTable = lut;
+        }
+        return lut;
+    }
+
+    public int nearestIndex(int color) {
+        return getLookupTable()[key15(color)] & 0xFF;
+    }
+
+    public static int key15(int color) {
+        return ((color >> 9) & 0x7C00) | ((color >> 6) & 0x3E0) | ((color >> 3) & 0x1F);
+    }
+
+    private byte[] buildLookupTable() {
+        byte[] lut = new byte[32768];
+        for (int key = 0; key < lut.length; key++) {
+            // Center of the 5-bit bucket
+            int r = ((key >> 10) & 0x1F) << 3 | 4;
+            int g = ((key >> 5) & 0x1F) << 3 | 4;
+            int b = (key & 0x1F) << 3 | 4;
+
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < rgb.length; i++) {
+                int dr = ((rgb[i] >> 16) & 0xFF) - r;
+                int dg = ((rgb[i] >> 8) & 0xFF) - g;
+                int db = (rgb[i] & 0xFF) - b;
+                int distance = dr * dr * 2 + dg * dg * 4 + db * db * 3;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = i;
+                }
+            }
+            lut[key] = (byte) best;
+        }
+        return lut;
+    }
+}
@@ -0,0 +1,41 @@
+package com.quickrewind;
+
+/**
+ * Entry point for the per-pixel kernels (scaling, palette lookup, frame hashing and diffing,
+ * format conversion). This is the Java 11 version and always runs {@link ScalarKernels}.
+ * The multi-release jar carries a Java 17 version of this class (src/main/java17) that switches
+ * to Vector API implementations when started with --add-modules jdk.incubator.vector.
+ */
+public final class PixelKernels {
+
+    private PixelKernels() {
+    }
+
+    public static String implementation() {
+        return "scalar";
+    }
+
+    public static void scaleBilinear(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight) {
+        ScalarKernels.scaleBilinear(src, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+    }
+
+    public static void mapToIndices(int[] rgb, byte[] lut, byte[] indices, int count) {
+        ScalarKernels.mapToIndices(rgb, lut, indices, count);
+    }
+
+    public static long fingerprint(int[] pixels, int width, int height, int rowStep) {
+        return ScalarKernels.fingerprint(pixels, width, height, rowStep);
+    }
+
+    public static int firstDifference(byte[] a, byte[] b, int from, int to) {
+        return ScalarKernels.firstDifference(a, b, from, to);
+    }
+
+    public static int lastDifference(byte[] a, byte[] b, int from, int to) {
+        return ScalarKernels.lastDifference(a, b, from, to);
+    }
+
+    public static void bgrToRgb(byte[] bgr, int[] rgb, int pixelCount) {
+        ScalarKernels.bgrToRgb(bgr, rgb, pixelCount);
+    }
+}
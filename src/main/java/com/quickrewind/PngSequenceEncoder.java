@@ -2,13 +2,24 @@ package com.quickrewind;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class PngSequenceEncoder {
+    private static final int WRITES_IN_FLIGHT = 4; // Compressed frames waiting for the disk, bounds the memory held
     
     public static void encodePngSequence(List<BufferedImage> frames, File baseOutputFile) throws IOException {
+        encodePngSequence(untimed(frames), baseOutputFile);
+    }
+    
+    public static void encodePngSequence(FrameStream frames, File baseOutputFile) throws IOException {
         if (frames.isEmpty()) {
             throw new IllegalArgumentException("No frames to encode");
         }
@@ -21,53 +32,68 @@ public class PngSequenceEncoder {
         
         File parentDir = baseOutputFile.getParentFile();
         File sequenceDir = new File(parentDir, baseName + "_sequence");
-        sequenceDir.mkdirs();
+        File partialDir = ExportPipeline.partialFile(sequenceDir);
+        Files.createDirectories(partialDir.toPath());
         
         System.out.println("Creating PNG sequence with " + frames.size() + " frames in: " + sequenceDir.getAbsolutePath());
         
-        // Save each frame as PNG
-        for (int i = 0; i < frames.size(); i++) {
-            BufferedImage frame = frames.get(i);
-            File frameFile = new File(sequenceDir, String.format("frame_%03d.png", i));
-            ImageIO.write(frame, "png", frameFile);
-            
-            if (i % 10 == 0) {
-                System.out.println("Written frame " + (i + 1) + "/" + frames.size());
-            }
-        }
-        
-        // Create a summary text file
-        File summaryFile = new File(sequenceDir, "README.txt");
-        try (java.io.PrintWriter pw = new java.io.PrintWriter(summaryFile)) {
-            pw.println("QuickRewind Screen Capture Sequence");
-            pw.println("===================================");
-            pw.println("Total frames: " + frames.size());
-            pw.println("Capture time: ~" + (frames.size() * 0.5) + " seconds");
-            pw.println();
-            pw.println("To view:");
-            pw.println("- Open frames in any image viewer");
-            pw.println("- Use file navigation to step through frames");
-            pw.println("- Or import into video editing software");
-        }
-        
+        // Frames are compressed on this thread while the previous few are written out concurrently
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
         long totalSize = 0;
-        File[] files = sequenceDir.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                totalSize += file.length();
+        try {
+            for (int i = 0; i < frames.size(); i++) {
+                if (i >= WRITES_IN_FLIGHT) {
+                    ExportPipeline.await(writes.get(i - WRITES_IN_FLIGHT));
+                }
+                byte[] png = toPng(frames.getFrame(i));
+                totalSize += png.length;
+                writes.add(write(new File(partialDir, String.format("frame_%03d.png", i)), png));
+                
+                if (i % 10 == 0) {
+                    System.out.println("Written frame " + (i + 1) + "/" + frames.size());
+                }
             }
+            
+            // Create a summary text file
+            String summary = String.join(System.lineSeparator(),
+                "QuickRewind Screen Capture Sequence",
+                "===================================",
+                "Total frames: " + frames.size(),
+                "Capture time: ~" + String.format("%.1f", (frames.getEndTime() - frames.getTimestamp(0)) / 1000.0)
+                    + " seconds",
+                "",
+                "To view:",
+                "- Open frames in any image viewer",
+                "- Use file navigation to step through frames",
+                "- Or import into video editing software",
+                "");
+            byte[] summaryBytes = summary.getBytes(StandardCharsets.UTF_8);
+            totalSize += summaryBytes.length;
+            writes.add(write(new File(partialDir, "README.txt"), summaryBytes));
+            
+            ExportPipeline.await(CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])));
+            ExportPipeline.publish(partialDir, sequenceDir);
+        } catch (IOException | RuntimeException e) {
+            // Clean up once the writes still in flight are done
+            CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((done, error) -> ExportPipeline.discard(partialDir));
+            throw e;
         }
         
-        System.out.println("PNG sequence created: " + formatFileSize(totalSize) + " in " + files.length + " files");
+        System.out.println("PNG sequence created: " + formatFileSize(totalSize) + " in " + writes.size() + " files");
     }
     
     public static void encodeSinglePng(List<BufferedImage> frames, File outputFile) throws IOException {
+        encodeSinglePng(untimed(frames), outputFile);
+    }
+    
+    public static void encodeSinglePng(FrameStream frames, File outputFile) throws IOException {
         if (frames.isEmpty()) {
             throw new IllegalArgumentException("No frames to encode");
         }
         
-        // Just save the last frame as a single PNG
-        BufferedImage lastFrame = frames.get(frames.size() - 1);
+        // Just save the last frame as a single PNG; no other frame is produced
+        BufferedImage lastFrame = frames.getFrame(frames.size() - 1);
         
         // Change extension to .png
         String filename = outputFile.getName();
@@ -76,10 +102,36 @@ public class PngSequenceEncoder {
             outputFile = new File(outputFile.getParent(), filename);
         }
         
-        ImageIO.write(lastFrame, "png", outputFile);
+        byte[] png = toPng(lastFrame);
+        File target = outputFile;
+        ExportPipeline.await(ExportPipeline.io(() -> {
+            File partial = ExportPipeline.partialFile(target);
+            Files.write(partial.toPath(), png);
+            ExportPipeline.publish(partial, target);
+            return null;
+        }));
         
-        long fileSize = outputFile.length();
-        System.out.println("PNG screenshot saved: " + formatFileSize(fileSize));
+        System.out.println("PNG screenshot saved: " + formatFileSize(png.length));
+    }
+    
+    // Plain lists carry no timing, so they are taken as half a second per frame
+    private static FrameStream untimed(List<BufferedImage> frames) {
+        int[] delays = new int[frames.size()];
+        Arrays.fill(delays, 500);
+        return FrameStream.of(frames, delays);
+    }
+    
+    private static byte[] toPng(BufferedImage frame) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream(1 << 16);
+        ImageIO.write(frame, "png", png);
+        return png.toByteArray();
+    }
+    
+    private static CompletableFuture<Void> write(File file, byte[] data) {
+        return ExportPipeline.io(() -> {
+            Files.write(file.toPath(), data);
+            return null;
+        });
     }
     
     private static String formatFileSize(long bytes) {
@@ -1,30 +1,69 @@
 package com.quickrewind;
 
 import javax.swing.*;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.File;
+import java.net.URI;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class QuickRewind {
     private Config config;
     private ScreenCapture screenCapture;
     private SystemTrayManager trayManager;
-    private HotkeyManager hotkeyManager;
+    private volatile HotkeyManager hotkeyManager;
     private SimpleSettingsDialog settingsDialog;
+    private MemoryGovernor memoryGovernor;
+    private CaptureWatchdog captureWatchdog;
+    private final AtomicBoolean saveCancelled = new AtomicBoolean(false);
+    private final Map<File, URI> uploadedLinks = new ConcurrentHashMap<>();
     
     public QuickRewind() {
-  
-        try {
-            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception e) {
-            System.err.println("Failed to set system look and feel: " + e.getMessage());
-        }
+        // Capture starts first, on the launching thread, so the buffer fills while the UI is still being built
+        startCapture();
+        SwingUtilities.invokeLater(this::initializeUserInterface);
+    }
+    
+    private void startCapture() {
+        // Load configuration
+        config = Config.load();
+        StartupProfiler.phase("config");
         
+        // Initialize screen capture with current buffer and capture area settings
+        screenCapture = new ScreenCapture(config.getBufferSeconds(), CaptureRegion.fromConfig(config));
+        screenCapture.setFramesPerSecond(config.getBufferFPS());
+        screenCapture.setFoveated(config.isFoveatedCapture());
+        screenCapture.setActiveRecordingSettings(config.getActiveRecordingFPS(), config.getMaxRecordingMinutes());
+        screenCapture.startCapture();
+        memoryGovernor = new MemoryGovernor(screenCapture);
+        memoryGovernor.start();
+        captureWatchdog = new CaptureWatchdog(screenCapture, problem -> SwingUtilities.invokeLater(() -> {
+            if (trayManager != null) trayManager.updateCaptureHealth(problem);
+        }));
+        captureWatchdog.start();
+        StartupProfiler.phase("capture");
+        
+        if (screenCapture.getDisplays().isEmpty()) {
+            JOptionPane.showMessageDialog(null, 
+                "Failed to initialize screen capture: no display could be captured",
+                "Initialization Error", 
+                JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+        }
+    }
+    
+    private void initializeUserInterface() {
         // Check if system tray is supported
         if (!SystemTray.isSupported()) {
             JOptionPane.showMessageDialog(null, 
@@ -34,43 +73,44 @@ public class QuickRewind {
             System.exit(1);
         }
         
-        initializeApplication();
+        // Initialize system tray
+        trayManager = new SystemTrayManager(this);
+        trayManager.updateRecordingStatus(true);
+        trayManager.updateCaptureMode(screenCapture.getCaptureRegion().getMode());
+        trayManager.updateDisplays(screenCapture.getDisplays());
+        trayManager.updateCaptureHealth(captureWatchdog.getProblem());
+        StartupProfiler.phase("tray");
+        
+        // Loading the native hook library is slow, so it happens off the EDT
+        Thread hotkeyThread = new Thread(() -> {
+            hotkeyManager = new HotkeyManager(this, screenCapture.getInputActivity(), screenCapture.getCursorTrack());
+            StartupProfiler.phase("hotkey");
+            StartupProfiler.uiReady();
+        }, "hotkey-init");
+        hotkeyThread.setDaemon(true);
+        hotkeyThread.start();
+        
+        System.out.println("QuickRewind started successfully!");
+        System.out.println("Output folder: " + config.getOutputFolder());
+        System.out.println("Buffer length: " + config.getBufferSeconds() + " seconds");
+        System.out.println("Capture area: " + screenCapture.getCaptureRegion().getMode()
+            + " " + screenCapture.getScreenBounds());
+        System.out.println("Hotkey: " + config.getHotkeyCombo());
+        System.out.println("Right-click tray icon for settings");
+        
+        trayManager.showNotification("QuickRewind Started", 
+            "Press " + config.getHotkeyCombo() + " or double-click tray icon to capture GIF",
+            TrayIcon.MessageType.INFO);
+        
+        // Only dialogs need the system look and feel, so it is installed after everything else is running
+        SwingUtilities.invokeLater(QuickRewind::installLookAndFeel);
     }
     
-    private void initializeApplication() {
-        // Load configuration
-        config = Config.load();
-        
+    private static void installLookAndFeel() {
         try {
-            // Initialize screen capture with current buffer setting
-            screenCapture = new ScreenCapture(config.getBufferSeconds());
-            
-            // Initialize system tray
-            trayManager = new SystemTrayManager(this);
-            
-            // Initialize global hotkey listener
-            hotkeyManager = new HotkeyManager(this);
-            
-            // Start screen capture
-            screenCapture.startCapture();
-            trayManager.updateRecordingStatus(true);
-            
-            System.out.println("QuickRewind started successfully!");
-            System.out.println("Output folder: " + config.getOutputFolder());
-            System.out.println("Buffer length: " + config.getBufferSeconds() + " seconds");
-            System.out.println("Hotkey: " + config.getHotkeyCombo());
-            System.out.println("Right-click tray icon for settings");
-            
-            trayManager.showNotification("QuickRewind Started", 
-                "Press " + config.getHotkeyCombo() + " or double-click tray icon to capture GIF",
-                TrayIcon.MessageType.INFO);
-                
-        } catch (AWTException e) {
-            JOptionPane.showMessageDialog(null, 
-                "Failed to initialize screen capture: " + e.getMessage(),
-                "Initialization Error", 
-                JOptionPane.ERROR_MESSAGE);
-            System.exit(1);
+            UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+        } catch (Exception e) {
+            System.err.println("Failed to set system look and feel: " + e.getMessage());
         }
     }
     
@@ -79,12 +119,120 @@ public class QuickRewind {
     }
     
     public void captureGifFromBuffer() {
+        BufferSnapshot snapshot = screenCapture.snapshot();
+        captureGifFromBuffer(snapshot, null, config.getMaxGifSizeMB() * 1024L * 1024L,
+                snapshot.getWindowStart(), snapshot.getTime());
+    }
+    
+    public void captureGifFromDisplay(int displayIndex) {
+        BufferSnapshot snapshot = screenCapture.snapshot();
+        captureGifFromBuffer(snapshot, displayIndex, config.getMaxGifSizeMB() * 1024L * 1024L,
+                snapshot.getWindowStart(), snapshot.getTime());
+    }
+    
+    /**
+     * Saves only the last seconds of the buffer; encoding time grows with the seconds asked for,
+     * not with the buffer length.
+     */
+    public void captureLastSeconds(int seconds) {
+        BufferSnapshot snapshot = screenCapture.snapshot();
+        long from = Math.max(snapshot.getWindowStart(), snapshot.getTime() - seconds * 1000L);
+        captureGifFromBuffer(snapshot, null, config.getMaxGifSizeMB() * 1024L * 1024L, from, snapshot.getTime());
+    }
+    
+    public void captureShortGif() {
+        captureLastSeconds(config.getShortCaptureSeconds());
+    }
+    
+    public void captureGifWithTimeRange() {
+        // Frozen first, so the seconds entered count back from when the hotkey was pressed
+        BufferSnapshot snapshot = screenCapture.snapshot();
+        SwingUtilities.invokeLater(() -> {
+            int bufferSeconds = (int) ((snapshot.getTime() - snapshot.getWindowStart()) / 1000);
+            JTextField fromField = new JTextField(String.valueOf(bufferSeconds), 5);
+            JTextField toField = new JTextField("0", 5);
+            JPanel panel = new JPanel(new GridLayout(2, 2, 5, 5));
+            panel.add(new JLabel("From (seconds ago):"));
+            panel.add(fromField);
+            panel.add(new JLabel("To (seconds ago):"));
+            panel.add(toField);
+            int choice = JOptionPane.showConfirmDialog(null, panel,
+                "Save Time Range (buffer holds " + bufferSeconds + " seconds)", JOptionPane.OK_CANCEL_OPTION);
+            if (choice != JOptionPane.OK_OPTION) {
+                snapshot.release();
+                return;
+            }
+            
+            try {
+                double fromSeconds = Double.parseDouble(fromField.getText().trim());
+                double toSeconds = Double.parseDouble(toField.getText().trim());
+                if (toSeconds < 0 || fromSeconds <= toSeconds) throw new NumberFormatException();
+                long from = Math.max(snapshot.getWindowStart(), snapshot.getTime() - (long) (fromSeconds * 1000));
+                long to = snapshot.getTime() - (long) (toSeconds * 1000);
+                if (to <= from) throw new NumberFormatException();
+                captureGifFromBuffer(snapshot, null, config.getMaxGifSizeMB() * 1024L * 1024L, from, to);
+            } catch (NumberFormatException e) {
+                snapshot.release();
+                trayManager.showNotification("Invalid Time Range", 
+                    "Enter seconds ago within the buffer, e.g. from 20 to 5", 
+                    TrayIcon.MessageType.WARNING);
+            }
+        });
+    }
+    
+    public void captureGifWithSizeLimit() {
+        // Freeze the buffer before asking, so the GIF shows what was on screen when the item was clicked
+        BufferSnapshot snapshot = screenCapture.snapshot();
+        SwingUtilities.invokeLater(() -> {
+            String defaultSize = config.getMaxGifSizeMB() > 0 ? String.valueOf(config.getMaxGifSizeMB()) : "10";
+            String input = JOptionPane.showInputDialog(null, 
+                "Maximum GIF size in MB:", defaultSize);
+            if (input == null) {
+                snapshot.release();
+                return;
+            }
+            
+            try {
+                double megabytes = Double.parseDouble(input.trim());
+                if (megabytes <= 0) throw new NumberFormatException(input);
+                captureGifFromBuffer(snapshot, null, (long) (megabytes * 1024 * 1024),
+                        snapshot.getWindowStart(), snapshot.getTime());
+            } catch (NumberFormatException e) {
+                snapshot.release();
+                trayManager.showNotification("Invalid Size", 
+                    "Please enter a size in MB, e.g. 10", 
+                    TrayIcon.MessageType.WARNING);
+            }
+        });
+    }
+    
+    // Exports the frames on screen from fromTime to toTime, which must lie within the snapshot's window
+    private void captureGifFromBuffer(BufferSnapshot snapshot, Integer displayIndex, long maxBytes,
+                                      long fromTime, long toTime) {
         CompletableFuture.runAsync(() -> {
+            saveCancelled.set(false);
             try {
-                // Get current frames from buffer
-                BufferedImage[] frames = screenCapture.getBufferedFrames();
+                // All exports end at the same moment, by default when the snapshot was taken
+                long endTime = toTime;
+                Map<Integer, CapturedFrame[]> selected = new LinkedHashMap<>();
+                for (int index : snapshot.getDisplayIndices()) {
+                    if (displayIndex != null && index != displayIndex) continue;
+                    CapturedFrame[] frames = snapshot.getFrames(index, fromTime, toTime);
+                    if (frames.length > 0) {
+                        selected.put(index, frames);
+                    }
+                }
                 
-                if (frames.length == 0) {
+                // Without an explicit choice, skip displays that did not change during the exported window
+                if (displayIndex == null && selected.size() > 1) {
+                    Map<Integer, CapturedFrame[]> changed = new LinkedHashMap<>(selected);
+                    changed.values().removeIf(frames -> frames.length < 2);
+                    if (!changed.isEmpty()) {
+                        selected = changed;
+                    }
+                }
+                
+                if (selected.isEmpty()) {
                     SwingUtilities.invokeLater(() -> 
                         trayManager.showNotification("Capture Failed", 
                             "No frames available in buffer", 
@@ -92,7 +240,25 @@ public class QuickRewind {
                     return;
                 }
                 
-                processAndSaveGif(frames, "buffer", 500);
+                // The save time budget is shared by all displays being exported
+                long budgetMs = config.getSaveTimeBudgetSeconds() * 1000L / selected.size();
+                List<CompletableFuture<File>> savedFiles = new ArrayList<>();
+                for (Map.Entry<Integer, CapturedFrame[]> entry : selected.entrySet()) {
+                    if (saveCancelled.get()) break;
+                    String prefix = snapshot.getDisplayCount() > 1 ? "buffer-display" + (entry.getKey() + 1) : "buffer";
+                    CapturedFrame[] frames = entry.getValue();
+                    CursorTrack.Path cursor = config.isShowCursor() ? snapshot.getCursorPath() : null;
+                    if (cursor != null && !cursor.isEmpty()) {
+                        // The pointer moves smoothly between captured frames
+                        CursorOverlay overlay = new CursorOverlay(frames, cursor, endTime);
+                        Metrics.add("export.cursorFrames", overlay.getAddedFrames());
+                        savedFiles.add(processAndSaveGif(overlay, prefix, budgetMs, maxBytes));
+                    } else {
+                        savedFiles.add(processAndSaveGif(FrameStream.of(frames, endTime), prefix, budgetMs, maxBytes));
+                    }
+                }
+                
+                publishSavedGifs(savedFiles, endTime);
                         
             } catch (Exception e) {
                 e.printStackTrace();
@@ -100,8 +266,10 @@ public class QuickRewind {
                     trayManager.showNotification("Capture Failed", 
                         "Error creating GIF: " + e.getMessage(), 
                         TrayIcon.MessageType.ERROR));
+            } finally {
+                snapshot.release();
             }
-        });
+        }, ExportPipeline.computeExecutor());
     }
     
     public void startActiveRecording() {
@@ -127,11 +295,12 @@ public class QuickRewind {
             return;
         }
         
+        long stopTime = System.currentTimeMillis();
         CompletableFuture.runAsync(() -> {
+            saveCancelled.set(false);
             try {
                 // Get frames from active recording
-                BufferedImage[] frames = screenCapture.getActiveRecordingFrames();
-                long duration = screenCapture.getActiveRecordingDuration();
+                CapturedFrame[] frames = screenCapture.getActiveRecordingFrames();
                 
                 // Stop the recording
                 screenCapture.stopActiveRecording();
@@ -145,12 +314,11 @@ public class QuickRewind {
                     return;
                 }
                 
-                // Calculate appropriate delay based on recording duration
-                int delayMs = Math.max(100, (int)(duration / frames.length));
-                delayMs = Math.min(delayMs, 1000); // Cap at 1 second per frame
-                
-                processAndSaveGif(frames, "recording", delayMs);
+                // Each frame is shown until the next one was captured, the last until the recording stopped
+                CompletableFuture<File> savedFile = processAndSaveGif(FrameStream.of(frames, stopTime), "recording",
+                        config.getSaveTimeBudgetSeconds() * 1000L, config.getMaxGifSizeMB() * 1024L * 1024L);
                 screenCapture.clearActiveRecordingFrames(); // Clean up memory
+                publishSavedGifs(Collections.singletonList(savedFile), stopTime);
                         
             } catch (Exception e) {
                 e.printStackTrace();
@@ -159,62 +327,165 @@ public class QuickRewind {
                         "Error saving recording: " + e.getMessage(), 
                         TrayIcon.MessageType.ERROR));
             }
-        });
+        }, ExportPipeline.computeExecutor());
     }
     
-    private void processAndSaveGif(BufferedImage[] frames, String prefix, int delayMs) {
+    // Encodes on the calling thread; the returned future completes with the GIF or AVI once it is in place
+    // (and uploaded, if an upload URL is set), or with null if saving failed or fell back to PNG output
+    private CompletableFuture<File> processAndSaveGif(FrameStream frames, String prefix,
+                                                      long budgetMs, long maxBytes) {
         try {
             // Generate filename with timestamp
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
-            String filename = "quickrewind-" + prefix + "-" + timestamp + ".gif";
-            File outputFile = new File(config.getOutputFolder(), filename);
+            String baseName = "quickrewind-" + prefix + "-" + timestamp;
+            boolean avi = Config.FORMAT_AVI.equals(config.getExportFormat());
+            boolean helper = config.isExportInHelperProcess();
+            File gifFile = new File(config.getOutputFolder(), baseName + ".gif");
+            File aviFile = new File(config.getOutputFolder(), baseName + ".avi");
             
-            System.out.println("Saving GIF to: " + outputFile.getAbsolutePath());
+            System.out.println("Saving " + (avi ? "AVI" : "GIF") + " to: " + (avi ? aviFile : gifFile).getAbsolutePath());
             
             // Show processing notification
             SwingUtilities.invokeLater(() -> 
                 trayManager.showNotification("Processing...", 
-                    "Creating optimized GIF from " + frames.length + " frames", 
+                    "Creating " + (avi ? "AVI" : "optimized GIF") + " from " + frames.size() + " frames", 
                     TrayIcon.MessageType.INFO));
             
-            // Try multiple encoding options with fallbacks
-            List<BufferedImage> frameList = Arrays.asList(frames);
+            // Encoding progress drives the tray tooltip, and the tray's Cancel Save item stops it
+            EncodeProgress progress = new EncodeProgress() {
+                @Override
+                public void onProgress(int framesWritten, int totalFrames) {
+                    SwingUtilities.invokeLater(() -> trayManager.showSaveProgress(framesWritten, totalFrames));
+                }
+                
+                @Override
+                public boolean isCancelled() {
+                    return saveCancelled.get();
+                }
+            };
+            
+            // The upload runs alongside the encoding, so it is nearly done when the trailer is written.
+            // AVI headers are patched once all frames are written, so AVIs are not uploaded.
+            // A helper process uploads what it encodes itself.
+            HttpUploader upload = avi || helper ? null : startUpload(gifFile.getName());
+            CompletableFuture<URI> uploading = null;
             
+            // Try multiple encoding options with fallbacks: GIF, AVI, PNG sequence, single PNG.
+            // Only the first one runs in the helper process. If the helper crashes or stalls, the same
+            // format is encoded here; if the export itself fails there, the other options run here.
+            File savedFile = avi ? aviFile : gifFile;
             try {
-                // First try: Java ImageIO GIF encoder
-                SimpleGifEncoder.encodeGif(frameList, outputFile, delayMs);
-            } catch (Exception gifError) {
-                System.err.println("GIF encoding failed: " + gifError.getMessage());
+                boolean encoded = false;
+                if (helper) {
+                    try {
+                        if (avi) {
+                            ExportProcess.encodeAvi(frames, aviFile, MjpegAviEncoder.DEFAULT_QUALITY, progress);
+                        } else {
+                            uploading = ExportProcess.encodeGif(frames, gifFile, budgetMs, maxBytes,
+                                    config.getDitherMode(), config.getLossyError(), progress, config.getUploadUrl());
+                        }
+                        encoded = true;
+                    } catch (ExportProcess.HelperFailedException helperError) {
+                        System.err.println(helperError.getMessage() + ", encoding in this process instead");
+                        upload = avi ? null : startUpload(gifFile.getName());
+                    }
+                }
+                if (!encoded && avi) {
+                    MjpegAviEncoder.encodeAvi(frames, aviFile, MjpegAviEncoder.DEFAULT_QUALITY, progress);
+                } else if (!encoded) {
+                    SimpleGifEncoder.encodeGif(frames, gifFile, budgetMs, maxBytes,
+                            config.getDitherMode(), config.getLossyError(), progress, upload);
+                    uploading = upload != null ? upload.finish() : null;
+                }
+            } catch (CancellationException cancelled) {
+                if (upload != null) upload.abort();
+                notifySaveCancelled();
+                return CompletableFuture.completedFuture(null);
+            } catch (Exception encodeError) {
+                System.err.println((avi ? "AVI" : "GIF") + " encoding failed: " + encodeError.getMessage());
+                if (upload != null) upload.abort();
+                savedFile = null;
                 
-                try {
-                    // Second try: PNG sequence
-                    PngSequenceEncoder.encodePngSequence(frameList, outputFile);
-                    SwingUtilities.invokeLater(() -> 
-                        trayManager.showNotification("Created PNG Sequence", 
-                            "GIF failed, saved as PNG sequence instead", 
-                            TrayIcon.MessageType.WARNING));
-                    return;
-                } catch (Exception pngError) {
-                    System.err.println("PNG sequence failed: " + pngError.getMessage());
-                    
-                    // Last resort: Single PNG screenshot
-                    PngSequenceEncoder.encodeSinglePng(frameList, outputFile);
+                if (!avi) {
+                    try {
+                        // Second try: AVI, which needs no palette and far less memory per frame
+                        MjpegAviEncoder.encodeAvi(frames, aviFile, MjpegAviEncoder.DEFAULT_QUALITY, progress);
+                        savedFile = aviFile;
+                        SwingUtilities.invokeLater(() -> 
+                            trayManager.showNotification("Created AVI", 
+                                "GIF failed, saved as AVI instead", 
+                                TrayIcon.MessageType.WARNING));
+                    } catch (CancellationException cancelled) {
+                        notifySaveCancelled();
+                        return CompletableFuture.completedFuture(null);
+                    } catch (Exception aviError) {
+                        System.err.println("AVI encoding failed: " + aviError.getMessage());
+                    }
+                }
+                
+                if (savedFile == null) {
+                    try {
+                        // Next try: PNG sequence
+                        PngSequenceEncoder.encodePngSequence(frames, gifFile);
+                        SwingUtilities.invokeLater(() -> 
+                            trayManager.showNotification("Created PNG Sequence", 
+                                "Animation failed, saved as PNG sequence instead", 
+                                TrayIcon.MessageType.WARNING));
+                        return CompletableFuture.completedFuture(null);
+                    } catch (Exception pngError) {
+                        System.err.println("PNG sequence failed: " + pngError.getMessage());
+                        
+                        // Last resort: Single PNG screenshot
+                        PngSequenceEncoder.encodeSinglePng(frames, gifFile);
+                        SwingUtilities.invokeLater(() -> 
+                            trayManager.showNotification("Saved Screenshot", 
+                                "Animation failed, saved last frame as PNG", 
+                                TrayIcon.MessageType.WARNING));
+                        return CompletableFuture.completedFuture(null);
+                    }
+                }
+            }
+            
+            // Checking the file is blocking I/O, so the encoding thread moves on to the next export
+            File outputFile = savedFile;
+            String filename = outputFile.getName();
+            CompletableFuture<File> saved = ExportPipeline.io(() -> {
+                long size = outputFile.length();
+                if (maxBytes > 0 && size > maxBytes && outputFile == gifFile) { // The limit only shapes GIFs
                     SwingUtilities.invokeLater(() -> 
-                        trayManager.showNotification("Saved Screenshot", 
-                            "Animation failed, saved last frame as PNG", 
+                        trayManager.showNotification("Size Limit Exceeded", 
+                            filename + " is " + (size / 1024) + " KB, above the "
+                                + (maxBytes / 1024) + " KB limit", 
                             TrayIcon.MessageType.WARNING));
-                    return;
                 }
+                return outputFile;
+            }).exceptionally(e -> {
+                e.printStackTrace();
+                SwingUtilities.invokeLater(() -> 
+                    trayManager.showNotification("Save Failed", 
+                        "Error saving GIF: " + e.getMessage(), 
+                        TrayIcon.MessageType.ERROR));
+                return null;
+            });
+            if (uploading == null) {
+                return saved;
             }
             
-            // Copy markdown link to clipboard
-            ClipboardHelper.copyMarkdownLink(outputFile);
-            
-            // Show success notification
-            SwingUtilities.invokeLater(() -> 
-                trayManager.showNotification("GIF Saved!", 
-                    "Saved: " + filename + "\nMarkdown link copied to clipboard", 
-                    TrayIcon.MessageType.INFO));
+            // A failed upload still leaves the local file, which then gets a local link
+            CompletableFuture<URI> uploaded = uploading.exceptionally(e -> {
+                System.err.println("Upload failed: " + e.getMessage());
+                SwingUtilities.invokeLater(() -> 
+                    trayManager.showNotification("Upload Failed", 
+                        filename + " was saved locally only: " + e.getMessage(), 
+                        TrayIcon.MessageType.WARNING));
+                return null;
+            });
+            return saved.thenCombine(uploaded, (file, location) -> {
+                if (file != null && location != null) {
+                    uploadedLinks.put(file, location);
+                }
+                return file;
+            });
                     
         } catch (Exception e) {
             e.printStackTrace();
@@ -222,9 +493,197 @@ public class QuickRewind {
                 trayManager.showNotification("Save Failed", 
                     "Error saving GIF: " + e.getMessage(), 
                     TrayIcon.MessageType.ERROR));
+            return CompletableFuture.completedFuture(null);
+        } finally {
+            SwingUtilities.invokeLater(() -> trayManager.clearSaveProgress());
+        }
+    }
+    
+    private HttpUploader startUpload(String filename) {
+        String url = config.getUploadUrl();
+        if (url.isEmpty()) return null;
+        try {
+            return new HttpUploader(URI.create(url), filename);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid upload URL " + url + ": " + e.getMessage());
+            return null;
         }
     }
     
+    private void notifySaveCancelled() {
+        SwingUtilities.invokeLater(() -> 
+            trayManager.showNotification("Save Cancelled", 
+                "Recording was not saved", 
+                TrayIcon.MessageType.INFO));
+    }
+    
+    public void cancelSave() {
+        saveCancelled.set(true);
+    }
+    
+    // Once every export is in place, copies the links and notifies; the clipboard can block, so this runs on an I/O thread.
+    // requestedAt is when the user asked for the GIF, so the recorded time to link covers encoding, writing and uploading
+    private void publishSavedGifs(List<CompletableFuture<File>> pendingFiles, long requestedAt) {
+        CompletableFuture.allOf(pendingFiles.toArray(new CompletableFuture<?>[0])).thenRunAsync(() -> {
+            List<File> savedFiles = new ArrayList<>();
+            for (CompletableFuture<File> pending : pendingFiles) {
+                File file = pending.join();
+                if (file != null) {
+                    savedFiles.add(file);
+                }
+            }
+            if (savedFiles.isEmpty()) return;
+            
+            // Copy markdown link(s) to clipboard, pointing at the upload where there is one
+            Map<File, URI> uploaded = new LinkedHashMap<>();
+            for (File file : savedFiles) {
+                URI location = uploadedLinks.remove(file);
+                if (location != null) {
+                    uploaded.put(file, location);
+                }
+            }
+            ClipboardHelper.copyMarkdownLinks(savedFiles, uploaded);
+            long linkMs = System.currentTimeMillis() - requestedAt;
+            Metrics.set("export.timeToLink.ms", linkMs);
+            System.out.println("Link ready " + linkMs + " ms after capture" + (uploaded.isEmpty() ? "" : " (uploaded)"));
+            
+            // Show success notification
+            StringBuilder names = new StringBuilder();
+            for (File file : savedFiles) {
+                names.append(file.getName()).append("\n");
+            }
+            String linkText = (savedFiles.size() == 1 ? "Markdown link" : "Markdown links")
+                + (uploaded.isEmpty() ? "" : " to the upload");
+            SwingUtilities.invokeLater(() -> 
+                trayManager.showNotification("GIF Saved!", 
+                    "Saved: " + names + linkText + " copied to clipboard", 
+                    TrayIcon.MessageType.INFO));
+        }, ExportPipeline.ioExecutor());
+    }
+    
+    public void trimGif() {
+        SwingUtilities.invokeLater(() -> {
+            File[] selected = chooseGifs("Trim GIF", false);
+            if (selected == null) return;
+            
+            try {
+                GifEditor gif = GifEditor.open(selected[0]);
+                double seconds = gif.getDurationMs() / 1000.0;
+                String input = JOptionPane.showInputDialog(null, 
+                    String.format("%s is %.1f s long.%nSeconds to keep (start-end):", selected[0].getName(), seconds),
+                    String.format("0-%.1f", seconds));
+                if (input == null) return;
+                
+                String[] range = input.trim().split("\\s*-\\s*");
+                if (range.length != 2) throw new NumberFormatException(input);
+                long startMs = (long) (Double.parseDouble(range[0]) * 1000);
+                long endMs = (long) (Double.parseDouble(range[1]) * 1000);
+                File output = editedFile(selected[0], "trim");
+                runGifEdit(output, () -> gif.trimTime(output, startMs, endMs));
+            } catch (NumberFormatException e) {
+                trayManager.showNotification("Invalid Range", 
+                    "Please enter start and end in seconds, e.g. 1.5-6", 
+                    TrayIcon.MessageType.WARNING);
+            } catch (Exception e) {
+                trayManager.showNotification("Trim Failed", e.getMessage(), TrayIcon.MessageType.ERROR);
+            }
+        });
+    }
+    
+    public void joinGifs() {
+        SwingUtilities.invokeLater(() -> {
+            File[] selected = chooseGifs("Join GIFs (in name order)", true);
+            if (selected == null || selected.length < 2) return;
+            
+            Arrays.sort(selected);
+            String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+            File output = new File(config.getOutputFolder(), "quickrewind-joined-" + timestamp + ".gif");
+            runGifEdit(output, () -> {
+                List<GifEditor> gifs = new ArrayList<>();
+                for (File file : selected) {
+                    gifs.add(GifEditor.open(file));
+                }
+                GifEditor.join(gifs, output);
+            });
+        });
+    }
+    
+    private interface GifEdit {
+        void run() throws Exception;
+    }
+    
+    // Edits only copy compressed frames, so they run like a save but finish in about the time of a file copy
+    private void runGifEdit(File output, GifEdit edit) {
+        long startTime = System.currentTimeMillis();
+        CompletableFuture.runAsync(() -> {
+            try {
+                edit.run();
+                publishSavedGifs(Collections.singletonList(CompletableFuture.completedFuture(output)), startTime);
+            } catch (Exception e) {
+                e.printStackTrace();
+                SwingUtilities.invokeLater(() -> 
+                    trayManager.showNotification("Edit Failed", 
+                        "Error editing GIF: " + e.getMessage(), 
+                        TrayIcon.MessageType.ERROR));
+            }
+        }, ExportPipeline.computeExecutor());
+    }
+    
+    private File[] chooseGifs(String title, boolean multiple) {
+        JFileChooser chooser = new JFileChooser(config.getOutputFolder());
+        chooser.setDialogTitle(title);
+        chooser.setMultiSelectionEnabled(multiple);
+        chooser.setFileFilter(new FileNameExtensionFilter("GIF images", "gif"));
+        if (chooser.showOpenDialog(null) != JFileChooser.APPROVE_OPTION) return null;
+        return multiple ? chooser.getSelectedFiles() : new File[] {chooser.getSelectedFile()};
+    }
+    
+    private static File editedFile(File source, String suffix) {
+        String name = source.getName().replaceFirst("(?i)\\.gif$", "");
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("HHmmss"));
+        return new File(source.getParentFile(), name + "-" + suffix + "-" + timestamp + ".gif");
+    }
+    
+    public void setCaptureMode(String mode) {
+        // A region mode without a selected region starts with the picker and only switches once one is picked
+        if (CaptureRegion.MODE_REGION.equals(CaptureRegion.normalizeMode(mode))
+                && (config.getRegionWidth() == 0 || config.getRegionHeight() == 0)) {
+            selectCaptureRegion();
+            return;
+        }
+        
+        config.setCaptureMode(mode);
+        config.save();
+        applyCaptureRegion();
+    }
+    
+    public void selectCaptureRegion() {
+        SwingUtilities.invokeLater(() -> new RegionSelector(region -> {
+            config.setCaptureMode(CaptureRegion.MODE_REGION);
+            config.setRegionX(region.x);
+            config.setRegionY(region.y);
+            config.setRegionWidth(region.width);
+            config.setRegionHeight(region.height);
+            config.save();
+            applyCaptureRegion();
+        }, () -> {
+            // The tray already checked the mode that was clicked; show the one still in use again
+            trayManager.updateCaptureMode(screenCapture.getCaptureRegion().getMode());
+        }).open());
+    }
+    
+    private void applyCaptureRegion() {
+        CaptureRegion region = CaptureRegion.fromConfig(config);
+        screenCapture.setCaptureRegion(region);
+        trayManager.updateCaptureMode(region.getMode());
+        trayManager.updateDisplays(screenCapture.getDisplays());
+        
+        Rectangle bounds = region.getBounds();
+        trayManager.showNotification("Capture Area Changed", 
+            "Mode: " + region.getMode() + " (" + bounds.width + "x" + bounds.height + ")",
+            TrayIcon.MessageType.INFO);
+    }
+    
     public void showSettings() {
         SwingUtilities.invokeLater(() -> {
             if (settingsDialog == null) {
@@ -237,18 +696,14 @@ public class QuickRewind {
     }
     
     public void onSettingsChanged() {
-        // Restart screen capture with new buffer size if it changed
+        // Re-tune the running capture in place, so the rewind history survives a settings change
         if (screenCapture != null) {
-            boolean wasCapturing = screenCapture.isCapturing();
-            screenCapture.stopCapture();
-            
-            try {
-                screenCapture = new ScreenCapture(config.getBufferSeconds());
-                if (wasCapturing) {
-                    screenCapture.startCapture();
-                }
-            } catch (AWTException e) {
-                System.err.println("Failed to restart screen capture: " + e.getMessage());
+            screenCapture.setBufferSeconds(config.getBufferSeconds());
+            screenCapture.setFramesPerSecond(config.getBufferFPS());
+            screenCapture.setFoveated(config.isFoveatedCapture());
+            screenCapture.setActiveRecordingSettings(config.getActiveRecordingFPS(), config.getMaxRecordingMinutes());
+            if (screenCapture.getCaptureRegion().isFullScreen()) {
+                screenCapture.setScale(config.getCaptureScale());
             }
         }
         
@@ -258,6 +713,12 @@ public class QuickRewind {
     }
     
     public void exit() {
+        if (captureWatchdog != null) {
+            captureWatchdog.stop();
+        }
+        if (memoryGovernor != null) {
+            memoryGovernor.stop();
+        }
         if (screenCapture != null) {
             screenCapture.stopCapture();
         }
@@ -272,9 +733,9 @@ public class QuickRewind {
     }
     
     public static void main(String[] args) {
-        // Ensure EDT for Swing
-        SwingUtilities.invokeLater(() -> {
-            new QuickRewind();
-        });
+        StartupProfiler.start();
+        
+        // Capture is started on the main thread, the tray and dialogs are built on the EDT
+        new QuickRewind();
     }
 }
\ No newline at end of file
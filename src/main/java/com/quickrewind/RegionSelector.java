@@ -0,0 +1,108 @@
+package com.quickrewind;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.function.Consumer;
+
+/**
+ * Translucent full screen overlay that lets the user drag out a capture rectangle.
+ * Escape or a click without dragging cancels the selection.
+ */
+public class RegionSelector extends JFrame {
+    private final Consumer<Rectangle> onSelected;
+    private final Runnable onCancelled;
+    private final Rectangle screenBounds;
+    private Point dragStart;
+    private Rectangle selection;
+
+    public RegionSelector(Consumer<Rectangle> onSelected, Runnable onCancelled) {
+        super("Select Capture Region");
+        this.onSelected = onSelected;
+        this.onCancelled = onCancelled;
+        this.screenBounds = CaptureRegion.getVirtualDesktopBounds(); // Span every monitor
+
+        setUndecorated(true);
+        setBounds(screenBounds);
+        setAlwaysOnTop(true);
+        setBackground(new Color(0, 0, 0, 60));
+        setCursor(Cursor.getPredefinedCursor(Cursor.CROSSHAIR_CURSOR));
+
+        JPanel canvas = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                Graphics2D g2d = (Graphics2D) g;
+                g2d.setColor(Color.WHITE);
+                g2d.drawString("Drag to select the capture region (Esc to cancel)", 20, 30);
+                if (selection != null) {
+                    g2d.setColor(new Color(255, 255, 255, 60));
+                    g2d.fillRect(selection.x, selection.y, selection.width, selection.height);
+                    g2d.setColor(Color.RED);
+                    g2d.setStroke(new BasicStroke(2));
+                    g2d.drawRect(selection.x, selection.y, selection.width, selection.height);
+                    g2d.drawString(selection.width + " x " + selection.height,
+                            selection.x + 4, Math.max(selection.y - 6, 12));
+                }
+            }
+        };
+        canvas.setOpaque(false);
+        setContentPane(canvas);
+
+        MouseAdapter mouseHandler = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragStart = e.getPoint();
+                selection = null;
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (dragStart == null) return;
+                selection = new Rectangle(dragStart);
+                selection.add(e.getPoint());
+                repaint();
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                finish(selection);
+            }
+        };
+        canvas.addMouseListener(mouseHandler);
+        canvas.addMouseMotionListener(mouseHandler);
+
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+                    finish(null);
+                }
+            }
+        });
+    }
+
+    public void open() {
+        setVisible(true);
+        toFront();
+        requestFocus();
+    }
+
+    private void finish(Rectangle localSelection) {
+        setVisible(false);
+        dispose();
+
+        if (localSelection == null || localSelection.width < 16 || localSelection.height < 16) {
+            onCancelled.run();
+            return;
+        }
+
+        // Translate from overlay coordinates to screen coordinates
+        Rectangle region = new Rectangle(localSelection);
+        region.translate(screenBounds.x, screenBounds.y);
+        onSelected.accept(region);
+    }
+}
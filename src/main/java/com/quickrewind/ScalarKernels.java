@@ -0,0 +1,118 @@
+package com.quickrewind;
+
+/**
+ * Plain Java implementations of the per-pixel kernels. Used directly on Java 11 and as the
+ * fallback when the Vector API is not available; see {@link PixelKernels}.
+ * Pixels are packed 0x00RRGGBB ints.
+ */
+public final class ScalarKernels {
+    private static final int FINGERPRINT_LANES = 8;
+
+    private ScalarKernels() {
+    }
+
+    // Bilinear resampling with 8-bit fixed point weights
+    public static void scaleBilinear(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight) {
+        int[] x0 = new int[dstWidth];
+        int[] x1 = new int[dstWidth];
+        int[] wx = new int[dstWidth];
+        horizontalTaps(srcWidth, dstWidth, x0, x1, wx);
+
+        for (int dy = 0; dy < dstHeight; dy++) {
+            int fy = sourceFixed(dy, srcHeight, dstHeight);
+            int row0 = (fy >> 8) * srcWidth;
+            int row1 = Math.min((fy >> 8) + 1, srcHeight - 1) * srcWidth;
+            int wy = fy & 0xFF;
+            int out = dy * dstWidth;
+
+            for (int dx = 0; dx < dstWidth; dx++) {
+                int p00 = src[row0 + x0[dx]];
+                int p01 = src[row0 + x1[dx]];
+                int p10 = src[row1 + x0[dx]];
+                int p11 = src[row1 + x1[dx]];
+                int w = wx[dx];
+                int r = blend((p00 >> 16) & 0xFF, (p01 >> 16) & 0xFF, (p10 >> 16) & 0xFF, (p11 >> 16) & 0xFF, w, wy);
+                int g = blend((p00 >> 8) & 0xFF, (p01 >> 8) & 0xFF, (p10 >> 8) & 0xFF, (p11 >> 8) & 0xFF, w, wy);
+                int b = blend(p00 & 0xFF, p01 & 0xFF, p10 & 0xFF, p11 & 0xFF, w, wy);
+                dst[out + dx] = (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static int blend(int c00, int c01, int c10, int c11, int wx, int wy) {
+        int top = c00 * (256 - wx) + c01 * wx;
+        int bottom = c10 * (256 - wx) + c11 * wx;
+        return (top * (256 - wy) + bottom * wy) >> 16;
+    }
+
+    // Source column pairs and weights for every destination column, shared with the vector version
+    static void horizontalTaps(int srcWidth, int dstWidth, int[] x0, int[] x1, int[] wx) {
+        for (int dx = 0; dx < dstWidth; dx++) {
+            int fx = sourceFixed(dx, srcWidth, dstWidth);
+            x0[dx] = fx >> 8;
+            x1[dx] = Math.min((fx >> 8) + 1, srcWidth - 1);
+            wx[dx] = fx & 0xFF;
+        }
+    }
+
+    // Pixel-center aligned source coordinate in 24.8 fixed point, clamped to the image
+    static int sourceFixed(int d, int srcSize, int dstSize) {
+        long fixed = ((2L * d + 1) * srcSize * 256) / (2L * dstSize) - 128;
+        return (int) Math.max(0, Math.min((long) (srcSize - 1) * 256, fixed));
+    }
+
+    // Palette lookup through the 15-bit table of a Palette
+    public static void mapToIndices(int[] rgb, byte[] lut, byte[] indices, int count) {
+        for (int i = 0; i < count; i++) {
+            int p = rgb[i];
+            indices[i] = lut[((p >> 9) & 0x7C00) | ((p >> 6) & 0x3E0) | ((p >> 3) & 0x1F)];
+        }
+    }
+
+    /**
+     * Hash of every rowStep-th row. Eight interleaved accumulators (column modulo 8) keep the
+     * multiply chains independent so the JIT can overlap them.
+     */
+    public static long fingerprint(int[] pixels, int width, int height, int rowStep) {
+        int[] lanes = new int[FINGERPRINT_LANES];
+        for (int y = 0; y < height; y += rowStep) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int lane = x & (FINGERPRINT_LANES - 1);
+                lanes[lane] = lanes[lane] * 31 + pixels[offset + x];
+            }
+        }
+        return combine(lanes);
+    }
+
+    private static long combine(int[] lanes) {
+        long hash = 1125899906842597L;
+        for (int lane : lanes) {
+            hash = 31 * hash + lane;
+        }
+        return hash;
+    }
+
+    // Index of the first differing byte in [from, to), or -1
+    public static int firstDifference(byte[] a, byte[] b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (a[i] != b[i]) return i;
+        }
+        return -1;
+    }
+
+    // Index of the last differing byte in [from, to), or -1
+    public static int lastDifference(byte[] a, byte[] b, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (a[i] != b[i]) return i;
+        }
+        return -1;
+    }
+
+    // TYPE_3BYTE_BGR raster bytes to packed RGB
+    public static void bgrToRgb(byte[] bgr, int[] rgb, int pixelCount) {
+        for (int i = 0, j = 0; i < pixelCount; i++, j += 3) {
+            rgb[i] = (bgr[j] & 0xFF) | (bgr[j + 1] & 0xFF) << 8 | (bgr[j + 2] & 0xFF) << 16;
+        }
+    }
+}
@@ -2,114 +2,238 @@ package com.quickrewind;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 public class ScreenCapture {
-    private final Robot robot;
-    private final Rectangle screenBounds;
-    private final BlockingQueue<BufferedImage> frameBuffer;
+    private static final int FOVEA_WIDTH = 480; // Area around the pointer grabbed at the high rate
+    private static final int FOVEA_HEIGHT = 320;
+    private static final int FOVEA_FPS = 10;
+
+    private final FrameSource syntheticSource; // Replaces the screen when set
+    private FrameSource recordingSource; // Only needed for active recording, created on first use
+    private volatile CaptureRegion captureRegion;
+    private final List<DisplayCaptureWorker> workers;
+    private volatile DisplayCaptureWorker foveaWorker; // Set while foveated capture runs
+    private volatile boolean foveated;
+    private final InputActivity inputActivity = new InputActivity();
+    private final CursorTrack cursorTrack; // Null for synthetic sources and without a screen
     private final AtomicBoolean isCapturing;
     private final AtomicBoolean isActiveRecording;
     private final AtomicLong activeRecordingStartTime;
-    private final ConcurrentLinkedQueue<BufferedImage> activeRecordingFrames;
-    private final int maxBufferSeconds;
-    private final int maxActiveRecordingMinutes;
-    private final int framesPerSecond;
-    private final int activeRecordingFPS;
-    private Thread captureThread;
+    private final ConcurrentLinkedQueue<CapturedFrame> activeRecordingFrames;
+    private volatile int maxBufferSeconds;
+    private volatile int maxActiveRecordingMinutes;
+    private volatile int framesPerSecond;
+    private volatile int activeRecordingFPS;
+    private volatile double fpsFactor = 1.0; // Degradation under memory pressure, see MemoryGovernor
+    private volatile double scaleFactor = 1.0;
+    private volatile double bufferFactor = 1.0;
     private Thread activeRecordingThread;
 
-    public ScreenCapture(int bufferSeconds) throws AWTException {
-        this.robot = new Robot();
-        this.screenBounds = GraphicsEnvironment.getLocalGraphicsEnvironment()
-                .getDefaultScreenDevice().getDefaultConfiguration().getBounds();
+    public ScreenCapture(int bufferSeconds, CaptureRegion captureRegion) {
+        this(bufferSeconds, captureRegion, null);
+    }
+
+    /**
+     * Captures from the given source instead of the screen, through a single worker for the
+     * capture region (which should be {@link CaptureRegion#fixed}). Used by the soak test.
+     */
+    public ScreenCapture(int bufferSeconds, CaptureRegion captureRegion, FrameSource syntheticSource) {
+        this.syntheticSource = syntheticSource;
+        this.recordingSource = syntheticSource;
+        this.captureRegion = captureRegion;
         this.maxBufferSeconds = bufferSeconds;
         this.maxActiveRecordingMinutes = 10; // Maximum 10 minutes for active recording
         this.framesPerSecond = 2; // 2 FPS to reduce system load for buffer
         this.activeRecordingFPS = 10; // Higher FPS for active recording
-        this.frameBuffer = new LinkedBlockingQueue<>(maxBufferSeconds * framesPerSecond);
+        this.workers = new CopyOnWriteArrayList<>();
         this.activeRecordingFrames = new ConcurrentLinkedQueue<>();
         this.isCapturing = new AtomicBoolean(false);
         this.isActiveRecording = new AtomicBoolean(false);
         this.activeRecordingStartTime = new AtomicLong(0);
+        this.cursorTrack = syntheticSource == null && !GraphicsEnvironment.isHeadless()
+            ? new CursorTrack(inputActivity) : null;
     }
 
     public void startCapture() {
         if (isCapturing.get()) return;
         
         isCapturing.set(true);
-        captureThread = new Thread(this::captureLoop);
-        captureThread.setDaemon(true);
-        captureThread.setPriority(Thread.MIN_PRIORITY); // Run at lowest priority to reduce system impact
-        captureThread.start();
+        startWorkers();
+        startFovea();
+        if (cursorTrack != null) {
+            cursorTrack.start();
+        }
     }
 
     public void stopCapture() {
         isCapturing.set(false);
-        if (captureThread != null) {
-            captureThread.interrupt();
+        stopWorkers();
+        stopFovea();
+        if (cursorTrack != null) {
+            cursorTrack.stop();
         }
         stopActiveRecording(); // Also stop active recording if running
     }
 
-    private void captureLoop() {
-        long frameInterval = 1000 / framesPerSecond; // milliseconds per frame
-        BufferedImage reusableImage = null;
+    private void startWorkers() {
+        CaptureRegion region = captureRegion;
         
-        while (isCapturing.get()) {
-            try {
-                long startTime = System.currentTimeMillis();
-                
-                // Capture screen with optimized settings
-                BufferedImage screenshot = captureScreenOptimized();
-                
-                // Add to buffer, removing oldest frame if buffer is full
-                if (frameBuffer.remainingCapacity() == 0) {
-                    frameBuffer.poll(); // Remove oldest frame
+        try {
+            if (syntheticSource != null) {
+                workers.add(new DisplayCaptureWorker(0, "Synthetic", syntheticSource, region,
+                        maxBufferSeconds, framesPerSecond, inputActivity));
+            } else if (region.isFullScreen()) {
+                // One independent worker per monitor, displays are re-enumerated on every start
+                GraphicsEnvironment env = GraphicsEnvironment.getLocalGraphicsEnvironment();
+                GraphicsDevice primary = env.getDefaultScreenDevice();
+                GraphicsDevice[] devices = env.getScreenDevices();
+                for (int i = 0; i < devices.length; i++) {
+                    String name = "Display " + (i + 1) + (devices[i] == primary ? " (primary)" : "");
+                    workers.add(new DisplayCaptureWorker(i, name, FrameSource.forDevice(devices[i]),
+                            CaptureRegion.forDisplay(devices[i], region.getScale()),
+                            maxBufferSeconds, framesPerSecond, inputActivity));
                 }
-                frameBuffer.offer(screenshot);
-                
-                // Sleep to maintain frame rate
-                long elapsed = System.currentTimeMillis() - startTime;
-                long sleepTime = frameInterval - elapsed;
-                if (sleepTime > 0) {
-                    Thread.sleep(sleepTime);
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            } catch (Exception e) {
-                System.err.println("Error capturing screen: " + e.getMessage());
+            } else {
+                GraphicsDevice device = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice();
+                String name = CaptureRegion.MODE_REGION.equals(region.getMode()) ? "Region" : "Active Window";
+                workers.add(new DisplayCaptureWorker(0, name, FrameSource.forDevice(device), region,
+                        maxBufferSeconds, framesPerSecond, inputActivity));
             }
+        } catch (AWTException e) {
+            System.err.println("Failed to create capture worker: " + e.getMessage());
+        }
+        
+        // Workers start with the configured settings, any degradation applies on top
+        reconfigureWorkers();
+        for (DisplayCaptureWorker worker : workers) {
+            worker.start();
         }
     }
     
-    private BufferedImage captureScreenOptimized() {
-        // Use lower quality capture to reduce memory usage and processing time
-        BufferedImage screenshot = robot.createScreenCapture(screenBounds);
+    /**
+     * Turns foveated capture on or off: a small area around the pointer is grabbed at a high rate
+     * into a buffer of its own, next to the displays at the buffer rate, and exports merge both.
+     * Fast local interaction plays back smoothly for a fraction of what grabbing whole displays
+     * at that rate would cost. Needs a real screen, synthetic sources ignore it.
+     */
+    public synchronized void setFoveated(boolean enabled) {
+        foveated = enabled;
+        if (!isCapturing.get()) return;
+        if (enabled) {
+            startFovea();
+        } else {
+            stopFovea();
+        }
+    }
+
+    private synchronized void startFovea() {
+        if (!foveated || foveaWorker != null || syntheticSource != null || GraphicsEnvironment.isHeadless()) return;
+        try {
+            // Patches are grabbed at the display scale, so merging them needs no resampling
+            DisplayCaptureWorker worker = new DisplayCaptureWorker(-1, "Pointer area",
+                    FrameSource.forDevice(GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()),
+                    CaptureRegion.aroundCursor(FOVEA_WIDTH, FOVEA_HEIGHT, captureRegion.getScale()),
+                    maxBufferSeconds, FOVEA_FPS, inputActivity);
+            foveaWorker = worker;
+            reconfigureWorkers();
+            worker.start();
+        } catch (AWTException e) {
+            System.err.println("Failed to start foveated capture: " + e.getMessage());
+        }
+    }
+
+    private synchronized void stopFovea() {
+        DisplayCaptureWorker worker = foveaWorker;
+        if (worker != null) {
+            worker.stop();
+            foveaWorker = null;
+        }
+    }
+
+    private void stopWorkers() {
+        for (DisplayCaptureWorker worker : workers) {
+            worker.stop();
+        }
+        workers.clear();
+    }
+
+    /**
+     * Gives a hung or failing worker a new frame source on a new capture thread, keeping its
+     * buffer. Displays are re-enumerated first, since a display change is the usual cause.
+     * Used by {@link CaptureWatchdog}; returns false if no new source could be created.
+     */
+    public boolean restartWorker(DisplayCaptureWorker worker) {
+        if (!workers.contains(worker) && worker != foveaWorker) return false;
         
-        // Scale down screenshot to reduce memory usage (60% of original size for better performance)
-        int scaledWidth = (int)(screenshot.getWidth() * 0.6);
-        int scaledHeight = (int)(screenshot.getHeight() * 0.6);
-        BufferedImage scaledScreenshot = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = scaledScreenshot.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
-        g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_SPEED);
-        g2d.drawImage(screenshot, 0, 0, scaledWidth, scaledHeight, null);
-        g2d.dispose();
+        try {
+            worker.restart(newSource(worker));
+            return true;
+        } catch (AWTException | RuntimeException e) {
+            System.err.println("Failed to restart capture of " + worker.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    private FrameSource newSource(DisplayCaptureWorker worker) throws AWTException {
+        if (syntheticSource != null) return syntheticSource;
         
-        return scaledScreenshot;
+        GraphicsEnvironment env = GraphicsEnvironment.getLocalGraphicsEnvironment();
+        if (!captureRegion.isFullScreen() || worker == foveaWorker) {
+            return FrameSource.forDevice(env.getDefaultScreenDevice());
+        }
+        GraphicsDevice[] devices = env.getScreenDevices();
+        if (worker.getDisplayIndex() >= devices.length) {
+            throw new AWTException(worker.getName() + " is no longer connected");
+        }
+        return FrameSource.forDevice(devices[worker.getDisplayIndex()]);
     }
 
-    public BufferedImage[] getBufferedFrames() {
-        return frameBuffer.toArray(new BufferedImage[0]);
+    // Fed by the native hook, slows down and pauses the buffer workers while nobody is at the keyboard
+    public CursorTrack getCursorTrack() {
+        return cursorTrack;
+    }
+
+    public InputActivity getInputActivity() {
+        return inputActivity;
+    }
+
+    // The display workers and, with foveated capture, the pointer area worker
+    public List<DisplayCaptureWorker> getWorkers() {
+        List<DisplayCaptureWorker> all = new ArrayList<>(workers);
+        DisplayCaptureWorker fovea = foveaWorker;
+        if (fovea != null) {
+            all.add(fovea);
+        }
+        return all;
+    }
+
+    public List<DisplayCaptureWorker> getDisplays() {
+        return new ArrayList<>(workers);
+    }
+
+    /**
+     * Freezes the buffered frames of all displays right now. Cheap enough to call on the
+     * hotkey thread; the caller must release the snapshot after exporting.
+     */
+    public BufferSnapshot snapshot() {
+        long time = System.currentTimeMillis();
+        Map<Integer, FrameBuffer.Snapshot> displays = new LinkedHashMap<>();
+        for (DisplayCaptureWorker worker : workers) {
+            displays.put(worker.getDisplayIndex(), worker.snapshot());
+        }
+        long windowMs = maxBufferSeconds * 1000L;
+        DisplayCaptureWorker fovea = foveaWorker;
+        FrameBuffer.Snapshot patches = fovea != null ? fovea.snapshot() : null;
+        CursorTrack.Path cursor = cursorTrack != null ? cursorTrack.path(time - windowMs, time) : null;
+        return new BufferSnapshot(time, windowMs, displays, patches, cursor);
     }
 
     public boolean isCapturing() {
@@ -117,18 +241,110 @@ public class ScreenCapture {
     }
 
     public Rectangle getScreenBounds() {
-        return screenBounds;
+        return captureRegion.getBounds();
+    }
+    
+    public CaptureRegion getCaptureRegion() {
+        return captureRegion;
+    }
+    
+    public void setCaptureRegion(CaptureRegion captureRegion) {
+        this.captureRegion = captureRegion;
+        
+        // The worker layout depends on the capture area, so the workers are rebuilt
+        if (isCapturing.get()) {
+            stopWorkers();
+            startWorkers();
+        }
     }
 
+    // The buffer is resized in place and keeps as many existing frames as fit
     public void setBufferSeconds(int seconds) {
-        // Note: This would require restarting capture to take effect
-        // For now, just store the value for next restart
+        maxBufferSeconds = seconds;
+        reconfigureWorkers();
+    }
+    
+    public void setFramesPerSecond(int fps) {
+        framesPerSecond = Math.max(1, fps);
+        reconfigureWorkers();
+    }
+    
+    public int getFramesPerSecond() {
+        return framesPerSecond;
+    }
+    
+    // New frames are captured at this scale, frames already buffered keep theirs
+    public void setScale(double scale) {
+        captureRegion = captureRegion.withScale(scale);
+        reconfigureWorkers();
+    }
+    
+    public void setActiveRecordingSettings(int fps, int maxMinutes) {
+        activeRecordingFPS = Math.max(1, fps);
+        maxActiveRecordingMinutes = Math.max(1, maxMinutes);
+    }
+    
+    /**
+     * Lowers frame rate, capture scale and buffer length by the given factors (1.0 = as
+     * configured) for the buffer workers and active recording. Used by {@link MemoryGovernor};
+     * configuration changes made meanwhile keep the factors.
+     */
+    public void setDegradation(double fpsFactor, double scaleFactor, double bufferFactor) {
+        this.fpsFactor = fpsFactor;
+        this.scaleFactor = scaleFactor;
+        this.bufferFactor = bufferFactor;
+        reconfigureWorkers();
+    }
+    
+    private void reconfigureWorkers() {
+        int fps = Math.max(1, (int) Math.round(framesPerSecond * fpsFactor));
+        int bufferSeconds = Math.max(1, (int) Math.round(maxBufferSeconds * bufferFactor));
+        for (DisplayCaptureWorker worker : workers) {
+            worker.reconfigure(bufferSeconds, fps, captureRegion.getScale() * scaleFactor);
+        }
+        DisplayCaptureWorker fovea = foveaWorker;
+        if (fovea != null) {
+            fovea.reconfigure(bufferSeconds, Math.max(1, (int) Math.round(FOVEA_FPS * fpsFactor)),
+                    captureRegion.getScale() * scaleFactor);
+        }
+    }
+    
+    /**
+     * Compresses buffered and recorded frames captured before the given time and returns the
+     * bytes saved. Runs on the caller's thread and never blocks capture.
+     */
+    public long compressFramesOlderThan(long timestamp) {
+        long saved = 0;
+        for (DisplayCaptureWorker worker : getWorkers()) {
+            FrameBuffer.Snapshot snapshot = worker.snapshot();
+            try {
+                for (CapturedFrame frame : snapshot.getFrames(Long.MIN_VALUE, timestamp)) {
+                    saved += frame.compress();
+                }
+            } finally {
+                snapshot.release();
+            }
+        }
+        for (CapturedFrame frame : activeRecordingFrames) {
+            if (frame.getTimestamp() >= timestamp) break;
+            saved += frame.compress();
+        }
+        return saved;
     }
     
     // Active Recording Methods
     public void startActiveRecording() {
         if (isActiveRecording.get()) return;
         
+        if (recordingSource == null) {
+            try {
+                recordingSource = FrameSource.forDevice(null);
+            } catch (AWTException e) {
+                System.err.println("Failed to start active recording: " + e.getMessage());
+                return;
+            }
+        }
+        
         System.out.println("Starting active recording...");
         isActiveRecording.set(true);
         activeRecordingStartTime.set(System.currentTimeMillis());
@@ -151,25 +367,26 @@ public class ScreenCapture {
     }
     
     private void activeRecordingLoop() {
-        long frameInterval = 1000 / activeRecordingFPS;
-        long maxRecordingTime = maxActiveRecordingMinutes * 60 * 1000L; // 10 minutes in milliseconds
-        
         while (isActiveRecording.get()) {
+            // Read every frame so settings changes apply to a running recording
+            int fps = Math.max(1, (int) Math.round(activeRecordingFPS * fpsFactor));
+            long frameInterval = 1000 / fps;
+            long maxRecordingTime = maxActiveRecordingMinutes * 60 * 1000L;
+            
             try {
                 long currentTime = System.currentTimeMillis();
                 long recordingDuration = currentTime - activeRecordingStartTime.get();
                 
                 // Check if we've reached the maximum recording time
                 if (recordingDuration >= maxRecordingTime) {
-                    System.out.println("Maximum recording time reached (10 minutes), stopping...");
+                    System.out.println("Maximum recording time reached (" + maxActiveRecordingMinutes + " minutes), stopping...");
                     break;
                 }
                 
                 long frameStartTime = System.currentTimeMillis();
                 
                 // Capture screen for active recording (higher quality)
-                BufferedImage screenshot = captureScreenForActiveRecording();
-                activeRecordingFrames.offer(screenshot);
+                activeRecordingFrames.offer(captureScreenForActiveRecording(frameStartTime));
                 
                 // Memory management: if we have too many frames, remove some old ones
                 if (activeRecordingFrames.size() > maxActiveRecordingMinutes * 60 * activeRecordingFPS) {
@@ -189,25 +406,30 @@ public class ScreenCapture {
                 break;
             } catch (Exception e) {
                 System.err.println("Error in active recording: " + e.getMessage());
+            } catch (OutOfMemoryError e) {
+                // Same as the buffer workers: skip the frame and keep the recording so far
+                Metrics.add("capture.outOfMemory", 1);
+                System.err.println("Out of memory in active recording, skipping frame");
+                try {
+                    Thread.sleep(frameInterval);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
             }
         }
         
         isActiveRecording.set(false);
     }
     
-    private BufferedImage captureScreenForActiveRecording() {
-        BufferedImage screenshot = robot.createScreenCapture(screenBounds);
-        
-        // For active recording, use better quality (80% scaling)
-        int scaledWidth = (int)(screenshot.getWidth() * 0.8);
-        int scaledHeight = (int)(screenshot.getHeight() * 0.8);
-        BufferedImage scaledScreenshot = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = scaledScreenshot.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.drawImage(screenshot, 0, 0, scaledWidth, scaledHeight, null);
-        g2d.dispose();
+    private CapturedFrame captureScreenForActiveRecording(long timestamp) {
+        CaptureRegion region = captureRegion;
+        Rectangle bounds = region.getBounds();
+        BufferedImage screenshot = recordingSource.capture(bounds);
         
-        return scaledScreenshot;
+        // For active recording, use better quality (80% scaling, regions keep their own scale)
+        double scale = (region.isFullScreen() ? 0.8 : region.getScale()) * scaleFactor;
+        return new CapturedFrame(DisplayCaptureWorker.scale(screenshot, scale), timestamp, bounds);
     }
     
     public boolean isActiveRecording() {
@@ -223,8 +445,9 @@ public class ScreenCapture {
         return activeRecordingFrames.size();
     }
     
-    public BufferedImage[] getActiveRecordingFrames() {
-        return activeRecordingFrames.toArray(new BufferedImage[0]);
+    // Compressed frames stay compressed; CapturedFrame.images inflates them one at a time
+    public CapturedFrame[] getActiveRecordingFrames() {
+        return activeRecordingFrames.toArray(new CapturedFrame[0]);
     }
     
     public void clearActiveRecordingFrames() {
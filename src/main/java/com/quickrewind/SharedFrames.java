@@ -0,0 +1,284 @@
+package com.quickrewind;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frames handed to an {@link ExportWorker} through a file in the temp folder, one at a time and
+ * only when the worker's encoder asks for one. The worker asks for a frame into one of a few
+ * slots, the exporting process writes the frame's packed RGB pixels into that slot's area of the
+ * file and answers with where they are, and the worker copies them onto its heap, which frees the
+ * slot again. The file is thus only about as large as the frames in flight, the worker starts
+ * encoding right away, and as neither side maps the file it can be deleted right after the job.
+ * Layout, in native byte order: magic, version, frame count, end time, then per frame its time
+ * and delay, then the slot areas.
+ */
+public class SharedFrames implements FrameStream, AutoCloseable {
+    private static final int MAGIC = 0x51524632; // "QRF2"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 20;
+    private static final int ENTRY_BYTES = 12;
+
+    /**
+     * Asks the exporting process for a frame and waits for the answer: the "offset", "width" and
+     * "height" of the pixels in the slot, "cancelled" or an "error".
+     */
+    public interface Requests {
+        Map<String, Object> request(int index, int slot) throws IOException;
+    }
+
+    private final FileChannel channel;
+    private final Requests requests;
+    private final long[] times; // One more than frames, the last is the end time
+    private final int[] delays;
+    private final BlockingQueue<Integer> freeSlots;
+    private final ByteBuffer[] slotBuffers;
+
+    private SharedFrames(FileChannel channel, Requests requests, int count, int slots) {
+        this.channel = channel;
+        this.requests = requests;
+        this.times = new long[count + 1];
+        this.delays = new int[count];
+        this.freeSlots = new ArrayBlockingQueue<>(slots);
+        this.slotBuffers = new ByteBuffer[slots];
+        for (int slot = 0; slot < slots; slot++) {
+            freeSlots.add(slot);
+        }
+    }
+
+    /**
+     * Worker side: reads the frame table. At most the given number of frames are requested at once.
+     */
+    public static SharedFrames open(File source, Requests requests, int slots) throws IOException {
+        FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer start = read(channel, 0, HEADER_BYTES);
+            if (start.getInt() != MAGIC || start.getInt() != VERSION) {
+                throw new IOException("Not a shared frames file: " + source);
+            }
+            int count = start.getInt();
+
+            SharedFrames frames = new SharedFrames(channel, requests, count, Math.max(1, slots));
+            frames.times[count] = start.getLong();
+            ByteBuffer entries = read(channel, HEADER_BYTES, count * ENTRY_BYTES);
+            for (int i = 0; i < count; i++) {
+                frames.times[i] = entries.getLong();
+                frames.delays[i] = entries.getInt();
+            }
+            return frames;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int[] getDelays() {
+        return delays.clone();
+    }
+
+    @Override
+    public int size() {
+        return delays.length;
+    }
+
+    @Override
+    public long getTimestamp(int index) {
+        return times[index];
+    }
+
+    @Override
+    public long getEndTime() {
+        return times[times.length - 1];
+    }
+
+    // Every call asks for the frame again and copies it onto the heap, so the stream holds no pixels itself
+    @Override
+    public BufferedImage getFrame(int index) {
+        int slot;
+        try {
+            slot = freeSlots.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shared frame " + index, e);
+        }
+        try {
+            Map<String, Object> answer = requests.request(index, slot);
+            if (Boolean.TRUE.equals(answer.get("cancelled"))) {
+                throw new CancellationException("Export cancelled");
+            }
+            if (answer.get("error") != null) {
+                throw new IllegalStateException("Cannot share frame " + index + ": " + answer.get("error"));
+            }
+            return read(slot, ((Number) answer.get("offset")).longValue(),
+                    ((Number) answer.get("width")).intValue(), ((Number) answer.get("height")).intValue());
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read shared frame " + index, e);
+        } finally {
+            freeSlots.add(slot);
+        }
+    }
+
+    private BufferedImage read(int slot, long offset, int width, int height) throws IOException {
+        int bytes = width * height * 4;
+        ByteBuffer buffer = slotBuffers[slot];
+        if (buffer == null || buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+            slotBuffers[slot] = buffer;
+        }
+        buffer.clear().limit(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Shared frames file ends early");
+            }
+        }
+        buffer.flip();
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        buffer.asIntBuffer().get(pixels);
+        return image;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.nativeOrder());
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Not a shared frames file: too short");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Exporting side: writes the frame table, then answers the worker's frame requests, from any
+     * number of threads as long as each slot is served by one at a time.
+     */
+    public static final class Server implements AutoCloseable {
+        private final FrameStream frames;
+        private final FileChannel channel;
+        private final Map<Integer, Slot> slots = new HashMap<>();
+        private final AtomicLong servedBytes = new AtomicLong();
+        private final AtomicLong serveNanos = new AtomicLong();
+        private long fileEnd;
+
+        // Where a slot's frames go in the file, and the buffer they are packed into on the way
+        private static final class Slot {
+            long offset;
+            int capacity;
+            ByteBuffer buffer;
+        }
+
+        public Server(File target, FrameStream frames) throws IOException {
+            this.frames = frames;
+            this.channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                int count = frames.size();
+                int[] delaysMs = frames.getDelays();
+                ByteBuffer table = ByteBuffer.allocate(HEADER_BYTES + count * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+                table.putInt(MAGIC).putInt(VERSION).putInt(count).putLong(frames.getEndTime());
+                for (int i = 0; i < count; i++) {
+                    table.putLong(frames.getTimestamp(i)).putInt(delaysMs[i]);
+                }
+                table.flip();
+                write(channel, table, 0);
+                fileEnd = table.capacity();
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Writes the frame into the slot's area, which moves to the end of the file when the frame
+         * is larger than what the slot held before, and returns where it is.
+         */
+        public Map<String, Object> serve(int index, int slot) throws IOException {
+            long start = System.nanoTime();
+            BufferedImage image = frames.getFrame(index);
+            int width = image.getWidth();
+            int height = image.getHeight();
+            int bytes = width * height * 4;
+            Slot area = area(slot, bytes);
+
+            ByteBuffer buffer = area.buffer;
+            IntBuffer ints = buffer.clear().asIntBuffer();
+            int[] packed = ColorQuantizer.packedPixels(image);
+            if (packed != null) {
+                ints.put(packed, 0, width * height);
+            } else {
+                int[] row = new int[width];
+                for (int y = 0; y < height; y++) {
+                    image.getRGB(0, y, width, 1, row, 0, width);
+                    ints.put(row);
+                }
+            }
+            buffer.limit(bytes);
+            write(channel, buffer, area.offset);
+            servedBytes.addAndGet(bytes);
+            serveNanos.addAndGet(System.nanoTime() - start);
+
+            Map<String, Object> answer = new HashMap<>();
+            answer.put("offset", area.offset);
+            answer.put("width", width);
+            answer.put("height", height);
+            return answer;
+        }
+
+        private synchronized Slot area(int slot, int bytes) {
+            Slot area = slots.computeIfAbsent(slot, key -> new Slot());
+            if (area.capacity < bytes) {
+                area.offset = fileEnd;
+                area.capacity = bytes;
+                area.buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+                fileEnd += bytes;
+            }
+            return area;
+        }
+
+        // Pixel bytes written so far, frames asked for twice counted twice
+        public long getServedBytes() {
+            return servedBytes.get();
+        }
+
+        // Time spent producing and writing frames, summed over all threads
+        public long getServeNanos() {
+            return serveNanos.get();
+        }
+
+        // How large the file got, the frame table and slot areas together
+        public synchronized long getFileBytes() {
+            return fileEnd;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data, position + data.position());
+        }
+    }
+}
@@ -1,130 +1,214 @@
 package com.quickrewind;
 
-import javax.imageio.*;
-import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.metadata.IIOMetadataNode;
-import javax.imageio.stream.ImageOutputStream;
-import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.File;
 import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 public class SimpleGifEncoder {
     
     public static void encodeGif(List<BufferedImage> frames, File outputFile, int delayMs) throws IOException {
+        int[] delays = new int[frames.size()];
+        Arrays.fill(delays, delayMs);
+        encodeGif(frames, outputFile, delays);
+    }
+    
+    public static void encodeGif(List<BufferedImage> frames, File outputFile, int[] delaysMs) throws IOException {
+        encodeGif(frames, outputFile, delaysMs, 0, 0, Ditherer.DEFAULT_MODE, EncodeProgress.NONE);
+    }
+    
+    /**
+     * Encodes the frames as an animated GIF. With a positive maxBytes, scale, palette size,
+     * frame step and delta encoding are chosen up front from a parallel size estimate so the
+     * file fits in a single pass. With a positive budgetMs the quality is lowered (palette,
+     * dithering, scale, frame count) as needed to finish within that time; when both are set
+     * the size choice stands and the budget can only lower dithering and frame count further.
+     * ditherMode is one of the {@link Ditherer} modes and is used whenever the settings allow dithering.
+     */
+    public static void encodeGif(List<BufferedImage> frames, File outputFile, int[] delaysMs,
+                                 long budgetMs, long maxBytes, String ditherMode,
+                                 EncodeProgress progress) throws IOException {
+        encodeGif(frames, outputFile, delaysMs, budgetMs, maxBytes, ditherMode, progress, null);
+    }
+    
+    /**
+     * Like the method above, and with a non-null upload every frame is sent to the uploader as
+     * soon as it is encoded; the upload is finished right after the trailer and aborted if the
+     * encoding fails or is cancelled.
+     */
+    public static void encodeGif(List<BufferedImage> frames, File outputFile, int[] delaysMs,
+                                 long budgetMs, long maxBytes, String ditherMode,
+                                 EncodeProgress progress, HttpUploader upload) throws IOException {
+        encodeGif(frames, outputFile, delaysMs, budgetMs, maxBytes, ditherMode, 0, progress, upload);
+    }
+    
+    /**
+     * Like the method above, with lossy LZW compression: lossyError is the largest color error
+     * (Euclidean RGB distance) a pixel may get for longer codes, 0 keeps the palette colors exact.
+     */
+    public static void encodeGif(List<BufferedImage> frames, File outputFile, int[] delaysMs,
+                                 long budgetMs, long maxBytes, String ditherMode, int lossyError,
+                                 EncodeProgress progress, HttpUploader upload) throws IOException {
+        encodeGif(FrameStream.of(frames, delaysMs), outputFile, budgetMs, maxBytes, ditherMode, lossyError,
+                progress, upload);
+    }
+    
+    /**
+     * Like the method above, pulling frames from the stream as they are encoded. Apart from the
+     * samples read one at a time while planning, only the frame being encoded and the palette
+     * indices of the one before it are in memory.
+     */
+    public static void encodeGif(FrameStream frames, File outputFile, long budgetMs, long maxBytes,
+                                 String ditherMode, int lossyError, EncodeProgress progress,
+                                 HttpUploader upload) throws IOException {
         if (frames.isEmpty()) {
             throw new IllegalArgumentException("No frames to encode");
         }
+        long startNanos = System.nanoTime();
         
         // Optimize for long recordings by reducing frame count if needed
-        List<BufferedImage> optimizedFrames = optimizeFramesForLongRecordings(frames, delayMs);
+        int[] frameIndices = optimizeFramesForLongRecordings(frames.size());
+        // A view, not a copy: frames are only produced when used
+        List<BufferedImage> optimizedFrames = new AbstractList<BufferedImage>() {
+            @Override
+            public BufferedImage get(int index) {
+                return frames.getFrame(frameIndices[index]);
+            }
+            
+            @Override
+            public int size() {
+                return frameIndices.length;
+            }
+        };
+        int[] optimizedDelays = mergeDelays(frameIndices, frames.getDelays());
+        
+        // Active window captures can change size mid-recording, so every frame is fitted to the first frame's size
+        BufferedImage firstFrame = optimizedFrames.get(0);
+        int baseWidth = firstFrame.getWidth();
+        int baseHeight = firstFrame.getHeight();
+        int[] histogram = ColorQuantizer.histogram(samplePaletteFrames(optimizedFrames));
         
-        // Get GIF writer
-        ImageWriter writer = null;
-        java.util.Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("gif");
-        if (writers.hasNext()) {
-            writer = writers.next();
+        EncodeSettings settings = EncodeSettings.full();
+        if (maxBytes > 0) {
+            settings = new SizePlanner(optimizedFrames, histogram, baseWidth, baseHeight, maxBytes,
+                    ditherMode, lossyError).plan();
         }
         
-        if (writer == null) {
-            throw new IOException("No GIF writer found");
+        DeadlinePlanner planner = null;
+        if (budgetMs > 0) {
+            planner = new DeadlinePlanner(startNanos, budgetMs);
+            calibrate(planner, optimizedFrames.get(optimizedFrames.size() / 2), baseWidth, baseHeight, ditherMode, lossyError);
+            if (maxBytes <= 0) {
+                settings = planner.plan(optimizedFrames.size(), (long) baseWidth * baseHeight);
+            }
+            System.out.println("Encoding within " + budgetMs + " ms budget using " + settings);
         }
         
-        try (ImageOutputStream ios = ImageIO.createImageOutputStream(outputFile)) {
-            writer.setOutput(ios);
-            writer.prepareWriteSequence(null);
+        int canvasWidth = Math.max(1, (int) (baseWidth * settings.getScale()));
+        int canvasHeight = Math.max(1, (int) (baseHeight * settings.getScale()));
+        
+        // One palette for the whole recording, built from a handful of frames spread over it
+        Palette palette = settings.isAdaptivePalette()
+            ? ColorQuantizer.buildPalette(histogram, settings.getPaletteColors())
+            : Palette.defaultPalette();
+        
+        // Written to a partial file that only gets the real name once complete and synced to disk
+        try (BlockFileWriter out = new BlockFileWriter(outputFile)) {
+            if (upload != null) {
+                out.mirrorTo(upload);
+            }
+            GifWriter gif = new GifWriter(out, canvasWidth, canvasHeight, palette);
+            gif.writeHeader();
             
-            System.out.println("Creating GIF with " + optimizedFrames.size() + " frames (original: " + frames.size() + ")...");
+            System.out.println("Creating GIF with " + optimizedFrames.size() + " frames (original: " + frames.size() + ")"
+                + (lossyError > 0 ? ", lossy compression up to color error " + lossyError : "") + "...");
             
-            for (int i = 0; i < optimizedFrames.size(); i++) {
-                BufferedImage frame = optimizedFrames.get(i);
-                
-                // Convert to indexed color for better GIF compatibility
-                BufferedImage indexedFrame = convertToIndexedColor(frame);
+            byte[] previous = null;
+            int written = 0;
+            int i = 0;
+            while (i < optimizedFrames.size()) {
+                if (progress.isCancelled()) {
+                    throw new CancellationException("GIF encoding cancelled");
+                }
+                long frameStart = System.nanoTime();
                 
-                // Create metadata for animation
-                IIOMetadata metadata = createMetadata(writer, indexedFrame, delayMs, i == 0);
+                // Frames skipped by the frame step stay folded into this frame's delay
+                int next = Math.min(i + settings.getFrameStep(), optimizedFrames.size());
+                int delay = 0;
+                for (int j = i; j < next; j++) {
+                    delay += optimizedDelays[j];
+                }
                 
-                // Write the frame
-                writer.writeToSequence(new IIOImage(indexedFrame, null, metadata), null);
+                // Map to the palette, then store only what changed since the previous frame
+                byte[] indices = toIndices(optimizedFrames.get(i), canvasWidth, canvasHeight, palette,
+                        settings.isDither() ? ditherMode : Ditherer.MODE_NONE);
+                gif.writeFrame(GifWriter.encodeFrame(indices, settings.isDeltaFrames() ? previous : null,
+                        canvasWidth, canvasHeight, palette, delay, lossyError));
+                previous = indices;
+                written++;
+                i = next;
                 
-                if (i % 10 == 0) {
-                    System.out.println("Written frame " + (i + 1) + "/" + optimizedFrames.size());
+                if (planner != null) {
+                    settings = planner.adjust(settings, optimizedFrames.size() - i,
+                            (long) canvasWidth * canvasHeight, System.nanoTime() - frameStart);
                 }
+                int remaining = (optimizedFrames.size() - i + settings.getFrameStep() - 1) / settings.getFrameStep();
+                progress.onProgress(written, written + remaining);
             }
             
-            writer.endWriteSequence();
-            
-            long fileSize = outputFile.length();
-            System.out.println("GIF created successfully: " + formatFileSize(fileSize));
+            gif.finish();
+            out.commit();
             
-        } finally {
-            writer.dispose();
+            long elapsedMs = (System.nanoTime() - startNanos) / 1_000_000;
+            System.out.println("GIF created successfully: " + formatFileSize(gif.getBytesWritten()) + ", "
+                + written + " frames in " + elapsedMs + " ms");
+            if (maxBytes > 0 && gif.getBytesWritten() > maxBytes) {
+                System.err.println("GIF is larger than the " + formatFileSize(maxBytes) + " limit");
+            }
         }
     }
     
-    private static BufferedImage convertToIndexedColor(BufferedImage src) {
-        // Create a new indexed color image
-        BufferedImage indexed = new BufferedImage(
-            src.getWidth(), 
-            src.getHeight(), 
-            BufferedImage.TYPE_BYTE_INDEXED
-        );
-        
-        Graphics2D g2d = indexed.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
-        g2d.drawImage(src, 0, 0, null);
-        g2d.dispose();
-        
-        return indexed;
+    private static byte[] toIndices(BufferedImage frame, int width, int height, Palette palette, String ditherMode) {
+        BufferedImage indexed = ColorQuantizer.toIndexed(frame, width, height, palette, ditherMode);
+        return ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
     }
     
-    private static IIOMetadata createMetadata(ImageWriter writer, BufferedImage image, int delayMs, boolean isFirst) throws IOException {
-        ImageWriteParam writeParam = writer.getDefaultWriteParam();
-        ImageTypeSpecifier typeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(image.getType());
-        IIOMetadata metadata = writer.getDefaultImageMetadata(typeSpecifier, writeParam);
-        
-        String metaFormatName = metadata.getNativeMetadataFormatName();
-        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(metaFormatName);
-        
-        // Set up animation properties
-        IIOMetadataNode graphicsControlExtensionNode = getNode(root, "GraphicControlExtension");
-        graphicsControlExtensionNode.setAttribute("disposalMethod", "none");
-        graphicsControlExtensionNode.setAttribute("userInputFlag", "FALSE");
-        graphicsControlExtensionNode.setAttribute("transparentColorFlag", "FALSE");
-        graphicsControlExtensionNode.setAttribute("delayTime", String.valueOf(delayMs / 10)); // Convert to centiseconds
-        graphicsControlExtensionNode.setAttribute("transparentColorIndex", "0");
-        
-        // Set loop count on first frame
-        if (isFirst) {
-            IIOMetadataNode appExtensionsNode = getNode(root, "ApplicationExtensions");
-            IIOMetadataNode child = new IIOMetadataNode("ApplicationExtension");
-            child.setAttribute("applicationID", "NETSCAPE");
-            child.setAttribute("authenticationCode", "2.0");
+    // A view as well, so the samples are read one at a time
+    private static List<BufferedImage> samplePaletteFrames(List<BufferedImage> frames) {
+        int samples = Math.min(8, frames.size());
+        return new AbstractList<BufferedImage>() {
+            @Override
+            public BufferedImage get(int index) {
+                return frames.get(index * frames.size() / samples);
+            }
             
-            // Play once only (no loop)
-            byte[] playOnce = {0x1, 0x1, 0x0};
-            child.setUserObject(playOnce);
-            appExtensionsNode.appendChild(child);
-        }
-        
-        metadata.setFromTree(metaFormatName, root);
-        return metadata;
+            @Override
+            public int size() {
+                return samples;
+            }
+        };
     }
     
-    private static IIOMetadataNode getNode(IIOMetadataNode rootNode, String nodeName) {
-        int nNodes = rootNode.getLength();
-        for (int i = 0; i < nNodes; i++) {
-            if (rootNode.item(i).getNodeName().compareToIgnoreCase(nodeName) == 0) {
-                return (IIOMetadataNode) rootNode.item(i);
-            }
-        }
-        
-        // Node doesn't exist, create it
-        IIOMetadataNode node = new IIOMetadataNode(nodeName);
-        rootNode.appendChild(node);
-        return node;
+    private static void calibrate(DeadlinePlanner planner, BufferedImage sample, int width, int height,
+                                  String ditherMode, int lossyError) {
+        // Time one dithered and one plain conversion + compression of the same frame in memory
+        Palette palette = Palette.defaultPalette();
+        long pixels = (long) width * height;
+        double ditherNs = timeEncode(sample, width, height, palette, ditherMode, lossyError) / (double) pixels;
+        double plainNs = timeEncode(sample, width, height, palette, Ditherer.MODE_NONE, lossyError) / (double) pixels;
+        planner.calibrate(ditherNs, plainNs);
+    }
+    
+    private static long timeEncode(BufferedImage frame, int width, int height, Palette palette,
+                                   String ditherMode, int lossyError) {
+        long start = System.nanoTime();
+        byte[] indices = toIndices(frame, width, height, palette, ditherMode);
+        GifWriter.encodeFrame(indices, null, width, height, palette, 0, lossyError);
+        return System.nanoTime() - start;
     }
     
     private static String formatFileSize(long bytes) {
@@ -133,28 +217,40 @@ public class SimpleGifEncoder {
         return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
     }
     
-    private static List<BufferedImage> optimizeFramesForLongRecordings(List<BufferedImage> frames, int delayMs) {
+    private static int[] optimizeFramesForLongRecordings(int frameCount) {
         // If recording is too long or has too many frames, reduce frame count for better performance
         int maxFramesForGif = 300; // Maximum frames for reasonable GIF size
         
-        if (frames.size() <= maxFramesForGif) {
-            return frames; // No optimization needed
+        if (frameCount <= maxFramesForGif) {
+            int[] all = new int[frameCount];
+            for (int i = 0; i < frameCount; i++) {
+                all[i] = i;
+            }
+            return all; // No optimization needed
         }
         
-        System.out.println("Optimizing " + frames.size() + " frames to " + maxFramesForGif + " frames for better performance");
+        System.out.println("Optimizing " + frameCount + " frames to " + maxFramesForGif + " frames for better performance");
         
         // Calculate the step size to sample frames evenly
-        double step = (double) frames.size() / maxFramesForGif;
-        java.util.List<BufferedImage> optimizedFrames = new java.util.ArrayList<>();
+        double step = (double) frameCount / maxFramesForGif;
+        int[] indices = new int[maxFramesForGif];
         
         for (int i = 0; i < maxFramesForGif; i++) {
-            int frameIndex = (int) Math.round(i * step);
-            if (frameIndex >= frames.size()) {
-                frameIndex = frames.size() - 1;
-            }
-            optimizedFrames.add(frames.get(frameIndex));
+            indices[i] = Math.min((int) Math.round(i * step), frameCount - 1);
         }
         
-        return optimizedFrames;
+        return indices;
+    }
+    
+    private static int[] mergeDelays(int[] frameIndices, int[] delaysMs) {
+        // A kept frame stays on screen for all the frames dropped after it
+        int[] merged = new int[frameIndices.length];
+        for (int i = 0; i < frameIndices.length; i++) {
+            int end = i + 1 < frameIndices.length ? frameIndices[i + 1] : delaysMs.length;
+            for (int j = frameIndices[i]; j < end; j++) {
+                merged[i] += delaysMs[j];
+            }
+        }
+        return merged;
     }
-}
\ No newline at end of file
+}
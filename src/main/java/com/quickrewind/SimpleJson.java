@@ -0,0 +1,183 @@
+package com.quickrewind;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reader and writer for flat JSON objects (string, number, boolean and null values), which is
+ * all the config file needs. Keeps a JSON library off the startup path.
+ */
+public class SimpleJson {
+    private final String text;
+    private int pos;
+
+    private SimpleJson(String text) {
+        this.text = text;
+    }
+
+    public static Map<String, Object> parseObject(String text) {
+        SimpleJson parser = new SimpleJson(text);
+        Map<String, Object> values = parser.readObject();
+        parser.skipWhitespace();
+        if (parser.pos != text.length()) {
+            throw parser.error("Unexpected trailing content");
+        }
+        return values;
+    }
+
+    // Same layout as the pretty printer the config file was written with before
+    public static String writeObject(Map<String, ?> values) {
+        StringBuilder json = new StringBuilder("{");
+        String separator = "\n";
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            json.append(separator).append("  ");
+            writeString(json, entry.getKey());
+            json.append(" : ");
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                writeString(json, (String) value);
+            } else {
+                json.append(value);
+            }
+            separator = ",\n";
+        }
+        return json.append("\n}").toString();
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return values;
+        }
+
+        while (true) {
+            skipWhitespace();
+            String key = readString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            values.put(key, readValue());
+            skipWhitespace();
+            char c = next();
+            if (c == '}') return values;
+            if (c != ',') throw error("Expected ',' or '}'");
+        }
+    }
+
+    private Object readValue() {
+        char c = peek();
+        if (c == '"') return readString();
+        if (text.startsWith("true", pos)) {
+            pos += 4;
+            return Boolean.TRUE;
+        }
+        if (text.startsWith("false", pos)) {
+            pos += 5;
+            return Boolean.FALSE;
+        }
+        if (text.startsWith("null", pos)) {
+            pos += 4;
+            return null;
+        }
+        if (c == '-' || (c >= '0' && c <= '9')) return readNumber();
+        throw error("Unsupported value");
+    }
+
+    private Number readNumber() {
+        int start = pos;
+        boolean decimal = false;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            pos++;
+        }
+
+        String number = text.substring(start, pos);
+        try {
+            return decimal ? (Number) Double.parseDouble(number) : (Number) Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number " + number);
+        }
+    }
+
+    private String readString() {
+        expect('"');
+        StringBuilder value = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+
+            char escaped = next();
+            switch (escaped) {
+                case 'n': value.append('\n'); break;
+                case 't': value.append('\t'); break;
+                case 'r': value.append('\r'); break;
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'u':
+                    if (pos + 4 > text.length()) throw error("Truncated escape");
+                    value.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    pos += 4;
+                    break;
+                default: value.append(escaped); // \" \\ \/
+            }
+        }
+    }
+
+    private static void writeString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\t': json.append("\\t"); break;
+                case '\r': json.append("\\r"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    private void skipWhitespace() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    private char peek() {
+        if (pos >= text.length()) throw error("Unexpected end of input");
+        return text.charAt(pos);
+    }
+
+    private char next() {
+        char c = peek();
+        pos++;
+        return c;
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) throw error("Expected '" + expected + "'");
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos);
+    }
+}
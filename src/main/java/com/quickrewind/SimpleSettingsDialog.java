@@ -4,16 +4,50 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.io.File;
+import java.util.Arrays;
 
 public class SimpleSettingsDialog extends JFrame {
+    private static final String[] DITHER_MODES = {
+        Ditherer.MODE_BAYER, Ditherer.MODE_BLUE_NOISE, Ditherer.MODE_FLOYD_STEINBERG, Ditherer.MODE_NONE
+    };
+    private static final String[] DITHER_LABELS = {
+        "Ordered - Bayer (stable, smallest files)",
+        "Ordered - Blue noise (stable, finer grain)",
+        "Floyd-Steinberg (smoothest, larger files)",
+        "None (banding on gradients)"
+    };
+    private static final String[] EXPORT_FORMATS = { Config.FORMAT_GIF, Config.FORMAT_AVI };
+    private static final String[] EXPORT_FORMAT_LABELS = {
+        "GIF (plays everywhere, 256 colors)",
+        "AVI - Motion JPEG (full color, saves in seconds)"
+    };
+    
     private final Config config;
     private JTextField outputFolderField;
     private JSlider bufferSlider;
     private JLabel bufferValueLabel;
+    private JSlider bufferFpsSlider;
+    private JLabel bufferFpsValueLabel;
+    private JSlider shortCaptureSlider;
+    private JLabel shortCaptureValueLabel;
+    private JSlider captureScaleSlider;
+    private JLabel captureScaleValueLabel;
     private JSlider recordingFpsSlider;
     private JLabel recordingFpsValueLabel;
     private JSlider maxRecordingSlider;
     private JLabel maxRecordingValueLabel;
+    private JSlider saveBudgetSlider;
+    private JLabel saveBudgetValueLabel;
+    private JComboBox<String> ditherCombo;
+    private JSlider lossySlider;
+    private JLabel lossyValueLabel;
+    private JComboBox<String> formatCombo;
+    private JCheckBox helperProcessCheckBox;
+    private JCheckBox showCursorCheckBox;
+    private JCheckBox foveatedCheckBox;
+    private JTextField uploadUrlField;
+    private JSlider maxSizeSlider;
+    private JLabel maxSizeValueLabel;
     private final QuickRewind mainApp;
     
     public SimpleSettingsDialog(Config config, QuickRewind mainApp) {
@@ -22,7 +56,7 @@ public class SimpleSettingsDialog extends JFrame {
         this.mainApp = mainApp;
         
         setDefaultCloseOperation(HIDE_ON_CLOSE);
-        setSize(650, 550);
+        setSize(650, 1345);
         setLocationRelativeTo(null);
         
         initComponents();
@@ -73,6 +107,68 @@ public class SimpleSettingsDialog extends JFrame {
         
         bufferPanel.add(sliderPanel, BorderLayout.CENTER);
         
+        // Buffer FPS section
+        JPanel bufferFpsPanel = new JPanel(new BorderLayout(5, 5));
+        bufferFpsPanel.add(new JLabel("Buffer Frame Rate:"), BorderLayout.NORTH);
+        
+        bufferFpsSlider = new JSlider(1, 10, 2);
+        bufferFpsSlider.setMajorTickSpacing(1);
+        bufferFpsSlider.setPaintTicks(true);
+        bufferFpsSlider.setPaintLabels(true);
+        bufferFpsSlider.addChangeListener(e -> updateBufferFpsLabel());
+        
+        bufferFpsValueLabel = new JLabel("2 FPS", JLabel.CENTER);
+        
+        JPanel bufferFpsSliderPanel = new JPanel(new BorderLayout());
+        bufferFpsSliderPanel.add(bufferFpsSlider, BorderLayout.CENTER);
+        bufferFpsSliderPanel.add(bufferFpsValueLabel, BorderLayout.SOUTH);
+        
+        bufferFpsPanel.add(bufferFpsSliderPanel, BorderLayout.CENTER);
+        showCursorCheckBox = new JCheckBox("Draw the mouse pointer (moves smoothly at any frame rate)");
+        foveatedCheckBox = new JCheckBox("Capture the area around the pointer at 10 FPS (smooth local interaction)");
+        JPanel bufferOptionsPanel = new JPanel(new GridLayout(2, 1));
+        bufferOptionsPanel.add(showCursorCheckBox);
+        bufferOptionsPanel.add(foveatedCheckBox);
+        bufferFpsPanel.add(bufferOptionsPanel, BorderLayout.SOUTH);
+        
+        // Short capture section
+        JPanel shortCapturePanel = new JPanel(new BorderLayout(5, 5));
+        shortCapturePanel.add(new JLabel("Short Capture Length (Ctrl+Shift+H saves only the last seconds):"), BorderLayout.NORTH);
+        
+        shortCaptureSlider = new JSlider(1, 60, 10);
+        shortCaptureSlider.setMajorTickSpacing(10);
+        shortCaptureSlider.setMinorTickSpacing(5);
+        shortCaptureSlider.setPaintTicks(true);
+        shortCaptureSlider.setPaintLabels(true);
+        shortCaptureSlider.addChangeListener(e -> updateShortCaptureLabel());
+        
+        shortCaptureValueLabel = new JLabel("10 seconds", JLabel.CENTER);
+        
+        JPanel shortCaptureSliderPanel = new JPanel(new BorderLayout());
+        shortCaptureSliderPanel.add(shortCaptureSlider, BorderLayout.CENTER);
+        shortCaptureSliderPanel.add(shortCaptureValueLabel, BorderLayout.SOUTH);
+        
+        shortCapturePanel.add(shortCaptureSliderPanel, BorderLayout.CENTER);
+        
+        // Full screen capture scale section
+        JPanel captureScalePanel = new JPanel(new BorderLayout(5, 5));
+        captureScalePanel.add(new JLabel("Full Screen Capture Scale:"), BorderLayout.NORTH);
+        
+        captureScaleSlider = new JSlider(25, 100, 60);
+        captureScaleSlider.setMajorTickSpacing(25);
+        captureScaleSlider.setMinorTickSpacing(5);
+        captureScaleSlider.setPaintTicks(true);
+        captureScaleSlider.setPaintLabels(true);
+        captureScaleSlider.addChangeListener(e -> updateCaptureScaleLabel());
+        
+        captureScaleValueLabel = new JLabel("60%", JLabel.CENTER);
+        
+        JPanel captureScaleSliderPanel = new JPanel(new BorderLayout());
+        captureScaleSliderPanel.add(captureScaleSlider, BorderLayout.CENTER);
+        captureScaleSliderPanel.add(captureScaleValueLabel, BorderLayout.SOUTH);
+        
+        captureScalePanel.add(captureScaleSliderPanel, BorderLayout.CENTER);
+        
         // Active Recording FPS section
         JPanel recordingFpsPanel = new JPanel(new BorderLayout(5, 5));
         recordingFpsPanel.add(new JLabel("Active Recording FPS:"), BorderLayout.NORTH);
@@ -111,6 +207,88 @@ public class SimpleSettingsDialog extends JFrame {
         
         maxRecordingPanel.add(maxRecordingSliderPanel, BorderLayout.CENTER);
         
+        // Max Save Time section
+        JPanel saveBudgetPanel = new JPanel(new BorderLayout(5, 5));
+        saveBudgetPanel.add(new JLabel("Max Save Time (quality is reduced to finish in time):"), BorderLayout.NORTH);
+        
+        saveBudgetSlider = new JSlider(0, 60, 0);
+        saveBudgetSlider.setMajorTickSpacing(10);
+        saveBudgetSlider.setMinorTickSpacing(5);
+        saveBudgetSlider.setPaintTicks(true);
+        saveBudgetSlider.setPaintLabels(true);
+        saveBudgetSlider.addChangeListener(e -> updateSaveBudgetLabel());
+        
+        saveBudgetValueLabel = new JLabel("Unlimited", JLabel.CENTER);
+        
+        JPanel saveBudgetSliderPanel = new JPanel(new BorderLayout());
+        saveBudgetSliderPanel.add(saveBudgetSlider, BorderLayout.CENTER);
+        saveBudgetSliderPanel.add(saveBudgetValueLabel, BorderLayout.SOUTH);
+        
+        saveBudgetPanel.add(saveBudgetSliderPanel, BorderLayout.CENTER);
+        
+        // Max GIF Size section
+        JPanel maxSizePanel = new JPanel(new BorderLayout(5, 5));
+        maxSizePanel.add(new JLabel("Max GIF Size (for Jira/Slack upload limits):"), BorderLayout.NORTH);
+        
+        maxSizeSlider = new JSlider(0, 50, 0);
+        maxSizeSlider.setMajorTickSpacing(10);
+        maxSizeSlider.setMinorTickSpacing(5);
+        maxSizeSlider.setPaintTicks(true);
+        maxSizeSlider.setPaintLabels(true);
+        maxSizeSlider.addChangeListener(e -> updateMaxSizeLabel());
+        
+        maxSizeValueLabel = new JLabel("Unlimited", JLabel.CENTER);
+        
+        JPanel maxSizeSliderPanel = new JPanel(new BorderLayout());
+        maxSizeSliderPanel.add(maxSizeSlider, BorderLayout.CENTER);
+        maxSizeSliderPanel.add(maxSizeValueLabel, BorderLayout.SOUTH);
+        
+        maxSizePanel.add(maxSizeSliderPanel, BorderLayout.CENTER);
+        
+        // Dithering section
+        JPanel ditherPanel = new JPanel(new BorderLayout(5, 5));
+        ditherPanel.add(new JLabel("Dithering:"), BorderLayout.NORTH);
+        
+        ditherCombo = new JComboBox<>(DITHER_LABELS);
+        ditherPanel.add(ditherCombo, BorderLayout.CENTER);
+        
+        // Lossy compression section
+        JPanel lossyPanel = new JPanel(new BorderLayout(5, 5));
+        lossyPanel.add(new JLabel("Lossy Compression (smaller GIFs, slight noise):"), BorderLayout.NORTH);
+        
+        lossySlider = new JSlider(0, 100, 0);
+        lossySlider.setMajorTickSpacing(20);
+        lossySlider.setMinorTickSpacing(10);
+        lossySlider.setPaintTicks(true);
+        lossySlider.setPaintLabels(true);
+        lossySlider.addChangeListener(e -> updateLossyLabel());
+        
+        lossyValueLabel = new JLabel("Off (lossless)", JLabel.CENTER);
+        
+        JPanel lossySliderPanel = new JPanel(new BorderLayout());
+        lossySliderPanel.add(lossySlider, BorderLayout.CENTER);
+        lossySliderPanel.add(lossyValueLabel, BorderLayout.SOUTH);
+        
+        lossyPanel.add(lossySliderPanel, BorderLayout.CENTER);
+        
+        // Export format section
+        JPanel formatPanel = new JPanel(new BorderLayout(5, 5));
+        formatPanel.add(new JLabel("Export Format:"), BorderLayout.NORTH);
+        
+        formatCombo = new JComboBox<>(EXPORT_FORMAT_LABELS);
+        formatPanel.add(formatCombo, BorderLayout.CENTER);
+        
+        helperProcessCheckBox = new JCheckBox("Encode in a separate process (capture stays smooth during large exports)");
+        formatPanel.add(helperProcessCheckBox, BorderLayout.SOUTH);
+        
+        // Upload section
+        JPanel uploadPanel = new JPanel(new BorderLayout(5, 5));
+        uploadPanel.add(new JLabel("Upload URL (tus endpoint, empty = save locally only):"), BorderLayout.NORTH);
+        
+        uploadUrlField = new JTextField();
+        uploadUrlField.setPreferredSize(new Dimension(400, 25));
+        uploadPanel.add(uploadUrlField, BorderLayout.CENTER);
+        
         // Current location info
         JPanel infoPanel = new JPanel(new BorderLayout());
         infoPanel.setBorder(BorderFactory.createTitledBorder("Usage Information"));
@@ -121,6 +299,8 @@ public class SimpleSettingsDialog extends JFrame {
         infoText.setText(
             "Buffer Mode:\\n" +
             "• Hotkey: Ctrl+Shift+G\\n" +
+            "• Ctrl+Shift+H: last few seconds only\\n" +
+            "• Ctrl+Shift+J: choose a time range\\n" +
             "• Double-click tray icon to capture buffer\\n" +
             "\\n" +
             "Active Recording Mode:\\n" +
@@ -154,10 +334,28 @@ public class SimpleSettingsDialog extends JFrame {
         mainPanel.add(Box.createVerticalStrut(15));
         mainPanel.add(bufferPanel);
         mainPanel.add(Box.createVerticalStrut(15));
+        mainPanel.add(bufferFpsPanel);
+        mainPanel.add(Box.createVerticalStrut(15));
+        mainPanel.add(shortCapturePanel);
+        mainPanel.add(Box.createVerticalStrut(15));
+        mainPanel.add(captureScalePanel);
+        mainPanel.add(Box.createVerticalStrut(15));
         mainPanel.add(recordingFpsPanel);
         mainPanel.add(Box.createVerticalStrut(15));
         mainPanel.add(maxRecordingPanel);
         mainPanel.add(Box.createVerticalStrut(15));
+        mainPanel.add(saveBudgetPanel);
+        mainPanel.add(Box.createVerticalStrut(15));
+        mainPanel.add(maxSizePanel);
+        mainPanel.add(Box.createVerticalStrut(15));
+        mainPanel.add(ditherPanel);
+        mainPanel.add(Box.createVerticalStrut(15));
+        mainPanel.add(lossyPanel);
+        mainPanel.add(Box.createVerticalStrut(15));
+        mainPanel.add(formatPanel);
+        mainPanel.add(Box.createVerticalStrut(15));
+        mainPanel.add(uploadPanel);
+        mainPanel.add(Box.createVerticalStrut(15));
         mainPanel.add(infoPanel);
         
         add(mainPanel, BorderLayout.CENTER);
@@ -167,11 +365,29 @@ public class SimpleSettingsDialog extends JFrame {
     private void loadCurrentSettings() {
         outputFolderField.setText(config.getOutputFolder());
         bufferSlider.setValue(config.getBufferSeconds());
+        bufferFpsSlider.setValue(config.getBufferFPS());
+        shortCaptureSlider.setValue(config.getShortCaptureSeconds());
+        showCursorCheckBox.setSelected(config.isShowCursor());
+        foveatedCheckBox.setSelected(config.isFoveatedCapture());
+        captureScaleSlider.setValue((int) Math.round(config.getCaptureScale() * 100));
         recordingFpsSlider.setValue(config.getActiveRecordingFPS());
         maxRecordingSlider.setValue(config.getMaxRecordingMinutes());
+        saveBudgetSlider.setValue(config.getSaveTimeBudgetSeconds());
+        maxSizeSlider.setValue(config.getMaxGifSizeMB());
+        ditherCombo.setSelectedIndex(Arrays.asList(DITHER_MODES).indexOf(config.getDitherMode()));
+        lossySlider.setValue(config.getLossyError());
+        formatCombo.setSelectedIndex(Arrays.asList(EXPORT_FORMATS).indexOf(config.getExportFormat()));
+        helperProcessCheckBox.setSelected(config.isExportInHelperProcess());
+        uploadUrlField.setText(config.getUploadUrl());
         updateBufferLabel();
+        updateBufferFpsLabel();
+        updateShortCaptureLabel();
+        updateCaptureScaleLabel();
         updateRecordingFpsLabel();
         updateMaxRecordingLabel();
+        updateSaveBudgetLabel();
+        updateMaxSizeLabel();
+        updateLossyLabel();
     }
     
     private void updateBufferLabel() {
@@ -179,6 +395,21 @@ public class SimpleSettingsDialog extends JFrame {
         bufferValueLabel.setText(value + " seconds");
     }
     
+    private void updateBufferFpsLabel() {
+        int value = bufferFpsSlider.getValue();
+        bufferFpsValueLabel.setText(value + " FPS");
+    }
+    
+    private void updateShortCaptureLabel() {
+        int value = shortCaptureSlider.getValue();
+        shortCaptureValueLabel.setText(value + (value == 1 ? " second" : " seconds"));
+    }
+    
+    private void updateCaptureScaleLabel() {
+        int value = captureScaleSlider.getValue();
+        captureScaleValueLabel.setText(value + "%");
+    }
+    
     private void updateRecordingFpsLabel() {
         int value = recordingFpsSlider.getValue();
         recordingFpsValueLabel.setText(value + " FPS");
@@ -189,6 +420,21 @@ public class SimpleSettingsDialog extends JFrame {
         maxRecordingValueLabel.setText(value + " minutes");
     }
     
+    private void updateSaveBudgetLabel() {
+        int value = saveBudgetSlider.getValue();
+        saveBudgetValueLabel.setText(value == 0 ? "Unlimited" : value + " seconds");
+    }
+    
+    private void updateMaxSizeLabel() {
+        int value = maxSizeSlider.getValue();
+        maxSizeValueLabel.setText(value == 0 ? "Unlimited" : value + " MB");
+    }
+    
+    private void updateLossyLabel() {
+        int value = lossySlider.getValue();
+        lossyValueLabel.setText(value == 0 ? "Off (lossless)" : "Max color error " + value);
+    }
+    
     private void browseForFolder(ActionEvent e) {
         JFileChooser chooser = new JFileChooser();
         chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
@@ -218,8 +464,20 @@ public class SimpleSettingsDialog extends JFrame {
     private void saveSettings(ActionEvent e) {
         String newOutputFolder = outputFolderField.getText().trim();
         int newBufferSeconds = bufferSlider.getValue();
+        int newBufferFps = bufferFpsSlider.getValue();
+        int newShortCaptureSeconds = shortCaptureSlider.getValue();
+        boolean newShowCursor = showCursorCheckBox.isSelected();
+        boolean newFoveated = foveatedCheckBox.isSelected();
+        int newCaptureScalePercent = captureScaleSlider.getValue();
         int newRecordingFps = recordingFpsSlider.getValue();
         int newMaxRecordingMinutes = maxRecordingSlider.getValue();
+        int newSaveBudgetSeconds = saveBudgetSlider.getValue();
+        int newMaxSizeMB = maxSizeSlider.getValue();
+        String newDitherMode = DITHER_MODES[ditherCombo.getSelectedIndex()];
+        int newLossyError = lossySlider.getValue();
+        String newExportFormat = EXPORT_FORMATS[formatCombo.getSelectedIndex()];
+        boolean newExportInHelper = helperProcessCheckBox.isSelected();
+        String newUploadUrl = uploadUrlField.getText().trim();
         
         // Validate and create output folder
         File outputDir = new File(newOutputFolder);
@@ -234,11 +492,31 @@ public class SimpleSettingsDialog extends JFrame {
             }
         }
         
+        if (!newUploadUrl.isEmpty() && !newUploadUrl.matches("(?i)https?://\\S+")) {
+            JOptionPane.showMessageDialog(this, 
+                "Upload URL must start with http:// or https://",
+                "Invalid Upload URL", 
+                JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
         // Update config
         config.setOutputFolder(newOutputFolder);
         config.setBufferSeconds(newBufferSeconds);
+        config.setBufferFPS(newBufferFps);
+        config.setShortCaptureSeconds(newShortCaptureSeconds);
+        config.setShowCursor(newShowCursor);
+        config.setFoveatedCapture(newFoveated);
+        config.setCaptureScale(newCaptureScalePercent / 100.0);
         config.setActiveRecordingFPS(newRecordingFps);
         config.setMaxRecordingMinutes(newMaxRecordingMinutes);
+        config.setSaveTimeBudgetSeconds(newSaveBudgetSeconds);
+        config.setMaxGifSizeMB(newMaxSizeMB);
+        config.setDitherMode(newDitherMode);
+        config.setLossyError(newLossyError);
+        config.setExportFormat(newExportFormat);
+        config.setExportInHelperProcess(newExportInHelper);
+        config.setUploadUrl(newUploadUrl);
         config.save();
         
         // Notify main app
@@ -247,7 +525,7 @@ public class SimpleSettingsDialog extends JFrame {
         JOptionPane.showMessageDialog(this, 
             "Settings saved successfully!\\n" + 
             "Output: " + newOutputFolder + "\\n" + 
-            "Buffer: " + newBufferSeconds + " seconds\\n" +
+            "Buffer: " + newBufferSeconds + " seconds at " + newBufferFps + " FPS\\n" +
             "Recording FPS: " + newRecordingFps + "\\n" +
             "Max Recording: " + newMaxRecordingMinutes + " minutes", 
             "Settings Saved", 
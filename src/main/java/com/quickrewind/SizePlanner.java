@@ -0,0 +1,134 @@
+package com.quickrewind;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Picks encode settings that keep a GIF under a byte limit in one encoding pass.
+ * For each candidate a few sample frames are quantized and LZW-compressed in parallel,
+ * exactly as the final encode would, and the per-frame sizes are extrapolated.
+ */
+public class SizePlanner {
+    private static final double SAFETY_FACTOR = 0.9; // Estimates are extrapolated, keep some headroom
+    private static final int SAMPLE_COUNT = 6;
+    private static final double[] SCALES = {1.0, 0.75, 0.6, 0.5, 0.4, 0.33, 0.25};
+
+    // {palette colors, frame step}, best quality first. Scale is lowered before
+    // frames are dropped heavily, so the coarse steps are only tried after all scales.
+    private static final int[][][] PALETTE_AND_STEP_PASSES = {
+        {{255, 1}, {128, 1}, {64, 1}, {255, 2}, {128, 2}, {64, 2}},
+        {{128, 3}, {64, 3}, {64, 4}, {64, 6}, {64, 8}},
+    };
+
+    private final List<BufferedImage> frames;
+    private final int baseWidth;
+    private final int baseHeight;
+    private final long maxBytes;
+    private final String ditherMode;
+    private final int lossyError;
+    private final Map<Integer, Palette> palettes = new HashMap<>();
+    private final Map<String, Long> estimates = new HashMap<>();
+    private final int[] histogram;
+
+    // The histogram of the frames' colors is what the palettes are cut from
+    public SizePlanner(List<BufferedImage> frames, int[] histogram,
+                       int baseWidth, int baseHeight, long maxBytes, String ditherMode, int lossyError) {
+        this.frames = frames;
+        this.histogram = histogram;
+        this.baseWidth = baseWidth;
+        this.baseHeight = baseHeight;
+        this.maxBytes = maxBytes;
+        this.ditherMode = ditherMode;
+        this.lossyError = lossyError; // Estimates are compressed the same way as the real frames
+    }
+
+    public EncodeSettings plan() {
+        long start = System.nanoTime();
+        long target = (long) (maxBytes * SAFETY_FACTOR);
+
+        // Delta frames are almost always smaller on desktop content, but check once on the best candidate
+        boolean delta = estimate(settings(1.0, 255, 1, true)) <= estimate(settings(1.0, 255, 1, false));
+
+        for (int[][] pass : PALETTE_AND_STEP_PASSES) {
+            int[] cheapest = pass[pass.length - 1];
+            for (double scale : SCALES) {
+                // Skip the whole scale if even its cheapest setting in this pass is too big
+                if (estimate(settings(scale, cheapest[0], cheapest[1], delta)) > target) continue;
+
+                for (int[] paletteAndStep : pass) {
+                    EncodeSettings candidate = settings(scale, paletteAndStep[0], paletteAndStep[1], delta);
+                    if (estimate(candidate) <= target) {
+                        System.out.println("Size limit " + formatSize(maxBytes) + ": " + candidate
+                                + ", estimated " + formatSize(estimate(candidate))
+                                + " (planned in " + (System.nanoTime() - start) / 1_000_000 + " ms)");
+                        return candidate;
+                    }
+                }
+            }
+        }
+
+        EncodeSettings smallest = settings(SCALES[SCALES.length - 1], 64, 8, delta);
+        System.err.println("No setting fits " + formatSize(maxBytes) + ", using smallest (" + smallest
+                + ", estimated " + formatSize(estimate(smallest)) + ")");
+        return smallest;
+    }
+
+    public long estimate(EncodeSettings settings) {
+        return estimates.computeIfAbsent(settings.toString(), key -> computeEstimate(settings));
+    }
+
+    private long computeEstimate(EncodeSettings settings) {
+        int width = Math.max(1, (int) (baseWidth * settings.getScale()));
+        int height = Math.max(1, (int) (baseHeight * settings.getScale()));
+        Palette palette = palette(settings.getPaletteColors());
+        int step = settings.getFrameStep();
+        int framesToWrite = (frames.size() + step - 1) / step;
+        int samples = Math.min(SAMPLE_COUNT, framesToWrite - 1);
+
+        // Sample 0 is the first (full) frame, the rest are consecutive written frame pairs spread over the recording
+        long[] sizes = ExportPipeline.parallel(() -> IntStream.rangeClosed(0, samples).parallel().mapToLong(sample -> {
+            if (sample == 0) {
+                byte[] first = indices(frames.get(0), width, height, palette, settings);
+                return GifWriter.encodeFrame(first, null, width, height, palette, 0, lossyError).length;
+            }
+            int k = 1 + (int) ((long) (sample - 1) * (framesToWrite - 1) / samples);
+            byte[] previous = indices(frames.get((k - 1) * step), width, height, palette, settings);
+            byte[] current = indices(frames.get(k * step), width, height, palette, settings);
+            return GifWriter.encodeFrame(current, settings.isDeltaFrames() ? previous : null,
+                    width, height, palette, 0, lossyError).length;
+        }).toArray());
+
+        long total = GifWriter.createHeader(width, height, palette).length + GifWriter.trailerLength() + sizes[0];
+        if (samples > 0) {
+            long sampled = 0;
+            for (int i = 1; i < sizes.length; i++) {
+                sampled += sizes[i];
+            }
+            total += sampled * (framesToWrite - 1) / samples;
+        }
+        return total;
+    }
+
+    private synchronized Palette palette(int colors) {
+        return palettes.computeIfAbsent(colors, c -> ColorQuantizer.buildPalette(histogram, c));
+    }
+
+    private byte[] indices(BufferedImage frame, int width, int height, Palette palette, EncodeSettings settings) {
+        BufferedImage indexed = ColorQuantizer.toIndexed(frame, width, height, palette,
+                settings.isDither() ? ditherMode : Ditherer.MODE_NONE);
+        return ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
+    }
+
+    private static EncodeSettings settings(double scale, int colors, int step, boolean delta) {
+        return new EncodeSettings(scale, step, true, true, colors, delta);
+    }
+
+    private static String formatSize(long bytes) {
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+}
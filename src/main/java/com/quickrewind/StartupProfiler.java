@@ -0,0 +1,65 @@
+package com.quickrewind;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Times the startup phases and the time until the first frame is buffered.
+ * Results go to {@link Metrics} as "startup.*.ms" and are printed once startup is complete.
+ */
+public final class StartupProfiler {
+    private static final long START_NANOS = System.nanoTime(); // Initialized first thing in main
+    private static final Instant START_INSTANT = Instant.now();
+    private static final AtomicBoolean firstFrameSeen = new AtomicBoolean(false);
+    private static final List<String> phases = new ArrayList<>();
+    private static long lastPhaseNanos = START_NANOS;
+    private static boolean uiReady;
+    private static boolean reported;
+
+    private StartupProfiler() {
+    }
+
+    public static void start() {
+        // Touching the class records the start time
+    }
+
+    public static synchronized void phase(String name) {
+        long now = System.nanoTime();
+        long phaseMs = (now - lastPhaseNanos) / 1_000_000;
+        lastPhaseNanos = now;
+        Metrics.set("startup." + name + ".ms", phaseMs);
+        phases.add(name + " " + phaseMs + " ms");
+    }
+
+    // Called by every capture worker after storing a frame; only the first call counts
+    public static void firstFrame() {
+        if (firstFrameSeen.get() || !firstFrameSeen.compareAndSet(false, true)) return;
+        Metrics.set("startup.firstFrame.ms", (System.nanoTime() - START_NANOS) / 1_000_000);
+        reportIfComplete();
+    }
+
+    public static void uiReady() {
+        synchronized (StartupProfiler.class) {
+            uiReady = true;
+            Metrics.set("startup.total.ms", (System.nanoTime() - START_NANOS) / 1_000_000);
+        }
+        reportIfComplete();
+    }
+
+    private static synchronized void reportIfComplete() {
+        if (reported || !uiReady || !firstFrameSeen.get()) return;
+        reported = true;
+
+        // Time the JVM needed before main() ran, looked up only now to keep it off the startup path
+        ProcessHandle.current().info().startInstant().ifPresent(processStart ->
+                Metrics.set("startup.jvm.ms", Duration.between(processStart, START_INSTANT).toMillis()));
+
+        System.out.println("Startup: " + String.join(", ", phases)
+                + " | first frame after " + Metrics.get("startup.firstFrame.ms") + " ms"
+                + ", ready after " + Metrics.get("startup.total.ms") + " ms"
+                + " (JVM launch " + Metrics.get("startup.jvm.ms") + " ms)");
+    }
+}
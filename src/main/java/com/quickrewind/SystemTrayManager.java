@@ -2,9 +2,11 @@ package com.quickrewind;
 
 import java.awt.AWTException;
 import java.awt.BasicStroke;
+import java.awt.CheckboxMenuItem;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Menu;
 import java.awt.MenuItem;
 import java.awt.PopupMenu;
 import java.awt.RenderingHints;
@@ -13,10 +15,19 @@ import java.awt.TrayIcon;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Objects;
 
 public class SystemTrayManager {
     private TrayIcon trayIcon;
+    private Menu captureDisplayMenu;
+    private MenuItem cancelSaveItem;
+    private CheckboxMenuItem fullScreenItem;
+    private CheckboxMenuItem regionItem;
+    private CheckboxMenuItem windowItem;
     private boolean isRecording = false;
+    private boolean isSaving = false;
+    private String captureProblem; // Degraded buffer workers, see CaptureWatchdog
     private final QuickRewind mainApp;
     
     public SystemTrayManager(QuickRewind mainApp) {
@@ -35,22 +46,61 @@ public class SystemTrayManager {
         
         PopupMenu popup = new PopupMenu();
         MenuItem captureItem = new MenuItem("Capture GIF (Buffer)");
+        MenuItem captureShortItem = new MenuItem("Capture GIF (Last Few Seconds)");
+        MenuItem captureRangeItem = new MenuItem("Capture GIF (Time Range)...");
+        MenuItem captureSizeLimitItem = new MenuItem("Capture GIF (Size Limit)...");
+        captureDisplayMenu = new Menu("Capture Display");
+        cancelSaveItem = new MenuItem("Cancel Save");
+        cancelSaveItem.setEnabled(false);
         MenuItem startRecordingItem = new MenuItem("Start Recording");
         MenuItem stopRecordingItem = new MenuItem("Stop Recording");
+        Menu captureAreaMenu = new Menu("Capture Area");
+        fullScreenItem = new CheckboxMenuItem("Full Screen");
+        regionItem = new CheckboxMenuItem("Fixed Region");
+        windowItem = new CheckboxMenuItem("Active Window");
+        MenuItem selectRegionItem = new MenuItem("Select Region...");
+        Menu editMenu = new Menu("Edit GIF");
+        MenuItem trimItem = new MenuItem("Trim GIF...");
+        MenuItem joinItem = new MenuItem("Join GIFs...");
         MenuItem settingsItem = new MenuItem("Settings");
         MenuItem exitItem = new MenuItem("Exit");
         
         captureItem.addActionListener(e -> mainApp.captureGif());
+        captureShortItem.addActionListener(e -> mainApp.captureShortGif());
+        captureRangeItem.addActionListener(e -> mainApp.captureGifWithTimeRange());
+        captureSizeLimitItem.addActionListener(e -> mainApp.captureGifWithSizeLimit());
+        cancelSaveItem.addActionListener(e -> mainApp.cancelSave());
         startRecordingItem.addActionListener(e -> mainApp.startActiveRecording());
         stopRecordingItem.addActionListener(e -> mainApp.stopActiveRecording());
+        fullScreenItem.addItemListener(e -> mainApp.setCaptureMode(CaptureRegion.MODE_FULL_SCREEN));
+        regionItem.addItemListener(e -> mainApp.setCaptureMode(CaptureRegion.MODE_REGION));
+        windowItem.addItemListener(e -> mainApp.setCaptureMode(CaptureRegion.MODE_ACTIVE_WINDOW));
+        selectRegionItem.addActionListener(e -> mainApp.selectCaptureRegion());
+        trimItem.addActionListener(e -> mainApp.trimGif());
+        joinItem.addActionListener(e -> mainApp.joinGifs());
         settingsItem.addActionListener(e -> mainApp.showSettings());
         exitItem.addActionListener(e -> mainApp.exit());
         
         popup.add(captureItem);
+        popup.add(captureShortItem);
+        popup.add(captureRangeItem);
+        popup.add(captureSizeLimitItem);
+        popup.add(captureDisplayMenu);
+        popup.add(cancelSaveItem);
         popup.addSeparator();
         popup.add(startRecordingItem);
         popup.add(stopRecordingItem);
         popup.addSeparator();
+        captureAreaMenu.add(fullScreenItem);
+        captureAreaMenu.add(regionItem);
+        captureAreaMenu.add(windowItem);
+        captureAreaMenu.addSeparator();
+        captureAreaMenu.add(selectRegionItem);
+        popup.add(captureAreaMenu);
+        editMenu.add(trimItem);
+        editMenu.add(joinItem);
+        popup.add(editMenu);
+        popup.addSeparator();
         popup.add(settingsItem);
         popup.addSeparator();
         popup.add(exitItem);
@@ -82,10 +132,12 @@ public class SystemTrayManager {
         Graphics2D g2d = image.createGraphics();
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         
-        // Background circle - red for recording, orange for active recording, green for ready
+        // Background circle - red for recording, orange for degraded capture, green for ready
         Color backgroundColor;
         if (recording) {
             backgroundColor = Color.RED; // Active recording
+        } else if (captureProblem != null) {
+            backgroundColor = Color.ORANGE; // The buffer may be missing the latest frames
         } else {
             backgroundColor = Color.GREEN; // Ready/buffer mode
         }
@@ -111,13 +163,80 @@ public class SystemTrayManager {
     public void updateRecordingStatus(boolean recording) {
         if (trayIcon != null && this.isRecording != recording) {
             this.isRecording = recording;
+            if (isSaving) return; // Save progress owns the icon until it finishes
             trayIcon.setImage(createTrayIcon(recording));
-            
-            String tooltip = recording ? 
-                "QuickRewind - Active Recording..." : 
-                "QuickRewind - Ready (Buffer Active)";
-            trayIcon.setToolTip(tooltip);
+            trayIcon.setToolTip(statusTooltip());
+        }
+    }
+    
+    private String statusTooltip() {
+        if (isRecording) return "QuickRewind - Active Recording...";
+        return captureProblem != null ?
+            "QuickRewind - Capture degraded (" + captureProblem + ")" :
+            "QuickRewind - Ready (Buffer Active)";
+    }
+    
+    /**
+     * Shows that buffer capture is degraded (null once it recovered). A new problem is also
+     * announced with a notification, since a save right now may miss the latest seconds.
+     */
+    public void updateCaptureHealth(String problem) {
+        if (trayIcon == null || Objects.equals(captureProblem, problem)) return;
+        
+        boolean announce = captureProblem == null && problem != null;
+        captureProblem = problem;
+        if (announce) {
+            showNotification("Capture Degraded", 
+                "Capture stopped delivering frames (" + problem + "), restarting it. "
+                + "Saves may miss the latest seconds.", TrayIcon.MessageType.WARNING);
+        }
+        if (isSaving) return; // Save progress owns the icon until it finishes
+        trayIcon.setImage(createTrayIcon(isRecording));
+        trayIcon.setToolTip(statusTooltip());
+    }
+    
+    public void showSaveProgress(int framesWritten, int totalFrames) {
+        if (trayIcon == null) return;
+        
+        if (!isSaving) {
+            isSaving = true;
+            trayIcon.setImage(createTrayIcon(true));
+            cancelSaveItem.setEnabled(true);
         }
+        int percent = totalFrames > 0 ? framesWritten * 100 / totalFrames : 0;
+        trayIcon.setToolTip("QuickRewind - Saving GIF " + framesWritten + "/" + totalFrames + " (" + percent + "%)");
+    }
+    
+    public void clearSaveProgress() {
+        if (trayIcon == null || !isSaving) return;
+        
+        isSaving = false;
+        cancelSaveItem.setEnabled(false);
+        trayIcon.setImage(createTrayIcon(isRecording));
+        trayIcon.setToolTip(statusTooltip());
+    }
+    
+    public void updateDisplays(List<DisplayCaptureWorker> displays) {
+        if (captureDisplayMenu == null) return;
+        
+        // Lets the user pick which display's buffer to export
+        captureDisplayMenu.removeAll();
+        for (DisplayCaptureWorker display : displays) {
+            MenuItem item = new MenuItem(display.getName());
+            int displayIndex = display.getDisplayIndex();
+            item.addActionListener(e -> mainApp.captureGifFromDisplay(displayIndex));
+            captureDisplayMenu.add(item);
+        }
+        captureDisplayMenu.setEnabled(displays.size() > 1);
+    }
+    
+    public void updateCaptureMode(String mode) {
+        if (fullScreenItem == null) return;
+        
+        // Keep the check marks in sync with the mode actually in use
+        fullScreenItem.setState(CaptureRegion.MODE_FULL_SCREEN.equals(mode));
+        regionItem.setState(CaptureRegion.MODE_REGION.equals(mode));
+        windowItem.setState(CaptureRegion.MODE_ACTIVE_WINDOW.equals(mode));
     }
     
     public void showNotification(String title, String message, TrayIcon.MessageType messageType) {
@@ -0,0 +1,111 @@
+package com.quickrewind;
+
+import com.sun.jna.Platform;
+import com.sun.jna.platform.win32.Kernel32;
+import com.sun.jna.platform.win32.User32;
+import com.sun.jna.platform.win32.WinDef.HWND;
+import com.sun.jna.platform.win32.WinDef.RECT;
+import com.sun.jna.platform.win32.WinUser.LASTINPUTINFO;
+
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+
+public class WindowsNative {
+
+    private static volatile boolean available = Platform.isWindows();
+
+    public static boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Returns the bounds of the current foreground window in Java (user space)
+     * screen coordinates, or null if they cannot be determined.
+     */
+    public static Rectangle getForegroundWindowBounds() {
+        if (!available) return null;
+
+        try {
+            HWND hwnd = User32.INSTANCE.GetForegroundWindow();
+            if (hwnd == null) return null;
+
+            RECT rect = new RECT();
+            if (!User32.INSTANCE.GetWindowRect(hwnd, rect)) return null;
+
+            Rectangle bounds = rect.toRectangle();
+            if (bounds.width <= 0 || bounds.height <= 0) return null;
+
+            return toUserSpace(bounds);
+        } catch (Throwable t) {
+            // Native library missing or blocked - stop trying for the rest of the session
+            System.err.println("Foreground window lookup unavailable: " + t.getMessage());
+            available = false;
+            return null;
+        }
+    }
+
+    /**
+     * Milliseconds since the last keyboard or mouse input anywhere in the session,
+     * or -1 if it cannot be determined.
+     */
+    public static long getIdleMillis() {
+        if (!available) return -1;
+
+        try {
+            LASTINPUTINFO info = new LASTINPUTINFO();
+            if (!User32.INSTANCE.GetLastInputInfo(info)) return -1;
+            // Both are 32-bit tick counts that wrap after 49.7 days, the difference survives the wrap
+            return Integer.toUnsignedLong(Kernel32.INSTANCE.GetTickCount() - info.dwTime);
+        } catch (Throwable t) {
+            System.err.println("Idle time lookup unavailable: " + t.getMessage());
+            available = false;
+            return -1;
+        }
+    }
+
+    /**
+     * True while the session is locked: the lock screen runs on a separate desktop,
+     * so no window of the user's desktop is in the foreground.
+     */
+    public static boolean isSessionLocked() {
+        if (!available) return false;
+
+        try {
+            return User32.INSTANCE.GetForegroundWindow() == null;
+        } catch (Throwable t) {
+            System.err.println("Lock state lookup unavailable: " + t.getMessage());
+            available = false;
+            return false;
+        }
+    }
+
+    private static Rectangle toUserSpace(Rectangle deviceBounds) {
+        // GetWindowRect reports physical pixels while Robot works in scaled user space coordinates
+        double scale = 1.0;
+        int centerX = (int) deviceBounds.getCenterX();
+        int centerY = (int) deviceBounds.getCenterY();
+        for (GraphicsDevice device : GraphicsEnvironment.getLocalGraphicsEnvironment().getScreenDevices()) {
+            GraphicsConfiguration gc = device.getDefaultConfiguration();
+            AffineTransform transform = gc.getDefaultTransform();
+            Rectangle b = gc.getBounds();
+            Rectangle physical = new Rectangle(b.x, b.y,
+                    (int) Math.round(b.width * transform.getScaleX()),
+                    (int) Math.round(b.height * transform.getScaleY()));
+            if (physical.contains(centerX, centerY)) {
+                scale = transform.getScaleX();
+                break;
+            }
+        }
+
+        if (scale == 1.0) return deviceBounds;
+
+        return new Rectangle(
+                (int) Math.round(deviceBounds.x / scale),
+                (int) Math.round(deviceBounds.y / scale),
+                (int) Math.round(deviceBounds.width / scale),
+                (int) Math.round(deviceBounds.height / scale));
+    }
+}
@@ -0,0 +1,55 @@
+package com.quickrewind;
+
+/**
+ * Java 17 version of the kernel entry point, packaged under META-INF/versions/17.
+ * Uses {@link VectorKernels} when the JVM was started with --add-modules jdk.incubator.vector
+ * (and -Dquickrewind.scalarKernels=true is not set), {@link ScalarKernels} otherwise.
+ */
+public final class PixelKernels {
+    private static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !Boolean.getBoolean("quickrewind.scalarKernels");
+
+    private PixelKernels() {
+    }
+
+    public static String implementation() {
+        return VECTOR ? "vector" : "scalar";
+    }
+
+    public static void scaleBilinear(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight) {
+        if (VECTOR) {
+            VectorKernels.scaleBilinear(src, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+        } else {
+            ScalarKernels.scaleBilinear(src, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+        }
+    }
+
+    public static void mapToIndices(int[] rgb, byte[] lut, byte[] indices, int count) {
+        if (VECTOR) {
+            VectorKernels.mapToIndices(rgb, lut, indices, count);
+        } else {
+            ScalarKernels.mapToIndices(rgb, lut, indices, count);
+        }
+    }
+
+    // The scalar hash already runs eight independent chains and measured faster than a vector accumulator
+    public static long fingerprint(int[] pixels, int width, int height, int rowStep) {
+        return ScalarKernels.fingerprint(pixels, width, height, rowStep);
+    }
+
+    public static int firstDifference(byte[] a, byte[] b, int from, int to) {
+        return VECTOR ? VectorKernels.firstDifference(a, b, from, to) : ScalarKernels.firstDifference(a, b, from, to);
+    }
+
+    public static int lastDifference(byte[] a, byte[] b, int from, int to) {
+        return VECTOR ? VectorKernels.lastDifference(a, b, from, to) : ScalarKernels.lastDifference(a, b, from, to);
+    }
+
+    public static void bgrToRgb(byte[] bgr, int[] rgb, int pixelCount) {
+        if (VECTOR) {
+            VectorKernels.bgrToRgb(bgr, rgb, pixelCount);
+        } else {
+            ScalarKernels.bgrToRgb(bgr, rgb, pixelCount);
+        }
+    }
+}
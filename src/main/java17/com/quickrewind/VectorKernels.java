@@ -0,0 +1,158 @@
+package com.quickrewind;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API versions of the {@link ScalarKernels}. Only loaded by {@link PixelKernels}
+ * when the jdk.incubator.vector module is present; results are identical to the scalar code.
+ */
+final class VectorKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_PREFERRED;
+
+    // 4 BGR pixels (12 bytes) spread into 4 little-endian ints, the 4th byte of each cleared
+    private static final VectorSpecies<Byte> BGR_BYTES = ByteVector.SPECIES_128;
+    private static final VectorShuffle<Byte> BGR_SHUFFLE = VectorShuffle.fromValues(BGR_BYTES,
+            0, 1, 2, 0, 3, 4, 5, 0, 6, 7, 8, 0, 9, 10, 11, 0);
+    private static final VectorMask<Byte> BGR_PADDING = VectorMask.fromValues(BGR_BYTES,
+            false, false, false, true, false, false, false, true,
+            false, false, false, true, false, false, false, true);
+
+    private VectorKernels() {
+    }
+
+    static void scaleBilinear(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth, int dstHeight) {
+        int[] x0 = new int[dstWidth];
+        int[] x1 = new int[dstWidth];
+        int[] wx = new int[dstWidth];
+        ScalarKernels.horizontalTaps(srcWidth, dstWidth, x0, x1, wx);
+        int lanes = INTS.length();
+        int vectorEnd = dstWidth - dstWidth % lanes;
+
+        for (int dy = 0; dy < dstHeight; dy++) {
+            int fy = ScalarKernels.sourceFixed(dy, srcHeight, dstHeight);
+            int row0 = (fy >> 8) * srcWidth;
+            int row1 = Math.min((fy >> 8) + 1, srcHeight - 1) * srcWidth;
+            int wy = fy & 0xFF;
+            int out = dy * dstWidth;
+
+            for (int dx = 0; dx < vectorEnd; dx += lanes) {
+                IntVector p00 = IntVector.fromArray(INTS, src, row0, x0, dx);
+                IntVector p01 = IntVector.fromArray(INTS, src, row0, x1, dx);
+                IntVector p10 = IntVector.fromArray(INTS, src, row1, x0, dx);
+                IntVector p11 = IntVector.fromArray(INTS, src, row1, x1, dx);
+                IntVector w = IntVector.fromArray(INTS, wx, dx);
+                IntVector iw = w.neg().add(256);
+
+                IntVector r = blend(p00, p01, p10, p11, 16, w, iw, wy);
+                IntVector g = blend(p00, p01, p10, p11, 8, w, iw, wy);
+                IntVector b = blend(p00, p01, p10, p11, 0, w, iw, wy);
+                r.lanewise(VectorOperators.LSHL, 16).or(g.lanewise(VectorOperators.LSHL, 8)).or(b)
+                        .intoArray(dst, out + dx);
+            }
+
+            for (int dx = vectorEnd; dx < dstWidth; dx++) {
+                dst[out + dx] = scalePixel(src, row0, row1, x0[dx], x1[dx], wx[dx], wy);
+            }
+        }
+    }
+
+    private static IntVector blend(IntVector p00, IntVector p01, IntVector p10, IntVector p11,
+                                   int shift, IntVector w, IntVector iw, int wy) {
+        IntVector c00 = p00.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+        IntVector c01 = p01.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+        IntVector c10 = p10.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+        IntVector c11 = p11.lanewise(VectorOperators.LSHR, shift).and(0xFF);
+        IntVector top = c00.mul(iw).add(c01.mul(w));
+        IntVector bottom = c10.mul(iw).add(c11.mul(w));
+        return top.mul(256 - wy).add(bottom.mul(wy)).lanewise(VectorOperators.ASHR, 16);
+    }
+
+    private static int scalePixel(int[] src, int row0, int row1, int x0, int x1, int wx, int wy) {
+        int p00 = src[row0 + x0];
+        int p01 = src[row0 + x1];
+        int p10 = src[row1 + x0];
+        int p11 = src[row1 + x1];
+        int result = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int top = ((p00 >> shift) & 0xFF) * (256 - wx) + ((p01 >> shift) & 0xFF) * wx;
+            int bottom = ((p10 >> shift) & 0xFF) * (256 - wx) + ((p11 >> shift) & 0xFF) * wx;
+            result |= ((top * (256 - wy) + bottom * wy) >> 16) << shift;
+        }
+        return result;
+    }
+
+    // Keys are computed in vectors; the table lookup itself stays a scalar gather (byte gathers are not intrinsified)
+    static void mapToIndices(int[] rgb, byte[] lut, byte[] indices, int count) {
+        int lanes = INTS.length();
+        int vectorEnd = count - count % lanes;
+        int[] keys = new int[lanes];
+
+        for (int i = 0; i < vectorEnd; i += lanes) {
+            IntVector p = IntVector.fromArray(INTS, rgb, i);
+            p.lanewise(VectorOperators.LSHR, 9).and(0x7C00)
+                    .or(p.lanewise(VectorOperators.LSHR, 6).and(0x3E0))
+                    .or(p.lanewise(VectorOperators.LSHR, 3).and(0x1F))
+                    .intoArray(keys, 0);
+            for (int j = 0; j < lanes; j++) {
+                indices[i + j] = lut[keys[j]];
+            }
+        }
+        for (int i = vectorEnd; i < count; i++) {
+            int p = rgb[i];
+            indices[i] = lut[((p >> 9) & 0x7C00) | ((p >> 6) & 0x3E0) | ((p >> 3) & 0x1F)];
+        }
+    }
+
+    static int firstDifference(byte[] a, byte[] b, int from, int to) {
+        int lanes = BYTES.length();
+        int i = from;
+        for (; i <= to - lanes; i += lanes) {
+            VectorMask<Byte> differs = ByteVector.fromArray(BYTES, a, i)
+                    .compare(VectorOperators.NE, ByteVector.fromArray(BYTES, b, i));
+            if (differs.anyTrue()) {
+                return i + differs.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (a[i] != b[i]) return i;
+        }
+        return -1;
+    }
+
+    static int lastDifference(byte[] a, byte[] b, int from, int to) {
+        int lanes = BYTES.length();
+        int i = to;
+        for (; i - lanes >= from; i -= lanes) {
+            VectorMask<Byte> differs = ByteVector.fromArray(BYTES, a, i - lanes)
+                    .compare(VectorOperators.NE, ByteVector.fromArray(BYTES, b, i - lanes));
+            if (differs.anyTrue()) {
+                return i - lanes + differs.lastTrue();
+            }
+        }
+        for (i--; i >= from; i--) {
+            if (a[i] != b[i]) return i;
+        }
+        return -1;
+    }
+
+    static void bgrToRgb(byte[] bgr, int[] rgb, int pixelCount) {
+        // Each step reads 16 bytes but uses 12, so stop while a full vector still fits
+        int i = 0;
+        for (; i + 4 <= pixelCount && i * 3 + 16 <= bgr.length; i += 4) {
+            ByteVector.fromArray(BGR_BYTES, bgr, i * 3)
+                    .rearrange(BGR_SHUFFLE)
+                    .blend((byte) 0, BGR_PADDING)
+                    .reinterpretAsInts()
+                    .intoArray(rgb, i);
+        }
+        for (int j = i * 3; i < pixelCount; i++, j += 3) {
+            rgb[i] = (bgr[j] & 0xFF) | (bgr[j + 1] & 0xFF) << 8 | (bgr[j + 2] & 0xFF) << 16;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.quickrewind;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+class CapturedFrameTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    // Flat areas with a few edges, which deflate well
+    private static BufferedImage image(int seed) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = pixels(image);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (i % WIDTH) < WIDTH / 2 ? 0x336699 + seed : 0xEEEEEE;
+        }
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    @Test
+    void compressKeepsThePixels() {
+        BufferedImage image = image(1);
+        int[] expected = pixels(image).clone();
+        CapturedFrame frame = new CapturedFrame(image, 1000, new Rectangle(0, 0, WIDTH, HEIGHT));
+
+        assertTrue(frame.compress() > 0);
+        assertTrue(frame.isCompressed());
+        assertEquals(0, frame.compress());
+        assertArrayEquals(expected, pixels(frame.getImage()));
+
+        CapturedFrame moved = frame.withTimestamp(500);
+        assertEquals(500, moved.getTimestamp());
+        assertArrayEquals(expected, pixels(moved.getImage()));
+    }
+
+    @Test
+    void withTimestampRacingCompressAlwaysHasPixels() throws Exception {
+        Rectangle bounds = new Rectangle(0, 0, WIDTH, HEIGHT);
+        int checked = 0;
+        for (int round = 0; round < 500; round++) {
+            BufferedImage image = image(round);
+            int[] expected = pixels(image).clone();
+            CapturedFrame frame = new CapturedFrame(image, round, bounds);
+
+            // The governor compresses while an export keeps taking snapshots; a copy without its
+            // image must have the compressed pixels
+            CountDownLatch started = new CountDownLatch(1);
+            Thread governor = new Thread(() -> {
+                started.countDown();
+                frame.compress();
+            });
+            governor.start();
+            started.await();
+            boolean compressed;
+            do {
+                compressed = frame.isCompressed();
+                CapturedFrame moved = frame.withTimestamp(round + 1);
+                if (moved.isCompressed()) {
+                    assertArrayEquals(expected, pixels(moved.getImage()), "round " + round);
+                    checked++;
+                }
+            } while (!compressed);
+            governor.join();
+        }
+        assertTrue(checked >= 500);
+    }
+}
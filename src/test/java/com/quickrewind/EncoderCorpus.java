@@ -0,0 +1,336 @@
+package com.quickrewind;
+
+import javax.imageio.ImageIO;
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reference recordings for {@link EncoderRegression}. The synthetic sequences are drawn from
+ * fixed seeds, so they are identical on every run on the same machine (text rendering depends on
+ * the installed fonts, so compare results from one machine only):
+ * <ul>
+ * <li>ide-typing: code typed into an editor with a blinking caret, almost everything static</li>
+ * <li>scrolling: a web page scrolling at changing speed with text, headings and a photo</li>
+ * <li>video: a player with grainy, constantly moving content and a progress bar</li>
+ * <li>dialogs: dialogs with shadows fading in over the desktop, a progress bar and the pointer</li>
+ * </ul>
+ * Recorded sequences are folders of PNG frames in name order, with an optional delays.txt holding
+ * one delay in milliseconds per line (100 ms otherwise).
+ */
+public final class EncoderCorpus {
+    public static final List<String> SYNTHETIC = Arrays.asList("ide-typing", "scrolling", "video", "dialogs");
+
+    private static final int DELAY_MS = 100;
+    private static final String[] WORDS = {"private", "static", "final", "int", "return", "frame", "palette",
+        "encode", "width", "height", "buffer", "if", "for", "new", "byte[]", "long", "delay", "index"};
+
+    private EncoderCorpus() {
+    }
+
+    public static final class Sequence {
+        public final String name;
+        public final List<BufferedImage> frames;
+        public final int[] delaysMs;
+
+        Sequence(String name, List<BufferedImage> frames, int[] delaysMs) {
+            this.name = name;
+            this.frames = frames;
+            this.delaysMs = delaysMs;
+        }
+    }
+
+    public static Sequence synthetic(String name, int width, int height, int frameCount) {
+        List<BufferedImage> frames = new ArrayList<>(frameCount);
+        BufferedImage photo = photo(width / 3, height / 3, 3);
+        for (int i = 0; i < frameCount; i++) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            switch (name) {
+                case "ide-typing": drawTyping(g, width, height, i); break;
+                case "scrolling": drawScrolling(g, width, height, i, photo); break;
+                case "video": drawVideo(image, g, width, height, i); break;
+                case "dialogs": drawDialogs(g, width, height, i); break;
+                default: throw new IllegalArgumentException("Unknown sequence " + name);
+            }
+            g.dispose();
+            frames.add(image);
+        }
+        int[] delays = new int[frameCount];
+        Arrays.fill(delays, DELAY_MS);
+        return new Sequence(name, frames, delays);
+    }
+
+    // The folders below root that hold PNG frames, or root itself
+    public static List<File> recordedFolders(File root) {
+        List<File> folders = new ArrayList<>();
+        if (pngs(root).length > 0) {
+            folders.add(root);
+        }
+        File[] children = root.listFiles(File::isDirectory);
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children) {
+                if (pngs(child).length > 0) folders.add(child);
+            }
+        }
+        return folders;
+    }
+
+    public static Sequence recorded(File folder) throws IOException {
+        File[] files = pngs(folder);
+        Arrays.sort(files);
+        List<BufferedImage> frames = new ArrayList<>(files.length);
+        for (File file : files) {
+            BufferedImage read = ImageIO.read(file);
+            BufferedImage image = new BufferedImage(read.getWidth(), read.getHeight(), BufferedImage.TYPE_INT_RGB);
+            image.createGraphics().drawImage(read, 0, 0, null);
+            frames.add(image);
+        }
+
+        int[] delays = new int[files.length];
+        Arrays.fill(delays, DELAY_MS);
+        File delayFile = new File(folder, "delays.txt");
+        if (delayFile.isFile()) {
+            List<String> lines = Files.readAllLines(delayFile.toPath());
+            for (int i = 0; i < delays.length && i < lines.size(); i++) {
+                if (!lines.get(i).isBlank()) delays[i] = Integer.parseInt(lines.get(i).trim());
+            }
+        }
+        return new Sequence("recorded-" + folder.getName(), frames, delays);
+    }
+
+    private static File[] pngs(File folder) {
+        File[] files = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".png"));
+        return files != null ? files : new File[0];
+    }
+
+    private static void drawTyping(Graphics2D g, int width, int height, int frame) {
+        int sidebar = width / 5;
+        int lineHeight = 18;
+        g.setColor(new Color(0x2B2D30));
+        g.fillRect(0, 0, sidebar, height);
+        g.setColor(new Color(0xFAFAFA));
+        g.fillRect(sidebar, 0, width - sidebar, height);
+        g.setColor(new Color(0x3C3F41));
+        g.fillRect(0, 0, width, 30);
+        g.setColor(new Color(0xDDDDDD));
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        for (int i = 0; i < 12; i++) {
+            g.drawString("src/Encoder" + i + ".java", 12, 52 + i * 22);
+        }
+
+        // Finished lines above, the current one grows by a character per frame
+        Font code = new Font(Font.MONOSPACED, Font.PLAIN, 14);
+        g.setFont(code);
+        Color[] syntax = {new Color(0x1E1E1E), new Color(0x0033B3), new Color(0x067D17), new Color(0x871094)};
+        int typed = frame;
+        int line = 0;
+        int caretX = 0;
+        int caretY = 0;
+        for (int y = 48; y < height - 24; y += lineHeight, line++) {
+            String text = sourceLine(line);
+            g.setColor(new Color(0x999999));
+            g.drawString(String.valueOf(line + 1), sidebar + 8, y);
+            String shown = typed >= text.length() ? text : text.substring(0, typed);
+            g.setColor(syntax[line % syntax.length]);
+            g.drawString(shown, sidebar + 48, y);
+            if (typed <= text.length()) {
+                caretX = sidebar + 48 + g.getFontMetrics().stringWidth(shown);
+                caretY = y;
+                break;
+            }
+            typed -= text.length() + 1;
+        }
+        if ((frame / 5) % 2 == 0) {
+            g.setColor(Color.BLACK);
+            g.fillRect(caretX, caretY - 13, 2, 16);
+        }
+
+        g.setColor(new Color(0x3C3F41));
+        g.fillRect(0, height - 22, width, 22);
+        g.setColor(new Color(0xBBBBBB));
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+        g.drawString("Ln " + (line + 1) + ", Col " + (typed + 1) + "    UTF-8    Java", 12, height - 7);
+    }
+
+    private static void drawScrolling(Graphics2D g, int width, int height, int frame, BufferedImage photo) {
+        // Speeds up, pauses, then scrolls fast
+        int scroll = 0;
+        for (int i = 0; i < frame; i++) {
+            int phase = i % 30;
+            scroll += phase < 10 ? phase * 2 : phase < 15 ? 0 : 32;
+        }
+
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        int margin = width / 8;
+        for (int block = scroll / 120; block * 120 - scroll < height; block++) {
+            int top = 60 + block * 120 - scroll;
+            Random random = new Random(block);
+            if (block % 5 == 2) {
+                g.drawImage(photo, margin, top, Math.min(photo.getWidth(), width - 2 * margin), 110, null);
+                continue;
+            }
+            g.setColor(new Color(0x202124));
+            g.setFont(new Font(Font.SERIF, Font.BOLD, 22));
+            g.drawString("Section " + block + ": capture and encoding", margin, top + 24);
+            g.setFont(new Font(Font.SERIF, Font.PLAIN, 15));
+            g.setColor(new Color(0x3C4043));
+            for (int row = 0; row < 4; row++) {
+                StringBuilder text = new StringBuilder();
+                for (int w = 0; w < 12; w++) {
+                    text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                }
+                g.drawString(text.toString(), margin, top + 50 + row * 19);
+            }
+        }
+
+        // Browser chrome stays put
+        g.setPaint(new GradientPaint(0, 0, new Color(0xDEE1E6), 0, 44, new Color(0xC8CCD1)));
+        g.fillRect(0, 0, width, 44);
+        g.setColor(Color.WHITE);
+        g.fillRoundRect(margin, 8, width - 2 * margin, 28, 14, 14);
+        g.setColor(new Color(0x5F6368));
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 13));
+        g.drawString("https://docs.example.com/quickrewind/encoding", margin + 14, 27);
+    }
+
+    private static void drawVideo(BufferedImage image, Graphics2D g, int width, int height, int frame) {
+        g.setColor(new Color(0x0F0F0F));
+        g.fillRect(0, 0, width, height);
+        int videoX = width / 10;
+        int videoY = height / 10;
+        int videoWidth = width * 8 / 10;
+        int videoHeight = height * 7 / 10;
+
+        // Moving color fields with fresh grain in every frame, like camera footage
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Random grain = new Random(frame);
+        double t = frame / 10.0;
+        for (int y = 0; y < videoHeight; y++) {
+            for (int x = 0; x < videoWidth; x++) {
+                double u = (double) x / videoWidth;
+                double v = (double) y / videoHeight;
+                int r = (int) (110 + 80 * Math.sin(u * 5 + t) + 30 * v) + grain.nextInt(13) - 6;
+                int gr = (int) (100 + 70 * Math.cos(v * 4 - t * 0.7) + 20 * u) + grain.nextInt(13) - 6;
+                int b = (int) (120 + 60 * Math.sin((u + v) * 3 + t * 1.3)) + grain.nextInt(13) - 6;
+                pixels[(videoY + y) * width + videoX + x] = (clamp(r) << 16) | (clamp(gr) << 8) | clamp(b);
+            }
+        }
+        int ballX = videoX + (int) ((Math.sin(t * 0.9) + 1) / 2 * (videoWidth - 60));
+        int ballY = videoY + (int) ((Math.cos(t * 1.7) + 1) / 2 * (videoHeight - 60));
+        g.setPaint(new GradientPaint(ballX, ballY, new Color(0xFFF3B0), ballX + 60, ballY + 60, new Color(0xE65100)));
+        g.fillOval(ballX, ballY, 60, 60);
+
+        int barY = videoY + videoHeight + 20;
+        g.setColor(new Color(0x444444));
+        g.fillRect(videoX, barY, videoWidth, 4);
+        g.setColor(new Color(0xFF0000));
+        g.fillRect(videoX, barY, videoWidth * (frame + 1) / 200, 4);
+        g.setColor(Color.WHITE);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 13));
+        g.drawString(String.format("0:%02d / 0:20", frame / 10), videoX, barY + 24);
+    }
+
+    private static void drawDialogs(Graphics2D g, int width, int height, int frame) {
+        g.setPaint(new GradientPaint(0, 0, new Color(0x1D4E89), width, height, new Color(0x4FA3A5)));
+        g.fillRect(0, 0, width, height);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+        for (int i = 0; i < 5; i++) {
+            g.setColor(new Color(0xF5F5F5));
+            g.fillRoundRect(20, 20 + i * 80, 44, 44, 8, 8);
+            g.setColor(Color.WHITE);
+            g.drawString("File " + (i + 1), 24, 78 + i * 80);
+        }
+
+        // A dialog fades in, shows progress, and a message box follows
+        int cycle = frame % 40;
+        int dialogWidth = width / 2;
+        int dialogHeight = height / 3;
+        int dialogX = (width - dialogWidth) / 2;
+        int dialogY = (height - dialogHeight) / 2;
+        float alpha = Math.min(1f, (cycle + 1) / 5f);
+        g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, alpha));
+        for (int shadow = 12; shadow > 0; shadow -= 2) {
+            g.setColor(new Color(0, 0, 0, 10));
+            g.fillRoundRect(dialogX - shadow + 6, dialogY - shadow + 8, dialogWidth + 2 * shadow, dialogHeight + 2 * shadow, 16, 16);
+        }
+        g.setColor(new Color(0xF3F3F3));
+        g.fillRoundRect(dialogX, dialogY, dialogWidth, dialogHeight, 10, 10);
+        g.setColor(new Color(0x202020));
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 14));
+        g.drawString(cycle < 25 ? "Copying 1,284 items" : "Copy complete", dialogX + 20, dialogY + 32);
+        g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+        g.drawString("from Recordings to Archive", dialogX + 20, dialogY + 54);
+        g.setColor(new Color(0xDADADA));
+        g.fillRect(dialogX + 20, dialogY + 72, dialogWidth - 40, 10);
+        g.setPaint(new GradientPaint(dialogX, 0, new Color(0x06B025), dialogX + dialogWidth, 0, new Color(0x8BD89B)));
+        g.fillRect(dialogX + 20, dialogY + 72, (dialogWidth - 40) * Math.min(25, cycle) / 25, 10);
+
+        // The pointer moves onto the button and presses it
+        int buttonX = dialogX + dialogWidth - 110;
+        int buttonY = dialogY + dialogHeight - 44;
+        boolean pressed = cycle >= 33 && cycle < 35;
+        g.setPaint(new GradientPaint(0, buttonY, pressed ? new Color(0x005A9E) : new Color(0x0078D4),
+                0, buttonY + 28, pressed ? new Color(0x004578) : new Color(0x005A9E)));
+        g.fillRoundRect(buttonX, buttonY, 90, 28, 6, 6);
+        g.setColor(Color.WHITE);
+        g.drawString(cycle < 25 ? "Cancel" : "OK", buttonX + 30, buttonY + 18);
+        g.setComposite(AlphaComposite.SrcOver);
+
+        double approach = Math.min(1.0, cycle / 33.0);
+        int pointerX = (int) (width * 0.9 + (buttonX + 45 - width * 0.9) * approach);
+        int pointerY = (int) (height * 0.85 + (buttonY + 14 - height * 0.85) * approach);
+        g.setColor(Color.WHITE);
+        g.fillPolygon(new int[] {pointerX, pointerX, pointerX + 11}, new int[] {pointerY, pointerY + 17, pointerY + 12}, 3);
+        g.setColor(Color.BLACK);
+        g.setStroke(new BasicStroke(1));
+        g.drawPolygon(new int[] {pointerX, pointerX, pointerX + 11}, new int[] {pointerY, pointerY + 17, pointerY + 12}, 3);
+    }
+
+    private static String sourceLine(int line) {
+        StringBuilder text = new StringBuilder("    ".repeat(line % 4));
+        Random random = new Random(line);
+        for (int i = 0, count = 3 + random.nextInt(6); i < count; i++) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(i % 3 == 2 ? "(); " : " ");
+        }
+        return text.toString();
+    }
+
+    // Smooth color fields with grain, which no palette reproduces exactly
+    private static BufferedImage photo(int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                double u = (double) x / image.getWidth();
+                double v = (double) y / image.getHeight();
+                int r = (int) (90 + 120 * u + 20 * Math.sin(v * 9)) + random.nextInt(9) - 4;
+                int g = (int) (140 + 60 * v + 25 * Math.cos(u * 7)) + random.nextInt(9) - 4;
+                int b = (int) (200 - 110 * v * u) + random.nextInt(9) - 4;
+                image.setRGB(x, y, (clamp(r) << 16) | (clamp(g) << 8) | clamp(b));
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,286 @@
+package com.quickrewind;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs every encoder configuration over the {@link EncoderCorpus} and reports, per sequence and
+ * configuration, output bytes, encode time (best of several rounds), peak heap growth during the
+ * encode, and PSNR and SSIM of what a viewer shows against the source frames (against an area
+ * averaged downscale where the output is smaller). Results go to a CSV file; with a baseline CSV
+ * from an earlier run on the same machine, every row is compared and the run fails (exit code 1)
+ * when a result got worse than a threshold:
+ *
+ * java -cp quickrewind.jar:test-classes com.quickrewind.EncoderRegression --report after.csv --baseline before.csv
+ *
+ * Options (defaults in brackets): --width [960] --height [540] --frames [60] --rounds [3]
+ * --sequences [all synthetic] --configs [all] --recorded [folder of PNG sequences]
+ * --limit-kb [1024] --report [encoder-regression.csv] --baseline [none] --max-bytes-growth [0.02]
+ * --max-psnr-drop [0.25] --max-ssim-drop [0.005] --max-time-growth [0.25] --max-memory-growth [0.25]
+ */
+public class EncoderRegression {
+    private static final String CSV_HEADER = "sequence,config,frames,width,height,bytes,encode_ms,peak_heap_mb,psnr_db,ssim";
+    private static final long MIN_TIME_GROWTH_MS = 50; // Below this, timing differences are noise
+    private static final double MIN_MEMORY_GROWTH_MB = 8;
+
+    private interface Encoder {
+        void encode(List<BufferedImage> frames, int[] delaysMs, File output) throws IOException;
+    }
+
+    private static final class Configuration {
+        final String name;
+        final String extension;
+        final double inputScale; // Applied with the capture scaler before encoding
+        final Encoder encoder;
+
+        Configuration(String name, String extension, double inputScale, Encoder encoder) {
+            this.name = name;
+            this.extension = extension;
+            this.inputScale = inputScale;
+            this.encoder = encoder;
+        }
+    }
+
+    private final Map<String, String> options;
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+
+    private EncoderRegression(Map<String, String> options) {
+        this.options = options;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        boolean passed = new EncoderRegression(options).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private List<Configuration> configurations() {
+        long limitBytes = (long) number("limit-kb", 1024) * 1024;
+        List<Configuration> all = Arrays.asList(
+            gif("gif-bayer", 1.0, 0, Ditherer.MODE_BAYER, 0),
+            gif("gif-bluenoise", 1.0, 0, Ditherer.MODE_BLUE_NOISE, 0),
+            gif("gif-floyd-steinberg", 1.0, 0, Ditherer.MODE_FLOYD_STEINBERG, 0),
+            gif("gif-none", 1.0, 0, Ditherer.MODE_NONE, 0),
+            gif("gif-lossy40", 1.0, 0, Ditherer.DEFAULT_MODE, 40),
+            gif("gif-limit", 1.0, limitBytes, Ditherer.DEFAULT_MODE, 0),
+            gif("gif-scale60", 0.6, 0, Ditherer.DEFAULT_MODE, 0),
+            new Configuration("avi-q85", ".avi", 1.0, (frames, delays, output) ->
+                MjpegAviEncoder.encodeAvi(frames, output, delays, MjpegAviEncoder.DEFAULT_QUALITY, EncodeProgress.NONE)));
+
+        String selected = options.get("configs");
+        if (selected == null) return all;
+        List<String> names = Arrays.asList(selected.split(","));
+        List<Configuration> chosen = new ArrayList<>();
+        for (Configuration configuration : all) {
+            if (names.contains(configuration.name)) chosen.add(configuration);
+        }
+        return chosen;
+    }
+
+    private static Configuration gif(String name, double inputScale, long maxBytes, String ditherMode, int lossyError) {
+        return new Configuration(name, ".gif", inputScale, (frames, delays, output) ->
+            SimpleGifEncoder.encodeGif(frames, output, delays, 0, maxBytes, ditherMode, lossyError,
+                    EncodeProgress.NONE, null));
+    }
+
+    private boolean run() throws Exception {
+        int width = (int) number("width", 960);
+        int height = (int) number("height", 540);
+        int frameCount = (int) number("frames", 60);
+        int rounds = Math.max(1, (int) number("rounds", 3));
+        List<Configuration> configurations = configurations();
+        File report = new File(options.getOrDefault("report", "encoder-regression.csv"));
+        File workFolder = Files.createTempDirectory("quickrewind-regression").toFile();
+
+        List<String> sequences = options.containsKey("sequences")
+            ? Arrays.asList(options.get("sequences").split(",")) : EncoderCorpus.SYNTHETIC;
+        List<File> recorded = options.containsKey("recorded")
+            ? EncoderCorpus.recordedFolders(new File(options.get("recorded"))) : new ArrayList<>();
+
+        System.out.println("Encoder regression: " + (sequences.size() + recorded.size()) + " sequences x "
+            + configurations.size() + " configurations, report " + report.getAbsolutePath());
+        System.out.println(String.format("%-20s %-20s %10s %9s %8s %8s %7s",
+            "sequence", "config", "bytes", "encode ms", "heap MB", "PSNR dB", "SSIM"));
+
+        Map<String, String[]> results = new LinkedHashMap<>();
+        try (PrintWriter csv = new PrintWriter(report)) {
+            csv.println(CSV_HEADER);
+            for (int s = 0; s < sequences.size() + recorded.size(); s++) {
+                // One sequence in memory at a time
+                EncoderCorpus.Sequence sequence = s < sequences.size()
+                    ? EncoderCorpus.synthetic(sequences.get(s), width, height, frameCount)
+                    : EncoderCorpus.recorded(recorded.get(s - sequences.size()));
+                for (Configuration configuration : configurations) {
+                    String[] row = measure(sequence, configuration, rounds, workFolder);
+                    results.put(row[0] + "," + row[1], row);
+                    csv.println(String.join(",", row));
+                    csv.flush();
+                    System.out.println(String.format("%-20s %-20s %10s %9s %8s %8s %7s",
+                        (Object[]) new String[] {row[0], row[1], row[5], row[6], row[7], row[8], row[9]}));
+                }
+            }
+        } finally {
+            File[] leftovers = workFolder.listFiles();
+            if (leftovers != null) {
+                for (File file : leftovers) file.delete();
+            }
+            workFolder.delete();
+        }
+
+        String baseline = options.get("baseline");
+        return baseline == null || compare(results, new File(baseline));
+    }
+
+    private String[] measure(EncoderCorpus.Sequence sequence, Configuration configuration, int rounds,
+                             File workFolder) throws IOException {
+        List<BufferedImage> input = sequence.frames;
+        if (configuration.inputScale < 0.999) {
+            input = new ArrayList<>();
+            for (BufferedImage frame : sequence.frames) {
+                input.add(DisplayCaptureWorker.scale(frame, configuration.inputScale));
+            }
+        }
+        File output = new File(workFolder, sequence.name + "-" + configuration.name + configuration.extension);
+
+        // Peak heap is taken from the first round, timing from the best one
+        long bestNanos = Long.MAX_VALUE;
+        long peakBytes = 0;
+        for (int round = 0; round < rounds; round++) {
+            System.gc();
+            long before = heapUsed();
+            if (round == 0) {
+                heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+            }
+            long start = System.nanoTime();
+            configuration.encoder.encode(input, sequence.delaysMs, output);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            if (round == 0) {
+                long peak = 0;
+                for (MemoryPoolMXBean pool : heapPools) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+                peakBytes = Math.max(0, peak - before);
+            }
+        }
+
+        QualityMetrics.Decoded decoded = configuration.extension.equals(".avi")
+            ? QualityMetrics.decodeAvi(output) : QualityMetrics.decodeGif(output);
+        double squaredError = 0;
+        double ssim = 0;
+        long time = 0;
+        for (int i = 0; i < sequence.frames.size(); i++) {
+            int[] reference = reference(sequence.frames.get(i), decoded.width, decoded.height);
+            int[] shown = decoded.frameAt(time);
+            squaredError += QualityMetrics.squaredError(reference, shown);
+            ssim += QualityMetrics.ssim(reference, shown, decoded.width, decoded.height);
+            time += sequence.delaysMs[i];
+        }
+        long samples = (long) decoded.width * decoded.height * 3 * sequence.frames.size();
+        double psnr = QualityMetrics.psnr(squaredError, samples);
+
+        return new String[] {
+            sequence.name, configuration.name, String.valueOf(sequence.frames.size()),
+            String.valueOf(decoded.width), String.valueOf(decoded.height), String.valueOf(output.length()),
+            String.valueOf(bestNanos / 1_000_000), String.format("%.1f", peakBytes / (1024.0 * 1024.0)),
+            Double.isInfinite(psnr) ? "Infinity" : String.format("%.2f", psnr),
+            String.format("%.4f", ssim / sequence.frames.size())
+        };
+    }
+
+    // The source frame at the output size, downscaled with area averaging as the quality reference
+    private static int[] reference(BufferedImage source, int width, int height) {
+        BufferedImage image = source;
+        if (source.getWidth() != width || source.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            image.createGraphics().drawImage(source.getScaledInstance(width, height, Image.SCALE_AREA_AVERAGING), 0, 0, null);
+        }
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] &= 0xFFFFFF;
+        }
+        return pixels;
+    }
+
+    private long heapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    private boolean compare(Map<String, String[]> results, File baselineFile) throws IOException {
+        double maxBytesGrowth = number("max-bytes-growth", 0.02);
+        double maxPsnrDrop = number("max-psnr-drop", 0.25);
+        double maxSsimDrop = number("max-ssim-drop", 0.005);
+        double maxTimeGrowth = number("max-time-growth", 0.25);
+        double maxMemoryGrowth = number("max-memory-growth", 0.25);
+
+        List<String> lines = Files.readAllLines(baselineFile.toPath());
+        List<String> columns = Arrays.asList(lines.get(0).split(","));
+        System.out.println("Compared with " + baselineFile.getAbsolutePath() + ":");
+        int regressions = 0;
+        for (String line : lines.subList(1, lines.size())) {
+            String[] base = line.split(",");
+            String key = base[columns.indexOf("sequence")] + "," + base[columns.indexOf("config")];
+            String[] now = results.get(key);
+            if (now == null) continue;
+
+            long bytes = Long.parseLong(now[5]);
+            long baseBytes = Long.parseLong(base[columns.indexOf("bytes")]);
+            long ms = Long.parseLong(now[6]);
+            long baseMs = Long.parseLong(base[columns.indexOf("encode_ms")]);
+            double heap = Double.parseDouble(now[7]);
+            double baseHeap = Double.parseDouble(base[columns.indexOf("peak_heap_mb")]);
+            double psnr = Double.parseDouble(now[8]);
+            double basePsnr = Double.parseDouble(base[columns.indexOf("psnr_db")]);
+            double ssim = Double.parseDouble(now[9]);
+            double baseSsim = Double.parseDouble(base[columns.indexOf("ssim")]);
+
+            List<String> worse = new ArrayList<>();
+            if (bytes > baseBytes * (1 + maxBytesGrowth)) worse.add("bytes");
+            if (psnr < basePsnr - maxPsnrDrop) worse.add("PSNR");
+            if (ssim < baseSsim - maxSsimDrop) worse.add("SSIM");
+            if (ms > baseMs * (1 + maxTimeGrowth) && ms - baseMs >= MIN_TIME_GROWTH_MS) worse.add("time");
+            if (heap > baseHeap * (1 + maxMemoryGrowth) && heap - baseHeap >= MIN_MEMORY_GROWTH_MB) worse.add("memory");
+            regressions += worse.isEmpty() ? 0 : 1;
+
+            System.out.println(String.format("%-41s bytes %+6.1f%%  time %+6.1f%%  heap %+6.1f MB  PSNR %+6.2f dB  SSIM %+.4f%s",
+                key, percent(bytes, baseBytes), percent(ms, baseMs), heap - baseHeap,
+                Double.isInfinite(psnr) && Double.isInfinite(basePsnr) ? 0.0 : psnr - basePsnr, ssim - baseSsim,
+                worse.isEmpty() ? "" : "  WORSE: " + String.join(", ", worse)));
+        }
+        System.out.println(regressions == 0 ? "No regressions" : regressions + " results regressed");
+        return regressions == 0;
+    }
+
+    private static double percent(double value, double base) {
+        return base == 0 ? 0 : (value - base) * 100 / base;
+    }
+
+    private double number(String key, double defaultValue) {
+        String value = options.get(key);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+}
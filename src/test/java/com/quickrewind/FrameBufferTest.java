@@ -0,0 +1,220 @@
+package com.quickrewind;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class FrameBufferTest {
+    private static final Rectangle BOUNDS = new Rectangle(0, 0, 1, 1);
+    private static final BufferedImage PIXEL = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+
+    // Frame n is captured at time n * 10, so the times tell which frames a snapshot holds
+    private static void add(FrameBuffer buffer, int from, int to) {
+        for (int n = from; n < to; n++) {
+            buffer.add(new CapturedFrame(PIXEL, n * 10L, BOUNDS));
+        }
+    }
+
+    private static List<Long> times(List<CapturedFrame> frames) {
+        List<Long> times = new ArrayList<>(frames.size());
+        for (CapturedFrame frame : frames) {
+            times.add(frame.getTimestamp());
+        }
+        return times;
+    }
+
+    private static List<Long> times(int from, int to) {
+        List<Long> times = new ArrayList<>();
+        for (int n = from; n < to; n++) {
+            times.add(n * 10L);
+        }
+        return times;
+    }
+
+    // The frames are in capture order without gaps or repeats, and none is missing: the range
+    // only goes back further than the oldest frame the buffer still had when it grew
+    private static void assertConsecutive(FrameBuffer.Snapshot snapshot, long oldest) {
+        List<CapturedFrame> frames = snapshot.getFrames();
+        if (snapshot.size() == 0) return;
+        assertFalse(frames.isEmpty(), "missing frames");
+        long newest = frames.get(frames.size() - 1).getTimestamp() / 10;
+        long expected = Math.min(snapshot.size(), newest - oldest + 1);
+        assertTrue(frames.size() >= expected, "missing frames: " + frames.size() + " of " + expected);
+        assertTrue(frames.size() <= snapshot.size(), "more frames than pinned");
+        for (int i = 1; i < frames.size(); i++) {
+            long step = frames.get(i).getTimestamp() - frames.get(i - 1).getTimestamp();
+            assertEquals(10, step, "frame " + i + " of " + times(frames));
+        }
+    }
+
+    // Takes snapshots while the writer runs, failing on the first torn, repeated or missing frame
+    private static void snapshotWhile(FrameBuffer buffer, Thread writer, AtomicBoolean done, AtomicLong oldest)
+            throws Exception {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        writer.setUncaughtExceptionHandler((thread, error) -> failure.set(error));
+        writer.start();
+        int snapshots = 0;
+        while (!done.get() || snapshots == 0) {
+            FrameBuffer.Snapshot snapshot = buffer.snapshot();
+            try {
+                // Read after the snapshot, so a later grow can only make the check weaker
+                assertConsecutive(snapshot, oldest.get());
+            } finally {
+                snapshot.release();
+            }
+            snapshots++;
+        }
+        writer.join();
+        assertNull(failure.get());
+    }
+
+    @Test
+    void keepsTheNewestFrames() {
+        FrameBuffer buffer = new FrameBuffer(8);
+        add(buffer, 0, 5);
+        assertEquals(5, buffer.size());
+        add(buffer, 5, 20);
+        assertEquals(8, buffer.size());
+
+        FrameBuffer.Snapshot snapshot = buffer.snapshot();
+        assertEquals(times(12, 20), times(snapshot.getFrames()));
+        snapshot.release();
+        assertThrows(IllegalStateException.class, snapshot::getFrames);
+    }
+
+    @Test
+    void snapshotsWhileCapturing() throws Exception {
+        FrameBuffer buffer = new FrameBuffer(64);
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            add(buffer, 0, 300_000);
+            done.set(true);
+        });
+        snapshotWhile(buffer, writer, done, new AtomicLong());
+    }
+
+    @Test
+    void snapshotsWhileResizing() throws Exception {
+        FrameBuffer buffer = new FrameBuffer(16);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong oldest = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            // Grows to 128 frames and shrinks back to 16 a hundred frames later
+            for (int n = 0; n < 1_000_000; n += 100) {
+                int capacity = n % 200 == 0 ? 128 : 16;
+                if (capacity > buffer.getCapacity()) {
+                    oldest.set(n - buffer.getCapacity());
+                }
+                buffer.setCapacity(capacity);
+                add(buffer, n, n + 100);
+            }
+            done.set(true);
+        });
+        snapshotWhile(buffer, writer, done, oldest);
+    }
+
+    @Test
+    void shrinkingKeepsPinnedFrames() {
+        FrameBuffer buffer = new FrameBuffer(10);
+        add(buffer, 0, 10);
+        FrameBuffer.Snapshot snapshot = buffer.snapshot();
+
+        buffer.setCapacity(3);
+        add(buffer, 10, 11);
+        assertEquals(3, buffer.size());
+        assertEquals(times(0, 10), times(snapshot.getFrames()));
+        snapshot.release();
+
+        FrameBuffer.Snapshot after = buffer.snapshot();
+        assertEquals(times(8, 11), times(after.getFrames()));
+        after.release();
+    }
+
+    @Test
+    void findsTimeRangesAcrossTheWrap() {
+        // Frames 5 to 12 are in the ring, and frame 8 is written to the first slot again
+        FrameBuffer buffer = new FrameBuffer(8);
+        add(buffer, 0, 13);
+        FrameBuffer.Snapshot snapshot = buffer.snapshot();
+
+        assertWindows(snapshot);
+        assertEquals(times(5, 13), times(snapshot.getFrames(0, 1000)));
+        assertEquals(times(12, 13), times(snapshot.getFrames(200, 300)));
+
+        // Once the frames leave the ring their times come from the retained frames
+        add(buffer, 13, 40);
+        assertWindows(snapshot);
+        snapshot.release();
+    }
+
+    private static void assertWindows(FrameBuffer.Snapshot snapshot) {
+        assertEquals(times(6, 10), times(snapshot.getFrames(65, 95)));
+        assertEquals(times(7, 9), times(snapshot.getFrames(70, 90)));
+        assertEquals(times(7, 10), times(snapshot.getFrames(79, 91)));
+        assertEquals(times(11, 13), times(snapshot.getFrames(110, 500)));
+    }
+
+    @Test
+    void releasesEvictedFramesWithTheLastSnapshot() {
+        FrameBuffer buffer = new FrameBuffer(4);
+        List<WeakReference<CapturedFrame>> older = addTracked(buffer, 0, 4);
+        FrameBuffer.Snapshot first = buffer.snapshot();
+        List<WeakReference<CapturedFrame>> newer = addTracked(buffer, 4, 8);
+        FrameBuffer.Snapshot second = buffer.snapshot();
+        add(buffer, 8, 20);
+
+        second.release();
+        assertEquals(times(0, 4), times(first.getFrames()));
+        assertEquals(0, collected(older), "frames of the first snapshot were dropped");
+
+        first.release();
+        assertEquals(4, collected(older));
+        assertEquals(4, collected(newer));
+    }
+
+    @Test
+    void doesNotRetainUnpinnedFrames() {
+        FrameBuffer buffer = new FrameBuffer(4);
+        FrameBuffer.Snapshot snapshot = buffer.snapshot();
+        snapshot.release();
+        List<WeakReference<CapturedFrame>> evicted = addTracked(buffer, 0, 4);
+        add(buffer, 4, 8);
+        assertEquals(4, collected(evicted));
+    }
+
+    private static List<WeakReference<CapturedFrame>> addTracked(FrameBuffer buffer, int from, int to) {
+        List<WeakReference<CapturedFrame>> references = new ArrayList<>();
+        for (int n = from; n < to; n++) {
+            CapturedFrame frame = new CapturedFrame(PIXEL, n * 10L, BOUNDS);
+            references.add(new WeakReference<>(frame));
+            buffer.add(frame);
+        }
+        return references;
+    }
+
+    // How many of the frames the garbage collector has reclaimed, after giving it a few tries
+    private static int collected(List<WeakReference<CapturedFrame>> references) {
+        int collected = 0;
+        for (int attempt = 0; attempt < 20; attempt++) {
+            System.gc();
+            collected = 0;
+            for (WeakReference<CapturedFrame> reference : references) {
+                if (reference.get() == null) collected++;
+            }
+            if (collected == references.size()) break;
+        }
+        return collected;
+    }
+}
@@ -0,0 +1,115 @@
+package com.quickrewind;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GifEditorTest {
+    private static final int FRAMES = 12;
+    private static final int DELAY_MS = 100;
+
+    @TempDir
+    File folder;
+
+    // A box moving over a still background, so all but the first frame are stored as deltas
+    private File gif(String name, Color background, int width, int height) throws IOException {
+        List<BufferedImage> frames = new ArrayList<>();
+        for (int i = 0; i < FRAMES; i++) {
+            BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = frame.createGraphics();
+            g.setColor(background);
+            g.fillRect(0, 0, width, height);
+            g.setColor(Color.BLACK);
+            g.drawString("Frame", 4, 20);
+            g.setColor(new Color(200, 40 + i * 15, 40));
+            g.fillRect(10 + i * 8, 30, 16, 16);
+            g.dispose();
+            frames.add(frame);
+        }
+        File file = new File(folder, name);
+        SimpleGifEncoder.encodeGif(frames, file, DELAY_MS);
+        return file;
+    }
+
+    private static void assertSameFrames(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size(), "frame count");
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i), "frame " + i);
+        }
+    }
+
+    @Test
+    void trimKeepsFramesAndDelays() throws IOException {
+        File source = gif("source.gif", Color.LIGHT_GRAY, 160, 60);
+        QualityMetrics.Decoded original = QualityMetrics.decodeGif(source);
+        GifEditor editor = GifEditor.open(source);
+        assertEquals(original.frames.size(), editor.getFrameCount());
+
+        // Starts on a delta frame, which has to be written again as a full frame
+        File trimmed = new File(folder, "trimmed.gif");
+        editor.trim(trimmed, 3, 8);
+
+        QualityMetrics.Decoded result = QualityMetrics.decodeGif(trimmed);
+        assertSameFrames(original.frames.subList(3, 8), result.frames);
+        assertArrayEquals(Arrays.copyOfRange(original.delaysMs, 3, 8), result.delaysMs);
+        assertEquals(5 * DELAY_MS, GifEditor.open(trimmed).getDurationMs());
+    }
+
+    @Test
+    void trimTimeShortensTheOuterFrames() throws IOException {
+        File source = gif("source.gif", Color.LIGHT_GRAY, 160, 60);
+        QualityMetrics.Decoded original = QualityMetrics.decodeGif(source);
+
+        File trimmed = new File(folder, "trimmed.gif");
+        GifEditor.open(source).trimTime(trimmed, 250, 720);
+
+        QualityMetrics.Decoded result = QualityMetrics.decodeGif(trimmed);
+        assertEquals(470, Arrays.stream(result.delaysMs).sum());
+        for (long t = 0; t < 470; t += 10) {
+            assertArrayEquals(original.frameAt(250 + t), result.frameAt(t), "at " + t + " ms");
+        }
+    }
+
+    @Test
+    void joinAppendsWholeGifs() throws IOException {
+        File first = gif("first.gif", Color.LIGHT_GRAY, 160, 60);
+        File second = gif("second.gif", new Color(30, 90, 160), 160, 60); // Another palette
+        QualityMetrics.Decoded a = QualityMetrics.decodeGif(first);
+        QualityMetrics.Decoded b = QualityMetrics.decodeGif(second);
+
+        File joined = new File(folder, "joined.gif");
+        GifEditor.join(Arrays.asList(GifEditor.open(first), GifEditor.open(second)), joined);
+
+        QualityMetrics.Decoded result = QualityMetrics.decodeGif(joined);
+        List<int[]> expected = new ArrayList<>(a.frames);
+        expected.addAll(b.frames);
+        assertSameFrames(expected, result.frames);
+        assertEquals(GifEditor.open(first).getDurationMs() + GifEditor.open(second).getDurationMs(),
+            GifEditor.open(joined).getDurationMs());
+    }
+
+    @Test
+    void rejectsImpossibleEdits() throws IOException {
+        File source = gif("source.gif", Color.LIGHT_GRAY, 160, 60);
+        File other = gif("other.gif", Color.LIGHT_GRAY, 120, 60);
+        GifEditor editor = GifEditor.open(source);
+        File output = new File(folder, "out.gif");
+
+        assertThrows(IllegalArgumentException.class, () -> editor.trim(output, 5, 5));
+        assertThrows(IllegalArgumentException.class, () -> editor.trim(output, 0, editor.getFrameCount() + 1));
+        assertThrows(IllegalArgumentException.class, () -> editor.trimTime(output, 60_000, 70_000));
+        assertThrows(IOException.class, () -> GifEditor.join(Arrays.asList(editor, GifEditor.open(other)), output));
+        assertThrows(IOException.class, () -> GifEditor.open(new File(folder, "first.gif")));
+    }
+}
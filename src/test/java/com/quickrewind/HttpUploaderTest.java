@@ -0,0 +1,121 @@
+package com.quickrewind;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class HttpUploaderTest {
+    private static final int CHUNK_BYTES = 512 * 1024;
+
+    private UploadTestServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) server.stop();
+    }
+
+    private URI start(double failRate) throws IOException {
+        server = new UploadTestServer(failRate, 0);
+        return URI.create("http://localhost:" + server.start(0) + "/files/");
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    // Appends in uneven blocks, the way the GIF writer hands them over
+    private static void append(HttpUploader upload, byte[] data) {
+        for (int offset = 0; offset < data.length; offset += 70_001) {
+            upload.append(data, offset, Math.min(70_001, data.length - offset));
+        }
+    }
+
+    @Test
+    void uploadsTheWholeFile() throws Exception {
+        URI endpoint = start(0);
+        byte[] data = data(CHUNK_BYTES * 2 + 12_345);
+        HttpUploader upload = new HttpUploader(endpoint, "plain.gif");
+        append(upload, data);
+
+        URI location = upload.finish().get(30, TimeUnit.SECONDS);
+        assertArrayEquals(data, server.getUpload(location));
+        assertEquals(3, server.getRequestCount("PATCH"));
+        assertEquals(data.length, server.getReceivedBytes());
+    }
+
+    @Test
+    void resumesAfterDroppedChunk() throws Exception {
+        URI endpoint = start(0);
+        byte[] data = data(CHUNK_BYTES * 2 + 12_345);
+        server.dropNextPatches(1);
+        HttpUploader upload = new HttpUploader(endpoint, "resume.gif");
+        append(upload, data);
+
+        URI location = upload.finish().get(30, TimeUnit.SECONDS);
+        assertArrayEquals(data, server.getUpload(location));
+        // The retry asks for the server's offset and only sends the half it did not keep. A pooled
+        // connection the server closed fails before any bytes arrive, so it only adds a HEAD.
+        assertTrue(server.getRequestCount("HEAD") >= 1);
+        assertEquals(4, server.getRequestCount("PATCH"));
+        assertEquals(data.length + CHUNK_BYTES - CHUNK_BYTES / 2, server.getReceivedBytes());
+    }
+
+    @Test
+    void retriesWithBackoffUnderFailures() throws Exception {
+        URI endpoint = start(0.3);
+        byte[] data = data(CHUNK_BYTES * 6);
+        HttpUploader upload = new HttpUploader(endpoint, "flaky.gif");
+        long start = System.nanoTime();
+        append(upload, data);
+
+        URI location = upload.finish().get(120, TimeUnit.SECONDS);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertArrayEquals(data, server.getUpload(location));
+        int retries = server.getRequestCount("PATCH") - 7; // Six full chunks and the empty last one
+        assertTrue(retries > 0, "no chunk failed");
+        assertTrue(elapsedMs >= 250L * retries, "retried after " + elapsedMs + " ms without backing off");
+    }
+
+    @Test
+    void givesUpOnClientError() throws Exception {
+        URI endpoint = start(0);
+        server.rejectPatches(413);
+        HttpUploader upload = new HttpUploader(endpoint, "large.gif");
+        append(upload, data(CHUNK_BYTES + 1));
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+            () -> upload.finish().get(30, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, error.getCause());
+        assertTrue(error.getCause().getMessage().contains("413"), error.getCause().getMessage());
+        assertEquals(1, server.getRequestCount("PATCH"));
+    }
+
+    @Test
+    void abortDeletesTheUpload() throws Exception {
+        URI endpoint = start(0);
+        HttpUploader upload = new HttpUploader(endpoint, "aborted.gif");
+        append(upload, data(CHUNK_BYTES * 3));
+        upload.abort();
+
+        assertThrows(ExecutionException.class, () -> upload.finish().get(30, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 30_000;
+        while ((server.getRequestCount("DELETE") == 0 || server.getUploadCount() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, server.getRequestCount("DELETE"));
+        assertEquals(0, server.getUploadCount());
+    }
+}
@@ -0,0 +1,118 @@
+package com.quickrewind;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times each pixel kernel through {@link ScalarKernels} and through {@link PixelKernels}, checks
+ * that both give identical results and prints the speedup. Run from the jar:
+ * java --add-modules jdk.incubator.vector -cp quickrewind.jar:test-classes com.quickrewind.KernelBenchmark
+ */
+public class KernelBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int ROUNDS = 5;
+
+    private interface Kernel {
+        Object run(boolean scalar);
+    }
+
+    public static void main(String[] args) {
+        System.out.println("Pixel kernels: " + PixelKernels.implementation()
+                + " (Java " + System.getProperty("java.specification.version") + ")");
+
+        int[] screen = syntheticScreen(WIDTH, HEIGHT, 1);
+        int[] scaled = new int[(WIDTH * 6 / 10) * (HEIGHT * 6 / 10)];
+        int[] scaledScalar = new int[scaled.length];
+        byte[] lut = new byte[1 << 15];
+        new Random(7).nextBytes(lut);
+        byte[] indices = new byte[screen.length];
+        byte[] indicesScalar = new byte[screen.length];
+        byte[] previous = new byte[screen.length];
+        byte[] current = previous.clone();
+        current[screen.length / 3] = 1;
+        current[screen.length * 2 / 3] = 1;
+        byte[] bgr = new byte[screen.length * 3];
+        new Random(11).nextBytes(bgr);
+        int[] rgb = new int[screen.length];
+        int[] rgbScalar = new int[screen.length];
+
+        run("scale 0.6", scalar -> {
+            int[] dst = scalar ? scaledScalar : scaled;
+            if (scalar) {
+                ScalarKernels.scaleBilinear(screen, WIDTH, HEIGHT, dst, WIDTH * 6 / 10, HEIGHT * 6 / 10);
+            } else {
+                PixelKernels.scaleBilinear(screen, WIDTH, HEIGHT, dst, WIDTH * 6 / 10, HEIGHT * 6 / 10);
+            }
+            return Arrays.hashCode(dst);
+        });
+        run("palette lookup", scalar -> {
+            byte[] dst = scalar ? indicesScalar : indices;
+            if (scalar) {
+                ScalarKernels.mapToIndices(screen, lut, dst, dst.length);
+            } else {
+                PixelKernels.mapToIndices(screen, lut, dst, dst.length);
+            }
+            return Arrays.hashCode(dst);
+        });
+        run("fingerprint", scalar -> scalar
+                ? ScalarKernels.fingerprint(screen, WIDTH, HEIGHT, 1)
+                : PixelKernels.fingerprint(screen, WIDTH, HEIGHT, 1));
+        run("frame diff", scalar -> scalar
+                ? ScalarKernels.firstDifference(current, previous, 0, current.length)
+                        + "," + ScalarKernels.lastDifference(current, previous, 0, current.length)
+                : PixelKernels.firstDifference(current, previous, 0, current.length)
+                        + "," + PixelKernels.lastDifference(current, previous, 0, current.length));
+        run("bgr to rgb", scalar -> {
+            int[] dst = scalar ? rgbScalar : rgb;
+            if (scalar) {
+                ScalarKernels.bgrToRgb(bgr, dst, dst.length);
+            } else {
+                PixelKernels.bgrToRgb(bgr, dst, dst.length);
+            }
+            return Arrays.hashCode(dst);
+        });
+    }
+
+    private static void run(String name, Kernel kernel) {
+        // Warm both paths up so the JIT has compiled them before timing
+        for (int i = 0; i < 20; i++) {
+            kernel.run(true);
+            kernel.run(false);
+        }
+
+        Object expected = kernel.run(true);
+        Object actual = kernel.run(false);
+        long scalarNanos = best(kernel, true);
+        long kernelNanos = best(kernel, false);
+
+        System.out.println(String.format("%-16s scalar %7.2f ms  %-7s %7.2f ms  speedup %5.2fx  %s",
+                name, scalarNanos / 1e6, PixelKernels.implementation(), kernelNanos / 1e6,
+                (double) scalarNanos / kernelNanos, expected.equals(actual) ? "identical" : "MISMATCH"));
+    }
+
+    private static long best(Kernel kernel, boolean scalar) {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                kernel.run(scalar);
+            }
+            best = Math.min(best, (System.nanoTime() - start) / 10);
+        }
+        return best;
+    }
+
+    // Flat panels with gradients and text-like noise, roughly what a desktop looks like
+    private static int[] syntheticScreen(int width, int height, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int base = (x < width / 4) ? 0x2B2B2B : 0xF0F0F0 - ((y * 32 / height) * 0x010101);
+                pixels[y * width + x] = random.nextInt(12) == 0 ? random.nextInt(0x1000000) : base;
+            }
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,147 @@
+package com.quickrewind;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Encodes the same synthetic desktop recording (anti-aliased text scrolling in an editor, a
+ * gradient title bar, a photo and a moving pointer) without and with lossy LZW compression and
+ * prints size, encode time and the PSNR of every lossy GIF against the lossless one:
+ * java -cp quickrewind.jar:test-classes com.quickrewind.LossyGifBenchmark [frames] [width] [height] [errors...]
+ */
+public class LossyGifBenchmark {
+    private static final int ROUNDS = 2;
+
+    public static void main(String[] args) throws IOException {
+        int frameCount = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 1280;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 720;
+        int[] errors = args.length > 3
+            ? Arrays.stream(args, 3, args.length).mapToInt(Integer::parseInt).toArray()
+            : new int[] {0, 10, 20, 40, 60, 100};
+
+        List<BufferedImage> frames = new ArrayList<>(frameCount);
+        BufferedImage photo = photo(width / 3, height / 3);
+        for (int i = 0; i < frameCount; i++) {
+            frames.add(desktop(width, height, i, photo));
+        }
+        int[] delays = new int[frameCount];
+        Arrays.fill(delays, 100);
+
+        System.out.println("Lossy LZW on " + frameCount + " desktop frames at " + width + "x" + height);
+        System.out.println(String.format("%-8s %10s %8s %10s %8s", "error", "bytes", "size", "encode ms", "PSNR dB"));
+
+        List<int[]> reference = null;
+        long losslessBytes = 0;
+        for (int error : errors) {
+            File output = File.createTempFile("quickrewind-lossy-" + error + "-", ".gif");
+            output.deleteOnExit();
+            long bestNanos = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                SimpleGifEncoder.encodeGif(frames, output, delays, 0, 0, Ditherer.DEFAULT_MODE, error,
+                        EncodeProgress.NONE, null);
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            }
+
+            List<int[]> decoded = QualityMetrics.decodeGif(output).frames;
+            if (reference == null) {
+                reference = decoded;
+                losslessBytes = output.length();
+            }
+            String psnr = error == 0 && decoded == reference ? "-" : String.format("%.1f", psnr(reference, decoded));
+            System.out.println(String.format("%-8s %10d %7.0f%% %10d %8s", error == 0 ? "lossless" : error,
+                    output.length(), 100.0 * output.length() / losslessBytes, bestNanos / 1_000_000, psnr));
+        }
+        System.exit(0);
+    }
+
+    private static double psnr(List<int[]> reference, List<int[]> decoded) {
+        double squaredError = 0;
+        long samples = 0;
+        for (int f = 0; f < reference.size(); f++) {
+            squaredError += QualityMetrics.squaredError(reference.get(f), decoded.get(f));
+            samples += reference.get(f).length * 3L;
+        }
+        return QualityMetrics.psnr(squaredError, samples);
+    }
+
+    private static BufferedImage desktop(int width, int height, int frame, BufferedImage photo) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        // Editor with text scrolling by three pixels per frame
+        g.setColor(new Color(0xFAFAFA));
+        g.fillRect(0, 0, width, height);
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+        Color[] syntax = {new Color(0x1E1E1E), new Color(0x0033B3), new Color(0x067D17), new Color(0x871094)};
+        int lineHeight = 18;
+        int scroll = frame * 3;
+        for (int line = scroll / lineHeight; line * lineHeight - scroll < height; line++) {
+            g.setColor(syntax[line % syntax.length]);
+            g.drawString(sourceLine(line), width / 5 + 12, 48 + line * lineHeight - scroll);
+        }
+
+        // Sidebar, gradient title bar and a photo in a preview pane
+        g.setColor(new Color(0x2B2D30));
+        g.fillRect(0, 0, width / 5, height);
+        g.setPaint(new GradientPaint(0, 0, new Color(0x3C5A99), width, 0, new Color(0x8E54E9)));
+        g.fillRect(0, 0, width, 30);
+        g.setColor(Color.WHITE);
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 13));
+        g.drawString("QuickRewind.java - Editor", 12, 20);
+        g.drawImage(photo, width - photo.getWidth() - 16, height - photo.getHeight() - 16, null);
+
+        // Pointer moving on a circle
+        int cx = (int) (width / 2 + Math.cos(frame / 15.0) * width / 3);
+        int cy = (int) (height / 2 + Math.sin(frame / 15.0) * height / 3);
+        g.setColor(Color.BLACK);
+        g.fillPolygon(new int[] {cx, cx, cx + 11}, new int[] {cy, cy + 17, cy + 12}, 3);
+        g.dispose();
+        return image;
+    }
+
+    private static String sourceLine(int line) {
+        String[] words = {"private", "static", "final", "int", "return", "frame", "palette", "encode",
+            "width", "height", "buffer", "if", "for", "new", "byte[]", "long", "delay", "index"};
+        StringBuilder text = new StringBuilder("    ".repeat(line % 4));
+        Random random = new Random(line);
+        for (int i = 0, count = 3 + random.nextInt(8); i < count; i++) {
+            text.append(words[random.nextInt(words.length)]).append(i % 3 == 2 ? "(); " : " ");
+        }
+        return text.toString();
+    }
+
+    // Smooth color fields with grain, which no palette reproduces exactly
+    private static BufferedImage photo(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(3);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double u = (double) x / width;
+                double v = (double) y / height;
+                int r = (int) (90 + 120 * u + 20 * Math.sin(v * 9)) + random.nextInt(9) - 4;
+                int g = (int) (140 + 60 * v + 25 * Math.cos(u * 7)) + random.nextInt(9) - 4;
+                int b = (int) (200 - 110 * v * u) + random.nextInt(9) - 4;
+                image.setRGB(x, y, (clamp(r) << 16) | (clamp(g) << 8) | clamp(b));
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,99 @@
+package com.quickrewind;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class LzwEncoderTest {
+    private static final int COLORS = 64;
+    private static final int PIXELS = 200 * 150; // Enough to fill the code table several times
+
+    // Grays 4 apart, so neighbouring indices are close enough for lossy matches
+    private static Palette grays() {
+        int[] rgb = new int[COLORS];
+        for (int i = 0; i < COLORS; i++) {
+            rgb[i] = (i * 4) * 0x010101;
+        }
+        return new Palette(rgb);
+    }
+
+    // Runs of one color with a little noise, like text and gradients on a desktop
+    private static byte[] pixels(long seed) {
+        Random random = new Random(seed);
+        byte[] pixels = new byte[PIXELS];
+        int color = 0;
+        for (int p = 0; p < pixels.length; p++) {
+            if (random.nextInt(20) == 0) color = random.nextInt(COLORS);
+            int noisy = color + (random.nextInt(8) == 0 ? random.nextInt(3) - 1 : 0);
+            pixels[p] = (byte) Math.max(0, Math.min(COLORS - 1, noisy));
+        }
+        return pixels;
+    }
+
+    @Test
+    void losslessRoundTrip() throws Exception {
+        byte[] pixels = pixels(1);
+        byte[] encoded = LzwEncoder.encode(pixels, 8);
+        assertArrayEquals(pixels, LzwDecoder.decode(encoded, 0, pixels.length));
+    }
+
+    @Test
+    void smallestCodeSizeRoundTrip() throws Exception {
+        byte[] pixels = new byte[5000];
+        Random random = new Random(2);
+        for (int p = 0; p < pixels.length; p++) {
+            pixels[p] = (byte) random.nextInt(4);
+        }
+        assertArrayEquals(pixels, LzwDecoder.decode(LzwEncoder.encode(pixels, 2), 0, pixels.length));
+    }
+
+    @Test
+    void lossyWithoutErrorIsLossless() {
+        byte[] pixels = pixels(3);
+        byte[] lossy = pixels.clone();
+        assertArrayEquals(LzwEncoder.encode(pixels, 8), LzwEncoder.encodeLossy(lossy, null, 8, grays(), 0));
+        assertArrayEquals(pixels, lossy);
+    }
+
+    @Test
+    void lossyRoundTripStaysWithinError() throws Exception {
+        Palette palette = grays();
+        int maxError = 20;
+        byte[] original = pixels(4);
+        byte[] stored = original.clone();
+        byte[] encoded = LzwEncoder.encodeLossy(stored, null, 8, palette, maxError);
+
+        // The decoder sees exactly what the encoder reports as stored
+        assertArrayEquals(stored, LzwDecoder.decode(encoded, 0, stored.length));
+        for (int p = 0; p < original.length; p++) {
+            assertTrue(palette.distanceSquared(original[p] & 0xFF, stored[p] & 0xFF) <= maxError * maxError,
+                "pixel " + p + " moved too far");
+        }
+        assertTrue(encoded.length < LzwEncoder.encode(original, 8).length, "lossy output is not smaller");
+    }
+
+    @Test
+    void lossyDeltaFrameShowsCloseColors() throws Exception {
+        Palette palette = grays();
+        int transparent = palette.transparentIndex();
+        int maxError = 12;
+        byte[] background = pixels(5);
+        byte[] original = pixels(6);
+        Random random = new Random(7);
+        for (int p = 0; p < original.length; p++) {
+            // A delta frame leaves most of the screen as it is
+            if (random.nextInt(4) != 0) original[p] = (byte) transparent;
+        }
+        byte[] stored = original.clone();
+        byte[] encoded = LzwEncoder.encodeLossy(stored, background, 8, palette, maxError);
+
+        assertArrayEquals(stored, LzwDecoder.decode(encoded, 0, stored.length));
+        for (int p = 0; p < original.length; p++) {
+            int wanted = (original[p] & 0xFF) == transparent ? background[p] & 0xFF : original[p] & 0xFF;
+            int shown = (stored[p] & 0xFF) == transparent ? background[p] & 0xFF : stored[p] & 0xFF;
+            assertTrue(palette.distanceSquared(wanted, shown) <= maxError * maxError, "pixel " + p + " moved too far");
+        }
+    }
+}
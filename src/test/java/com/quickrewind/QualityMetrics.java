@@ -0,0 +1,195 @@
+package com.quickrewind;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes exported GIFs and AVIs back into the frames a viewer shows, and compares frames by
+ * PSNR and SSIM. Used by the benchmarks and {@link EncoderRegression}.
+ */
+public final class QualityMetrics {
+    private static final int SSIM_BLOCK = 8;
+    private static final double C1 = (0.01 * 255) * (0.01 * 255);
+    private static final double C2 = (0.03 * 255) * (0.03 * 255);
+
+    private QualityMetrics() {
+    }
+
+    /**
+     * Decoded output: every frame as packed RGB at the output size, and how long it is shown.
+     */
+    public static final class Decoded {
+        public final int width;
+        public final int height;
+        public final List<int[]> frames;
+        public final int[] delaysMs;
+
+        Decoded(int width, int height, List<int[]> frames, int[] delaysMs) {
+            this.width = width;
+            this.height = height;
+            this.frames = frames;
+            this.delaysMs = delaysMs;
+        }
+
+        // The frame on screen at the given time since the start; the last one stays after the end
+        public int[] frameAt(long timeMs) {
+            long end = 0;
+            for (int i = 0; i < frames.size(); i++) {
+                end += delaysMs[i];
+                if (timeMs < end) return frames.get(i);
+            }
+            return frames.get(frames.size() - 1);
+        }
+    }
+
+    // Composites every frame onto the canvas, the way a viewer shows it
+    public static Decoded decodeGif(File gif) throws IOException {
+        ImageReader reader = ImageIO.getImageReadersByFormatName("gif").next();
+        try (ImageInputStream input = ImageIO.createImageInputStream(gif)) {
+            reader.setInput(input);
+            int frameCount = reader.getNumImages(true);
+            BufferedImage first = reader.read(0);
+            int width = first.getWidth();
+            int height = first.getHeight();
+            int[] canvas = new int[width * height];
+            List<int[]> frames = new ArrayList<>(frameCount);
+            int[] delays = new int[frameCount];
+            for (int i = 0; i < frameCount; i++) {
+                BufferedImage image = i == 0 ? first : reader.read(i);
+                IIOMetadataNode root = (IIOMetadataNode) reader.getImageMetadata(i).getAsTree("javax_imageio_gif_image_1.0");
+                IIOMetadataNode descriptor = (IIOMetadataNode) root.getElementsByTagName("ImageDescriptor").item(0);
+                IIOMetadataNode control = (IIOMetadataNode) root.getElementsByTagName("GraphicControlExtension").item(0);
+                int left = Integer.parseInt(descriptor.getAttribute("imageLeftPosition"));
+                int top = Integer.parseInt(descriptor.getAttribute("imageTopPosition"));
+                delays[i] = control != null ? Integer.parseInt(control.getAttribute("delayTime")) * 10 : 100;
+                for (int y = 0; y < image.getHeight(); y++) {
+                    for (int x = 0; x < image.getWidth(); x++) {
+                        int argb = image.getRGB(x, y);
+                        if ((argb >>> 24) != 0) {
+                            canvas[(top + y) * width + left + x] = argb & 0xFFFFFF;
+                        }
+                    }
+                }
+                frames.add(canvas.clone());
+            }
+            return new Decoded(width, height, frames, delays);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    // Reads the Motion JPEG chunks written by MjpegAviEncoder; an empty chunk repeats the previous frame
+    public static Decoded decodeAvi(File avi) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(avi.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        int tickMs = Math.max(1, data.getInt(32) / 1000); // avih: microseconds per frame
+        int width = data.getInt(64);
+        int height = data.getInt(68);
+
+        List<int[]> frames = new ArrayList<>();
+        List<Integer> delays = new ArrayList<>();
+        int position = 12;
+        int moviEnd = -1;
+        while (position + 8 <= data.limit()) {
+            String id = fourCC(data, position);
+            int length = data.getInt(position + 4);
+            if (id.equals("LIST")) {
+                if (fourCC(data, position + 8).equals("movi")) {
+                    moviEnd = position + 8 + length;
+                }
+                position += 12; // Descend into the list
+                continue;
+            }
+            if (id.equals("00dc") && position < moviEnd) {
+                if (length > 0) {
+                    BufferedImage image = ImageIO.read(new ByteArrayInputStream(data.array(), position + 8, length));
+                    frames.add(image.getRGB(0, 0, width, height, null, 0, width));
+                    delays.add(tickMs);
+                } else if (!frames.isEmpty()) {
+                    delays.set(delays.size() - 1, delays.get(delays.size() - 1) + tickMs);
+                }
+            }
+            position += 8 + length + (length & 1);
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("No video frames in " + avi);
+        }
+        for (int[] frame : frames) {
+            for (int i = 0; i < frame.length; i++) {
+                frame[i] &= 0xFFFFFF;
+            }
+        }
+        return new Decoded(width, height, frames, delays.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static String fourCC(ByteBuffer data, int position) {
+        return new String(data.array(), position, 4, StandardCharsets.US_ASCII);
+    }
+
+    // Summed over the R, G and B samples of every pixel
+    public static double squaredError(int[] a, int[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int d = ((a[i] >> shift) & 0xFF) - ((b[i] >> shift) & 0xFF);
+                sum += d * d;
+            }
+        }
+        return sum;
+    }
+
+    // samples counts color samples, three per pixel
+    public static double psnr(double squaredError, long samples) {
+        double mse = squaredError / samples;
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    /**
+     * Mean structural similarity of the luma over 8x8 blocks, 1.0 for identical frames.
+     */
+    public static double ssim(int[] a, int[] b, int width, int height) {
+        double total = 0;
+        int blocks = 0;
+        int n = SSIM_BLOCK * SSIM_BLOCK;
+        for (int by = 0; by + SSIM_BLOCK <= height; by += SSIM_BLOCK) {
+            for (int bx = 0; bx + SSIM_BLOCK <= width; bx += SSIM_BLOCK) {
+                double sumA = 0, sumB = 0, sumAA = 0, sumBB = 0, sumAB = 0;
+                for (int y = by; y < by + SSIM_BLOCK; y++) {
+                    for (int x = bx; x < bx + SSIM_BLOCK; x++) {
+                        double la = luma(a[y * width + x]);
+                        double lb = luma(b[y * width + x]);
+                        sumA += la;
+                        sumB += lb;
+                        sumAA += la * la;
+                        sumBB += lb * lb;
+                        sumAB += la * lb;
+                    }
+                }
+                double meanA = sumA / n;
+                double meanB = sumB / n;
+                double varA = sumAA / n - meanA * meanA;
+                double varB = sumBB / n - meanB * meanB;
+                double covariance = sumAB / n - meanA * meanB;
+                total += ((2 * meanA * meanB + C1) * (2 * covariance + C2))
+                    / ((meanA * meanA + meanB * meanB + C1) * (varA + varB + C2));
+                blocks++;
+            }
+        }
+        return blocks > 0 ? total / blocks : 1.0;
+    }
+
+    private static double luma(int rgb) {
+        return 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+    }
+}
@@ -0,0 +1,73 @@
+package com.quickrewind;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class SimpleJsonTest {
+
+    @Test
+    void roundTripKeepsValuesAndOrder() {
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("text", "quote \" backslash \\ slash / tab \t newline \n bell \u0007 umlaut ü");
+        values.put("count", 42L);
+        values.put("negative", -7L);
+        values.put("big", 1L << 40);
+        values.put("scale", 0.75);
+        values.put("enabled", true);
+        values.put("disabled", false);
+        values.put("nothing", null);
+        values.put("", "empty key");
+
+        Map<String, Object> parsed = SimpleJson.parseObject(SimpleJson.writeObject(values));
+        assertEquals(values, parsed);
+        assertEquals(values.keySet().toString(), parsed.keySet().toString());
+    }
+
+    @Test
+    void numbersAreLongUnlessDecimal() {
+        Map<String, Object> parsed = SimpleJson.parseObject("{\"a\": 3, \"b\": 3.0, \"c\": 1e3, \"d\": -2.5E-1}");
+        assertEquals(3L, parsed.get("a"));
+        assertEquals(3.0, parsed.get("b"));
+        assertEquals(1000.0, parsed.get("c"));
+        assertEquals(-0.25, parsed.get("d"));
+    }
+
+    @Test
+    void parsesCompactAndSpacedInput() {
+        assertTrue(SimpleJson.parseObject("{}").isEmpty());
+        assertTrue(SimpleJson.parseObject("{ }\n").isEmpty());
+        Map<String, Object> parsed = SimpleJson.parseObject("{\"a\":\"\\u0041\\/\",\"b\":null,\"c\":false}");
+        assertEquals("A/", parsed.get("a"));
+        assertTrue(parsed.containsKey("b"));
+        assertNull(parsed.get("b"));
+        assertFalse((Boolean) parsed.get("c"));
+    }
+
+    @Test
+    void writtenObjectFitsOnOneLineWithoutItsBreaks() {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("event", "failed");
+        event.put("message", "first line\nsecond line");
+        String line = ExportWorker.line(event);
+        assertFalse(line.contains("\n"));
+        assertEquals(event, SimpleJson.parseObject(line));
+    }
+
+    @Test
+    void rejectsWhatItDoesNotSupport() {
+        assertThrows(IllegalArgumentException.class, () -> SimpleJson.parseObject("{\"a\": [1, 2]}"));
+        assertThrows(IllegalArgumentException.class, () -> SimpleJson.parseObject("{\"a\": {\"b\": 1}}"));
+        assertThrows(IllegalArgumentException.class, () -> SimpleJson.parseObject("{\"a\": 1} trailing"));
+        assertThrows(IllegalArgumentException.class, () -> SimpleJson.parseObject("{\"a\": 1"));
+        assertThrows(IllegalArgumentException.class, () -> SimpleJson.parseObject("{\"a\" 1}"));
+        assertThrows(IllegalArgumentException.class, () -> SimpleJson.parseObject("{\"a\": 1-2}"));
+        assertThrows(IllegalArgumentException.class, () -> SimpleJson.parseObject(""));
+    }
+}
@@ -0,0 +1,447 @@
+package com.quickrewind;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Long-running soak test: drives {@link ScreenCapture} from a synthetic frame source at an
+ * accelerated frame rate, exports the buffer and makes active recordings periodically, and
+ * samples post-GC heap occupancy, GC pauses, allocation rate, achieved frame rate and export
+ * latency. The first window after warm-up is the baseline; the run fails (exit code 1) as soon
+ * as the latest window drifts beyond a threshold. Every sample is written to a CSV file.
+ *
+ * java -cp quickrewind.jar:test-classes com.quickrewind.SoakTest --minutes 240 --report soak.csv
+ *
+ * Options (defaults in brackets): --minutes [120] --fps [20] --buffer-seconds [10]
+ * --width [640] --height [360] --export-seconds [30] --record-every-seconds [300]
+ * --record-seconds [20] --record-fps [30] --sample-seconds [10] --warmup-minutes [5]
+ * --window-minutes [5] --max-heap-growth-mb [64] --max-gc-pause-ms [200]
+ * --max-alloc-growth [1.5] --min-fps-ratio [0.8] --max-export-growth [2.0] --report [soak.csv]
+ */
+public class SoakTest {
+    private final Map<String, String> options;
+    private final File exportFolder;
+    private final GcMonitor gc = new GcMonitor();
+    private final List<Sample> samples = new ArrayList<>();
+    private final List<Long> exportMs = new ArrayList<>();
+    private final List<Double> recordingFps = new ArrayList<>();
+    private ScreenCapture capture;
+    private CompletableFuture<Void> runningExport = CompletableFuture.completedFuture(null);
+    private volatile String exportFailure;
+
+    private SoakTest(Map<String, String> options) throws IOException {
+        this.options = options;
+        this.exportFolder = Files.createTempDirectory("quickrewind-soak").toFile();
+        exportFolder.deleteOnExit();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        boolean passed = new SoakTest(options).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        long durationMs = (long) (number("minutes", 120) * 60_000);
+        long sampleMs = (long) (number("sample-seconds", 10) * 1000);
+        long exportEveryMs = (long) (number("export-seconds", 30) * 1000);
+        long recordEveryMs = (long) (number("record-every-seconds", 300) * 1000);
+        long recordMs = (long) (number("record-seconds", 20) * 1000);
+        int fps = (int) number("fps", 20);
+        int recordFps = (int) number("record-fps", 30);
+        int warmupSamples = (int) (number("warmup-minutes", 5) * 60_000 / sampleMs);
+        int windowSamples = Math.max(1, (int) (number("window-minutes", 5) * 60_000 / sampleMs));
+
+        Rectangle bounds = new Rectangle(0, 0, (int) number("width", 640), (int) number("height", 360));
+        capture = new ScreenCapture((int) number("buffer-seconds", 10), CaptureRegion.fixed(bounds, 1.0),
+                new SyntheticScreen());
+        capture.setFramesPerSecond(fps);
+        capture.setActiveRecordingSettings(recordFps, 10);
+
+        File report = new File(options.getOrDefault("report", "soak.csv"));
+        System.out.println("Soak test: " + durationMs / 60_000 + " min at " + fps + " FPS, "
+            + bounds.width + "x" + bounds.height + ", report " + report.getAbsolutePath());
+
+        gc.start();
+        capture.startCapture();
+        long start = System.currentTimeMillis();
+        long nextSample = start + sampleMs;
+        long nextExport = start + exportEveryMs;
+        long nextRecording = start + recordEveryMs;
+        long recordingEnds = 0;
+        String failure = null;
+
+        try (PrintWriter csv = new PrintWriter(report)) {
+            csv.println(Sample.CSV_HEADER);
+            Sample previous = Sample.take(0, gc, Metrics.get("capture.grabs"));
+
+            while (failure == null && System.currentTimeMillis() - start < durationMs) {
+                Thread.sleep(200);
+                long now = System.currentTimeMillis();
+                failure = exportFailure;
+
+                if (recordingEnds == 0 && now >= nextRecording && runningExport.isDone()) {
+                    capture.startActiveRecording();
+                    recordingEnds = now + recordMs;
+                } else if (recordingEnds != 0 && now >= recordingEnds) {
+                    exportRecording(recordMs);
+                    recordingEnds = 0;
+                    nextRecording = now + recordEveryMs;
+                } else if (now >= nextExport && runningExport.isDone()) {
+                    exportBuffer();
+                    nextExport = now + exportEveryMs;
+                }
+
+                if (now >= nextSample) {
+                    Sample sample = Sample.take(now - start, gc, Metrics.get("capture.grabs"));
+                    sample.completeFrom(previous, lastExportMs());
+                    samples.add(sample);
+                    csv.println(sample.toCsv());
+                    csv.flush();
+                    previous = sample;
+                    nextSample += sampleMs;
+
+                    if (samples.size() >= warmupSamples + 2 * windowSamples) {
+                        failure = checkDrift(warmupSamples, windowSamples);
+                    }
+                }
+            }
+        } finally {
+            capture.stopCapture();
+            runningExport.handle((done, error) -> null).join();
+        }
+
+        printSummary();
+        if (failure != null) {
+            System.err.println("SOAK TEST FAILED: " + failure);
+            return false;
+        }
+        if (samples.size() < warmupSamples + 2 * windowSamples) {
+            System.out.println("Soak test too short for drift checks (needs warm-up plus two windows)");
+        }
+        System.out.println("Soak test passed");
+        return true;
+    }
+
+    private void exportBuffer() {
+        BufferSnapshot snapshot = capture.snapshot();
+        runningExport = CompletableFuture.runAsync(() -> {
+            try {
+                CapturedFrame[] frames = snapshot.getFrames(0);
+                if (frames.length == 0) return;
+                long start = System.nanoTime();
+                File file = new File(exportFolder, "buffer.gif");
+                SimpleGifEncoder.encodeGif(CapturedFrame.images(frames), file,
+                        CapturedFrame.delays(frames, snapshot.getTime()));
+                recordExport(start, file);
+            } catch (IOException | RuntimeException e) {
+                exportFailure = "buffer export failed: " + e;
+            } finally {
+                snapshot.release();
+            }
+        }, ExportPipeline.computeExecutor());
+    }
+
+    private void exportRecording(long recordMs) {
+        CapturedFrame[] frames = capture.getActiveRecordingFrames();
+        capture.stopActiveRecording();
+        synchronized (recordingFps) {
+            recordingFps.add(frames.length * 1000.0 / recordMs);
+        }
+        runningExport = runningExport.handle((done, error) -> null).thenRunAsync(() -> {
+            try {
+                if (frames.length == 0) return;
+                long start = System.nanoTime();
+                File file = new File(exportFolder, "recording.gif");
+                SimpleGifEncoder.encodeGif(CapturedFrame.images(frames), file, (int) (recordMs / frames.length));
+                recordExport(start, file);
+            } catch (IOException | RuntimeException e) {
+                exportFailure = "recording export failed: " + e;
+            } finally {
+                capture.clearActiveRecordingFrames();
+            }
+        }, ExportPipeline.computeExecutor());
+    }
+
+    private void recordExport(long startNanos, File file) {
+        synchronized (exportMs) {
+            exportMs.add((System.nanoTime() - startNanos) / 1_000_000);
+        }
+        file.delete();
+    }
+
+    private long lastExportMs() {
+        synchronized (exportMs) {
+            return exportMs.isEmpty() ? 0 : exportMs.get(exportMs.size() - 1);
+        }
+    }
+
+    // Compares the window right after warm-up with the latest window; returns why it failed, or null
+    private String checkDrift(int warmupSamples, int windowSamples) {
+        List<Sample> baseline = samples.subList(warmupSamples, warmupSamples + windowSamples);
+        List<Sample> latest = samples.subList(samples.size() - windowSamples, samples.size());
+
+        // The lowest post-GC occupancy in a window approximates the live set under a sawtooth heap
+        double heapGrowth = min(latest, s -> s.heapAfterGcMB) - min(baseline, s -> s.heapAfterGcMB);
+        if (heapGrowth > number("max-heap-growth-mb", 64)) {
+            return String.format("post-GC heap grew by %.1f MB", heapGrowth);
+        }
+
+        List<Long> pauses = new ArrayList<>();
+        latest.forEach(s -> pauses.addAll(s.pausesMs));
+        long pauseP99 = percentile(pauses, 0.99);
+        if (pauseP99 > number("max-gc-pause-ms", 200)) {
+            return "GC pause p99 is " + pauseP99 + " ms";
+        }
+
+        double allocGrowth = median(latest, s -> s.allocMBps) / Math.max(0.01, median(baseline, s -> s.allocMBps));
+        if (allocGrowth > number("max-alloc-growth", 1.5)) {
+            return String.format("allocation rate grew %.2fx", allocGrowth);
+        }
+
+        double fpsRatio = median(latest, s -> s.fps) / Math.max(0.01, median(baseline, s -> s.fps));
+        if (fpsRatio < number("min-fps-ratio", 0.8)) {
+            return String.format("buffer frame rate dropped to %.0f%% of baseline", fpsRatio * 100);
+        }
+
+        synchronized (recordingFps) {
+            if (recordingFps.size() >= 2) {
+                double ratio = recordingFps.get(recordingFps.size() - 1) / Math.max(0.01, recordingFps.get(0));
+                if (ratio < number("min-fps-ratio", 0.8)) {
+                    return String.format("recording frame rate dropped to %.0f%% of the first recording", ratio * 100);
+                }
+            }
+        }
+
+        synchronized (exportMs) {
+            if (exportMs.size() >= 6) {
+                long first = percentile(exportMs.subList(0, 3), 0.5);
+                long last = percentile(exportMs.subList(exportMs.size() - 3, exportMs.size()), 0.5);
+                double growth = last / (double) Math.max(1, first);
+                if (growth > number("max-export-growth", 2.0)) {
+                    return String.format("export latency grew %.2fx (%d ms -> %d ms)", growth, first, last);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void printSummary() {
+        List<Long> pauses = new ArrayList<>();
+        samples.forEach(s -> pauses.addAll(s.pausesMs));
+        System.out.println("Samples: " + samples.size() + ", exports: " + exportMs.size()
+            + ", recordings: " + recordingFps.size());
+        System.out.println("GC pauses: " + pauses.size() + ", p50 " + percentile(pauses, 0.5) + " ms, p99 "
+            + percentile(pauses, 0.99) + " ms, max " + percentile(pauses, 1.0) + " ms");
+        System.out.println("Export latency ms: " + exportMs.stream().map(String::valueOf).collect(Collectors.joining(" ")));
+        System.out.println("Metrics: " + Metrics.snapshot());
+    }
+
+    private double number(String name, double defaultValue) {
+        String value = options.get(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    private interface Field {
+        double of(Sample sample);
+    }
+
+    private static double min(List<Sample> window, Field field) {
+        return window.stream().mapToDouble(field::of).min().orElse(0);
+    }
+
+    private static double median(List<Sample> window, Field field) {
+        double[] values = window.stream().mapToDouble(field::of).sorted().toArray();
+        return values.length == 0 ? 0 : values[values.length / 2];
+    }
+
+    private static long percentile(List<Long> values, double fraction) {
+        if (values.isEmpty()) return 0;
+        List<Long> sorted = new ArrayList<>(values);
+        sorted.sort(null);
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.floor(fraction * sorted.size())));
+    }
+
+    /**
+     * One row of the report. Allocation is derived from heap usage: growth since the last
+     * sample plus everything the collections in between freed.
+     */
+    private static final class Sample {
+        static final String CSV_HEADER = "elapsedSeconds,heapUsedMB,heapAfterGcMB,allocMBps,gcPauses,"
+            + "gcP50Ms,gcP99Ms,gcMaxMs,fps,lastExportMs";
+
+        final long elapsedMs;
+        final long heapUsed;
+        final long freed;
+        final long grabs;
+        final double heapAfterGcMB;
+        final List<Long> pausesMs;
+        double allocMBps;
+        double fps;
+        long lastExportMs;
+
+        private Sample(long elapsedMs, long heapUsed, long freed, double heapAfterGcMB, List<Long> pausesMs, long grabs) {
+            this.elapsedMs = elapsedMs;
+            this.heapUsed = heapUsed;
+            this.freed = freed;
+            this.heapAfterGcMB = heapAfterGcMB;
+            this.pausesMs = pausesMs;
+            this.grabs = grabs;
+        }
+
+        static Sample take(long elapsedMs, GcMonitor gc, long grabs) {
+            return new Sample(elapsedMs, GcMonitor.heapUsed(), gc.freedBytes(), gc.lastAfterGc() / 1048576.0,
+                    gc.drainPauses(), grabs);
+        }
+
+        void completeFrom(Sample previous, long exportMs) {
+            double seconds = Math.max(1, elapsedMs - previous.elapsedMs) / 1000.0;
+            long allocated = (heapUsed - previous.heapUsed) + (freed - previous.freed);
+            allocMBps = allocated / 1048576.0 / seconds;
+            fps = (grabs - previous.grabs) / seconds;
+            lastExportMs = exportMs;
+        }
+
+        String toCsv() {
+            return String.format("%d,%.1f,%.1f,%.1f,%d,%d,%d,%d,%.1f,%d", elapsedMs / 1000, heapUsed / 1048576.0,
+                heapAfterGcMB, allocMBps, pausesMs.size(), percentile(pausesMs, 0.5), percentile(pausesMs, 0.99),
+                percentile(pausesMs, 1.0), fps, lastExportMs);
+        }
+    }
+
+    // Collects pause durations and freed bytes from GC notifications
+    private static final class GcMonitor {
+        private final List<Long> pauses = new ArrayList<>();
+        private long freed;
+        private long lastAfterGc;
+
+        void start() {
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (!(bean instanceof NotificationEmitter)) continue;
+                ((NotificationEmitter) bean).addNotificationListener((notification, handback) -> {
+                    if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                        return;
+                    }
+                    onCollection(GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()));
+                }, null, null);
+            }
+        }
+
+        private synchronized void onCollection(GarbageCollectionNotificationInfo info) {
+            long before = heapTotal(info.getGcInfo().getMemoryUsageBeforeGc());
+            long after = heapTotal(info.getGcInfo().getMemoryUsageAfterGc());
+            freed += Math.max(0, before - after);
+            lastAfterGc = after;
+
+            // Concurrent cycles run alongside the application and are not pauses
+            String kind = (info.getGcName() + " " + info.getGcAction()).toLowerCase();
+            if (!kind.contains("concurrent")) {
+                pauses.add(info.getGcInfo().getDuration());
+            }
+        }
+
+        synchronized long freedBytes() {
+            return freed;
+        }
+
+        synchronized long lastAfterGc() {
+            return lastAfterGc;
+        }
+
+        synchronized List<Long> drainPauses() {
+            List<Long> drained = new ArrayList<>(pauses);
+            pauses.clear();
+            return drained;
+        }
+
+        private static long heapTotal(Map<String, MemoryUsage> usage) {
+            Set<String> heapPools = heapPoolNames();
+            long total = 0;
+            for (Map.Entry<String, MemoryUsage> entry : usage.entrySet()) {
+                if (heapPools.contains(entry.getKey())) {
+                    total += entry.getValue().getUsed();
+                }
+            }
+            return total;
+        }
+
+        private static Set<String> heapPoolNames() {
+            return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .map(MemoryPoolMXBean::getName)
+                .collect(Collectors.toSet());
+        }
+
+        static long heapUsed() {
+            return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        }
+    }
+
+    /**
+     * Desktop-like frames without a screen: static panels and text rows, a scrolling text area
+     * and a moving cursor-sized block, so every grab differs a little and encodes realistically.
+     */
+    static final class SyntheticScreen implements FrameSource {
+        private long frame;
+
+        @Override
+        public BufferedImage capture(Rectangle bounds) {
+            BufferedImage image = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_RGB);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            int width = bounds.width;
+            int height = bounds.height;
+            long t = frame++;
+
+            for (int y = 0; y < height; y++) {
+                int scrolled = (int) ((y + t * 2) % height);
+                for (int x = 0; x < width; x++) {
+                    int color;
+                    if (x < width / 5) {
+                        color = 0x2B2B2B + ((y / 24) % 2) * 0x0A0A0A; // Sidebar
+                    } else if (y < 28) {
+                        color = 0xDDE3EA; // Title bar
+                    } else {
+                        // Text rows that scroll by two pixels per frame
+                        boolean glyph = (scrolled % 18) < 11 && ((x * 7 + scrolled / 18 * 13) % 11) < 6;
+                        color = glyph ? 0x1E1E1E : 0xFAFAFA;
+                    }
+                    pixels[y * width + x] = color;
+                }
+            }
+
+            // Cursor-sized block moving on a circle
+            int cx = (int) (width / 2 + Math.cos(t / 15.0) * width / 3);
+            int cy = (int) (height / 2 + Math.sin(t / 15.0) * height / 3);
+            for (int y = Math.max(0, cy - 8); y < Math.min(height, cy + 8); y++) {
+                for (int x = Math.max(0, cx - 6); x < Math.min(width, cx + 6); x++) {
+                    pixels[y * width + x] = 0xE53935;
+                }
+            }
+            return image;
+        }
+    }
+}
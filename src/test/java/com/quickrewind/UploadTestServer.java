@@ -0,0 +1,324 @@
+package com.quickrewind;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for a tus upload server (core, creation, creation-defer-length, termination),
+ * for trying out and measuring uploads without a real endpoint. Uploads are kept in memory and
+ * can be downloaded from their upload URL once complete. With --fail-rate a share of the chunk
+ * requests fails: half are rejected up front, the other half store only part of the chunk and
+ * then answer with an error, like a connection that dropped mid-request.
+ *
+ * java -cp quickrewind.jar:test-classes com.quickrewind.UploadTestServer --port 1080
+ *
+ * then set the upload URL to http://localhost:1080/files/. With --selftest it instead encodes a
+ * synthetic recording while uploading it to itself, checks that the uploaded bytes match the
+ * saved file and reports the time from the start of encoding until the link was ready.
+ *
+ * Options (defaults in brackets): --port [1080] --fail-rate [0] --latency-ms [0] --selftest
+ * --frames [150] --width [1280] --height [720]
+ * <p>
+ * Tests can also drop or reject chunk requests on purpose and count the requests it got.
+ */
+public class UploadTestServer {
+    private static final String TUS_VERSION = "1.0.0";
+
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final Random random = new Random(42);
+    private final double failRate;
+    private final long latencyMs;
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private final AtomicInteger patchesToDrop = new AtomicInteger();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private volatile int patchStatus; // Answer for every chunk request when set
+    private HttpServer server;
+
+    private static class Upload {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        long length = -1;
+
+        synchronized long offset() {
+            return data.size();
+        }
+
+        synchronized boolean isComplete() {
+            return length >= 0 && data.size() == length;
+        }
+    }
+
+    public UploadTestServer(double failRate, long latencyMs) {
+        this.failRate = failRate;
+        this.latencyMs = latencyMs;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            String key = args[i].replaceFirst("^--", "");
+            boolean flag = i + 1 >= args.length || args[i + 1].startsWith("--");
+            options.put(key, flag ? "true" : args[++i]);
+        }
+        boolean selfTest = options.containsKey("selftest");
+        UploadTestServer server = new UploadTestServer(Double.parseDouble(options.getOrDefault("fail-rate", "0")),
+                Long.parseLong(options.getOrDefault("latency-ms", "0")));
+        int port = server.start(Integer.parseInt(options.getOrDefault("port", selfTest ? "0" : "1080")));
+        URI endpoint = URI.create("http://localhost:" + port + "/files/");
+
+        if (!selfTest) {
+            System.out.println("tus stand-in server listening at " + endpoint);
+            return;
+        }
+        boolean passed = server.selfTest(endpoint, Integer.parseInt(options.getOrDefault("frames", "150")),
+                Integer.parseInt(options.getOrDefault("width", "1280")),
+                Integer.parseInt(options.getOrDefault("height", "720")));
+        server.stop();
+        System.exit(passed ? 0 : 1);
+    }
+
+    // Returns the port, which is picked by the system for port 0
+    public int start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/files/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    // The stored bytes of a completed upload, or null
+    public byte[] getUpload(URI location) {
+        Upload upload = uploads.get(uploadId(location.getPath()));
+        if (upload == null || !upload.isComplete()) return null;
+        synchronized (upload) {
+            return upload.data.toByteArray();
+        }
+    }
+
+    // The next chunk requests store half their bytes and fail, like a connection that dropped
+    public void dropNextPatches(int count) {
+        patchesToDrop.set(count);
+    }
+
+    // Every chunk request from now on is answered with this status and stores nothing
+    public void rejectPatches(int status) {
+        patchStatus = status;
+    }
+
+    public int getRequestCount(String method) {
+        AtomicInteger count = requests.get(method);
+        return count != null ? count.get() : 0;
+    }
+
+    // Chunk bytes received, whether stored or not
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    public int getUploadCount() {
+        return uploads.size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.computeIfAbsent(exchange.getRequestMethod(), method -> new AtomicInteger()).incrementAndGet();
+        try {
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+            String id = uploadId(exchange.getRequestURI().getPath());
+            switch (exchange.getRequestMethod()) {
+                case "OPTIONS":
+                    exchange.getResponseHeaders().set("Tus-Version", TUS_VERSION);
+                    exchange.getResponseHeaders().set("Tus-Extension", "creation,creation-defer-length,termination");
+                    respond(exchange, 204);
+                    break;
+                case "POST":
+                    create(exchange);
+                    break;
+                case "HEAD":
+                    head(exchange, uploads.get(id));
+                    break;
+                case "PATCH":
+                    patch(exchange, uploads.get(id));
+                    break;
+                case "GET":
+                    download(exchange, uploads.get(id));
+                    break;
+                case "DELETE":
+                    respond(exchange, uploads.remove(id) != null ? 204 : 404);
+                    break;
+                default:
+                    respond(exchange, 405);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void create(HttpExchange exchange) throws IOException {
+        Upload upload = new Upload();
+        String length = exchange.getRequestHeaders().getFirst("Upload-Length");
+        if (length != null) {
+            upload.length = Long.parseLong(length);
+        } else if (!"1".equals(exchange.getRequestHeaders().getFirst("Upload-Defer-Length"))) {
+            respond(exchange, 400);
+            return;
+        }
+        String id = Integer.toString(nextId.getAndIncrement());
+        uploads.put(id, upload);
+        exchange.getResponseHeaders().set("Location", "/files/" + id);
+        respond(exchange, 201);
+    }
+
+    private void head(HttpExchange exchange, Upload upload) throws IOException {
+        if (upload == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Upload-Offset", Long.toString(upload.offset()));
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        if (upload.length >= 0) {
+            exchange.getResponseHeaders().set("Upload-Length", Long.toString(upload.length));
+        } else {
+            exchange.getResponseHeaders().set("Upload-Defer-Length", "1");
+        }
+        // The JDK server drops the connection after a HEAD response; saying so keeps clients from reusing it
+        exchange.getResponseHeaders().set("Connection", "close");
+        respond(exchange, 200);
+    }
+
+    private void patch(HttpExchange exchange, Upload upload) throws IOException {
+        if (upload == null) {
+            respond(exchange, 404);
+            return;
+        }
+        if (!"application/offset+octet-stream".equals(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+            respond(exchange, 415);
+            return;
+        }
+        byte[] body = readBody(exchange.getRequestBody());
+        receivedBytes.addAndGet(body.length);
+        if (patchStatus != 0) {
+            respond(exchange, patchStatus);
+            return;
+        }
+
+        // Injected failures: nothing stored, or only part of the chunk stored
+        double roll;
+        synchronized (random) {
+            roll = random.nextDouble();
+        }
+        boolean drop = patchesToDrop.getAndUpdate(count -> Math.max(0, count - 1)) > 0;
+        boolean fail = drop || roll < failRate;
+        int keep = drop || (fail && roll < failRate / 2) ? body.length / 2 : (fail ? 0 : body.length);
+
+        synchronized (upload) {
+            long offset = Long.parseLong(exchange.getRequestHeaders().getFirst("Upload-Offset"));
+            if (offset != upload.offset()) {
+                respond(exchange, 409);
+                return;
+            }
+            upload.data.write(body, 0, keep);
+            String length = exchange.getRequestHeaders().getFirst("Upload-Length");
+            if (length != null && !fail) {
+                upload.length = Long.parseLong(length);
+            }
+            if (upload.length >= 0 && upload.offset() > upload.length) {
+                respond(exchange, 400);
+                return;
+            }
+            exchange.getResponseHeaders().set("Upload-Offset", Long.toString(upload.offset()));
+        }
+        respond(exchange, fail ? 503 : 204);
+    }
+
+    private void download(HttpExchange exchange, Upload upload) throws IOException {
+        if (upload == null || !upload.isComplete()) {
+            respond(exchange, 404);
+            return;
+        }
+        byte[] data;
+        synchronized (upload) {
+            data = upload.data.toByteArray();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "image/gif");
+        exchange.sendResponseHeaders(200, data.length);
+        exchange.getResponseBody().write(data);
+    }
+
+    private static void respond(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Tus-Resumable", TUS_VERSION);
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    private static byte[] readBody(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static String uploadId(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private boolean selfTest(URI endpoint, int frameCount, int width, int height) throws Exception {
+        FrameSource screen = new SoakTest.SyntheticScreen();
+        Rectangle bounds = new Rectangle(0, 0, width, height);
+        List<BufferedImage> frames = new ArrayList<>(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            frames.add(screen.capture(bounds));
+        }
+        int[] delays = new int[frameCount];
+        Arrays.fill(delays, 100);
+
+        File output = File.createTempFile("quickrewind-upload", ".gif");
+        output.deleteOnExit();
+        System.out.println("Encoding " + frameCount + " frames at " + width + "x" + height + " while uploading to "
+            + endpoint + (failRate > 0 ? " with " + Math.round(failRate * 100) + "% failed chunks" : ""));
+
+        long start = System.nanoTime();
+        HttpUploader upload = new HttpUploader(endpoint, output.getName());
+        SimpleGifEncoder.encodeGif(frames, output, delays, 0, 0, Ditherer.DEFAULT_MODE, EncodeProgress.NONE, upload);
+        long encodedMs = (System.nanoTime() - start) / 1_000_000;
+        URI location = upload.finish().join();
+        long linkMs = (System.nanoTime() - start) / 1_000_000;
+        Metrics.set("export.timeToLink.ms", linkMs);
+
+        byte[] local = Files.readAllBytes(output.toPath());
+        byte[] uploaded = getUpload(location);
+        boolean matches = Arrays.equals(local, uploaded);
+        System.out.println("File written after " + encodedMs + " ms, link ready after " + linkMs + " ms ("
+            + (linkMs - encodedMs) + " ms after the trailer), " + local.length + " bytes");
+        System.out.println("Metrics: " + Metrics.snapshot());
+        System.out.println(matches ? "Upload matches the saved file" : "Upload differs from the saved file");
+        return matches;
+    }
+}